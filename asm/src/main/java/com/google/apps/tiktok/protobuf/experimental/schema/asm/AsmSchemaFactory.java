@@ -1,9 +1,14 @@
 package com.google.apps.tiktok.protobuf.experimental.schema.asm;
 
 import static org.objectweb.asm.Opcodes.ACC_FINAL;
+import static org.objectweb.asm.Opcodes.ACC_PRIVATE;
 import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_STATIC;
+import static org.objectweb.asm.Opcodes.ACONST_NULL;
 import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.ARRAYLENGTH;
 import static org.objectweb.asm.Opcodes.ASTORE;
+import static org.objectweb.asm.Opcodes.ATHROW;
 import static org.objectweb.asm.Opcodes.CHECKCAST;
 import static org.objectweb.asm.Opcodes.DCMPG;
 import static org.objectweb.asm.Opcodes.DCONST_0;
@@ -18,16 +23,26 @@ import static org.objectweb.asm.Opcodes.FLOAD;
 import static org.objectweb.asm.Opcodes.FSTORE;
 import static org.objectweb.asm.Opcodes.F_SAME;
 import static org.objectweb.asm.Opcodes.GETFIELD;
+import static org.objectweb.asm.Opcodes.GETSTATIC;
 import static org.objectweb.asm.Opcodes.GOTO;
+import static org.objectweb.asm.Opcodes.I2L;
+import static org.objectweb.asm.Opcodes.IADD;
+import static org.objectweb.asm.Opcodes.IAND;
+import static org.objectweb.asm.Opcodes.ICONST_0;
+import static org.objectweb.asm.Opcodes.ICONST_1;
 import static org.objectweb.asm.Opcodes.IFEQ;
 import static org.objectweb.asm.Opcodes.IFNE;
 import static org.objectweb.asm.Opcodes.IFNONNULL;
 import static org.objectweb.asm.Opcodes.IFNULL;
 import static org.objectweb.asm.Opcodes.IF_ICMPEQ;
+import static org.objectweb.asm.Opcodes.IF_ICMPNE;
 import static org.objectweb.asm.Opcodes.ILOAD;
 import static org.objectweb.asm.Opcodes.INVOKEINTERFACE;
 import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
 import static org.objectweb.asm.Opcodes.INVOKESTATIC;
+import static org.objectweb.asm.Opcodes.IOR;
+import static org.objectweb.asm.Opcodes.IRETURN;
+import static org.objectweb.asm.Opcodes.ISUB;
 import static org.objectweb.asm.Opcodes.ISTORE;
 import static org.objectweb.asm.Opcodes.LCMP;
 import static org.objectweb.asm.Opcodes.LCONST_0;
@@ -35,23 +50,35 @@ import static org.objectweb.asm.Opcodes.LLOAD;
 import static org.objectweb.asm.Opcodes.LSTORE;
 import static org.objectweb.asm.Opcodes.NEW;
 import static org.objectweb.asm.Opcodes.PUTFIELD;
+import static org.objectweb.asm.Opcodes.PUTSTATIC;
 import static org.objectweb.asm.Opcodes.RETURN;
 import static org.objectweb.asm.Opcodes.V1_6;
 import static org.objectweb.asm.Type.getInternalName;
 
+import com.google.apps.tiktok.protobuf.experimental.BooleanArrayList;
 import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.DoubleArrayList;
 import com.google.apps.tiktok.protobuf.experimental.FieldType;
+import com.google.apps.tiktok.protobuf.experimental.FloatArrayList;
+import com.google.apps.tiktok.protobuf.experimental.IntArrayList;
 import com.google.apps.tiktok.protobuf.experimental.InternalApi;
 import com.google.apps.tiktok.protobuf.experimental.JavaType;
+import com.google.apps.tiktok.protobuf.experimental.LongArrayList;
 import com.google.apps.tiktok.protobuf.experimental.descriptor.AnnotationMessageDescriptorFactory;
 import com.google.apps.tiktok.protobuf.experimental.descriptor.FieldDescriptor;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.MapEntryDescriptor;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.MessageDescriptor;
 import com.google.apps.tiktok.protobuf.experimental.descriptor.MessageDescriptorFactory;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.OneofDescriptor;
+import com.google.apps.tiktok.protobuf.experimental.schema.LazySchema;
 import com.google.apps.tiktok.protobuf.experimental.schema.Reader;
 import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
 import com.google.apps.tiktok.protobuf.experimental.schema.SchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.schema.SizeCalculator;
 import com.google.apps.tiktok.protobuf.experimental.schema.Writer;
 import com.google.apps.tiktok.protobuf.experimental.util.SchemaUtil;
 import com.google.apps.tiktok.protobuf.experimental.util.UnsafeUtil;
+import com.google.apps.tiktok.protobuf.experimental.util.WireFormat;
 
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
@@ -59,24 +86,39 @@ import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Type;
 
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A factory that dynamically generates schema bytecode for a given message class. Creation of
  * these schemas are generally slow, but the schema itself will generally outperform a generic
  * schema.
+ *
+ * <p>With lazy code generation, the methods that write a message and those that read one are
+ * generated as two separate classes, each of which is only generated and loaded the first time
+ * one of its methods is called. Applications that only write or only read a message type then pay
+ * for half of the generated code. Code is generated lazily unless {@code false} is passed as the
+ * {@code lazyCodeGeneration} argument of the constructor, in which case a single class is generated
+ * when each schema is created. The constructors that do not take the argument generate code lazily.
  */
-// TODO(nathanmittler): Generate writeTo/mergeFrom separately to support lazy code generation.
 @InternalApi
 public final class AsmSchemaFactory implements SchemaFactory {
+  // The suffixes of the names of the classes of lazily generated schemas.
+  private static final String WRITE_SCHEMA_SUFFIX = "Write";
+  private static final String READ_SCHEMA_SUFFIX = "Read";
+
   private static final int MESSAGE_INDEX = 1;
 
   // writeTo variables
   private static final int WRITER_INDEX = 2;
   private static final int WRITE_VALUE_INDEX = 3;
+  // Follows the value, which may take two slots.
+  private static final int WRITE_HAS_BITS_INDEX = 5;
 
   // mergeFrom variables.
   private static final int READER_INDEX = 2;
@@ -84,20 +126,27 @@ public final class AsmSchemaFactory implements SchemaFactory {
   private static final int READ_FIELD_NUMBER_INDEX = 3;
   private static final int READ_VALUE_LIST_INDEX = 3;
 
-  private static final Type CLASS_TYPE = Type.getType(Class.class);
+  // getSerializedSize variables.
+  private static final int SIZE_CALCULATOR_INDEX = 2;
+  private static final int SIZE_INDEX = 3;
+  private static final int SIZE_HAS_BITS_INDEX = 4;
+
   private static final String OBJECT_NAME = getInternalName(Object.class);
+  private static final String UNSUPPORTED_OPERATION_NAME =
+      getInternalName(UnsupportedOperationException.class);
   private static final String SCHEMA_NAME = getInternalName(Schema.class);
   private static final String READER_NAME = getInternalName(Reader.class);
   private static final String SCHEMA_UTIL_NAME = getInternalName(SchemaUtil.class);
   private static final String UNSAFE_UTIL_NAME = getInternalName(UnsafeUtil.class);
   private static final String WRITER_NAME = getInternalName(Writer.class);
-  private static final String ARRAY_LIST_NAME = getInternalName(ArrayList.class);
 
   // Schema methods.
   private static final String WRITE_TO_NAME;
   private static final String WRITE_TO_DESCRIPTOR;
   private static final String MERGE_FROM_NAME;
   private static final String MERGE_FROM_DESCRIPTOR;
+  private static final String GET_SERIALIZED_SIZE_NAME;
+  private static final String GET_SERIALIZED_SIZE_DESCRIPTOR;
 
   // Reader methods.
   private static final String FIELD_NUMBER_NAME;
@@ -116,6 +165,10 @@ public final class AsmSchemaFactory implements SchemaFactory {
       method = Schema.class.getDeclaredMethod("mergeFrom", Object.class, Reader.class);
       MERGE_FROM_NAME = method.getName();
       MERGE_FROM_DESCRIPTOR = Type.getMethodDescriptor(method);
+      method =
+          Schema.class.getDeclaredMethod("getSerializedSize", Object.class, SizeCalculator.class);
+      GET_SERIALIZED_SIZE_NAME = method.getName();
+      GET_SERIALIZED_SIZE_DESCRIPTOR = Type.getMethodDescriptor(method);
 
       // Reader methods.
       method = Reader.class.getDeclaredMethod("getFieldNumber");
@@ -129,6 +182,27 @@ public final class AsmSchemaFactory implements SchemaFactory {
     }
   }
 
+  // The names of the scalar types in the SchemaUtil size methods, indexed by FieldType ordinal.
+  private static final String[] COMPUTE_SIZE_TYPE_NAMES = {
+    "Double",
+    "Float",
+    "Int64",
+    "UInt64",
+    "Int32",
+    "Fixed64",
+    "Fixed32",
+    "Bool",
+    "String",
+    "Message",
+    "Bytes",
+    "UInt32",
+    "Enum",
+    "SFixed32",
+    "SFixed64",
+    "SInt32",
+    "SInt64"
+  };
+
   private static final InlineFieldProcessor[] INLINE_FIELD_PROCESSORS;
   private static final MinimalCodeFieldProcessor[] MINIMAL_CODE_FIELD_PROCESSORS;
 
@@ -138,19 +212,31 @@ public final class AsmSchemaFactory implements SchemaFactory {
     MINIMAL_CODE_FIELD_PROCESSORS = new MinimalCodeFieldProcessor[propertyTypes.length];
     for (int i = 0; i < propertyTypes.length; ++i) {
       FieldType propertyType = propertyTypes[i];
+      if (propertyType.isMap()
+          || propertyType == FieldType.MESSAGE
+          || propertyType == FieldType.MESSAGE_LIST) {
+        // Map and message fields are handled by a MapFieldGenerator or a MessageFieldGenerator in
+        // both modes.
+        continue;
+      }
       INLINE_FIELD_PROCESSORS[i] = new InlineFieldProcessor(propertyType);
       MINIMAL_CODE_FIELD_PROCESSORS[i] = new MinimalCodeFieldProcessor(propertyType);
     }
   }
 
+  // Whether code is generated lazily by the constructors that do not take the setting.
+  private static final boolean DEFAULT_LAZY_CODE_GENERATION = true;
+
   private final ClassLoadingStrategy classLoadingStrategy;
   private final MessageDescriptorFactory beanDescriptorFactory;
   private final SchemaNamingStrategy schemaNamingStrategy;
   private final boolean minimizeGeneratedCode;
   private final boolean preferUnsafeAccess;
+  private final boolean lazyCodeGeneration;
 
   /**
-   * Constructs the factory with default settings.
+   * Constructs the factory with default settings, which generate the code for writing and reading
+   * each message type lazily.
    */
   public AsmSchemaFactory() {
     this(
@@ -158,11 +244,13 @@ public final class AsmSchemaFactory implements SchemaFactory {
         AnnotationMessageDescriptorFactory.getValidatingInstance(),
         DefaultSchemaNamingStrategy.getInstance(),
         false,
-        false);
+        false,
+        DEFAULT_LAZY_CODE_GENERATION);
   }
 
   /**
-   * Constructs the factory.
+   * Constructs the factory, which generates the code for writing and reading each message type
+   * lazily.
    *
    * @param classLoadingStrategy the strategy used for loading new schema classes from bytecode.
    * @param messageDescriptorFactory a factory for generating descriptors for message classes.
@@ -180,6 +268,38 @@ public final class AsmSchemaFactory implements SchemaFactory {
       SchemaNamingStrategy schemaNamingStrategy,
       boolean minimizeGeneratedCode,
       boolean preferUnsafeAccess) {
+    this(
+        classLoadingStrategy,
+        messageDescriptorFactory,
+        schemaNamingStrategy,
+        minimizeGeneratedCode,
+        preferUnsafeAccess,
+        DEFAULT_LAZY_CODE_GENERATION);
+  }
+
+  /**
+   * Constructs the factory.
+   *
+   * @param classLoadingStrategy the strategy used for loading new schema classes from bytecode.
+   * @param messageDescriptorFactory a factory for generating descriptors for message classes.
+   * @param schemaNamingStrategy a strategy for naming dynamically-generated schema classes.
+   * @param minimizeGeneratedCode if {@code true}, this factory will attempt to minimize the amount
+   * of generated code by using utility methods where possible. If {@code false}, all code will be
+   * generated inline which may perform better on some platforms.
+   * @param preferUnsafeAccess if {@code true}, this factory will prefer the use of
+   * {@code sun.misc.Unsafe} for accessing fields in the message class even if the field is
+   * accessible directly.
+   * @param lazyCodeGeneration if {@code true}, the code for writing and reading a message type is
+   * generated as two classes, each generated and loaded the first time it is used. If
+   * {@code false}, a single class is generated when the schema is created.
+   */
+  public AsmSchemaFactory(
+      ClassLoadingStrategy classLoadingStrategy,
+      MessageDescriptorFactory messageDescriptorFactory,
+      SchemaNamingStrategy schemaNamingStrategy,
+      boolean minimizeGeneratedCode,
+      boolean preferUnsafeAccess,
+      boolean lazyCodeGeneration) {
     if (classLoadingStrategy == null) {
       throw new NullPointerException("classLoadingStrategy");
     }
@@ -194,18 +314,77 @@ public final class AsmSchemaFactory implements SchemaFactory {
     this.schemaNamingStrategy = schemaNamingStrategy;
     this.minimizeGeneratedCode = minimizeGeneratedCode;
     this.preferUnsafeAccess = preferUnsafeAccess;
+    this.lazyCodeGeneration = lazyCodeGeneration;
   }
 
   @Override
   public <T> Schema<T> createSchema(Class<T> messageType) {
+    checkMessageType(messageType);
+    String schemaName = schemaNamingStrategy.schemaNameFor(messageType);
+    MessageDescriptor descriptor = beanDescriptorFactory.descriptorFor(messageType);
+    if (lazyCodeGeneration) {
+      return new SplitSchema<T>(messageType, schemaName, descriptor);
+    }
+    byte[] schemaClass = createSchemaClass(messageType, schemaName, descriptor, true, true);
+    return loadSchema(messageType, schemaName, schemaClass);
+  }
+
+  /**
+   * Generates a schema class implementing all methods of the schema.
+   */
+  public <T> byte[] createSchemaClass(Class<T> messageType) {
+    checkMessageType(messageType);
+    return createSchemaClass(
+        messageType,
+        schemaNamingStrategy.schemaNameFor(messageType),
+        beanDescriptorFactory.descriptorFor(messageType),
+        true,
+        true);
+  }
+
+  /**
+   * Generates the schema class that is loaded the first time a message is written with a lazily
+   * generated schema. Its {@code mergeFrom} method is not supported.
+   */
+  public <T> byte[] createWriteSchemaClass(Class<T> messageType) {
+    checkMessageType(messageType);
+    return createSchemaClass(
+        messageType,
+        schemaNamingStrategy.schemaNameFor(messageType) + WRITE_SCHEMA_SUFFIX,
+        beanDescriptorFactory.descriptorFor(messageType),
+        true,
+        false);
+  }
+
+  /**
+   * Generates the schema class that is loaded the first time a message is read with a lazily
+   * generated schema. Only its {@code mergeFrom} method is supported.
+   */
+  public <T> byte[] createReadSchemaClass(Class<T> messageType) {
+    checkMessageType(messageType);
+    return createSchemaClass(
+        messageType,
+        schemaNamingStrategy.schemaNameFor(messageType) + READ_SCHEMA_SUFFIX,
+        beanDescriptorFactory.descriptorFor(messageType),
+        false,
+        true);
+  }
+
+  private static void checkMessageType(Class<?> messageType) {
+    if (messageType.isInterface() || Modifier.isAbstract(messageType.getModifiers())) {
+      throw new RuntimeException(
+          "The root object can neither be an abstract "
+              + "class nor interface: \""
+              + messageType.getName());
+    }
+  }
+
+  private <T> Schema<T> loadSchema(Class<T> messageType, String schemaName, byte[] schemaClass) {
     try {
       @SuppressWarnings("unchecked")
       Class<Schema<T>> newClass =
           (Class<Schema<T>>)
-              classLoadingStrategy.loadSchemaClass(
-                  messageType,
-                  schemaNamingStrategy.schemaNameFor(messageType),
-                  createSchemaClass(messageType));
+              classLoadingStrategy.loadSchemaClass(messageType, schemaName, schemaClass);
       return newClass.newInstance();
     } catch (InstantiationException e) {
       throw new RuntimeException(e);
@@ -214,14 +393,17 @@ public final class AsmSchemaFactory implements SchemaFactory {
     }
   }
 
-  public <T> byte[] createSchemaClass(Class<T> messageType) {
-    if (messageType.isInterface() || Modifier.isAbstract(messageType.getModifiers())) {
-      throw new RuntimeException(
-          "The root object can neither be an abstract "
-              + "class nor interface: \""
-              + messageType.getName());
-    }
-
+  /**
+   * Generates a schema class with the given name, implementing the methods that write messages,
+   * those that read them, or both. The methods that are not generated throw an
+   * {@link UnsupportedOperationException}.
+   */
+  private byte[] createSchemaClass(
+      Class<?> messageType,
+      String schemaName,
+      MessageDescriptor descriptor,
+      boolean write,
+      boolean read) {
     ClassWriter writer = new ClassWriter(0);
 
     // To aid in debugging, swap over to CheckClassAdapter.
@@ -229,8 +411,7 @@ public final class AsmSchemaFactory implements SchemaFactory {
     ClassVisitor cv = writer;
 
     final String messageClassName = getInternalName(messageType);
-    final String schemaClassName =
-        schemaNamingStrategy.schemaNameFor(messageType).replace('.', '/');
+    final String schemaClassName = schemaName.replace('.', '/');
     cv.visit(
         V1_6,
         ACC_PUBLIC + ACC_FINAL,
@@ -241,10 +422,60 @@ public final class AsmSchemaFactory implements SchemaFactory {
     generateConstructor(cv);
 
     final boolean hasPackageAccess = classLoadingStrategy.isPackagePrivateAccessSupported();
-    List<FieldDescriptor> fields =
-        beanDescriptorFactory.descriptorFor(messageType).getFieldDescriptors();
-    WriteToGenerator writeTo = new WriteToGenerator(cv, messageClassName);
-    MergeFromGenerator mergeFrom = new MergeFromGenerator(cv, messageClassName, fields);
+    List<FieldDescriptor> fields = descriptor.getFieldDescriptors();
+    MapFieldGenerator mapFields = new MapFieldGenerator(cv, schemaClassName, messageClassName);
+    MessageFieldGenerator messageFields =
+        new MessageFieldGenerator(cv, schemaClassName, messageClassName);
+    OneofGenerator oneofs =
+        new OneofGenerator(
+            messageClassName,
+            descriptor.getOneofDescriptors(),
+            messageFields,
+            hasPackageAccess,
+            preferUnsafeAccess);
+    HasBitsGenerator hasBits =
+        new HasBitsGenerator(
+            messageClassName,
+            descriptor.getHasBitsFields(),
+            messageFields,
+            hasPackageAccess,
+            preferUnsafeAccess);
+    UnknownFieldsGenerator unknownFields =
+        descriptor.getUnknownFieldsField() != null
+            ? new UnknownFieldsGenerator(
+                messageClassName,
+                descriptor.getUnknownFieldsField(),
+                hasPackageAccess,
+                preferUnsafeAccess)
+            : null;
+    WriteToGenerator writeTo = null;
+    SerializedSizeGenerator serializedSize = null;
+    if (write) {
+      writeTo =
+          new WriteToGenerator(
+              cv, messageClassName, mapFields, messageFields, hasBits, oneofs, unknownFields);
+      serializedSize =
+          new SerializedSizeGenerator(
+              cv, messageClassName, mapFields, messageFields, hasBits, oneofs, unknownFields);
+    } else {
+      generateUnsupportedMethod(cv, WRITE_TO_NAME, WRITE_TO_DESCRIPTOR);
+      generateUnsupportedMethod(cv, GET_SERIALIZED_SIZE_NAME, GET_SERIALIZED_SIZE_DESCRIPTOR);
+    }
+    MergeFromGenerator mergeFrom = null;
+    if (read) {
+      mergeFrom =
+          new MergeFromGenerator(
+              cv,
+              messageClassName,
+              fields,
+              mapFields,
+              messageFields,
+              hasBits,
+              oneofs,
+              unknownFields);
+    } else {
+      generateUnsupportedMethod(cv, MERGE_FROM_NAME, MERGE_FROM_DESCRIPTOR);
+    }
     int lastFieldNumber = Integer.MAX_VALUE;
     for (int i = 0; i < fields.size(); ++i) {
       FieldDescriptor f = fields.get(i);
@@ -254,17 +485,68 @@ public final class AsmSchemaFactory implements SchemaFactory {
       }
       lastFieldNumber = f.getFieldNumber();
 
-      writeTo.addField(f, hasPackageAccess);
-      mergeFrom.addField(f, i, hasPackageAccess);
+      mapFields.addField(f);
+      messageFields.addField(f);
+      hasBits.addField(f);
+      oneofs.addField(f);
+      if (write) {
+        writeTo.addField(f, hasPackageAccess);
+        serializedSize.addField(f, hasPackageAccess);
+      }
+      if (read) {
+        mergeFrom.addField(f, i, hasPackageAccess);
+      }
+    }
+    if (write) {
+      writeTo.end();
+      serializedSize.end();
     }
-    writeTo.end();
-    mergeFrom.end();
+    if (read) {
+      mergeFrom.end();
+    }
+    generateStaticInitializer(cv, mapFields, messageFields);
 
     // Complete the generation of the class and return a new instance.
     cv.visitEnd();
     return writer.toByteArray();
   }
 
+  /**
+   * Generates the static initializer of the schema class, if there are any map or message fields
+   * whose static fields need to be initialized.
+   */
+  private static void generateStaticInitializer(
+      ClassVisitor cv, MapFieldGenerator mapFields, MessageFieldGenerator messageFields) {
+    if (!mapFields.hasStaticFields() && !messageFields.hasStaticFields()) {
+      return;
+    }
+    MethodVisitor mv = cv.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+    mv.visitCode();
+    mapFields.initializeStaticFields(mv);
+    messageFields.initializeStaticFields(mv);
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(5, 0);
+    mv.visitEnd();
+  }
+
+  /**
+   * Generates a schema method that throws an {@link UnsupportedOperationException}, for the
+   * methods that are generated in the other class of a lazily generated schema.
+   */
+  private static void generateUnsupportedMethod(
+      ClassVisitor cv, String methodName, String methodDescriptor) {
+    MethodVisitor mv = cv.visitMethod(ACC_PUBLIC, methodName, methodDescriptor, null, null);
+    mv.visitCode();
+    mv.visitTypeInsn(NEW, UNSUPPORTED_OPERATION_NAME);
+    mv.visitInsn(DUP);
+    mv.visitLdcInsn(methodName + " is implemented by another schema class");
+    mv.visitMethodInsn(
+        INVOKESPECIAL, UNSUPPORTED_OPERATION_NAME, "<init>", "(Ljava/lang/String;)V", false);
+    mv.visitInsn(ATHROW);
+    mv.visitMaxs(3, 3);
+    mv.visitEnd();
+  }
+
   private static void generateConstructor(ClassVisitor cv) {
     MethodVisitor mv = cv.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
     mv.visitCode();
@@ -275,11 +557,93 @@ public final class AsmSchemaFactory implements SchemaFactory {
     mv.visitEnd();
   }
 
+  /**
+   * A lazily generated schema, which generates and loads the class implementing the methods that
+   * write messages, or the class implementing the method that reads them, the first time one of
+   * those methods is called.
+   */
+  private final class SplitSchema<T> implements Schema<T> {
+    private final Class<T> messageType;
+    private final String schemaName;
+    private final MessageDescriptor descriptor;
+    private volatile Schema<T> writeSchema;
+    private volatile Schema<T> readSchema;
+
+    SplitSchema(Class<T> messageType, String schemaName, MessageDescriptor descriptor) {
+      this.messageType = messageType;
+      this.schemaName = schemaName;
+      this.descriptor = descriptor;
+    }
+
+    @Override
+    public void writeTo(T message, Writer writer) {
+      writeSchema().writeTo(message, writer);
+    }
+
+    @Override
+    public int getSerializedSize(T message, SizeCalculator sizeCalculator) {
+      return writeSchema().getSerializedSize(message, sizeCalculator);
+    }
+
+    @Override
+    public void mergeFrom(T message, Reader reader) {
+      readSchema().mergeFrom(message, reader);
+    }
+
+    private Schema<T> writeSchema() {
+      Schema<T> schema = writeSchema;
+      return schema != null ? schema : loadWriteSchema();
+    }
+
+    private Schema<T> readSchema() {
+      Schema<T> schema = readSchema;
+      return schema != null ? schema : loadReadSchema();
+    }
+
+    // Each class is loaded while holding the lock, since it can only be defined once.
+    private synchronized Schema<T> loadWriteSchema() {
+      if (writeSchema == null) {
+        String name = schemaName + WRITE_SCHEMA_SUFFIX;
+        writeSchema =
+            loadSchema(
+                messageType, name, createSchemaClass(messageType, name, descriptor, true, false));
+      }
+      return writeSchema;
+    }
+
+    private synchronized Schema<T> loadReadSchema() {
+      if (readSchema == null) {
+        String name = schemaName + READ_SCHEMA_SUFFIX;
+        readSchema =
+            loadSchema(
+                messageType, name, createSchemaClass(messageType, name, descriptor, false, true));
+      }
+      return readSchema;
+    }
+  }
+
   private final class WriteToGenerator {
     private final MethodVisitor mv;
     private final String messageClassName;
+    private final MapFieldGenerator mapFields;
+    private final MessageFieldGenerator messageFields;
+    private final HasBitsGenerator hasBits;
+    private final OneofGenerator oneofs;
+    private final UnknownFieldsGenerator unknownFields;
 
-    WriteToGenerator(ClassVisitor cv, String messageClassName) {
+    WriteToGenerator(
+        ClassVisitor cv,
+        String messageClassName,
+        MapFieldGenerator mapFields,
+        MessageFieldGenerator messageFields,
+        HasBitsGenerator hasBits,
+        OneofGenerator oneofs,
+        UnknownFieldsGenerator unknownFields) {
+      this.mapFields = mapFields;
+      this.messageFields = messageFields;
+      this.hasBits = hasBits;
+      this.oneofs = oneofs;
+      this.unknownFields = unknownFields;
       mv = cv.visitMethod(ACC_PUBLIC, WRITE_TO_NAME, WRITE_TO_DESCRIPTOR, null, null);
       mv.visitCode();
 
@@ -291,7 +655,18 @@ public final class AsmSchemaFactory implements SchemaFactory {
     }
 
     void addField(FieldDescriptor fieldDescriptor, boolean hasPackageAccess) {
-      if (minimizeGeneratedCode) {
+      if (fieldDescriptor.getHasBitsField() != null) {
+        // Fields with has-bits are written before the next other field.
+        return;
+      }
+      hasBits.writePending(mv);
+      if (fieldDescriptor.getOneof() != null) {
+        oneofs.writeMember(mv, fieldDescriptor);
+      } else if (fieldDescriptor.getType().isMap()) {
+        mapFields.write(mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
+      } else if (MessageFieldGenerator.isMessageField(fieldDescriptor)) {
+        messageFields.write(mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
+      } else if (minimizeGeneratedCode) {
         MINIMAL_CODE_FIELD_PROCESSORS[fieldDescriptor.getType().ordinal()]
             .write(messageClassName, mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
       } else {
@@ -301,14 +676,98 @@ public final class AsmSchemaFactory implements SchemaFactory {
     }
 
     void end() {
+      hasBits.writePending(mv);
+      if (unknownFields != null) {
+        unknownFields.write(mv);
+      }
       mv.visitInsn(RETURN);
-      mv.visitMaxs(6, 5);
+      mv.visitMaxs(6, 6);
+      mv.visitEnd();
+    }
+  }
+
+  private final class SerializedSizeGenerator {
+    private final MethodVisitor mv;
+    private final String messageClassName;
+    private final MapFieldGenerator mapFields;
+    private final MessageFieldGenerator messageFields;
+    private final HasBitsGenerator hasBits;
+    private final OneofGenerator oneofs;
+    private final UnknownFieldsGenerator unknownFields;
+
+    SerializedSizeGenerator(
+        ClassVisitor cv,
+        String messageClassName,
+        MapFieldGenerator mapFields,
+        MessageFieldGenerator messageFields,
+        HasBitsGenerator hasBits,
+        OneofGenerator oneofs,
+        UnknownFieldsGenerator unknownFields) {
+      this.mapFields = mapFields;
+      this.messageFields = messageFields;
+      this.hasBits = hasBits;
+      this.oneofs = oneofs;
+      this.unknownFields = unknownFields;
+      mv =
+          cv.visitMethod(
+              ACC_PUBLIC, GET_SERIALIZED_SIZE_NAME, GET_SERIALIZED_SIZE_DESCRIPTOR, null, null);
+      mv.visitCode();
+
+      // Cast the message to the concrete type.
+      this.messageClassName = messageClassName;
+      mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+      mv.visitTypeInsn(CHECKCAST, messageClassName);
+      mv.visitVarInsn(ASTORE, MESSAGE_INDEX);
+
+      // Initialize the accumulated size.
+      mv.visitInsn(ICONST_0);
+      mv.visitVarInsn(ISTORE, SIZE_INDEX);
+    }
+
+    void addField(FieldDescriptor fieldDescriptor, boolean hasPackageAccess) {
+      if (fieldDescriptor.getOneof() != null || fieldDescriptor.getHasBitsField() != null) {
+        // Oneofs and fields with has-bits are sized at the end.
+        return;
+      }
+      // Each field adds its size to the accumulated size.
+      mv.visitVarInsn(ILOAD, SIZE_INDEX);
+      if (fieldDescriptor.getType().isMap()) {
+        mapFields.computeSize(mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
+      } else if (MessageFieldGenerator.isMessageField(fieldDescriptor)) {
+        messageFields.computeSize(mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
+      } else if (minimizeGeneratedCode) {
+        MINIMAL_CODE_FIELD_PROCESSORS[fieldDescriptor.getType().ordinal()]
+            .computeSize(
+                messageClassName, mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
+      } else {
+        INLINE_FIELD_PROCESSORS[fieldDescriptor.getType().ordinal()]
+            .computeSize(
+                messageClassName, mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
+      }
+      mv.visitInsn(IADD);
+      mv.visitVarInsn(ISTORE, SIZE_INDEX);
+    }
+
+    void end() {
+      hasBits.computeSize(mv);
+      oneofs.computeSize(mv);
+      if (unknownFields != null) {
+        unknownFields.computeSize(mv);
+      }
+      mv.visitVarInsn(ILOAD, SIZE_INDEX);
+      mv.visitInsn(IRETURN);
+      mv.visitMaxs(7, 5);
       mv.visitEnd();
     }
   }
 
   private final class MergeFromGenerator {
     private final String messageClassName;
+    private final MapFieldGenerator mapFields;
+    private final MessageFieldGenerator messageFields;
+    private final HasBitsGenerator hasBits;
+    private final OneofGenerator oneofs;
+    private final UnknownFieldsGenerator unknownFields;
     private final MethodVisitor mv;
     private final Label startLabel;
     private final Label endLabel;
@@ -317,7 +776,20 @@ public final class AsmSchemaFactory implements SchemaFactory {
     private final boolean tableSwitch;
     private final int lo;
 
-    MergeFromGenerator(ClassVisitor cv, String messageClassName, List<FieldDescriptor> fields) {
+    MergeFromGenerator(
+        ClassVisitor cv,
+        String messageClassName,
+        List<FieldDescriptor> fields,
+        MapFieldGenerator mapFields,
+        MessageFieldGenerator messageFields,
+        HasBitsGenerator hasBits,
+        OneofGenerator oneofs,
+        UnknownFieldsGenerator unknownFields) {
+      this.mapFields = mapFields;
+      this.messageFields = messageFields;
+      this.hasBits = hasBits;
+      this.oneofs = oneofs;
+      this.unknownFields = unknownFields;
       mv = cv.visitMethod(ACC_PUBLIC, MERGE_FROM_NAME, MERGE_FROM_DESCRIPTOR, null, null);
       mv.visitCode();
 
@@ -369,80 +841,1467 @@ public final class AsmSchemaFactory implements SchemaFactory {
           labels[labelIndex++] = new Label();
         }
 
-        // Create the switch statement.
-        mv.visitTableSwitchInsn(lo, hi, defaultLabel, labels);
+        // Create the switch statement.
+        mv.visitTableSwitchInsn(lo, hi, defaultLabel, labels);
+      } else {
+        // Lookupswitch...
+
+        // Create the keys and labels.
+        lo = -1;
+        int[] keys = new int[numFields];
+        labels = new Label[numFields];
+        for (int i = 0; i < numFields; ++i) {
+          keys[i] = fields.get(i).getFieldNumber();
+          Label label = new Label();
+          labels[i] = label;
+        }
+
+        // Create the switch statement.
+        mv.visitLookupSwitchInsn(defaultLabel, keys, labels);
+      }
+    }
+
+    void addField(FieldDescriptor field, int fieldIndex, boolean hasPackageAccess) {
+      if (tableSwitch) {
+        addTableSwitchCase(field, hasPackageAccess);
+      } else {
+        addLookupSwitchCase(field, fieldIndex, hasPackageAccess);
+      }
+    }
+
+    private void addTableSwitchCase(FieldDescriptor fieldDescriptor, boolean hasPackageAccess) {
+      // Tableswitch: Label index is the field number.
+      visitLabel(mv, labels[fieldDescriptor.getFieldNumber() - lo]);
+      readField(fieldDescriptor, hasPackageAccess);
+      mv.visitJumpInsn(GOTO, startLabel);
+    }
+
+    private void addLookupSwitchCase(
+        FieldDescriptor fieldDescriptor, int fieldIndex, boolean hasPackageAccess) {
+      // Lookupswitch: Label index is field index.
+      visitLabel(mv, labels[fieldIndex]);
+      readField(fieldDescriptor, hasPackageAccess);
+      mv.visitJumpInsn(GOTO, startLabel);
+    }
+
+    private void readField(FieldDescriptor fieldDescriptor, boolean hasPackageAccess) {
+      if (fieldDescriptor.getOneof() != null) {
+        oneofs.read(mv, fieldDescriptor);
+      } else if (fieldDescriptor.getType().isMap()) {
+        mapFields.read(mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
+      } else if (MessageFieldGenerator.isMessageField(fieldDescriptor)) {
+        messageFields.read(mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
+      } else if (minimizeGeneratedCode) {
+        MINIMAL_CODE_FIELD_PROCESSORS[fieldDescriptor.getType().ordinal()]
+            .read(messageClassName, mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
+      } else {
+        INLINE_FIELD_PROCESSORS[fieldDescriptor.getType().ordinal()]
+            .read(messageClassName, mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
+      }
+      if (fieldDescriptor.getHasBitsField() != null) {
+        hasBits.setHasBit(mv, fieldDescriptor);
+      }
+    }
+
+    void end() {
+      visitLabel(mv, defaultLabel);
+      if (unknownFields != null) {
+        // Default case: preserve the unknown field. The end of input was checked before the
+        // switch.
+        unknownFields.read(mv);
+        mv.visitJumpInsn(GOTO, startLabel);
+      } else {
+        // Default case: skip the unknown field and check for done.
+        mv.visitVarInsn(ALOAD, READER_INDEX);
+        mv.visitMethodInsn(
+            INVOKEINTERFACE, READER_NAME, SKIP_FIELD_NAME, SKIP_FIELD_DESCRIPTOR, true);
+        mv.visitJumpInsn(IFNE, startLabel);
+      }
+
+      visitLabel(mv, endLabel);
+      mv.visitInsn(RETURN);
+      // Unsafe reads of array fields load the message and offset twice, and unsafe reads of oneof
+      // members load both offsets of the oneof.
+      mv.visitMaxs(8, 4);
+      mv.visitEnd();
+    }
+  }
+
+  private static void visitLabel(MethodVisitor mv, Label label) {
+    mv.visitLabel(label);
+    mv.visitFrame(F_SAME, 0, null, 0, null);
+  }
+
+  /**
+   * Generates the code for the map fields of a message, in both the inline and minimal code modes.
+   * Since the encoding of a map depends on the types of its keys and values, each map field is
+   * processed by the {@link SchemaUtil} map methods, which are passed a {@link MapEntryDescriptor}
+   * held in a static field of the schema class. The static fields are initialized by a generated
+   * static initializer.
+   */
+  private static final class MapFieldGenerator {
+    private static final String MAP_ENTRY_NAME = getInternalName(MapEntryDescriptor.class);
+    private static final String MAP_ENTRY_DESCRIPTOR = Type.getDescriptor(MapEntryDescriptor.class);
+    private static final String MAP_ENTRY_CONSTRUCTOR_DESCRIPTOR;
+    private static final String FIELD_TYPE_NAME = getInternalName(FieldType.class);
+    private static final String FIELD_TYPE_DESCRIPTOR = Type.getDescriptor(FieldType.class);
+
+    private static final String WRITE_NAME;
+    private static final String WRITE_DESCRIPTOR;
+    private static final String UNSAFE_WRITE_NAME;
+    private static final String UNSAFE_WRITE_DESCRIPTOR;
+    private static final String COMPUTE_SIZE_NAME;
+    private static final String COMPUTE_SIZE_DESCRIPTOR;
+    private static final String UNSAFE_COMPUTE_SIZE_NAME;
+    private static final String UNSAFE_COMPUTE_SIZE_DESCRIPTOR;
+    private static final String GET_OR_CREATE_MAP_NAME;
+    private static final String GET_OR_CREATE_MAP_DESCRIPTOR;
+    private static final String READ_NAME;
+    private static final String READ_DESCRIPTOR;
+    private static final String UNSAFE_READ_NAME;
+    private static final String UNSAFE_READ_DESCRIPTOR;
+
+    static {
+      try {
+        MAP_ENTRY_CONSTRUCTOR_DESCRIPTOR =
+            Type.getConstructorDescriptor(
+                MapEntryDescriptor.class.getConstructor(
+                    FieldType.class, FieldType.class, Class.class));
+        Method method =
+            SchemaUtil.class.getDeclaredMethod(
+                "writeMap", int.class, Map.class, MapEntryDescriptor.class, Writer.class);
+        WRITE_NAME = method.getName();
+        WRITE_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "unsafeWriteMap",
+                int.class,
+                Object.class,
+                long.class,
+                MapEntryDescriptor.class,
+                Writer.class);
+        UNSAFE_WRITE_NAME = method.getName();
+        UNSAFE_WRITE_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "computeMapSize",
+                int.class,
+                Map.class,
+                MapEntryDescriptor.class,
+                SizeCalculator.class);
+        COMPUTE_SIZE_NAME = method.getName();
+        COMPUTE_SIZE_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "unsafeComputeMapSize",
+                int.class,
+                Object.class,
+                long.class,
+                MapEntryDescriptor.class,
+                SizeCalculator.class);
+        UNSAFE_COMPUTE_SIZE_NAME = method.getName();
+        UNSAFE_COMPUTE_SIZE_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "getOrCreateMap", Map.class, MapEntryDescriptor.class);
+        GET_OR_CREATE_MAP_NAME = method.getName();
+        GET_OR_CREATE_MAP_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method = Reader.class.getDeclaredMethod("readMap", Map.class, MapEntryDescriptor.class);
+        READ_NAME = method.getName();
+        READ_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "unsafeReadMap", Object.class, long.class, MapEntryDescriptor.class, Reader.class);
+        UNSAFE_READ_NAME = method.getName();
+        UNSAFE_READ_DESCRIPTOR = Type.getMethodDescriptor(method);
+      } catch (NoSuchMethodException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    private final ClassVisitor cv;
+    private final String schemaClassName;
+    private final String messageClassName;
+    private final List<FieldDescriptor> fields = new ArrayList<FieldDescriptor>();
+
+    MapFieldGenerator(ClassVisitor cv, String schemaClassName, String messageClassName) {
+      this.cv = cv;
+      this.schemaClassName = schemaClassName;
+      this.messageClassName = messageClassName;
+    }
+
+    /**
+     * Declares the static field holding the entry descriptor of a map field. Other fields are
+     * ignored.
+     */
+    void addField(FieldDescriptor fieldDescriptor) {
+      if (fieldDescriptor.getType().isMap()) {
+        cv.visitField(
+                ACC_PRIVATE + ACC_STATIC + ACC_FINAL,
+                mapEntryFieldName(fieldDescriptor),
+                MAP_ENTRY_DESCRIPTOR,
+                null,
+                null)
+            .visitEnd();
+        fields.add(fieldDescriptor);
+      }
+    }
+
+    boolean hasStaticFields() {
+      return !fields.isEmpty();
+    }
+
+    /**
+     * Generates the code in the static initializer that creates the entry descriptors.
+     */
+    void initializeStaticFields(MethodVisitor mv) {
+      for (FieldDescriptor fieldDescriptor : fields) {
+        MapEntryDescriptor mapEntry = fieldDescriptor.getMapEntryDescriptor();
+        mv.visitTypeInsn(NEW, MAP_ENTRY_NAME);
+        mv.visitInsn(DUP);
+        mv.visitFieldInsn(
+            GETSTATIC, FIELD_TYPE_NAME, mapEntry.getKeyType().name(), FIELD_TYPE_DESCRIPTOR);
+        mv.visitFieldInsn(
+            GETSTATIC, FIELD_TYPE_NAME, mapEntry.getValueType().name(), FIELD_TYPE_DESCRIPTOR);
+        if (mapEntry.getValueClass() != null) {
+          mv.visitLdcInsn(Type.getType(mapEntry.getValueClass()));
+        } else {
+          mv.visitInsn(ACONST_NULL);
+        }
+        mv.visitMethodInsn(
+            INVOKESPECIAL, MAP_ENTRY_NAME, "<init>", MAP_ENTRY_CONSTRUCTOR_DESCRIPTOR, false);
+        mv.visitFieldInsn(
+            PUTSTATIC, schemaClassName, mapEntryFieldName(fieldDescriptor), MAP_ENTRY_DESCRIPTOR);
+      }
+    }
+
+    void write(
+        MethodVisitor mv,
+        FieldDescriptor fieldDescriptor,
+        boolean hasPackageAccess,
+        boolean preferUnsafeAccess) {
+      mv.visitLdcInsn(fieldDescriptor.getFieldNumber());
+      if (useUnsafe(fieldDescriptor, hasPackageAccess, preferUnsafeAccess)) {
+        mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+        mv.visitLdcInsn(UnsafeUtil.objectFieldOffset(fieldDescriptor.getField()));
+        loadMapEntry(mv, fieldDescriptor);
+        mv.visitVarInsn(ALOAD, WRITER_INDEX);
+        mv.visitMethodInsn(
+            INVOKESTATIC, SCHEMA_UTIL_NAME, UNSAFE_WRITE_NAME, UNSAFE_WRITE_DESCRIPTOR, false);
+      } else {
+        mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+        getField(mv, fieldDescriptor);
+        loadMapEntry(mv, fieldDescriptor);
+        mv.visitVarInsn(ALOAD, WRITER_INDEX);
+        mv.visitMethodInsn(INVOKESTATIC, SCHEMA_UTIL_NAME, WRITE_NAME, WRITE_DESCRIPTOR, false);
+      }
+    }
+
+    void computeSize(
+        MethodVisitor mv,
+        FieldDescriptor fieldDescriptor,
+        boolean hasPackageAccess,
+        boolean preferUnsafeAccess) {
+      mv.visitLdcInsn(fieldDescriptor.getFieldNumber());
+      if (useUnsafe(fieldDescriptor, hasPackageAccess, preferUnsafeAccess)) {
+        mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+        mv.visitLdcInsn(UnsafeUtil.objectFieldOffset(fieldDescriptor.getField()));
+        loadMapEntry(mv, fieldDescriptor);
+        mv.visitVarInsn(ALOAD, SIZE_CALCULATOR_INDEX);
+        mv.visitMethodInsn(
+            INVOKESTATIC,
+            SCHEMA_UTIL_NAME,
+            UNSAFE_COMPUTE_SIZE_NAME,
+            UNSAFE_COMPUTE_SIZE_DESCRIPTOR,
+            false);
+      } else {
+        mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+        getField(mv, fieldDescriptor);
+        loadMapEntry(mv, fieldDescriptor);
+        mv.visitVarInsn(ALOAD, SIZE_CALCULATOR_INDEX);
+        mv.visitMethodInsn(
+            INVOKESTATIC, SCHEMA_UTIL_NAME, COMPUTE_SIZE_NAME, COMPUTE_SIZE_DESCRIPTOR, false);
+      }
+    }
+
+    void read(
+        MethodVisitor mv,
+        FieldDescriptor fieldDescriptor,
+        boolean hasPackageAccess,
+        boolean preferUnsafeAccess) {
+      if (useUnsafe(fieldDescriptor, hasPackageAccess, preferUnsafeAccess)) {
+        mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+        mv.visitLdcInsn(UnsafeUtil.objectFieldOffset(fieldDescriptor.getField()));
+        loadMapEntry(mv, fieldDescriptor);
+        mv.visitVarInsn(ALOAD, READER_INDEX);
+        mv.visitMethodInsn(
+            INVOKESTATIC, SCHEMA_UTIL_NAME, UNSAFE_READ_NAME, UNSAFE_READ_DESCRIPTOR, false);
+      } else {
+        Type fieldType = Type.getType(fieldDescriptor.getField().getType());
+        mv.visitVarInsn(ALOAD, READER_INDEX);
+        mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+        mv.visitTypeInsn(CHECKCAST, messageClassName);
+        mv.visitInsn(DUP);
+
+        // Get or create the map, and store it back to the field (reader, map, message, map).
+        getField(mv, fieldDescriptor);
+        loadMapEntry(mv, fieldDescriptor);
+        mv.visitMethodInsn(
+            INVOKESTATIC,
+            SCHEMA_UTIL_NAME,
+            GET_OR_CREATE_MAP_NAME,
+            GET_OR_CREATE_MAP_DESCRIPTOR,
+            false);
+        mv.visitTypeInsn(CHECKCAST, fieldType.getInternalName());
+        mv.visitInsn(DUP_X1);
+        mv.visitFieldInsn(
+            PUTFIELD,
+            messageClassName,
+            fieldDescriptor.getField().getName(),
+            fieldType.getDescriptor());
+
+        // Read the entries from the reader.
+        loadMapEntry(mv, fieldDescriptor);
+        mv.visitMethodInsn(INVOKEINTERFACE, READER_NAME, READ_NAME, READ_DESCRIPTOR, true);
+      }
+    }
+
+    private boolean useUnsafe(
+        FieldDescriptor fieldDescriptor, boolean hasPackageAccess, boolean preferUnsafeAccess) {
+      if (preferUnsafeAccess && UnsafeUtil.isSupported()) {
+        return true;
+      } else if (isAccessible(hasPackageAccess, fieldDescriptor)) {
+        return false;
+      } else if (UnsafeUtil.isSupported()) {
+        return true;
+      } else {
+        throw new IllegalArgumentException(
+            String.format(
+                "Unable to access field %s in class %s",
+                fieldDescriptor.getField().getName(), messageClassName));
+      }
+    }
+
+    private void getField(MethodVisitor mv, FieldDescriptor fieldDescriptor) {
+      mv.visitFieldInsn(
+          GETFIELD,
+          messageClassName,
+          fieldDescriptor.getField().getName(),
+          Type.getDescriptor(fieldDescriptor.getField().getType()));
+    }
+
+    private void loadMapEntry(MethodVisitor mv, FieldDescriptor fieldDescriptor) {
+      mv.visitFieldInsn(
+          GETSTATIC, schemaClassName, mapEntryFieldName(fieldDescriptor), MAP_ENTRY_DESCRIPTOR);
+    }
+
+    private static String mapEntryFieldName(FieldDescriptor fieldDescriptor) {
+      return "mapEntry" + fieldDescriptor.getFieldNumber();
+    }
+  }
+
+  /**
+   * Generates the code for the message fields of a message that are not members of a oneof, in
+   * both the inline and minimal code modes. Each field is processed by the {@link SchemaUtil}
+   * message methods, which are passed a {@link LazySchema} of the declared message type held in a
+   * static field of the schema class, so that nested messages are processed by their schema
+   * directly once it has been looked up. The static fields are initialized by the generated static
+   * initializer.
+   */
+  private static final class MessageFieldGenerator {
+    private static final String LAZY_SCHEMA_NAME = getInternalName(LazySchema.class);
+    private static final String LAZY_SCHEMA_DESCRIPTOR = Type.getDescriptor(LazySchema.class);
+    private static final String LAZY_SCHEMA_CONSTRUCTOR_DESCRIPTOR;
+
+    private static final String WRITE_NAME;
+    private static final String WRITE_DESCRIPTOR;
+    private static final String UNSAFE_WRITE_NAME;
+    private static final String UNSAFE_WRITE_DESCRIPTOR;
+    private static final String WRITE_LIST_NAME;
+    private static final String WRITE_LIST_DESCRIPTOR;
+    private static final String UNSAFE_WRITE_LIST_NAME;
+    private static final String UNSAFE_WRITE_LIST_DESCRIPTOR;
+    private static final String COMPUTE_SIZE_NAME;
+    private static final String COMPUTE_SIZE_DESCRIPTOR;
+    private static final String UNSAFE_COMPUTE_SIZE_NAME;
+    private static final String UNSAFE_COMPUTE_SIZE_DESCRIPTOR;
+    private static final String COMPUTE_LIST_SIZE_NAME;
+    private static final String COMPUTE_LIST_SIZE_DESCRIPTOR;
+    private static final String UNSAFE_COMPUTE_LIST_SIZE_NAME;
+    private static final String UNSAFE_COMPUTE_LIST_SIZE_DESCRIPTOR;
+    private static final String READ_NAME;
+    private static final String READ_DESCRIPTOR;
+    private static final String UNSAFE_READ_NAME;
+    private static final String UNSAFE_READ_DESCRIPTOR;
+    private static final String GET_OR_CREATE_LIST_NAME;
+    private static final String GET_OR_CREATE_LIST_DESCRIPTOR;
+    private static final String READ_LIST_NAME;
+    private static final String READ_LIST_DESCRIPTOR;
+    private static final String UNSAFE_READ_LIST_NAME;
+    private static final String UNSAFE_READ_LIST_DESCRIPTOR;
+
+    static {
+      try {
+        LAZY_SCHEMA_CONSTRUCTOR_DESCRIPTOR =
+            Type.getConstructorDescriptor(LazySchema.class.getConstructor(Class.class));
+        Method method =
+            SchemaUtil.class.getDeclaredMethod(
+                "writeMessage", int.class, Object.class, LazySchema.class, Writer.class);
+        WRITE_NAME = method.getName();
+        WRITE_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "unsafeWriteMessage",
+                int.class,
+                Object.class,
+                long.class,
+                LazySchema.class,
+                Writer.class);
+        UNSAFE_WRITE_NAME = method.getName();
+        UNSAFE_WRITE_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "writeMessageList", int.class, List.class, LazySchema.class, Writer.class);
+        WRITE_LIST_NAME = method.getName();
+        WRITE_LIST_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "unsafeWriteMessageList",
+                int.class,
+                Object.class,
+                long.class,
+                LazySchema.class,
+                Writer.class);
+        UNSAFE_WRITE_LIST_NAME = method.getName();
+        UNSAFE_WRITE_LIST_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "computeMessageSize",
+                int.class,
+                Object.class,
+                LazySchema.class,
+                SizeCalculator.class);
+        COMPUTE_SIZE_NAME = method.getName();
+        COMPUTE_SIZE_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "unsafeComputeMessageSize",
+                int.class,
+                Object.class,
+                long.class,
+                LazySchema.class,
+                SizeCalculator.class);
+        UNSAFE_COMPUTE_SIZE_NAME = method.getName();
+        UNSAFE_COMPUTE_SIZE_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "computeMessageListSize",
+                int.class,
+                List.class,
+                LazySchema.class,
+                SizeCalculator.class);
+        COMPUTE_LIST_SIZE_NAME = method.getName();
+        COMPUTE_LIST_SIZE_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "unsafeComputeMessageListSize",
+                int.class,
+                Object.class,
+                long.class,
+                LazySchema.class,
+                SizeCalculator.class);
+        UNSAFE_COMPUTE_LIST_SIZE_NAME = method.getName();
+        UNSAFE_COMPUTE_LIST_SIZE_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "mergeMessage", Object.class, LazySchema.class, Reader.class);
+        READ_NAME = method.getName();
+        READ_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "unsafeReadMessage", Object.class, long.class, LazySchema.class, Reader.class);
+        UNSAFE_READ_NAME = method.getName();
+        UNSAFE_READ_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method = SchemaUtil.class.getDeclaredMethod("getOrCreateList", List.class);
+        GET_OR_CREATE_LIST_NAME = method.getName();
+        GET_OR_CREATE_LIST_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "readMessageList", List.class, LazySchema.class, Reader.class);
+        READ_LIST_NAME = method.getName();
+        READ_LIST_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "unsafeReadMessageList",
+                Object.class,
+                long.class,
+                LazySchema.class,
+                Reader.class);
+        UNSAFE_READ_LIST_NAME = method.getName();
+        UNSAFE_READ_LIST_DESCRIPTOR = Type.getMethodDescriptor(method);
+      } catch (NoSuchMethodException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    private final ClassVisitor cv;
+    private final String schemaClassName;
+    private final String messageClassName;
+    private final List<FieldDescriptor> fields = new ArrayList<FieldDescriptor>();
+
+    MessageFieldGenerator(ClassVisitor cv, String schemaClassName, String messageClassName) {
+      this.cv = cv;
+      this.schemaClassName = schemaClassName;
+      this.messageClassName = messageClassName;
+    }
+
+    /**
+     * Indicates whether the given field is processed by this generator.
+     */
+    static boolean isMessageField(FieldDescriptor fieldDescriptor) {
+      return fieldDescriptor.getMessageClass() != null;
+    }
+
+    /**
+     * Declares the static field holding the schema of a message field. Other fields are ignored.
+     */
+    void addField(FieldDescriptor fieldDescriptor) {
+      if (isMessageField(fieldDescriptor)) {
+        cv.visitField(
+                ACC_PRIVATE + ACC_STATIC + ACC_FINAL,
+                schemaFieldName(fieldDescriptor),
+                LAZY_SCHEMA_DESCRIPTOR,
+                null,
+                null)
+            .visitEnd();
+        fields.add(fieldDescriptor);
+      }
+    }
+
+    boolean hasStaticFields() {
+      return !fields.isEmpty();
+    }
+
+    /**
+     * Generates the code in the static initializer that creates the schemas.
+     */
+    void initializeStaticFields(MethodVisitor mv) {
+      for (FieldDescriptor fieldDescriptor : fields) {
+        mv.visitTypeInsn(NEW, LAZY_SCHEMA_NAME);
+        mv.visitInsn(DUP);
+        mv.visitLdcInsn(Type.getType(fieldDescriptor.getMessageClass()));
+        mv.visitMethodInsn(
+            INVOKESPECIAL, LAZY_SCHEMA_NAME, "<init>", LAZY_SCHEMA_CONSTRUCTOR_DESCRIPTOR, false);
+        mv.visitFieldInsn(
+            PUTSTATIC, schemaClassName, schemaFieldName(fieldDescriptor), LAZY_SCHEMA_DESCRIPTOR);
+      }
+    }
+
+    void write(
+        MethodVisitor mv,
+        FieldDescriptor fieldDescriptor,
+        boolean hasPackageAccess,
+        boolean preferUnsafeAccess) {
+      boolean list = fieldDescriptor.getType().isList();
+      mv.visitLdcInsn(fieldDescriptor.getFieldNumber());
+      if (useUnsafe(fieldDescriptor, hasPackageAccess, preferUnsafeAccess)) {
+        mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+        mv.visitLdcInsn(UnsafeUtil.objectFieldOffset(fieldDescriptor.getField()));
+        loadSchema(mv, fieldDescriptor);
+        mv.visitVarInsn(ALOAD, WRITER_INDEX);
+        mv.visitMethodInsn(
+            INVOKESTATIC,
+            SCHEMA_UTIL_NAME,
+            list ? UNSAFE_WRITE_LIST_NAME : UNSAFE_WRITE_NAME,
+            list ? UNSAFE_WRITE_LIST_DESCRIPTOR : UNSAFE_WRITE_DESCRIPTOR,
+            false);
+      } else {
+        mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+        getField(mv, fieldDescriptor);
+        loadSchema(mv, fieldDescriptor);
+        mv.visitVarInsn(ALOAD, WRITER_INDEX);
+        mv.visitMethodInsn(
+            INVOKESTATIC,
+            SCHEMA_UTIL_NAME,
+            list ? WRITE_LIST_NAME : WRITE_NAME,
+            list ? WRITE_LIST_DESCRIPTOR : WRITE_DESCRIPTOR,
+            false);
+      }
+    }
+
+    void computeSize(
+        MethodVisitor mv,
+        FieldDescriptor fieldDescriptor,
+        boolean hasPackageAccess,
+        boolean preferUnsafeAccess) {
+      boolean list = fieldDescriptor.getType().isList();
+      mv.visitLdcInsn(fieldDescriptor.getFieldNumber());
+      if (useUnsafe(fieldDescriptor, hasPackageAccess, preferUnsafeAccess)) {
+        mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+        mv.visitLdcInsn(UnsafeUtil.objectFieldOffset(fieldDescriptor.getField()));
+        loadSchema(mv, fieldDescriptor);
+        mv.visitVarInsn(ALOAD, SIZE_CALCULATOR_INDEX);
+        mv.visitMethodInsn(
+            INVOKESTATIC,
+            SCHEMA_UTIL_NAME,
+            list ? UNSAFE_COMPUTE_LIST_SIZE_NAME : UNSAFE_COMPUTE_SIZE_NAME,
+            list ? UNSAFE_COMPUTE_LIST_SIZE_DESCRIPTOR : UNSAFE_COMPUTE_SIZE_DESCRIPTOR,
+            false);
+      } else {
+        mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+        getField(mv, fieldDescriptor);
+        loadSchema(mv, fieldDescriptor);
+        mv.visitVarInsn(ALOAD, SIZE_CALCULATOR_INDEX);
+        mv.visitMethodInsn(
+            INVOKESTATIC,
+            SCHEMA_UTIL_NAME,
+            list ? COMPUTE_LIST_SIZE_NAME : COMPUTE_SIZE_NAME,
+            list ? COMPUTE_LIST_SIZE_DESCRIPTOR : COMPUTE_SIZE_DESCRIPTOR,
+            false);
+      }
+    }
+
+    void read(
+        MethodVisitor mv,
+        FieldDescriptor fieldDescriptor,
+        boolean hasPackageAccess,
+        boolean preferUnsafeAccess) {
+      boolean list = fieldDescriptor.getType().isList();
+      if (useUnsafe(fieldDescriptor, hasPackageAccess, preferUnsafeAccess)) {
+        mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+        mv.visitLdcInsn(UnsafeUtil.objectFieldOffset(fieldDescriptor.getField()));
+        loadSchema(mv, fieldDescriptor);
+        mv.visitVarInsn(ALOAD, READER_INDEX);
+        mv.visitMethodInsn(
+            INVOKESTATIC,
+            SCHEMA_UTIL_NAME,
+            list ? UNSAFE_READ_LIST_NAME : UNSAFE_READ_NAME,
+            list ? UNSAFE_READ_LIST_DESCRIPTOR : UNSAFE_READ_DESCRIPTOR,
+            false);
+      } else if (list) {
+        Type fieldType = Type.getType(fieldDescriptor.getField().getType());
+        mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+        mv.visitTypeInsn(CHECKCAST, messageClassName);
+        mv.visitInsn(DUP);
+
+        // Get or create the list, and store it back to the field (list, message, list).
+        getField(mv, fieldDescriptor);
+        mv.visitMethodInsn(
+            INVOKESTATIC,
+            SCHEMA_UTIL_NAME,
+            GET_OR_CREATE_LIST_NAME,
+            GET_OR_CREATE_LIST_DESCRIPTOR,
+            false);
+        mv.visitTypeInsn(CHECKCAST, fieldType.getInternalName());
+        mv.visitInsn(DUP_X1);
+        mv.visitFieldInsn(
+            PUTFIELD,
+            messageClassName,
+            fieldDescriptor.getField().getName(),
+            fieldType.getDescriptor());
+
+        // Read the messages from the reader.
+        loadSchema(mv, fieldDescriptor);
+        mv.visitVarInsn(ALOAD, READER_INDEX);
+        mv.visitMethodInsn(
+            INVOKESTATIC, SCHEMA_UTIL_NAME, READ_LIST_NAME, READ_LIST_DESCRIPTOR, false);
+      } else {
+        Type fieldType = Type.getType(fieldDescriptor.getField().getType());
+        mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+        mv.visitTypeInsn(CHECKCAST, messageClassName);
+        mv.visitInsn(DUP);
+
+        // Merge into the current message or a new one, and store it back to the field.
+        getField(mv, fieldDescriptor);
+        loadSchema(mv, fieldDescriptor);
+        mv.visitVarInsn(ALOAD, READER_INDEX);
+        mv.visitMethodInsn(INVOKESTATIC, SCHEMA_UTIL_NAME, READ_NAME, READ_DESCRIPTOR, false);
+        mv.visitTypeInsn(CHECKCAST, fieldType.getInternalName());
+        mv.visitFieldInsn(
+            PUTFIELD,
+            messageClassName,
+            fieldDescriptor.getField().getName(),
+            fieldType.getDescriptor());
+      }
+    }
+
+    private boolean useUnsafe(
+        FieldDescriptor fieldDescriptor, boolean hasPackageAccess, boolean preferUnsafeAccess) {
+      if (preferUnsafeAccess && UnsafeUtil.isSupported()) {
+        return true;
+      } else if (isAccessible(hasPackageAccess, fieldDescriptor)) {
+        return false;
+      } else if (UnsafeUtil.isSupported()) {
+        return true;
+      } else {
+        throw new IllegalArgumentException(
+            String.format(
+                "Unable to access field %s in class %s",
+                fieldDescriptor.getField().getName(), messageClassName));
+      }
+    }
+
+    private void getField(MethodVisitor mv, FieldDescriptor fieldDescriptor) {
+      mv.visitFieldInsn(
+          GETFIELD,
+          messageClassName,
+          fieldDescriptor.getField().getName(),
+          Type.getDescriptor(fieldDescriptor.getField().getType()));
+    }
+
+    /**
+     * Loads the schema of the nested messages of a message field, or of a message member of a
+     * oneof.
+     */
+    void loadSchema(MethodVisitor mv, FieldDescriptor fieldDescriptor) {
+      mv.visitFieldInsn(
+          GETSTATIC, schemaClassName, schemaFieldName(fieldDescriptor), LAZY_SCHEMA_DESCRIPTOR);
+    }
+
+    private static String schemaFieldName(FieldDescriptor fieldDescriptor) {
+      return "messageSchema" + fieldDescriptor.getFieldNumber();
+    }
+  }
+
+  /**
+   * Generates the code for the oneofs of a message, in both the inline and minimal code modes. Each
+   * member is written in order of field number among the other fields, if the case field of its
+   * oneof holds its number. The size of each oneof is computed by switching on its case field, so
+   * that only the member that is set is visited. The boxed value of the member is processed by the
+   * {@link SchemaUtil} field value methods. Reading a member stores its value and its field number
+   * together. Message members are processed with the schema held by the
+   * {@link MessageFieldGenerator}.
+   */
+  private static final class OneofGenerator {
+    private static final String FIELD_TYPE_NAME = getInternalName(FieldType.class);
+    private static final String FIELD_TYPE_DESCRIPTOR = Type.getDescriptor(FieldType.class);
+    private static final String OBJECT_DESCRIPTOR = Type.getDescriptor(Object.class);
+
+    private static final String WRITE_NAME;
+    private static final String WRITE_DESCRIPTOR;
+    private static final String COMPUTE_SIZE_NAME;
+    private static final String COMPUTE_SIZE_DESCRIPTOR;
+    private static final String READ_NAME;
+    private static final String READ_DESCRIPTOR;
+    private static final String UNSAFE_READ_NAME;
+    private static final String UNSAFE_READ_DESCRIPTOR;
+    private static final String READ_MESSAGE_NAME;
+    private static final String READ_MESSAGE_DESCRIPTOR;
+    private static final String UNSAFE_READ_MESSAGE_NAME;
+    private static final String UNSAFE_READ_MESSAGE_DESCRIPTOR;
+    private static final String UNSAFE_GET_CASE_NAME;
+    private static final String UNSAFE_GET_CASE_DESCRIPTOR;
+    private static final String UNSAFE_GET_VALUE_NAME;
+    private static final String UNSAFE_GET_VALUE_DESCRIPTOR;
+
+    static {
+      try {
+        Method method =
+            SchemaUtil.class.getDeclaredMethod(
+                "writeFieldValue",
+                int.class,
+                FieldType.class,
+                Object.class,
+                LazySchema.class,
+                Writer.class);
+        WRITE_NAME = method.getName();
+        WRITE_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "computeFieldValueSize",
+                int.class,
+                FieldType.class,
+                Object.class,
+                LazySchema.class,
+                SizeCalculator.class);
+        COMPUTE_SIZE_NAME = method.getName();
+        COMPUTE_SIZE_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod("readFieldValue", FieldType.class, Reader.class);
+        READ_NAME = method.getName();
+        READ_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "unsafeReadOneof",
+                Object.class,
+                long.class,
+                long.class,
+                int.class,
+                FieldType.class,
+                Reader.class);
+        UNSAFE_READ_NAME = method.getName();
+        UNSAFE_READ_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "mergeOneofMessage",
+                int.class,
+                Object.class,
+                int.class,
+                LazySchema.class,
+                Reader.class);
+        READ_MESSAGE_NAME = method.getName();
+        READ_MESSAGE_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "unsafeReadOneofMessage",
+                Object.class,
+                long.class,
+                long.class,
+                int.class,
+                LazySchema.class,
+                Reader.class);
+        UNSAFE_READ_MESSAGE_NAME = method.getName();
+        UNSAFE_READ_MESSAGE_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method = UnsafeUtil.class.getDeclaredMethod("getInt", Object.class, long.class);
+        UNSAFE_GET_CASE_NAME = method.getName();
+        UNSAFE_GET_CASE_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method = UnsafeUtil.class.getDeclaredMethod("getObject", Object.class, long.class);
+        UNSAFE_GET_VALUE_NAME = method.getName();
+        UNSAFE_GET_VALUE_DESCRIPTOR = Type.getMethodDescriptor(method);
+      } catch (NoSuchMethodException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    private final String messageClassName;
+    private final List<OneofDescriptor> oneofs;
+    private final List<List<FieldDescriptor>> members;
+    private final MessageFieldGenerator messageFields;
+    private final boolean hasPackageAccess;
+    private final boolean preferUnsafeAccess;
+
+    OneofGenerator(
+        String messageClassName,
+        List<OneofDescriptor> oneofs,
+        MessageFieldGenerator messageFields,
+        boolean hasPackageAccess,
+        boolean preferUnsafeAccess) {
+      this.messageClassName = messageClassName;
+      this.oneofs = oneofs;
+      this.messageFields = messageFields;
+      this.hasPackageAccess = hasPackageAccess;
+      this.preferUnsafeAccess = preferUnsafeAccess;
+      members = new ArrayList<List<FieldDescriptor>>(oneofs.size());
+      for (int i = 0; i < oneofs.size(); ++i) {
+        members.add(new ArrayList<FieldDescriptor>());
+      }
+    }
+
+    /**
+     * Records a member of a oneof, in order of field number. Other fields are ignored.
+     */
+    void addField(FieldDescriptor fieldDescriptor) {
+      if (fieldDescriptor.getOneof() != null) {
+        members.get(oneofs.indexOf(fieldDescriptor.getOneof())).add(fieldDescriptor);
+      }
+    }
+
+    /**
+     * Generates the code writing a member of a oneof if it is the member that is set.
+     */
+    void writeMember(MethodVisitor mv, FieldDescriptor fieldDescriptor) {
+      OneofDescriptor oneof = fieldDescriptor.getOneof();
+      Label endLabel = new Label();
+      loadCase(mv, oneof);
+      mv.visitLdcInsn(fieldDescriptor.getFieldNumber());
+      mv.visitJumpInsn(IF_ICMPNE, endLabel);
+      mv.visitLdcInsn(fieldDescriptor.getFieldNumber());
+      loadType(mv, fieldDescriptor);
+      loadValue(mv, oneof);
+      loadMessageSchema(mv, fieldDescriptor);
+      mv.visitVarInsn(ALOAD, WRITER_INDEX);
+      mv.visitMethodInsn(INVOKESTATIC, SCHEMA_UTIL_NAME, WRITE_NAME, WRITE_DESCRIPTOR, false);
+      visitLabel(mv, endLabel);
+    }
+
+    /**
+     * Generates the code adding the size of the member that is set in each oneof to the
+     * accumulated size.
+     */
+    void computeSize(MethodVisitor mv) {
+      for (int i = 0; i < oneofs.size(); ++i) {
+        OneofDescriptor oneof = oneofs.get(i);
+        List<FieldDescriptor> oneofMembers = members.get(i);
+        Label endLabel = new Label();
+        Label[] labels = switchOnCase(mv, oneof, oneofMembers, endLabel);
+        for (int j = 0; j < labels.length; ++j) {
+          FieldDescriptor member = oneofMembers.get(j);
+          visitLabel(mv, labels[j]);
+          mv.visitVarInsn(ILOAD, SIZE_INDEX);
+          mv.visitLdcInsn(member.getFieldNumber());
+          loadType(mv, member);
+          loadValue(mv, oneof);
+          loadMessageSchema(mv, member);
+          mv.visitVarInsn(ALOAD, SIZE_CALCULATOR_INDEX);
+          mv.visitMethodInsn(
+              INVOKESTATIC, SCHEMA_UTIL_NAME, COMPUTE_SIZE_NAME, COMPUTE_SIZE_DESCRIPTOR, false);
+          mv.visitInsn(IADD);
+          mv.visitVarInsn(ISTORE, SIZE_INDEX);
+          mv.visitJumpInsn(GOTO, endLabel);
+        }
+        visitLabel(mv, endLabel);
+      }
+    }
+
+    /**
+     * Generates the code reading a member of a oneof, which sets both the value and the case.
+     */
+    void read(MethodVisitor mv, FieldDescriptor fieldDescriptor) {
+      if (MessageFieldGenerator.isMessageField(fieldDescriptor)) {
+        readMessage(mv, fieldDescriptor);
+        return;
+      }
+      OneofDescriptor oneof = fieldDescriptor.getOneof();
+      if (useUnsafe(oneof)) {
+        mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+        mv.visitLdcInsn(UnsafeUtil.objectFieldOffset(oneof.getCaseField()));
+        mv.visitLdcInsn(UnsafeUtil.objectFieldOffset(oneof.getValueField()));
+        mv.visitLdcInsn(fieldDescriptor.getFieldNumber());
+        loadType(mv, fieldDescriptor);
+        mv.visitVarInsn(ALOAD, READER_INDEX);
+        mv.visitMethodInsn(
+            INVOKESTATIC, SCHEMA_UTIL_NAME, UNSAFE_READ_NAME, UNSAFE_READ_DESCRIPTOR, false);
+      } else {
+        mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+        mv.visitTypeInsn(CHECKCAST, messageClassName);
+        mv.visitInsn(DUP);
+        loadType(mv, fieldDescriptor);
+        mv.visitVarInsn(ALOAD, READER_INDEX);
+        mv.visitMethodInsn(INVOKESTATIC, SCHEMA_UTIL_NAME, READ_NAME, READ_DESCRIPTOR, false);
+        mv.visitFieldInsn(
+            PUTFIELD, messageClassName, oneof.getValueField().getName(), OBJECT_DESCRIPTOR);
+        mv.visitLdcInsn(fieldDescriptor.getFieldNumber());
+        mv.visitFieldInsn(PUTFIELD, messageClassName, oneof.getCaseField().getName(), "I");
+      }
+    }
+
+    /**
+     * Generates the code reading a message member of a oneof with the schema of its message class,
+     * merging it into the current value if the member is already set.
+     */
+    private void readMessage(MethodVisitor mv, FieldDescriptor fieldDescriptor) {
+      OneofDescriptor oneof = fieldDescriptor.getOneof();
+      if (useUnsafe(oneof)) {
+        mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+        mv.visitLdcInsn(UnsafeUtil.objectFieldOffset(oneof.getCaseField()));
+        mv.visitLdcInsn(UnsafeUtil.objectFieldOffset(oneof.getValueField()));
+        mv.visitLdcInsn(fieldDescriptor.getFieldNumber());
+        messageFields.loadSchema(mv, fieldDescriptor);
+        mv.visitVarInsn(ALOAD, READER_INDEX);
+        mv.visitMethodInsn(
+            INVOKESTATIC,
+            SCHEMA_UTIL_NAME,
+            UNSAFE_READ_MESSAGE_NAME,
+            UNSAFE_READ_MESSAGE_DESCRIPTOR,
+            false);
+      } else {
+        // Merge into the current value if the member is set (message, message, case, value).
+        mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+        mv.visitTypeInsn(CHECKCAST, messageClassName);
+        mv.visitInsn(DUP);
+        mv.visitInsn(DUP);
+        mv.visitFieldInsn(GETFIELD, messageClassName, oneof.getCaseField().getName(), "I");
+        mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+        mv.visitTypeInsn(CHECKCAST, messageClassName);
+        mv.visitFieldInsn(
+            GETFIELD, messageClassName, oneof.getValueField().getName(), OBJECT_DESCRIPTOR);
+        mv.visitLdcInsn(fieldDescriptor.getFieldNumber());
+        messageFields.loadSchema(mv, fieldDescriptor);
+        mv.visitVarInsn(ALOAD, READER_INDEX);
+        mv.visitMethodInsn(
+            INVOKESTATIC, SCHEMA_UTIL_NAME, READ_MESSAGE_NAME, READ_MESSAGE_DESCRIPTOR, false);
+        mv.visitFieldInsn(
+            PUTFIELD, messageClassName, oneof.getValueField().getName(), OBJECT_DESCRIPTOR);
+        mv.visitLdcInsn(fieldDescriptor.getFieldNumber());
+        mv.visitFieldInsn(PUTFIELD, messageClassName, oneof.getCaseField().getName(), "I");
+      }
+    }
+
+    /**
+     * Loads the case field of the oneof and switches on it, returning the labels of the members.
+     * A case that is not the number of a member jumps to {@code endLabel}.
+     */
+    private Label[] switchOnCase(
+        MethodVisitor mv,
+        OneofDescriptor oneof,
+        List<FieldDescriptor> oneofMembers,
+        Label endLabel) {
+      loadCase(mv, oneof);
+      int[] keys = new int[oneofMembers.size()];
+      Label[] labels = new Label[keys.length];
+      for (int i = 0; i < keys.length; ++i) {
+        keys[i] = oneofMembers.get(i).getFieldNumber();
+        labels[i] = new Label();
+      }
+      mv.visitLookupSwitchInsn(endLabel, keys, labels);
+      return labels;
+    }
+
+    private void loadCase(MethodVisitor mv, OneofDescriptor oneof) {
+      mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+      if (useUnsafe(oneof)) {
+        mv.visitLdcInsn(UnsafeUtil.objectFieldOffset(oneof.getCaseField()));
+        mv.visitMethodInsn(
+            INVOKESTATIC,
+            UNSAFE_UTIL_NAME,
+            UNSAFE_GET_CASE_NAME,
+            UNSAFE_GET_CASE_DESCRIPTOR,
+            false);
+      } else {
+        mv.visitFieldInsn(GETFIELD, messageClassName, oneof.getCaseField().getName(), "I");
+      }
+    }
+
+    private void loadValue(MethodVisitor mv, OneofDescriptor oneof) {
+      mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+      if (useUnsafe(oneof)) {
+        mv.visitLdcInsn(UnsafeUtil.objectFieldOffset(oneof.getValueField()));
+        mv.visitMethodInsn(
+            INVOKESTATIC,
+            UNSAFE_UTIL_NAME,
+            UNSAFE_GET_VALUE_NAME,
+            UNSAFE_GET_VALUE_DESCRIPTOR,
+            false);
+      } else {
+        mv.visitFieldInsn(
+            GETFIELD, messageClassName, oneof.getValueField().getName(), OBJECT_DESCRIPTOR);
+      }
+    }
+
+    /**
+     * Loads the schema of a message member, or {@code null} for a member of another type.
+     */
+    private void loadMessageSchema(MethodVisitor mv, FieldDescriptor fieldDescriptor) {
+      if (MessageFieldGenerator.isMessageField(fieldDescriptor)) {
+        messageFields.loadSchema(mv, fieldDescriptor);
+      } else {
+        mv.visitInsn(ACONST_NULL);
+      }
+    }
+
+    private static void loadType(MethodVisitor mv, FieldDescriptor fieldDescriptor) {
+      mv.visitFieldInsn(
+          GETSTATIC, FIELD_TYPE_NAME, fieldDescriptor.getType().name(), FIELD_TYPE_DESCRIPTOR);
+    }
+
+    private boolean useUnsafe(OneofDescriptor oneof) {
+      if (preferUnsafeAccess && UnsafeUtil.isSupported()) {
+        return true;
+      } else if (isAccessible(oneof.getCaseField()) && isAccessible(oneof.getValueField())) {
+        return false;
+      } else if (UnsafeUtil.isSupported()) {
+        return true;
+      } else {
+        throw new IllegalArgumentException(
+            String.format(
+                "Unable to access oneof %s in class %s",
+                oneof.getValueField().getName(), messageClassName));
+      }
+    }
+
+    private boolean isAccessible(Field field) {
+      int mod = field.getModifiers();
+      return Modifier.isPublic(mod) || (hasPackageAccess && !Modifier.isPrivate(mod));
+    }
+  }
+
+  /**
+   * Generates the code for the fields of a message that have a has-bit, in both the inline and
+   * minimal code modes. These fields are written by looping over the bits that are set in each
+   * has-bits field and switching on the index of the lowest one, so only the fields that are
+   * present are visited. Since has-bits are assigned in order of field number, each run of fields
+   * with has-bits is written in its own loop, between the other fields that are not members of a
+   * oneof. Reading a field sets its has-bit.
+   */
+  private static final class HasBitsGenerator {
+    private static final String NUMBER_OF_TRAILING_ZEROS_NAME;
+    private static final String NUMBER_OF_TRAILING_ZEROS_DESCRIPTOR;
+    private static final String UNSAFE_GET_NAME;
+    private static final String UNSAFE_GET_DESCRIPTOR;
+    private static final String UNSAFE_SET_NAME;
+    private static final String UNSAFE_SET_DESCRIPTOR;
+
+    static {
+      try {
+        Method method = Integer.class.getDeclaredMethod("numberOfTrailingZeros", int.class);
+        NUMBER_OF_TRAILING_ZEROS_NAME = method.getName();
+        NUMBER_OF_TRAILING_ZEROS_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method = UnsafeUtil.class.getDeclaredMethod("getInt", Object.class, long.class);
+        UNSAFE_GET_NAME = method.getName();
+        UNSAFE_GET_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "unsafeSetHasBits", Object.class, long.class, int.class);
+        UNSAFE_SET_NAME = method.getName();
+        UNSAFE_SET_DESCRIPTOR = Type.getMethodDescriptor(method);
+      } catch (NoSuchMethodException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    private final String messageClassName;
+    private final List<Field> hasBitsFields;
+    private final MessageFieldGenerator messageFields;
+    private final FieldDescriptor[][] fields;
+    private final int[] pendingWriteMasks;
+    private final boolean hasPackageAccess;
+    private final boolean preferUnsafeAccess;
+
+    HasBitsGenerator(
+        String messageClassName,
+        List<Field> hasBitsFields,
+        MessageFieldGenerator messageFields,
+        boolean hasPackageAccess,
+        boolean preferUnsafeAccess) {
+      this.messageClassName = messageClassName;
+      this.hasBitsFields = hasBitsFields;
+      this.messageFields = messageFields;
+      this.hasPackageAccess = hasPackageAccess;
+      this.preferUnsafeAccess = preferUnsafeAccess;
+      fields = new FieldDescriptor[hasBitsFields.size()][Integer.SIZE];
+      pendingWriteMasks = new int[hasBitsFields.size()];
+    }
+
+    /**
+     * Records a field with a has-bit. Other fields are ignored.
+     */
+    void addField(FieldDescriptor fieldDescriptor) {
+      if (fieldDescriptor.getHasBitsField() != null) {
+        int hasBitsIndex = hasBitsFields.indexOf(fieldDescriptor.getHasBitsField());
+        fields[hasBitsIndex][fieldDescriptor.getHasBit()] = fieldDescriptor;
+        pendingWriteMasks[hasBitsIndex] |= 1 << fieldDescriptor.getHasBit();
+      }
+    }
+
+    /**
+     * Generates the code writing the fields whose has-bit is set, among those added since the
+     * last call, so that they are written before the next field.
+     */
+    void writePending(MethodVisitor mv) {
+      for (int i = 0; i < fields.length; ++i) {
+        final int mask = pendingWriteMasks[i];
+        if (mask == 0) {
+          continue;
+        }
+        pendingWriteMasks[i] = 0;
+        Label loopLabel = new Label();
+        Label endLabel = new Label();
+        Label[] labels =
+            switchOnLowestBit(mv, i, mask, WRITE_HAS_BITS_INDEX, loopLabel, endLabel);
+        for (int bit = 0; bit < labels.length; ++bit) {
+          if ((mask & (1 << bit)) != 0) {
+            FieldDescriptor fieldDescriptor = fields[i][bit];
+            visitLabel(mv, labels[bit]);
+            if (MessageFieldGenerator.isMessageField(fieldDescriptor)) {
+              messageFields.write(mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
+            } else {
+              INLINE_FIELD_PROCESSORS[fieldDescriptor.getType().ordinal()]
+                  .writePresent(
+                      messageClassName, mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
+            }
+            mv.visitJumpInsn(GOTO, loopLabel);
+          }
+        }
+        visitLabel(mv, endLabel);
+      }
+    }
+
+    /**
+     * Generates the code adding the size of the fields whose has-bit is set to the accumulated
+     * size.
+     */
+    void computeSize(MethodVisitor mv) {
+      for (int i = 0; i < fields.length; ++i) {
+        Label loopLabel = new Label();
+        Label endLabel = new Label();
+        Label[] labels =
+            switchOnLowestBit(mv, i, getMask(i), SIZE_HAS_BITS_INDEX, loopLabel, endLabel);
+        for (int bit = 0; bit < labels.length; ++bit) {
+          FieldDescriptor fieldDescriptor = fields[i][bit];
+          if (fieldDescriptor != null) {
+            visitLabel(mv, labels[bit]);
+            mv.visitVarInsn(ILOAD, SIZE_INDEX);
+            if (MessageFieldGenerator.isMessageField(fieldDescriptor)) {
+              messageFields.computeSize(mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
+            } else {
+              INLINE_FIELD_PROCESSORS[fieldDescriptor.getType().ordinal()]
+                  .computePresentSize(
+                      messageClassName, mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
+            }
+            mv.visitInsn(IADD);
+            mv.visitVarInsn(ISTORE, SIZE_INDEX);
+            mv.visitJumpInsn(GOTO, loopLabel);
+          }
+        }
+        visitLabel(mv, endLabel);
+      }
+    }
+
+    /**
+     * Generates the code setting the has-bit of a field that has been read.
+     */
+    void setHasBit(MethodVisitor mv, FieldDescriptor fieldDescriptor) {
+      Field hasBitsField = fieldDescriptor.getHasBitsField();
+      mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+      if (useUnsafe(hasBitsField)) {
+        mv.visitLdcInsn(UnsafeUtil.objectFieldOffset(hasBitsField));
+        mv.visitLdcInsn(1 << fieldDescriptor.getHasBit());
+        mv.visitMethodInsn(
+            INVOKESTATIC, SCHEMA_UTIL_NAME, UNSAFE_SET_NAME, UNSAFE_SET_DESCRIPTOR, false);
+      } else {
+        mv.visitTypeInsn(CHECKCAST, messageClassName);
+        mv.visitInsn(DUP);
+        mv.visitFieldInsn(GETFIELD, messageClassName, hasBitsField.getName(), "I");
+        mv.visitLdcInsn(1 << fieldDescriptor.getHasBit());
+        mv.visitInsn(IOR);
+        mv.visitFieldInsn(PUTFIELD, messageClassName, hasBitsField.getName(), "I");
+      }
+    }
+
+    /**
+     * Gets the mask of the bits of the has-bits field that are held for fields.
+     */
+    private int getMask(int hasBitsIndex) {
+      int mask = 0;
+      for (int bit = 0; bit < Integer.SIZE; ++bit) {
+        if (fields[hasBitsIndex][bit] != null) {
+          mask |= 1 << bit;
+        }
+      }
+      return mask;
+    }
+
+    /**
+     * Stores the bits of the has-bits field that are in {@code mask} in a local variable and
+     * starts the loop over the bits that are set, which clears the lowest bit and switches on its
+     * index. Returns the labels of the bits up to the highest bit in the mask, where bits outside
+     * the mask continue the loop, which jumps to {@code endLabel} when no bits remain.
+     */
+    private Label[] switchOnLowestBit(
+        MethodVisitor mv,
+        int hasBitsIndex,
+        int mask,
+        int localIndex,
+        Label loopLabel,
+        Label endLabel) {
+      Field hasBitsField = hasBitsFields.get(hasBitsIndex);
+      mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+      if (useUnsafe(hasBitsField)) {
+        mv.visitLdcInsn(UnsafeUtil.objectFieldOffset(hasBitsField));
+        mv.visitMethodInsn(
+            INVOKESTATIC, UNSAFE_UTIL_NAME, UNSAFE_GET_NAME, UNSAFE_GET_DESCRIPTOR, false);
       } else {
-        // Lookupswitch...
+        mv.visitFieldInsn(GETFIELD, messageClassName, hasBitsField.getName(), "I");
+      }
+      mv.visitLdcInsn(mask);
+      mv.visitInsn(IAND);
+      mv.visitVarInsn(ISTORE, localIndex);
 
-        // Create the keys and labels.
-        lo = -1;
-        int[] keys = new int[numFields];
-        labels = new Label[numFields];
-        for (int i = 0; i < numFields; ++i) {
-          keys[i] = fields.get(i).getFieldNumber();
-          Label label = new Label();
-          labels[i] = label;
-        }
+      visitLabel(mv, loopLabel);
+      mv.visitVarInsn(ILOAD, localIndex);
+      mv.visitJumpInsn(IFEQ, endLabel);
+      mv.visitVarInsn(ILOAD, localIndex);
+      mv.visitMethodInsn(
+          INVOKESTATIC,
+          getInternalName(Integer.class),
+          NUMBER_OF_TRAILING_ZEROS_NAME,
+          NUMBER_OF_TRAILING_ZEROS_DESCRIPTOR,
+          false);
+      // Clear the lowest bit that is set.
+      mv.visitVarInsn(ILOAD, localIndex);
+      mv.visitInsn(DUP);
+      mv.visitInsn(ICONST_1);
+      mv.visitInsn(ISUB);
+      mv.visitInsn(IAND);
+      mv.visitVarInsn(ISTORE, localIndex);
 
-        // Create the switch statement.
-        mv.visitLookupSwitchInsn(defaultLabel, keys, labels);
+      int maxBit = Integer.SIZE - 1 - Integer.numberOfLeadingZeros(mask);
+      Label[] labels = new Label[maxBit + 1];
+      for (int bit = 0; bit <= maxBit; ++bit) {
+        labels[bit] = (mask & (1 << bit)) != 0 ? new Label() : loopLabel;
       }
+      mv.visitTableSwitchInsn(0, maxBit, loopLabel, labels);
+      return labels;
     }
 
-    void addField(FieldDescriptor field, int fieldIndex, boolean hasPackageAccess) {
-      if (tableSwitch) {
-        addTableSwitchCase(field, hasPackageAccess);
+    private boolean useUnsafe(Field hasBitsField) {
+      int mod = hasBitsField.getModifiers();
+      if (preferUnsafeAccess && UnsafeUtil.isSupported()) {
+        return true;
+      } else if (Modifier.isPublic(mod) || (hasPackageAccess && !Modifier.isPrivate(mod))) {
+        return false;
+      } else if (UnsafeUtil.isSupported()) {
+        return true;
       } else {
-        addLookupSwitchCase(field, fieldIndex, hasPackageAccess);
+        throw new IllegalArgumentException(
+            String.format(
+                "Unable to access field %s in class %s",
+                hasBitsField.getName(), messageClassName));
       }
     }
+  }
 
-    private void addTableSwitchCase(FieldDescriptor fieldDescriptor, boolean hasPackageAccess) {
-      // Tableswitch: Label index is the field number.
-      visitLabel(mv, labels[fieldDescriptor.getFieldNumber() - lo]);
-      readField(fieldDescriptor, hasPackageAccess);
-      mv.visitJumpInsn(GOTO, startLabel);
-    }
+  /**
+   * Generates the code preserving the unknown fields of a message, which are held in a single
+   * {@link ByteString} field. Unknown fields are read in place of skipping them, and written after
+   * all other fields.
+   */
+  private static final class UnknownFieldsGenerator {
+    private static final String BYTE_STRING_DESCRIPTOR = Type.getDescriptor(ByteString.class);
 
-    private void addLookupSwitchCase(
-        FieldDescriptor fieldDescriptor, int fieldIndex, boolean hasPackageAccess) {
-      // Lookupswitch: Label index is field index.
-      visitLabel(mv, labels[fieldIndex]);
-      readField(fieldDescriptor, hasPackageAccess);
-      mv.visitJumpInsn(GOTO, startLabel);
+    private static final String WRITE_NAME;
+    private static final String WRITE_DESCRIPTOR;
+    private static final String UNSAFE_WRITE_NAME;
+    private static final String UNSAFE_WRITE_DESCRIPTOR;
+    private static final String COMPUTE_SIZE_NAME;
+    private static final String COMPUTE_SIZE_DESCRIPTOR;
+    private static final String UNSAFE_COMPUTE_SIZE_NAME;
+    private static final String UNSAFE_COMPUTE_SIZE_DESCRIPTOR;
+    private static final String READ_NAME;
+    private static final String READ_DESCRIPTOR;
+    private static final String UNSAFE_READ_NAME;
+    private static final String UNSAFE_READ_DESCRIPTOR;
+
+    static {
+      try {
+        Method method =
+            SchemaUtil.class.getDeclaredMethod(
+                "writeUnknownFields", ByteString.class, Writer.class);
+        WRITE_NAME = method.getName();
+        WRITE_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "unsafeWriteUnknownFields", Object.class, long.class, Writer.class);
+        UNSAFE_WRITE_NAME = method.getName();
+        UNSAFE_WRITE_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method = SchemaUtil.class.getDeclaredMethod("computeUnknownFieldsSize", ByteString.class);
+        COMPUTE_SIZE_NAME = method.getName();
+        COMPUTE_SIZE_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "unsafeComputeUnknownFieldsSize", Object.class, long.class);
+        UNSAFE_COMPUTE_SIZE_NAME = method.getName();
+        UNSAFE_COMPUTE_SIZE_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod("readUnknownField", ByteString.class, Reader.class);
+        READ_NAME = method.getName();
+        READ_DESCRIPTOR = Type.getMethodDescriptor(method);
+        method =
+            SchemaUtil.class.getDeclaredMethod(
+                "unsafeReadUnknownField", Object.class, long.class, Reader.class);
+        UNSAFE_READ_NAME = method.getName();
+        UNSAFE_READ_DESCRIPTOR = Type.getMethodDescriptor(method);
+      } catch (NoSuchMethodException e) {
+        throw new RuntimeException(e);
+      }
     }
 
-    private void readField(FieldDescriptor fieldDescriptor, boolean hasPackageAccess) {
-      if (minimizeGeneratedCode) {
-        MINIMAL_CODE_FIELD_PROCESSORS[fieldDescriptor.getType().ordinal()]
-            .read(messageClassName, mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
+    private final String messageClassName;
+    private final Field field;
+    private final boolean useUnsafe;
+
+    UnknownFieldsGenerator(
+        String messageClassName,
+        Field field,
+        boolean hasPackageAccess,
+        boolean preferUnsafeAccess) {
+      this.messageClassName = messageClassName;
+      this.field = field;
+      int mod = field.getModifiers();
+      boolean accessible =
+          Modifier.isPublic(mod) || (hasPackageAccess && !Modifier.isPrivate(mod));
+      if (preferUnsafeAccess && UnsafeUtil.isSupported()) {
+        useUnsafe = true;
+      } else if (accessible) {
+        useUnsafe = false;
+      } else if (UnsafeUtil.isSupported()) {
+        useUnsafe = true;
       } else {
-        INLINE_FIELD_PROCESSORS[fieldDescriptor.getType().ordinal()]
-            .read(messageClassName, mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
+        throw new IllegalArgumentException(
+            String.format(
+                "Unable to access field %s in class %s", field.getName(), messageClassName));
       }
     }
 
-    void end() {
-      // Default case: skip the unknown field and check for done.
-      visitLabel(mv, defaultLabel);
-      mv.visitVarInsn(ALOAD, READER_INDEX);
-      mv.visitMethodInsn(
-          INVOKEINTERFACE, READER_NAME, SKIP_FIELD_NAME, SKIP_FIELD_DESCRIPTOR, true);
-      mv.visitJumpInsn(IFNE, startLabel);
+    /**
+     * Generates the code writing the unknown fields.
+     */
+    void write(MethodVisitor mv) {
+      mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+      if (useUnsafe) {
+        mv.visitLdcInsn(UnsafeUtil.objectFieldOffset(field));
+        mv.visitVarInsn(ALOAD, WRITER_INDEX);
+        mv.visitMethodInsn(
+            INVOKESTATIC, SCHEMA_UTIL_NAME, UNSAFE_WRITE_NAME, UNSAFE_WRITE_DESCRIPTOR, false);
+      } else {
+        mv.visitFieldInsn(GETFIELD, messageClassName, field.getName(), BYTE_STRING_DESCRIPTOR);
+        mv.visitVarInsn(ALOAD, WRITER_INDEX);
+        mv.visitMethodInsn(INVOKESTATIC, SCHEMA_UTIL_NAME, WRITE_NAME, WRITE_DESCRIPTOR, false);
+      }
+    }
 
-      visitLabel(mv, endLabel);
-      mv.visitInsn(RETURN);
-      mv.visitMaxs(6, 4);
-      mv.visitEnd();
+    /**
+     * Generates the code adding the size of the unknown fields to the accumulated size.
+     */
+    void computeSize(MethodVisitor mv) {
+      mv.visitVarInsn(ILOAD, SIZE_INDEX);
+      mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+      if (useUnsafe) {
+        mv.visitLdcInsn(UnsafeUtil.objectFieldOffset(field));
+        mv.visitMethodInsn(
+            INVOKESTATIC,
+            SCHEMA_UTIL_NAME,
+            UNSAFE_COMPUTE_SIZE_NAME,
+            UNSAFE_COMPUTE_SIZE_DESCRIPTOR,
+            false);
+      } else {
+        mv.visitFieldInsn(GETFIELD, messageClassName, field.getName(), BYTE_STRING_DESCRIPTOR);
+        mv.visitMethodInsn(
+            INVOKESTATIC, SCHEMA_UTIL_NAME, COMPUTE_SIZE_NAME, COMPUTE_SIZE_DESCRIPTOR, false);
+      }
+      mv.visitInsn(IADD);
+      mv.visitVarInsn(ISTORE, SIZE_INDEX);
     }
-  }
 
-  private static void visitLabel(MethodVisitor mv, Label label) {
-    mv.visitLabel(label);
-    mv.visitFrame(F_SAME, 0, null, 0, null);
+    /**
+     * Generates the code appending the current field to the unknown fields.
+     */
+    void read(MethodVisitor mv) {
+      mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+      if (useUnsafe) {
+        mv.visitLdcInsn(UnsafeUtil.objectFieldOffset(field));
+        mv.visitVarInsn(ALOAD, READER_INDEX);
+        mv.visitMethodInsn(
+            INVOKESTATIC, SCHEMA_UTIL_NAME, UNSAFE_READ_NAME, UNSAFE_READ_DESCRIPTOR, false);
+      } else {
+        mv.visitTypeInsn(CHECKCAST, messageClassName);
+        mv.visitInsn(DUP);
+        mv.visitFieldInsn(GETFIELD, messageClassName, field.getName(), BYTE_STRING_DESCRIPTOR);
+        mv.visitVarInsn(ALOAD, READER_INDEX);
+        mv.visitMethodInsn(INVOKESTATIC, SCHEMA_UTIL_NAME, READ_NAME, READ_DESCRIPTOR, false);
+        mv.visitFieldInsn(PUTFIELD, messageClassName, field.getName(), BYTE_STRING_DESCRIPTOR);
+      }
+    }
   }
 
   private static final class InlineFieldProcessor {
+    private static final String FIELD_TYPE_NAME = getInternalName(FieldType.class);
+    private static final String FIELD_TYPE_DESCRIPTOR = Type.getDescriptor(FieldType.class);
+    private static final String COMPUTE_VALUE_SIZE_NAME;
+    private static final String COMPUTE_VALUE_SIZE_DESCRIPTOR;
+
+    static {
+      try {
+        Method method =
+            SchemaUtil.class.getDeclaredMethod(
+                "computeFieldValueSize", int.class, FieldType.class, long.class);
+        COMPUTE_VALUE_SIZE_NAME = method.getName();
+        COMPUTE_VALUE_SIZE_DESCRIPTOR = Type.getMethodDescriptor(method);
+      } catch (NoSuchMethodException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
     private final String writeName;
     private final String writeDescriptor;
     private final String unsafeGetName;
@@ -451,9 +2310,11 @@ public final class AsmSchemaFactory implements SchemaFactory {
     private final String unsafePutDescriptor;
     private final String readMethodName;
     private final String readMethodDescriptor;
+    private final String computeSizeName;
+    private final String computeSizeDescriptor;
+    private final String listClassName;
     private final boolean packed;
     private final boolean needPacked;
-    private final boolean needObjectClass;
 
     InlineFieldProcessor(FieldType fieldType) {
       try {
@@ -462,7 +2323,6 @@ public final class AsmSchemaFactory implements SchemaFactory {
         Method unsafePutMethod;
         Method readMethod;
         boolean needPacked = false;
-        boolean needObjectClass = false;
         switch (fieldType) {
           case DOUBLE:
             writeMethod = Writer.class.getDeclaredMethod("writeDouble", int.class, double.class);
@@ -540,15 +2400,6 @@ public final class AsmSchemaFactory implements SchemaFactory {
                     .getDeclaredMethod("putObject", Object.class, long.class, Object.class);
             readMethod = Reader.class.getDeclaredMethod("readString");
             break;
-          case MESSAGE:
-            writeMethod = Writer.class.getDeclaredMethod("writeMessage", int.class, Object.class);
-            unsafeGetMethod =
-                UnsafeUtil.class.getDeclaredMethod("getObject", Object.class, long.class);
-            unsafePutMethod =
-                UnsafeUtil.class
-                    .getDeclaredMethod("putObject", Object.class, long.class, Object.class);
-            readMethod = Reader.class.getDeclaredMethod("readMessage");
-            break;
           case BYTES:
             writeMethod = Writer.class.getDeclaredMethod("writeBytes", int.class, ByteString.class);
             unsafeGetMethod =
@@ -723,16 +2574,6 @@ public final class AsmSchemaFactory implements SchemaFactory {
                     .getDeclaredMethod("putObject", Object.class, long.class, Object.class);
             readMethod = Reader.class.getDeclaredMethod("readStringList", List.class);
             break;
-          case MESSAGE_LIST:
-            needObjectClass = true;
-            writeMethod = Writer.class.getDeclaredMethod("writeMessageList", int.class, List.class);
-            unsafeGetMethod =
-                UnsafeUtil.class.getDeclaredMethod("getObject", Object.class, long.class);
-            unsafePutMethod =
-                UnsafeUtil.class
-                    .getDeclaredMethod("putObject", Object.class, long.class, Object.class);
-            readMethod = Reader.class.getDeclaredMethod("readMessageList", List.class, Class.class);
-            break;
           case BYTES_LIST:
             writeMethod = Writer.class.getDeclaredMethod("writeBytesList", int.class, List.class);
             unsafeGetMethod =
@@ -825,6 +2666,144 @@ public final class AsmSchemaFactory implements SchemaFactory {
             readMethod =
                 Reader.class.getDeclaredMethod("readSInt64List", List.class, boolean.class);
             break;
+          case DOUBLE_ARRAY:
+            writeMethod =
+                Writer.class.getDeclaredMethod("writeDoubleArray", int.class, double[].class);
+            unsafeGetMethod =
+                UnsafeUtil.class.getDeclaredMethod("getObject", Object.class, long.class);
+            unsafePutMethod =
+                UnsafeUtil.class
+                    .getDeclaredMethod("putObject", Object.class, long.class, Object.class);
+            readMethod = Reader.class.getDeclaredMethod("readDoubleArray", double[].class);
+            break;
+          case FLOAT_ARRAY:
+            writeMethod =
+                Writer.class.getDeclaredMethod("writeFloatArray", int.class, float[].class);
+            unsafeGetMethod =
+                UnsafeUtil.class.getDeclaredMethod("getObject", Object.class, long.class);
+            unsafePutMethod =
+                UnsafeUtil.class
+                    .getDeclaredMethod("putObject", Object.class, long.class, Object.class);
+            readMethod = Reader.class.getDeclaredMethod("readFloatArray", float[].class);
+            break;
+          case INT64_ARRAY:
+            writeMethod =
+                Writer.class.getDeclaredMethod("writeInt64Array", int.class, long[].class);
+            unsafeGetMethod =
+                UnsafeUtil.class.getDeclaredMethod("getObject", Object.class, long.class);
+            unsafePutMethod =
+                UnsafeUtil.class
+                    .getDeclaredMethod("putObject", Object.class, long.class, Object.class);
+            readMethod = Reader.class.getDeclaredMethod("readInt64Array", long[].class);
+            break;
+          case UINT64_ARRAY:
+            writeMethod =
+                Writer.class.getDeclaredMethod("writeUInt64Array", int.class, long[].class);
+            unsafeGetMethod =
+                UnsafeUtil.class.getDeclaredMethod("getObject", Object.class, long.class);
+            unsafePutMethod =
+                UnsafeUtil.class
+                    .getDeclaredMethod("putObject", Object.class, long.class, Object.class);
+            readMethod = Reader.class.getDeclaredMethod("readUInt64Array", long[].class);
+            break;
+          case INT32_ARRAY:
+            writeMethod = Writer.class.getDeclaredMethod("writeInt32Array", int.class, int[].class);
+            unsafeGetMethod =
+                UnsafeUtil.class.getDeclaredMethod("getObject", Object.class, long.class);
+            unsafePutMethod =
+                UnsafeUtil.class
+                    .getDeclaredMethod("putObject", Object.class, long.class, Object.class);
+            readMethod = Reader.class.getDeclaredMethod("readInt32Array", int[].class);
+            break;
+          case FIXED64_ARRAY:
+            writeMethod =
+                Writer.class.getDeclaredMethod("writeFixed64Array", int.class, long[].class);
+            unsafeGetMethod =
+                UnsafeUtil.class.getDeclaredMethod("getObject", Object.class, long.class);
+            unsafePutMethod =
+                UnsafeUtil.class
+                    .getDeclaredMethod("putObject", Object.class, long.class, Object.class);
+            readMethod = Reader.class.getDeclaredMethod("readFixed64Array", long[].class);
+            break;
+          case FIXED32_ARRAY:
+            writeMethod =
+                Writer.class.getDeclaredMethod("writeFixed32Array", int.class, int[].class);
+            unsafeGetMethod =
+                UnsafeUtil.class.getDeclaredMethod("getObject", Object.class, long.class);
+            unsafePutMethod =
+                UnsafeUtil.class
+                    .getDeclaredMethod("putObject", Object.class, long.class, Object.class);
+            readMethod = Reader.class.getDeclaredMethod("readFixed32Array", int[].class);
+            break;
+          case UINT32_ARRAY:
+            writeMethod =
+                Writer.class.getDeclaredMethod("writeUInt32Array", int.class, int[].class);
+            unsafeGetMethod =
+                UnsafeUtil.class.getDeclaredMethod("getObject", Object.class, long.class);
+            unsafePutMethod =
+                UnsafeUtil.class
+                    .getDeclaredMethod("putObject", Object.class, long.class, Object.class);
+            readMethod = Reader.class.getDeclaredMethod("readUInt32Array", int[].class);
+            break;
+          case SFIXED32_ARRAY:
+            writeMethod =
+                Writer.class.getDeclaredMethod("writeSFixed32Array", int.class, int[].class);
+            unsafeGetMethod =
+                UnsafeUtil.class.getDeclaredMethod("getObject", Object.class, long.class);
+            unsafePutMethod =
+                UnsafeUtil.class
+                    .getDeclaredMethod("putObject", Object.class, long.class, Object.class);
+            readMethod = Reader.class.getDeclaredMethod("readSFixed32Array", int[].class);
+            break;
+          case SFIXED64_ARRAY:
+            writeMethod =
+                Writer.class.getDeclaredMethod("writeSFixed64Array", int.class, long[].class);
+            unsafeGetMethod =
+                UnsafeUtil.class.getDeclaredMethod("getObject", Object.class, long.class);
+            unsafePutMethod =
+                UnsafeUtil.class
+                    .getDeclaredMethod("putObject", Object.class, long.class, Object.class);
+            readMethod = Reader.class.getDeclaredMethod("readSFixed64Array", long[].class);
+            break;
+          case SINT32_ARRAY:
+            writeMethod =
+                Writer.class.getDeclaredMethod("writeSInt32Array", int.class, int[].class);
+            unsafeGetMethod =
+                UnsafeUtil.class.getDeclaredMethod("getObject", Object.class, long.class);
+            unsafePutMethod =
+                UnsafeUtil.class
+                    .getDeclaredMethod("putObject", Object.class, long.class, Object.class);
+            readMethod = Reader.class.getDeclaredMethod("readSInt32Array", int[].class);
+            break;
+          case SINT64_ARRAY:
+            writeMethod =
+                Writer.class.getDeclaredMethod("writeSInt64Array", int.class, long[].class);
+            unsafeGetMethod =
+                UnsafeUtil.class.getDeclaredMethod("getObject", Object.class, long.class);
+            unsafePutMethod =
+                UnsafeUtil.class
+                    .getDeclaredMethod("putObject", Object.class, long.class, Object.class);
+            readMethod = Reader.class.getDeclaredMethod("readSInt64Array", long[].class);
+            break;
+          case BYTE_ARRAY:
+            writeMethod = Writer.class.getDeclaredMethod("writeByteArray", int.class, byte[].class);
+            unsafeGetMethod =
+                UnsafeUtil.class.getDeclaredMethod("getObject", Object.class, long.class);
+            unsafePutMethod =
+                UnsafeUtil.class
+                    .getDeclaredMethod("putObject", Object.class, long.class, Object.class);
+            readMethod = Reader.class.getDeclaredMethod("readByteArray");
+            break;
+          case BYTE_BUFFER:
+            writeMethod =
+                Writer.class.getDeclaredMethod("writeByteBuffer", int.class, ByteBuffer.class);
+            unsafeGetMethod =
+                UnsafeUtil.class.getDeclaredMethod("getObject", Object.class, long.class);
+            unsafePutMethod =
+                UnsafeUtil.class
+                    .getDeclaredMethod("putObject", Object.class, long.class, Object.class);
+            readMethod = Reader.class.getDeclaredMethod("readByteBuffer");
+            break;
           default:
             throw new IllegalArgumentException("Unsupported PropertyType: " + fieldType);
         }
@@ -836,9 +2815,12 @@ public final class AsmSchemaFactory implements SchemaFactory {
         unsafePutDescriptor = Type.getMethodDescriptor(unsafePutMethod);
         readMethodName = readMethod.getName();
         readMethodDescriptor = Type.getMethodDescriptor(readMethod);
+        Method computeSizeMethod = getComputeSizeMethod(fieldType, false);
+        computeSizeName = computeSizeMethod.getName();
+        computeSizeDescriptor = Type.getMethodDescriptor(computeSizeMethod);
+        listClassName = getInternalName(getListClass(fieldType));
         packed = fieldType.isPacked();
         this.needPacked = needPacked;
-        this.needObjectClass = needObjectClass;
       } catch (NoSuchMethodException e) {
         throw new RuntimeException(e);
       }
@@ -859,6 +2841,46 @@ public final class AsmSchemaFactory implements SchemaFactory {
       visitLabel(mv, label);
     }
 
+    /**
+     * Writes a singular field whose has-bit is set. A scalar value is written even if it is the
+     * default, and only a {@code null} reference is skipped.
+     */
+    void writePresent(
+        String messageClassName,
+        MethodVisitor mv,
+        FieldDescriptor fieldDescriptor,
+        boolean hasPackageAccess,
+        boolean preferUnsafeAccess) {
+      Label label = new Label();
+
+      getValue(messageClassName, mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
+      switch (fieldDescriptor.getType().getJavaType()) {
+        case INT:
+        case BOOLEAN:
+        case ENUM:
+          mv.visitVarInsn(ISTORE, WRITE_VALUE_INDEX);
+          break;
+        case LONG:
+          mv.visitVarInsn(LSTORE, WRITE_VALUE_INDEX);
+          break;
+        case FLOAT:
+          mv.visitVarInsn(FSTORE, WRITE_VALUE_INDEX);
+          break;
+        case DOUBLE:
+          mv.visitVarInsn(DSTORE, WRITE_VALUE_INDEX);
+          break;
+        default:
+          // Object types.
+          mv.visitInsn(DUP);
+          mv.visitVarInsn(ASTORE, WRITE_VALUE_INDEX);
+          mv.visitJumpInsn(IFNULL, label);
+          break;
+      }
+      writeValue(mv, fieldDescriptor);
+
+      visitLabel(mv, label);
+    }
+
     void read(
         String messageClassName,
         MethodVisitor mv,
@@ -879,6 +2901,68 @@ public final class AsmSchemaFactory implements SchemaFactory {
       }
     }
 
+    void computeSize(
+        String messageClassName,
+        MethodVisitor mv,
+        FieldDescriptor fieldDescriptor,
+        boolean hasPackageAccess,
+        boolean preferUnsafeAccess) {
+      mv.visitLdcInsn(fieldDescriptor.getFieldNumber());
+      getValue(messageClassName, mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
+      mv.visitVarInsn(ALOAD, SIZE_CALCULATOR_INDEX);
+      if (needPacked) {
+        mv.visitLdcInsn(packed ? 1 : 0);
+      }
+      mv.visitMethodInsn(
+          INVOKESTATIC, SCHEMA_UTIL_NAME, computeSizeName, computeSizeDescriptor, false);
+    }
+
+    /**
+     * Computes the size of a field written by {@link #writePresent}. The sizes of floating point
+     * and boolean values do not depend on the value, so they are computed here.
+     */
+    void computePresentSize(
+        String messageClassName,
+        MethodVisitor mv,
+        FieldDescriptor fieldDescriptor,
+        boolean hasPackageAccess,
+        boolean preferUnsafeAccess) {
+      final int fieldNumber = fieldDescriptor.getFieldNumber();
+      switch (fieldDescriptor.getType().getJavaType()) {
+        case INT:
+        case ENUM:
+        case LONG:
+          mv.visitLdcInsn(fieldNumber);
+          mv.visitFieldInsn(
+              GETSTATIC, FIELD_TYPE_NAME, fieldDescriptor.getType().name(), FIELD_TYPE_DESCRIPTOR);
+          getValue(messageClassName, mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
+          if (fieldDescriptor.getType().getJavaType() != JavaType.LONG) {
+            mv.visitInsn(I2L);
+          }
+          mv.visitMethodInsn(
+              INVOKESTATIC,
+              SCHEMA_UTIL_NAME,
+              COMPUTE_VALUE_SIZE_NAME,
+              COMPUTE_VALUE_SIZE_DESCRIPTOR,
+              false);
+          break;
+        case FLOAT:
+          mv.visitLdcInsn(WireFormat.computeTagSize(fieldNumber) + WireFormat.FIXED32_SIZE);
+          break;
+        case DOUBLE:
+          mv.visitLdcInsn(WireFormat.computeTagSize(fieldNumber) + WireFormat.FIXED64_SIZE);
+          break;
+        case BOOLEAN:
+          mv.visitLdcInsn(WireFormat.computeTagSize(fieldNumber) + 1);
+          break;
+        default:
+          // Only a null reference is skipped, as by the size methods for references.
+          computeSize(
+              messageClassName, mv, fieldDescriptor, hasPackageAccess, preferUnsafeAccess);
+          break;
+      }
+    }
+
     private void getValue(
         String messageClassName,
         MethodVisitor mv,
@@ -915,7 +2999,7 @@ public final class AsmSchemaFactory implements SchemaFactory {
       mv.visitLdcInsn(fieldOffset);
       mv.visitMethodInsn(INVOKESTATIC, UNSAFE_UTIL_NAME, unsafeGetName, unsafeGetDescriptor, false);
       // Make sure object types are cast properly.
-      if (fieldDescriptor.getType().isList()) {
+      if (fieldDescriptor.getType().isList() || fieldDescriptor.getType().isArray()) {
         mv.visitTypeInsn(CHECKCAST, getInternalName(fieldDescriptor.getField().getType()));
       } else {
         switch (fieldDescriptor.getType().getJavaType()) {
@@ -946,6 +3030,14 @@ public final class AsmSchemaFactory implements SchemaFactory {
         mv.visitInsn(DUP);
         mv.visitVarInsn(ASTORE, WRITE_VALUE_INDEX);
         mv.visitJumpInsn(IFNULL, label);
+      } else if (fieldDescriptor.getType().isArray()) {
+        // Empty arrays are skipped, like empty lists in SchemaUtil.
+        mv.visitInsn(DUP);
+        mv.visitVarInsn(ASTORE, WRITE_VALUE_INDEX);
+        mv.visitJumpInsn(IFNULL, label);
+        mv.visitVarInsn(ALOAD, WRITE_VALUE_INDEX);
+        mv.visitInsn(ARRAYLENGTH);
+        mv.visitJumpInsn(IFEQ, label);
       } else {
         switch (fieldDescriptor.getType().getJavaType()) {
           case INT:
@@ -987,7 +3079,7 @@ public final class AsmSchemaFactory implements SchemaFactory {
     }
 
     private void loadValue(MethodVisitor mv, FieldDescriptor fieldDescriptor) {
-      if (fieldDescriptor.getType().isList()) {
+      if (fieldDescriptor.getType().isList() || fieldDescriptor.getType().isArray()) {
         mv.visitVarInsn(ALOAD, WRITE_VALUE_INDEX);
       } else {
         switch (fieldDescriptor.getType().getJavaType()) {
@@ -1031,11 +3123,11 @@ public final class AsmSchemaFactory implements SchemaFactory {
         mv.visitVarInsn(ALOAD, MESSAGE_INDEX); // ()->(m)
         // TODO: why can't this be done earlier?
         mv.visitTypeInsn(CHECKCAST, messageClassName);
-        mv.visitTypeInsn(NEW, ARRAY_LIST_NAME); // Create the new list. (m)->(m,l)
+        mv.visitTypeInsn(NEW, listClassName); // Create the new list. (m)->(m,l)
         mv.visitInsn(DUP); // (m,l)->(m,l,l)
         mv.visitInsn(DUP); // (m,l,l)->(m,l,l,l)
         mv.visitMethodInsn(
-            INVOKESPECIAL, ARRAY_LIST_NAME, "<init>", "()V", false); // (m,l,l,l)->(m,l,l)
+            INVOKESPECIAL, listClassName, "<init>", "()V", false); // (m,l,l,l)->(m,l,l)
         mv.visitVarInsn(ASTORE, READ_VALUE_LIST_INDEX); // (m,l,l)->(m,l)
         mv.visitFieldInsn(PUTFIELD, messageClassName, name, descriptor); // (m,l)->()
         visitLabel(mv, endCreateList);
@@ -1046,9 +3138,6 @@ public final class AsmSchemaFactory implements SchemaFactory {
         if (needPacked) {
           mv.visitLdcInsn(packed ? 1 : 0);
         }
-        if (needObjectClass) {
-          mv.visitLdcInsn(CLASS_TYPE);
-        }
         mv.visitMethodInsn(
             INVOKEINTERFACE, READER_NAME, readMethodName, readMethodDescriptor, true);
       } else {
@@ -1059,11 +3148,18 @@ public final class AsmSchemaFactory implements SchemaFactory {
 
         // Get the value.
         mv.visitVarInsn(ALOAD, READER_INDEX);
+        if (fieldDescriptor.getType().isArray()) {
+          // Arrays are appended to, so pass the current value to the reader.
+          mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+          mv.visitTypeInsn(CHECKCAST, messageClassName);
+          mv.visitFieldInsn(
+              GETFIELD,
+              messageClassName,
+              fieldDescriptor.getField().getName(),
+              fieldType.getDescriptor());
+        }
         mv.visitMethodInsn(
             INVOKEINTERFACE, READER_NAME, readMethodName, readMethodDescriptor, true);
-        if (fieldDescriptor.getType().getJavaType() == JavaType.MESSAGE) {
-          mv.visitTypeInsn(CHECKCAST, fieldType.getInternalName());
-        }
 
         // Set the value on the field.
         mv.visitFieldInsn(
@@ -1093,11 +3189,11 @@ public final class AsmSchemaFactory implements SchemaFactory {
         mv.visitJumpInsn(IFNONNULL, endCreateList); // (l)->()
         mv.visitVarInsn(ALOAD, MESSAGE_INDEX); // ()->(m)
         mv.visitLdcInsn(fieldOffset); // (m)->(m,o)
-        mv.visitTypeInsn(NEW, ARRAY_LIST_NAME); // Create the new list. (m,o)->(m,o,v)
+        mv.visitTypeInsn(NEW, listClassName); // Create the new list. (m,o)->(m,o,v)
         mv.visitInsn(DUP); // (m,o,l)->(m,o,l,l)
         mv.visitInsn(DUP); // (m,o,l,l)->(m,o,l,l,l)
         mv.visitMethodInsn(
-            INVOKESPECIAL, ARRAY_LIST_NAME, "<init>", "()V", false); // (m,o,l,l,l)->(m,o,l,l)
+            INVOKESPECIAL, listClassName, "<init>", "()V", false); // (m,o,l,l,l)->(m,o,l,l)
         mv.visitVarInsn(ASTORE, READ_VALUE_LIST_INDEX); // (m,o,l,l)->(m,o,l)
         mv.visitMethodInsn(
             INVOKESTATIC,
@@ -1113,15 +3209,16 @@ public final class AsmSchemaFactory implements SchemaFactory {
         if (needPacked) {
           mv.visitLdcInsn(packed ? 1 : 0);
         }
-        if (needObjectClass) {
-          mv.visitLdcInsn(CLASS_TYPE);
-        }
         mv.visitMethodInsn(
             INVOKEINTERFACE, READER_NAME, readMethodName, readMethodDescriptor, true);
       } else {
         mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
         mv.visitLdcInsn(fieldOffset);
         mv.visitVarInsn(ALOAD, READER_INDEX);
+        if (fieldDescriptor.getType().isArray()) {
+          // Arrays are appended to, so pass the current value to the reader.
+          unsafeGetValue(mv, fieldDescriptor);
+        }
         mv.visitMethodInsn(
             INVOKEINTERFACE, READER_NAME, readMethodName, readMethodDescriptor, true);
 
@@ -1142,9 +3239,12 @@ public final class AsmSchemaFactory implements SchemaFactory {
     private final String safeReadDescriptor;
     private final String getOrCreateListName;
     private final String getOrCreateListDescriptor;
+    private final String unsafeComputeSizeName;
+    private final String unsafeComputeSizeDescriptor;
+    private final String safeComputeSizeName;
+    private final String safeComputeSizeDescriptor;
     private final boolean packed;
     private final boolean needPacked;
-    private final boolean needObjectClass;
 
     MinimalCodeFieldProcessor(FieldType fieldType) {
       try {
@@ -1153,7 +3253,6 @@ public final class AsmSchemaFactory implements SchemaFactory {
         Method unsafeReadMethod;
         Method safeReadMethod;
         boolean needPacked = false;
-        boolean needObjectClass = false;
         switch (fieldType) {
           case DOUBLE:
             unsafeWriteMethod =
@@ -1272,19 +3371,6 @@ public final class AsmSchemaFactory implements SchemaFactory {
                     .getDeclaredMethod("unsafeReadString", Object.class, long.class, Reader.class);
             safeReadMethod = Reader.class.getDeclaredMethod("readString");
             break;
-          case MESSAGE:
-            unsafeWriteMethod =
-                SchemaUtil.class
-                    .getDeclaredMethod(
-                        "unsafeWriteMessage", int.class, Object.class, long.class, Writer.class);
-            safeWriteMethod =
-                SchemaUtil.class
-                    .getDeclaredMethod("writeMessage", int.class, Object.class, Writer.class);
-            unsafeReadMethod =
-                SchemaUtil.class
-                    .getDeclaredMethod("unsafeReadMessage", Object.class, long.class, Reader.class);
-            safeReadMethod = Reader.class.getDeclaredMethod("readMessage");
-            break;
           case BYTES:
             unsafeWriteMethod =
                 SchemaUtil.class
@@ -1607,30 +3693,6 @@ public final class AsmSchemaFactory implements SchemaFactory {
                         "unsafeReadStringList", Object.class, long.class, Reader.class);
             safeReadMethod = Reader.class.getDeclaredMethod("readStringList", List.class);
             break;
-          case MESSAGE_LIST:
-            needObjectClass = true;
-            unsafeWriteMethod =
-                SchemaUtil.class
-                    .getDeclaredMethod(
-                        "unsafeWriteMessageList",
-                        int.class,
-                        Object.class,
-                        long.class,
-                        Writer.class);
-            safeWriteMethod =
-                SchemaUtil.class
-                    .getDeclaredMethod("writeMessageList", int.class, List.class, Writer.class);
-            unsafeReadMethod =
-                SchemaUtil.class
-                    .getDeclaredMethod(
-                        "unsafeReadMessageList",
-                        Object.class,
-                        long.class,
-                        Reader.class,
-                        Class.class);
-            safeReadMethod =
-                Reader.class.getDeclaredMethod("readMessageList", List.class, Class.class);
-            break;
           case BYTES_LIST:
             unsafeWriteMethod =
                 SchemaUtil.class
@@ -1807,6 +3869,239 @@ public final class AsmSchemaFactory implements SchemaFactory {
             safeReadMethod =
                 Reader.class.getDeclaredMethod("readSInt64List", List.class, boolean.class);
             break;
+          case DOUBLE_ARRAY:
+            unsafeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeWriteDoubleArray",
+                        int.class,
+                        Object.class,
+                        long.class,
+                        Writer.class);
+            safeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod("writeDoubleArray", int.class, double[].class, Writer.class);
+            unsafeReadMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeReadDoubleArray", Object.class, long.class, Reader.class);
+            safeReadMethod = Reader.class.getDeclaredMethod("readDoubleArray", double[].class);
+            break;
+          case FLOAT_ARRAY:
+            unsafeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeWriteFloatArray", int.class, Object.class, long.class, Writer.class);
+            safeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod("writeFloatArray", int.class, float[].class, Writer.class);
+            unsafeReadMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeReadFloatArray", Object.class, long.class, Reader.class);
+            safeReadMethod = Reader.class.getDeclaredMethod("readFloatArray", float[].class);
+            break;
+          case INT64_ARRAY:
+            unsafeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeWriteInt64Array", int.class, Object.class, long.class, Writer.class);
+            safeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod("writeInt64Array", int.class, long[].class, Writer.class);
+            unsafeReadMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeReadInt64Array", Object.class, long.class, Reader.class);
+            safeReadMethod = Reader.class.getDeclaredMethod("readInt64Array", long[].class);
+            break;
+          case UINT64_ARRAY:
+            unsafeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeWriteUInt64Array",
+                        int.class,
+                        Object.class,
+                        long.class,
+                        Writer.class);
+            safeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod("writeUInt64Array", int.class, long[].class, Writer.class);
+            unsafeReadMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeReadUInt64Array", Object.class, long.class, Reader.class);
+            safeReadMethod = Reader.class.getDeclaredMethod("readUInt64Array", long[].class);
+            break;
+          case INT32_ARRAY:
+            unsafeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeWriteInt32Array", int.class, Object.class, long.class, Writer.class);
+            safeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod("writeInt32Array", int.class, int[].class, Writer.class);
+            unsafeReadMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeReadInt32Array", Object.class, long.class, Reader.class);
+            safeReadMethod = Reader.class.getDeclaredMethod("readInt32Array", int[].class);
+            break;
+          case FIXED64_ARRAY:
+            unsafeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeWriteFixed64Array",
+                        int.class,
+                        Object.class,
+                        long.class,
+                        Writer.class);
+            safeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod("writeFixed64Array", int.class, long[].class, Writer.class);
+            unsafeReadMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeReadFixed64Array", Object.class, long.class, Reader.class);
+            safeReadMethod = Reader.class.getDeclaredMethod("readFixed64Array", long[].class);
+            break;
+          case FIXED32_ARRAY:
+            unsafeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeWriteFixed32Array",
+                        int.class,
+                        Object.class,
+                        long.class,
+                        Writer.class);
+            safeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod("writeFixed32Array", int.class, int[].class, Writer.class);
+            unsafeReadMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeReadFixed32Array", Object.class, long.class, Reader.class);
+            safeReadMethod = Reader.class.getDeclaredMethod("readFixed32Array", int[].class);
+            break;
+          case UINT32_ARRAY:
+            unsafeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeWriteUInt32Array",
+                        int.class,
+                        Object.class,
+                        long.class,
+                        Writer.class);
+            safeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod("writeUInt32Array", int.class, int[].class, Writer.class);
+            unsafeReadMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeReadUInt32Array", Object.class, long.class, Reader.class);
+            safeReadMethod = Reader.class.getDeclaredMethod("readUInt32Array", int[].class);
+            break;
+          case SFIXED32_ARRAY:
+            unsafeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeWriteSFixed32Array",
+                        int.class,
+                        Object.class,
+                        long.class,
+                        Writer.class);
+            safeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod("writeSFixed32Array", int.class, int[].class, Writer.class);
+            unsafeReadMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeReadSFixed32Array", Object.class, long.class, Reader.class);
+            safeReadMethod = Reader.class.getDeclaredMethod("readSFixed32Array", int[].class);
+            break;
+          case SFIXED64_ARRAY:
+            unsafeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeWriteSFixed64Array",
+                        int.class,
+                        Object.class,
+                        long.class,
+                        Writer.class);
+            safeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod("writeSFixed64Array", int.class, long[].class, Writer.class);
+            unsafeReadMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeReadSFixed64Array", Object.class, long.class, Reader.class);
+            safeReadMethod = Reader.class.getDeclaredMethod("readSFixed64Array", long[].class);
+            break;
+          case SINT32_ARRAY:
+            unsafeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeWriteSInt32Array",
+                        int.class,
+                        Object.class,
+                        long.class,
+                        Writer.class);
+            safeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod("writeSInt32Array", int.class, int[].class, Writer.class);
+            unsafeReadMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeReadSInt32Array", Object.class, long.class, Reader.class);
+            safeReadMethod = Reader.class.getDeclaredMethod("readSInt32Array", int[].class);
+            break;
+          case SINT64_ARRAY:
+            unsafeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeWriteSInt64Array",
+                        int.class,
+                        Object.class,
+                        long.class,
+                        Writer.class);
+            safeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod("writeSInt64Array", int.class, long[].class, Writer.class);
+            unsafeReadMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeReadSInt64Array", Object.class, long.class, Reader.class);
+            safeReadMethod = Reader.class.getDeclaredMethod("readSInt64Array", long[].class);
+            break;
+          case BYTE_ARRAY:
+            unsafeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeWriteByteArray", int.class, Object.class, long.class, Writer.class);
+            safeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod("writeByteArray", int.class, byte[].class, Writer.class);
+            unsafeReadMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeReadByteArray", Object.class, long.class, Reader.class);
+            safeReadMethod = Reader.class.getDeclaredMethod("readByteArray");
+            break;
+          case BYTE_BUFFER:
+            unsafeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeWriteByteBuffer", int.class, Object.class, long.class, Writer.class);
+            safeWriteMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "writeByteBuffer", int.class, ByteBuffer.class, Writer.class);
+            unsafeReadMethod =
+                SchemaUtil.class
+                    .getDeclaredMethod(
+                        "unsafeReadByteBuffer", Object.class, long.class, Reader.class);
+            safeReadMethod = Reader.class.getDeclaredMethod("readByteBuffer");
+            break;
           default:
             throw new IllegalArgumentException("Unsupported FieldType: " + fieldType);
         }
@@ -1820,12 +4115,17 @@ public final class AsmSchemaFactory implements SchemaFactory {
         safeReadDescriptor = Type.getMethodDescriptor(safeReadMethod);
 
         Method getOrCreateListMethod =
-            SchemaUtil.class.getDeclaredMethod("getOrCreateList", List.class);
+            SchemaUtil.class.getDeclaredMethod(getOrCreateListMethodName(fieldType), List.class);
         getOrCreateListName = getOrCreateListMethod.getName();
         getOrCreateListDescriptor = Type.getMethodDescriptor(getOrCreateListMethod);
+        Method unsafeComputeSizeMethod = getComputeSizeMethod(fieldType, true);
+        unsafeComputeSizeName = unsafeComputeSizeMethod.getName();
+        unsafeComputeSizeDescriptor = Type.getMethodDescriptor(unsafeComputeSizeMethod);
+        Method safeComputeSizeMethod = getComputeSizeMethod(fieldType, false);
+        safeComputeSizeName = safeComputeSizeMethod.getName();
+        safeComputeSizeDescriptor = Type.getMethodDescriptor(safeComputeSizeMethod);
         packed = fieldType.isPacked();
         this.needPacked = needPacked;
-        this.needObjectClass = needObjectClass;
       } catch (NoSuchMethodException e) {
         throw new RuntimeException(e);
       }
@@ -1871,6 +4171,59 @@ public final class AsmSchemaFactory implements SchemaFactory {
       }
     }
 
+    void computeSize(
+        String messageClassName,
+        MethodVisitor mv,
+        FieldDescriptor fieldDescriptor,
+        boolean hasPackageAccess,
+        boolean preferUnsafeAccess) {
+      if (preferUnsafeAccess && UnsafeUtil.isSupported()) {
+        unsafeComputeSize(mv, fieldDescriptor);
+      } else if (isAccessible(hasPackageAccess, fieldDescriptor)) {
+        safeComputeSize(messageClassName, mv, fieldDescriptor);
+      } else if (UnsafeUtil.isSupported()) {
+        unsafeComputeSize(mv, fieldDescriptor);
+      } else {
+        throw new IllegalArgumentException(
+            String.format(
+                "Unable to access field %s in class %s",
+                fieldDescriptor.getField().getName(), messageClassName));
+      }
+    }
+
+    private void safeComputeSize(
+        String messageClassName, MethodVisitor mv, FieldDescriptor fieldDescriptor) {
+      mv.visitLdcInsn(fieldDescriptor.getFieldNumber());
+      mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+      mv.visitFieldInsn(
+          GETFIELD,
+          messageClassName,
+          fieldDescriptor.getField().getName(),
+          Type.getDescriptor(fieldDescriptor.getField().getType()));
+      mv.visitVarInsn(ALOAD, SIZE_CALCULATOR_INDEX);
+      if (needPacked) {
+        mv.visitLdcInsn(packed ? 1 : 0);
+      }
+      mv.visitMethodInsn(
+          INVOKESTATIC, SCHEMA_UTIL_NAME, safeComputeSizeName, safeComputeSizeDescriptor, false);
+    }
+
+    private void unsafeComputeSize(MethodVisitor mv, FieldDescriptor fieldDescriptor) {
+      mv.visitLdcInsn(fieldDescriptor.getFieldNumber());
+      mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+      mv.visitLdcInsn(UnsafeUtil.objectFieldOffset(fieldDescriptor.getField()));
+      mv.visitVarInsn(ALOAD, SIZE_CALCULATOR_INDEX);
+      if (needPacked) {
+        mv.visitLdcInsn(packed ? 1 : 0);
+      }
+      mv.visitMethodInsn(
+          INVOKESTATIC,
+          SCHEMA_UTIL_NAME,
+          unsafeComputeSizeName,
+          unsafeComputeSizeDescriptor,
+          false);
+    }
+
     private void safeWrite(
         String messageClassName, MethodVisitor mv, FieldDescriptor fieldDescriptor) {
       mv.visitLdcInsn(fieldDescriptor.getFieldNumber());
@@ -1926,9 +4279,6 @@ public final class AsmSchemaFactory implements SchemaFactory {
         if (needPacked) {
           mv.visitLdcInsn(packed ? 1 : 0);
         }
-        if (needObjectClass) {
-          mv.visitLdcInsn(CLASS_TYPE);
-        }
         mv.visitMethodInsn(INVOKEINTERFACE, READER_NAME, safeReadName, safeReadDescriptor, true);
       } else {
         Type fieldType = Type.getType(fieldDescriptor.getField().getType());
@@ -1937,10 +4287,17 @@ public final class AsmSchemaFactory implements SchemaFactory {
 
         // Get the value.
         mv.visitVarInsn(ALOAD, READER_INDEX);
-        mv.visitMethodInsn(INVOKEINTERFACE, READER_NAME, safeReadName, safeReadDescriptor, true);
-        if (fieldDescriptor.getType().getJavaType() == JavaType.MESSAGE) {
-          mv.visitTypeInsn(CHECKCAST, fieldType.getInternalName());
+        if (fieldDescriptor.getType().isArray()) {
+          // Arrays are appended to, so pass the current value to the reader.
+          mv.visitVarInsn(ALOAD, MESSAGE_INDEX);
+          mv.visitTypeInsn(CHECKCAST, messageClassName);
+          mv.visitFieldInsn(
+              GETFIELD,
+              messageClassName,
+              fieldDescriptor.getField().getName(),
+              fieldType.getDescriptor());
         }
+        mv.visitMethodInsn(INVOKEINTERFACE, READER_NAME, safeReadName, safeReadDescriptor, true);
 
         // Set the value on the field.
         mv.visitFieldInsn(
@@ -1958,14 +4315,109 @@ public final class AsmSchemaFactory implements SchemaFactory {
       if (needPacked) {
         mv.visitLdcInsn(packed ? 1 : 0);
       }
-      if (needObjectClass) {
-        mv.visitLdcInsn(CLASS_TYPE);
-      }
       mv.visitMethodInsn(
           INVOKESTATIC, SCHEMA_UTIL_NAME, unsafeReadName, unsafeReadDescriptor, false);
     }
   }
 
+  /**
+   * Looks up the {@link SchemaUtil} method that computes the serialized size of a field of the
+   * given type. The unsafe variant reads the field from the message at a given offset, while the
+   * safe variant is passed the value of the field.
+   */
+  private static Method getComputeSizeMethod(FieldType fieldType, boolean unsafe)
+      throws NoSuchMethodException {
+    // The size methods are named after the scalar type, e.g. computeSInt32ListSize.
+    final String typeName;
+    switch (fieldType) {
+      case BYTE_ARRAY:
+        typeName = "ByteArray";
+        break;
+      case BYTE_BUFFER:
+        typeName = "ByteBuffer";
+        break;
+      default:
+        String name =
+            fieldType.name().replace("_PACKED", "").replace("_LIST", "").replace("_ARRAY", "");
+        typeName = COMPUTE_SIZE_TYPE_NAMES[FieldType.valueOf(name).ordinal()];
+        break;
+    }
+    String methodName = (unsafe ? "unsafeCompute" : "compute") + typeName;
+    if (fieldType.isList()) {
+      methodName += "List";
+    } else if (fieldType.isArray()) {
+      methodName += "Array";
+    }
+    methodName += "Size";
+
+    List<Class<?>> parameterTypes = new ArrayList<Class<?>>();
+    parameterTypes.add(int.class);
+    if (unsafe) {
+      parameterTypes.add(Object.class);
+      parameterTypes.add(long.class);
+    } else {
+      parameterTypes.add(fieldType.getType());
+    }
+    parameterTypes.add(SizeCalculator.class);
+    if (fieldType.isList()) {
+      switch (fieldType.getJavaType()) {
+        case STRING:
+        case MESSAGE:
+        case BYTE_STRING:
+          break;
+        default:
+          parameterTypes.add(boolean.class);
+          break;
+      }
+    }
+    return SchemaUtil.class.getDeclaredMethod(
+        methodName, parameterTypes.toArray(new Class<?>[parameterTypes.size()]));
+  }
+
+  /**
+   * Returns the class of the list that is created for a repeated field of the given type. Scalar
+   * fields use the primitive lists, so that their elements are not boxed.
+   */
+  private static Class<?> getListClass(FieldType fieldType) {
+    switch (fieldType.getJavaType()) {
+      case INT:
+      case ENUM:
+        return IntArrayList.class;
+      case LONG:
+        return LongArrayList.class;
+      case FLOAT:
+        return FloatArrayList.class;
+      case DOUBLE:
+        return DoubleArrayList.class;
+      case BOOLEAN:
+        return BooleanArrayList.class;
+      default:
+        return ArrayList.class;
+    }
+  }
+
+  /**
+   * Returns the name of the {@link SchemaUtil} method that gets or creates the list for a repeated
+   * field of the given type, matching {@link #getListClass(FieldType)}.
+   */
+  private static String getOrCreateListMethodName(FieldType fieldType) {
+    switch (fieldType.getJavaType()) {
+      case INT:
+      case ENUM:
+        return "getOrCreateIntList";
+      case LONG:
+        return "getOrCreateLongList";
+      case FLOAT:
+        return "getOrCreateFloatList";
+      case DOUBLE:
+        return "getOrCreateDoubleList";
+      case BOOLEAN:
+        return "getOrCreateBooleanList";
+      default:
+        return "getOrCreateList";
+    }
+  }
+
   private static boolean isAccessible(
       boolean packagePrivateAccessSupported, FieldDescriptor fieldDescriptor) {
     int mod = fieldDescriptor.getField().getModifiers();
@@ -0,0 +1,74 @@
+package com.google.apps.tiktok.protobuf.experimental.schema.asm;
+
+import com.google.apps.tiktok.protobuf.experimental.InternalApi;
+import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
+import com.google.apps.tiktok.protobuf.experimental.schema.SchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.schema.SchemaRegistry;
+
+/**
+ * A factory of the schema classes that were generated when the application was built by the
+ * {@link SchemaClassGenerator}. The class of a schema is found by its name from the
+ * {@link SchemaNamingStrategy}, in the class loader of its message type. Schemas of message types
+ * without a precompiled class are created by a fallback factory, such as an
+ * {@link AsmSchemaFactory} that generates them at runtime.
+ *
+ * <p>A schema class generated at runtime can only be defined once, so a fallback factory that
+ * generates classes should be wrapped in a {@link SchemaRegistry}, as the default one is.
+ */
+@InternalApi
+public final class PrecompiledSchemaFactory implements SchemaFactory {
+  private final SchemaNamingStrategy schemaNamingStrategy;
+  private final SchemaFactory fallbackFactory;
+
+  /**
+   * Constructs the factory with default settings, which find the classes generated by the default
+   * {@link SchemaClassGenerator} and fall back to the default {@link AsmSchemaFactory}, through a
+   * {@link SchemaRegistry} so that each schema is only generated once.
+   */
+  public PrecompiledSchemaFactory() {
+    this(DefaultSchemaNamingStrategy.getInstance(), new SchemaRegistry(new AsmSchemaFactory()));
+  }
+
+  /**
+   * Constructs the factory.
+   *
+   * @param schemaNamingStrategy the strategy with which the schema classes were named.
+   * @param fallbackFactory the factory of the schemas of message types without a precompiled
+   * schema class.
+   */
+  public PrecompiledSchemaFactory(
+      SchemaNamingStrategy schemaNamingStrategy, SchemaFactory fallbackFactory) {
+    if (schemaNamingStrategy == null) {
+      throw new NullPointerException("schemaNamingStrategy");
+    }
+    if (fallbackFactory == null) {
+      throw new NullPointerException("fallbackFactory");
+    }
+    this.schemaNamingStrategy = schemaNamingStrategy;
+    this.fallbackFactory = fallbackFactory;
+  }
+
+  @Override
+  public <T> Schema<T> createSchema(Class<T> messageType) {
+    String schemaName = schemaNamingStrategy.schemaNameFor(messageType);
+    Class<?> schemaClass;
+    try {
+      schemaClass = Class.forName(schemaName, true, messageType.getClassLoader());
+    } catch (ClassNotFoundException e) {
+      return fallbackFactory.createSchema(messageType);
+    }
+    if (!Schema.class.isAssignableFrom(schemaClass)) {
+      throw new IllegalArgumentException(
+          String.format("Class %s is not a schema for %s", schemaName, messageType.getName()));
+    }
+    try {
+      @SuppressWarnings("unchecked")
+      Schema<T> schema = (Schema<T>) schemaClass.newInstance();
+      return schema;
+    } catch (InstantiationException e) {
+      throw new RuntimeException(e);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,301 @@
+package com.google.apps.tiktok.protobuf.experimental.schema.asm;
+
+import com.google.apps.tiktok.protobuf.experimental.InternalApi;
+import com.google.apps.tiktok.protobuf.experimental.ProtoField;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.AnnotationMessageDescriptorFactory;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.FieldDescriptor;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.MessageDescriptor;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.MessageDescriptorFactory;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.OneofDescriptor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Generates the schema classes of message types when an application is built, so that they are
+ * loaded like any other class when the application runs, rather than generated and injected by
+ * {@link AsmSchemaFactory}. The classes are found by a {@link PrecompiledSchemaFactory} using the
+ * same {@link SchemaNamingStrategy}.
+ *
+ * <p>The generated classes are placed in the package of their message types and access the fields
+ * of the messages directly, so they cannot be generated for messages with private fields. They
+ * must be generated again whenever the message types change.
+ *
+ * <p>The generator is run after the message types have been compiled, with the directory holding
+ * the compiled classes:
+ *
+ * <pre>
+ * java SchemaClassGenerator &lt;classes directory&gt; [&lt;message class name&gt;...]
+ * </pre>
+ *
+ * <p>The schema classes of the given message types are written to the directory, or if none are
+ * given, those of every class in the directory with a field annotated with {@link ProtoField}.
+ *
+ * <p>In a Maven build, the module holding the message types runs the generator in the
+ * {@code process-classes} phase, so that the schema classes are packaged with the messages. With
+ * the {@code exec-maven-plugin}, and the asm module as a dependency of the project:
+ *
+ * <pre>{@code
+ * <plugin>
+ *   <groupId>org.codehaus.mojo</groupId>
+ *   <artifactId>exec-maven-plugin</artifactId>
+ *   <executions>
+ *     <execution>
+ *       <id>generate-schema-classes</id>
+ *       <phase>process-classes</phase>
+ *       <goals>
+ *         <goal>java</goal>
+ *       </goals>
+ *       <configuration>
+ *         <mainClass>com.google.apps.tiktok.protobuf.experimental.schema.asm.SchemaClassGenerator</mainClass>
+ *         <arguments>
+ *           <argument>${project.build.outputDirectory}</argument>
+ *         </arguments>
+ *       </configuration>
+ *     </execution>
+ *   </executions>
+ * </plugin>
+ * }</pre>
+ *
+ * <p>The application then creates its schemas with a {@link PrecompiledSchemaFactory}.
+ */
+@InternalApi
+public final class SchemaClassGenerator {
+  private static final Logger logger = Logger.getLogger(SchemaClassGenerator.class.getName());
+
+  private static final String CLASS_FILE_SUFFIX = ".class";
+
+  private final MessageDescriptorFactory messageDescriptorFactory;
+  private final SchemaNamingStrategy schemaNamingStrategy;
+  private final AsmSchemaFactory schemaFactory;
+
+  /**
+   * Constructs the generator with default settings, which match those of the default
+   * {@link PrecompiledSchemaFactory}.
+   */
+  public SchemaClassGenerator() {
+    this(
+        AnnotationMessageDescriptorFactory.getValidatingInstance(),
+        DefaultSchemaNamingStrategy.getInstance(),
+        false);
+  }
+
+  /**
+   * Constructs the generator.
+   *
+   * @param messageDescriptorFactory a factory for generating descriptors for message classes.
+   * @param schemaNamingStrategy a strategy for naming the generated schema classes.
+   * @param minimizeGeneratedCode if {@code true}, the generated code calls utility methods where
+   * possible rather than being generated inline.
+   */
+  public SchemaClassGenerator(
+      MessageDescriptorFactory messageDescriptorFactory,
+      SchemaNamingStrategy schemaNamingStrategy,
+      boolean minimizeGeneratedCode) {
+    if (messageDescriptorFactory == null) {
+      throw new NullPointerException("messageDescriptorFactory");
+    }
+    if (schemaNamingStrategy == null) {
+      throw new NullPointerException("schemaNamingStrategy");
+    }
+    this.messageDescriptorFactory = messageDescriptorFactory;
+    this.schemaNamingStrategy = schemaNamingStrategy;
+    // Field offsets depend on the runtime, so they must never be built into the generated code.
+    this.schemaFactory =
+        new AsmSchemaFactory(
+            PrecompiledClassLoadingStrategy.INSTANCE,
+            messageDescriptorFactory,
+            schemaNamingStrategy,
+            minimizeGeneratedCode,
+            false,
+            false);
+  }
+
+  /**
+   * Generates the bytecode of the schema class of the given message type.
+   *
+   * @throws IllegalArgumentException if the message type has a field that cannot be accessed
+   * directly.
+   */
+  public byte[] createSchemaClass(Class<?> messageType) {
+    checkAccessible(messageType, messageDescriptorFactory.descriptorFor(messageType));
+    return schemaFactory.createSchemaClass(messageType);
+  }
+
+  /**
+   * Generates the schema class of the given message type and writes it to the given directory,
+   * in the subdirectory of its package.
+   *
+   * @return the file that was written.
+   */
+  public File writeSchemaClass(Class<?> messageType, File outputDirectory) throws IOException {
+    byte[] schemaClass = createSchemaClass(messageType);
+    String name = schemaNamingStrategy.schemaNameFor(messageType);
+    File file =
+        new File(outputDirectory, name.replace('.', File.separatorChar) + CLASS_FILE_SUFFIX);
+    File directory = file.getParentFile();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create directory " + directory);
+    }
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(schemaClass);
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  /**
+   * Generates the schema classes of all message types in the given directory of compiled classes,
+   * and writes them to the same directory. Message types whose fields cannot be accessed directly
+   * are skipped, so that their schemas are generated at runtime.
+   *
+   * @param classesDirectory the root directory of the compiled classes.
+   * @param classLoader a class loader from which the classes in the directory can be loaded.
+   * @return the message types whose schema classes were written.
+   */
+  public List<Class<?>> writeSchemaClasses(File classesDirectory, ClassLoader classLoader)
+      throws IOException {
+    List<String> classNames = new ArrayList<String>();
+    findClassNames(classesDirectory, "", classNames);
+    List<Class<?>> messageTypes = new ArrayList<Class<?>>();
+    for (String className : classNames) {
+      Class<?> type;
+      try {
+        type = Class.forName(className, false, classLoader);
+      } catch (ClassNotFoundException e) {
+        throw new IOException("Unable to load " + className + " from " + classesDirectory, e);
+      } catch (LinkageError e) {
+        // The class depends on classes that are not available, so it cannot be processed.
+        logger.log(Level.WARNING, "Skipping " + className, e);
+        continue;
+      }
+      if (!isMessageType(type)) {
+        continue;
+      }
+      try {
+        writeSchemaClass(type, classesDirectory);
+      } catch (IllegalArgumentException e) {
+        logger.log(Level.WARNING, "Skipping " + className, e);
+        continue;
+      }
+      messageTypes.add(type);
+    }
+    return messageTypes;
+  }
+
+  /**
+   * Indicates whether the given class is a concrete class with a field annotated with
+   * {@link ProtoField}.
+   */
+  static boolean isMessageType(Class<?> type) {
+    if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+      return false;
+    }
+    for (Field field : type.getDeclaredFields()) {
+      if (field.isAnnotationPresent(ProtoField.class)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void findClassNames(File directory, String packagePrefix, List<String> names) {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      String fileName = file.getName();
+      if (file.isDirectory()) {
+        findClassNames(file, packagePrefix + fileName + '.', names);
+      } else if (fileName.endsWith(CLASS_FILE_SUFFIX)) {
+        names.add(
+            packagePrefix + fileName.substring(0, fileName.length() - CLASS_FILE_SUFFIX.length()));
+      }
+    }
+  }
+
+  /**
+   * Checks that the generated schema can access all fields of the message directly, as a class
+   * in the same package.
+   */
+  private static void checkAccessible(Class<?> messageType, MessageDescriptor descriptor) {
+    for (FieldDescriptor fieldDescriptor : descriptor.getFieldDescriptors()) {
+      OneofDescriptor oneof = fieldDescriptor.getOneof();
+      if (oneof != null) {
+        checkAccessible(messageType, oneof.getCaseField());
+        checkAccessible(messageType, oneof.getValueField());
+      } else {
+        checkAccessible(messageType, fieldDescriptor.getField());
+      }
+    }
+    for (Field field : descriptor.getHasBitsFields()) {
+      checkAccessible(messageType, field);
+    }
+    if (descriptor.getUnknownFieldsField() != null) {
+      checkAccessible(messageType, descriptor.getUnknownFieldsField());
+    }
+  }
+
+  private static void checkAccessible(Class<?> messageType, Field field) {
+    if (Modifier.isPrivate(field.getModifiers())) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Unable to access private field %s in class %s from a precompiled schema",
+              field.getName(), messageType.getName()));
+    }
+  }
+
+  /**
+   * A strategy that only describes the access of classes that are compiled into the package of
+   * their message types. The generated classes are written out rather than loaded.
+   */
+  private static final class PrecompiledClassLoadingStrategy implements ClassLoadingStrategy {
+    static final PrecompiledClassLoadingStrategy INSTANCE = new PrecompiledClassLoadingStrategy();
+
+    @Override
+    public Class<?> loadSchemaClass(
+        Class<?> messageClass, String name, byte[] binaryRepresentation) {
+      throw new UnsupportedOperationException("Precompiled schema classes are not loaded");
+    }
+
+    @Override
+    public boolean isPackagePrivateAccessSupported() {
+      return true;
+    }
+  }
+
+  public static void main(String[] args) throws IOException, ClassNotFoundException {
+    if (args.length == 0) {
+      System.err.println(
+          "Usage: SchemaClassGenerator <classes directory> [<message class name>...]");
+      System.exit(1);
+    }
+    File classesDirectory = new File(args[0]);
+    ClassLoader classLoader =
+        new URLClassLoader(
+            new URL[] {classesDirectory.toURI().toURL()},
+            SchemaClassGenerator.class.getClassLoader());
+    SchemaClassGenerator generator = new SchemaClassGenerator();
+    if (args.length == 1) {
+      List<Class<?>> messageTypes = generator.writeSchemaClasses(classesDirectory, classLoader);
+      logger.info("Generated " + messageTypes.size() + " schema classes in " + classesDirectory);
+    } else {
+      for (int i = 1; i < args.length; ++i) {
+        generator.writeSchemaClass(Class.forName(args[i], false, classLoader), classesDirectory);
+      }
+    }
+  }
+}
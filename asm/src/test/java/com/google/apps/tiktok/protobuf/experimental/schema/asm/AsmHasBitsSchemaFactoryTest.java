@@ -0,0 +1,32 @@
+package com.google.apps.tiktok.protobuf.experimental.schema.asm;
+
+import com.google.apps.tiktok.protobuf.experimental.schema.AbstractHasBitsSchemaFactoryTest;
+import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
+import com.google.apps.tiktok.protobuf.experimental.schema.asm.AsmSchemaFactoryTest.CodeSize;
+import com.google.apps.tiktok.protobuf.experimental.schema.asm.AsmSchemaFactoryTest.Safety;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestHasBitsMessage;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.util.Collection;
+
+@RunWith(Parameterized.class)
+public class AsmHasBitsSchemaFactoryTest extends AbstractHasBitsSchemaFactoryTest {
+  @Parameters(name = "{0}, {1}")
+  public static Collection<Object[]> data() {
+    return AsmSchemaFactoryTest.data();
+  }
+
+  @Parameter public CodeSize codeSize;
+
+  @Parameter(value = 1)
+  public Safety safety;
+
+  @Override
+  protected Schema<TestHasBitsMessage> schema() {
+    return AsmSchemaFactoryTest.createSchema(TestHasBitsMessage.class, codeSize, safety);
+  }
+}
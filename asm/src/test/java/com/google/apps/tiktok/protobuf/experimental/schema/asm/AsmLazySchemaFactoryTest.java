@@ -0,0 +1,111 @@
+package com.google.apps.tiktok.protobuf.experimental.schema.asm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayReader;
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayWriter;
+import com.google.apps.tiktok.protobuf.experimental.binary.SizeCache;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.AnnotationMessageDescriptorFactory;
+import com.google.apps.tiktok.protobuf.experimental.schema.AbstractSchemaFactoryTest;
+import com.google.apps.tiktok.protobuf.experimental.schema.GenericSchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
+import com.google.apps.tiktok.protobuf.experimental.schema.asm.AsmSchemaFactoryTest.CodeSize;
+import com.google.apps.tiktok.protobuf.experimental.schema.asm.AsmSchemaFactoryTest.Safety;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessage;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessageFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+@RunWith(Parameterized.class)
+public class AsmLazySchemaFactoryTest extends AbstractSchemaFactoryTest {
+  @Parameters(name = "{0}, {1}")
+  public static Collection<Object[]> data() {
+    return AsmSchemaFactoryTest.data();
+  }
+
+  @Parameter public CodeSize codeSize;
+
+  @Parameter(value = 1)
+  public Safety safety;
+
+  private RecordingClassLoadingStrategy classLoadingStrategy;
+  private Schema<TestMessage> schema;
+
+  @Override
+  @Before
+  public void setup() {
+    classLoadingStrategy = new RecordingClassLoadingStrategy();
+    AsmSchemaFactory factory =
+        new AsmSchemaFactory(
+            classLoadingStrategy,
+            AnnotationMessageDescriptorFactory.getValidatingInstance(),
+            new RandomSchemaNamingStrategy(20),
+            codeSize == CodeSize.MINCODE,
+            safety == Safety.UNSAFE,
+            true);
+    schema = factory.createSchema(TestMessage.class);
+
+    super.setup();
+  }
+
+  @Override
+  protected Schema<TestMessage> schema() {
+    return schema;
+  }
+
+  @Test
+  public void creatingSchemaShouldNotLoadClasses() {
+    assertEquals(0, classLoadingStrategy.names.size());
+  }
+
+  @Test
+  public void writingShouldOnlyLoadWriteSchema() {
+    TestMessage msg = TestMessageFactory.newTestMessage();
+    schema.writeTo(msg, new ArrayWriter(new GenericSchemaFactory()));
+    schema.getSerializedSize(msg, new SizeCache(new GenericSchemaFactory()));
+    assertEquals(1, classLoadingStrategy.names.size());
+    assertTrue(classLoadingStrategy.names.get(0).endsWith("Write"));
+  }
+
+  @Test
+  public void readingShouldOnlyLoadReadSchema() {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    new GenericSchemaFactory()
+        .createSchema(TestMessage.class)
+        .writeTo(TestMessageFactory.newTestMessage(), writer);
+    schema.mergeFrom(
+        new TestMessage(), new ArrayReader(new GenericSchemaFactory(), writer.toByteArray()));
+    assertEquals(1, classLoadingStrategy.names.size());
+    assertTrue(classLoadingStrategy.names.get(0).endsWith("Read"));
+  }
+
+  /**
+   * Injects the schema classes, recording their names.
+   */
+  private static final class RecordingClassLoadingStrategy implements ClassLoadingStrategy {
+    final ClassLoadingStrategy delegate = new InjectionClassLoadingStrategy();
+    final List<String> names = new ArrayList<String>();
+
+    @Override
+    public Class<?> loadSchemaClass(
+        Class<?> messageClass, String name, byte[] binaryRepresentation) {
+      names.add(name);
+      return delegate.loadSchemaClass(messageClass, name, binaryRepresentation);
+    }
+
+    @Override
+    public boolean isPackagePrivateAccessSupported() {
+      return delegate.isPackagePrivateAccessSupported();
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package com.google.apps.tiktok.protobuf.experimental.schema.asm;
+
+import com.google.apps.tiktok.protobuf.experimental.schema.AbstractOneofSchemaFactoryTest;
+import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
+import com.google.apps.tiktok.protobuf.experimental.schema.asm.AsmSchemaFactoryTest.CodeSize;
+import com.google.apps.tiktok.protobuf.experimental.schema.asm.AsmSchemaFactoryTest.Safety;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestOneofMessage;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.util.Collection;
+
+@RunWith(Parameterized.class)
+public class AsmOneofSchemaFactoryTest extends AbstractOneofSchemaFactoryTest {
+  @Parameters(name = "{0}, {1}")
+  public static Collection<Object[]> data() {
+    return AsmSchemaFactoryTest.data();
+  }
+
+  @Parameter public CodeSize codeSize;
+
+  @Parameter(value = 1)
+  public Safety safety;
+
+  @Override
+  protected Schema<TestOneofMessage> schema() {
+    return AsmSchemaFactoryTest.createSchema(TestOneofMessage.class, codeSize, safety);
+  }
+}
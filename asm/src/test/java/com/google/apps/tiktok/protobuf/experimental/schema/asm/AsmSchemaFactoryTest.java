@@ -5,7 +5,6 @@ import com.google.apps.tiktok.protobuf.experimental.schema.AbstractSchemaFactory
 import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
 import com.google.apps.tiktok.protobuf.experimental.testing.TestMessage;
 
-import org.junit.Before;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameter;
@@ -42,27 +41,24 @@ public class AsmSchemaFactoryTest extends AbstractSchemaFactoryTest {
   @Parameter(value = 1)
   public Safety safety;
 
-  private Schema<TestMessage> schema;
-
   @Override
-  @Before
-  public void setup() {
-    boolean minimizeGeneratedCode = codeSize == CodeSize.MINCODE;
-    boolean preferUnsafe = safety == Safety.UNSAFE;
+  protected Schema<TestMessage> schema() {
+    return createSchema(TestMessage.class, codeSize, safety);
+  }
+
+  /**
+   * Generates and injects the schema of the given message type, with a randomly named class so that
+   * each test case generates a new schema.
+   */
+  static <T> Schema<T> createSchema(Class<T> messageType, CodeSize codeSize, Safety safety) {
     AsmSchemaFactory factory =
         new AsmSchemaFactory(
             new InjectionClassLoadingStrategy(),
             AnnotationMessageDescriptorFactory.getValidatingInstance(),
             new RandomSchemaNamingStrategy(20),
-            minimizeGeneratedCode,
-            preferUnsafe);
-    schema = factory.createSchema(TestMessage.class);
-
-    super.setup();
-  }
-
-  @Override
-  protected Schema<TestMessage> schema() {
-    return schema;
+            codeSize == CodeSize.MINCODE,
+            safety == Safety.UNSAFE,
+            false);
+    return factory.createSchema(messageType);
   }
 }
@@ -0,0 +1,115 @@
+package com.google.apps.tiktok.protobuf.experimental.schema.asm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayReader;
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayWriter;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.AnnotationMessageDescriptorFactory;
+import com.google.apps.tiktok.protobuf.experimental.schema.GenericSchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
+import com.google.apps.tiktok.protobuf.experimental.schema.SchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestHasBitsMessage;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+
+@RunWith(JUnit4.class)
+public class SchemaClassGeneratorTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final SchemaNamingStrategy namingStrategy = new RandomSchemaNamingStrategy(20);
+  private final SchemaClassGenerator generator =
+      new SchemaClassGenerator(
+          AnnotationMessageDescriptorFactory.getValidatingInstance(), namingStrategy, false);
+
+  @Test
+  public void precompiledSchemaShouldBeFound() {
+    // Define the class in the loader of the message, as if it had been compiled alongside it.
+    new InjectionClassLoadingStrategy()
+        .loadSchemaClass(
+            TestHasBitsMessage.class,
+            namingStrategy.schemaNameFor(TestHasBitsMessage.class),
+            generator.createSchemaClass(TestHasBitsMessage.class));
+    Schema<TestHasBitsMessage> schema =
+        new PrecompiledSchemaFactory(namingStrategy, new FailingSchemaFactory())
+            .createSchema(TestHasBitsMessage.class);
+    assertEquals(
+        namingStrategy.schemaNameFor(TestHasBitsMessage.class), schema.getClass().getName());
+
+    TestHasBitsMessage msg = TestHasBitsMessage.newDefaultValuesMessage();
+    msg.setStringField("hello");
+    ArrayWriter expected = new ArrayWriter(new GenericSchemaFactory());
+    new GenericSchemaFactory().createSchema(TestHasBitsMessage.class).writeTo(msg, expected);
+    ArrayWriter actual = new ArrayWriter(new GenericSchemaFactory());
+    schema.writeTo(msg, actual);
+    assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+
+    TestHasBitsMessage newMsg = new TestHasBitsMessage();
+    schema.mergeFrom(newMsg, new ArrayReader(new GenericSchemaFactory(), actual.toByteArray()));
+    assertEquals(msg, newMsg);
+  }
+
+  @Test
+  public void missingSchemaClassShouldFallBack() {
+    final Schema<TestHasBitsMessage> fallback =
+        new GenericSchemaFactory().createSchema(TestHasBitsMessage.class);
+    Schema<TestHasBitsMessage> schema =
+        new PrecompiledSchemaFactory(
+                namingStrategy,
+                new SchemaFactory() {
+                  @SuppressWarnings("unchecked")
+                  @Override
+                  public <T> Schema<T> createSchema(Class<T> messageType) {
+                    return (Schema<T>) fallback;
+                  }
+                })
+            .createSchema(TestHasBitsMessage.class);
+    assertSame(fallback, schema);
+  }
+
+  @Test
+  public void defaultFallbackShouldGenerateSchemaOnce() {
+    PrecompiledSchemaFactory factory = new PrecompiledSchemaFactory();
+    Schema<TestMessage> schema = factory.createSchema(TestMessage.class);
+    assertSame(schema, factory.createSchema(TestMessage.class));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void privateFieldsShouldBeRejected() {
+    generator.createSchemaClass(TestMessage.class);
+  }
+
+  @Test
+  public void schemaClassShouldBeWrittenToPackageDirectory() throws Exception {
+    File file = generator.writeSchemaClass(TestHasBitsMessage.class, folder.getRoot());
+    String name = namingStrategy.schemaNameFor(TestHasBitsMessage.class);
+    assertEquals(
+        new File(folder.getRoot(), name.replace('.', File.separatorChar) + ".class"), file);
+    assertEquals(generator.createSchemaClass(TestHasBitsMessage.class).length, file.length());
+  }
+
+  @Test
+  public void messageTypesShouldBeIdentifiedByAnnotations() {
+    assertTrue(SchemaClassGenerator.isMessageType(TestHasBitsMessage.class));
+    assertTrue(SchemaClassGenerator.isMessageType(TestMessage.InnerMessage.class));
+    assertFalse(SchemaClassGenerator.isMessageType(SchemaClassGeneratorTest.class));
+    assertFalse(SchemaClassGenerator.isMessageType(Schema.class));
+  }
+
+  private static final class FailingSchemaFactory implements SchemaFactory {
+    @Override
+    public <T> Schema<T> createSchema(Class<T> messageType) {
+      throw new AssertionError("Unexpected fallback for " + messageType);
+    }
+  }
+}
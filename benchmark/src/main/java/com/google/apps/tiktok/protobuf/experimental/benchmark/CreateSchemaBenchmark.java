@@ -33,6 +33,18 @@ public class CreateSchemaBenchmark {
         return ((AsmSchemaFactory) factory).createSchemaClass(TestMessage.class);
       }
     },
+    ASM_INLINE_WRITE_ONLY(
+            new AsmSchemaFactory(
+                    new InjectionClassLoadingStrategy(),
+                    AnnotationMessageDescriptorFactory.getNonValidatingInstance(),
+                    new BenchmarkSchemaNamingStrategy(TestMessage.class.getName() + "InlineSchema"),
+                    false,
+                    false)) {
+      @Override
+      byte[] createSchema() {
+        return ((AsmSchemaFactory) factory).createWriteSchemaClass(TestMessage.class);
+      }
+    },
     ASM_MINCODE(
             new AsmSchemaFactory(
                     new InjectionClassLoadingStrategy(),
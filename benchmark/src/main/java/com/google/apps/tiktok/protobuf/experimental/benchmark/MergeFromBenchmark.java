@@ -1,5 +1,10 @@
 package com.google.apps.tiktok.protobuf.experimental.benchmark;
 
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayReader;
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayWriter;
+import com.google.apps.tiktok.protobuf.experimental.binary.DirectReader;
+import com.google.apps.tiktok.protobuf.experimental.binary.SegmentedReader;
 import com.google.apps.tiktok.protobuf.experimental.descriptor.AnnotationMessageDescriptorFactory;
 import com.google.apps.tiktok.protobuf.experimental.schema.GenericSchemaFactory;
 import com.google.apps.tiktok.protobuf.experimental.schema.Reader;
@@ -18,6 +23,8 @@ import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.State;
 
+import java.nio.ByteBuffer;
+
 @State(Scope.Benchmark)
 @Fork(1)
 public class MergeFromBenchmark {
@@ -30,6 +37,7 @@ public class MergeFromBenchmark {
             AnnotationMessageDescriptorFactory.getValidatingInstance(),
             new BenchmarkSchemaNamingStrategy(TestMessage.class.getName() + "InlineSafeSchema"),
             false,
+            false,
             false)),
     ASM_INLINE_UNSAFE(
         new AsmSchemaFactory(
@@ -37,13 +45,15 @@ public class MergeFromBenchmark {
             AnnotationMessageDescriptorFactory.getValidatingInstance(),
             new BenchmarkSchemaNamingStrategy(TestMessage.class.getName() + "InlineUnsafeSchema"),
             false,
-            true)),
+            true,
+            false)),
     ASM_MINCODE_SAFE(
         new AsmSchemaFactory(
             new InjectionClassLoadingStrategy(),
             AnnotationMessageDescriptorFactory.getValidatingInstance(),
             new BenchmarkSchemaNamingStrategy(TestMessage.class.getName() + "MinCodeSafeSchema"),
             true,
+            false,
             false)),
     ASM_MINCODE_UNSAFE(
         new AsmSchemaFactory(
@@ -51,7 +61,8 @@ public class MergeFromBenchmark {
             AnnotationMessageDescriptorFactory.getValidatingInstance(),
             new BenchmarkSchemaNamingStrategy(TestMessage.class.getName() + "MinCodeUnsafeSchema"),
             true,
-            true));
+            true,
+            false));
 
     SchemaType(SchemaFactory factory) {
       this.factory = factory;
@@ -70,10 +81,66 @@ public class MergeFromBenchmark {
 
   private TestMessage msg = TestMessageFactory.newTestMessage();
   private TestMessageReader reader = new TestMessageReader(msg);
+  private byte[] serialized = serialize();
+  private ByteBuffer serializedDirect = toDirectBuffer(serialized);
+  private ByteString serializedRope = toRope(serialized, 64);
 
   @Benchmark
   public void mergeFrom() {
     schemaType.mergeFrom(new TestMessage(), reader);
     reader.reset();
   }
+
+  @Benchmark
+  public TestMessage mergeFromArray() {
+    TestMessage message = new TestMessage();
+    schemaType.mergeFrom(message, new ArrayReader(new GenericSchemaFactory(), serialized));
+    return message;
+  }
+
+  @Benchmark
+  public TestMessage mergeFromArrayAliased() {
+    TestMessage message = new TestMessage();
+    schemaType.mergeFrom(
+        message,
+        new ArrayReader(new GenericSchemaFactory(), serialized, 0, serialized.length, true));
+    return message;
+  }
+
+  @Benchmark
+  public TestMessage mergeFromDirectBuffer() {
+    TestMessage message = new TestMessage();
+    schemaType.mergeFrom(message, new DirectReader(new GenericSchemaFactory(), serializedDirect));
+    return message;
+  }
+
+  @Benchmark
+  public TestMessage mergeFromRope() {
+    TestMessage message = new TestMessage();
+    schemaType.mergeFrom(message, new SegmentedReader(new GenericSchemaFactory(), serializedRope));
+    return message;
+  }
+
+  private static ByteString toRope(byte[] bytes, int segmentSize) {
+    ByteString rope = ByteString.EMPTY;
+    for (int i = 0; i < bytes.length; i += segmentSize) {
+      rope = rope.concat(ByteString.copyFrom(bytes, i, Math.min(segmentSize, bytes.length - i)));
+    }
+    return rope;
+  }
+
+  private static ByteBuffer toDirectBuffer(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+    buffer.put(bytes);
+    buffer.flip();
+    return buffer;
+  }
+
+  private static byte[] serialize() {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    new GenericSchemaFactory()
+        .createSchema(TestMessage.class)
+        .writeTo(TestMessageFactory.newTestMessage(), writer);
+    return writer.toByteArray();
+  }
 }
@@ -0,0 +1,67 @@
+package com.google.apps.tiktok.protobuf.experimental.benchmark;
+
+import com.google.apps.tiktok.protobuf.experimental.FloatArrayList;
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayReader;
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayWriter;
+import com.google.apps.tiktok.protobuf.experimental.schema.GenericSchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.schema.Reader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the encoding and decoding of a packed {@code float} field held in either a boxed
+ * {@link ArrayList} or a {@link FloatArrayList}, which is copied in bulk.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class PackedFloatBenchmark {
+  private static final int NUM_VALUES = 4096;
+
+  @Param({"BOXED", "PRIMITIVE"})
+  public String listType;
+
+  private final ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+  private List<Float> values;
+  private byte[] bytes;
+
+  @Setup
+  public void setup() {
+    values = newList();
+    Random random = new Random(1);
+    for (int i = 0; i < NUM_VALUES; ++i) {
+      values.add(random.nextFloat());
+    }
+    writer.reset();
+    writer.writeFloatList(1, values, true);
+    bytes = writer.toByteArray();
+  }
+
+  @Benchmark
+  public int encode() {
+    writer.reset();
+    writer.writeFloatList(1, values, true);
+    return writer.getTotalBytesWritten();
+  }
+
+  @Benchmark
+  public List<Float> decode() {
+    Reader reader = new ArrayReader(new GenericSchemaFactory(), bytes);
+    List<Float> target = newList();
+    reader.getFieldNumber();
+    reader.readFloatList(target, true);
+    return target;
+  }
+
+  private List<Float> newList() {
+    return "PRIMITIVE".equals(listType) ? new FloatArrayList() : new ArrayList<Float>();
+  }
+}
@@ -0,0 +1,78 @@
+package com.google.apps.tiktok.protobuf.experimental.benchmark;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.benchmark.WriteToBenchmark.SchemaType;
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayWriter;
+import com.google.apps.tiktok.protobuf.experimental.binary.DirectWriter;
+import com.google.apps.tiktok.protobuf.experimental.binary.ReverseWriter;
+import com.google.apps.tiktok.protobuf.experimental.binary.StreamWriter;
+import com.google.apps.tiktok.protobuf.experimental.schema.GenericSchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessage;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessageFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Measures serialization of a {@link TestMessage} to the protobuf binary wire format. Unlike
+ * {@link WriteToBenchmark}, this includes the cost of encoding the fields.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class SerializeBenchmark {
+  @Param public SchemaType schemaType;
+
+  private TestMessage msg = TestMessageFactory.newTestMessage();
+
+  // The schema naming strategies used by the benchmark always return the same name, so the ASM
+  // factories can't be used for the nested messages.
+  private ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+  private ReverseWriter reverseWriter = new ReverseWriter(new GenericSchemaFactory());
+  private DirectWriter directWriter =
+      DirectWriter.isSupported()
+          ? new DirectWriter(new GenericSchemaFactory(), ByteBuffer.allocateDirect(64 * 1024))
+          : null;
+
+  @Benchmark
+  public byte[] serializeToArray() {
+    writer.reset();
+    schemaType.writeTo(msg, writer);
+    return writer.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] serializeReverseToArray() {
+    reverseWriter.reset();
+    schemaType.writeTo(msg, reverseWriter);
+    return reverseWriter.toByteArray();
+  }
+
+  @Benchmark
+  public ByteString serializeReverseToByteString() {
+    schemaType.writeTo(msg, reverseWriter);
+    return reverseWriter.toByteString();
+  }
+
+  @Benchmark
+  public byte[] serializeToStream() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StreamWriter streamWriter = new StreamWriter(new GenericSchemaFactory(), out);
+    schemaType.writeTo(msg, streamWriter);
+    streamWriter.flush();
+    return out.toByteArray();
+  }
+
+  @Benchmark
+  public int serializeToDirectBuffer() {
+    directWriter.reset();
+    schemaType.writeTo(msg, directWriter);
+    return directWriter.getTotalBytesWritten();
+  }
+}
@@ -0,0 +1,112 @@
+package com.google.apps.tiktok.protobuf.experimental.benchmark;
+
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayReader;
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayWriter;
+import com.google.apps.tiktok.protobuf.experimental.binary.DirectReader;
+import com.google.apps.tiktok.protobuf.experimental.binary.DirectWriter;
+import com.google.apps.tiktok.protobuf.experimental.schema.GenericSchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.schema.Reader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Measures the encoding and decoding of {@code uint64} fields whose values have a given varint
+ * size, or a random mix of sizes.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class VarintBenchmark {
+  private static final int NUM_VALUES = 1024;
+
+  @Param({"1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "MIXED"})
+  public String size;
+
+  private final long[] values = new long[NUM_VALUES];
+  private final ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+  private DirectWriter directWriter;
+  private byte[] bytes;
+  private ByteBuffer directBuffer;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(1);
+    for (int i = 0; i < values.length; ++i) {
+      int valueSize = "MIXED".equals(size) ? random.nextInt(10) + 1 : Integer.parseInt(size);
+      values[i] = randomValue(valueSize, random);
+    }
+
+    writer.reset();
+    writeValues(writer);
+    bytes = writer.toByteArray();
+
+    if (DirectWriter.isSupported()) {
+      directBuffer = ByteBuffer.allocateDirect(bytes.length);
+      directBuffer.put(bytes);
+      directBuffer.flip();
+      directWriter =
+          new DirectWriter(new GenericSchemaFactory(), ByteBuffer.allocateDirect(64 * 1024));
+    }
+  }
+
+  @Benchmark
+  public int encodeToArray() {
+    writer.reset();
+    writeValues(writer);
+    return writer.getTotalBytesWritten();
+  }
+
+  @Benchmark
+  public int encodeToDirectBuffer() {
+    directWriter.reset();
+    for (long value : values) {
+      directWriter.writeUInt64(1, value);
+    }
+    return directWriter.getTotalBytesWritten();
+  }
+
+  @Benchmark
+  public long decodeFromArray() {
+    return readValues(new ArrayReader(new GenericSchemaFactory(), bytes));
+  }
+
+  @Benchmark
+  public long decodeFromDirectBuffer() {
+    return readValues(new DirectReader(new GenericSchemaFactory(), directBuffer));
+  }
+
+  private void writeValues(ArrayWriter target) {
+    for (long value : values) {
+      target.writeUInt64(1, value);
+    }
+  }
+
+  private static long readValues(Reader reader) {
+    long sum = 0;
+    while (reader.getFieldNumber() != Reader.READ_DONE) {
+      sum += reader.readUInt64();
+    }
+    return sum;
+  }
+
+  /**
+   * Returns a random value whose varint encoding has exactly the given number of bytes.
+   */
+  private static long randomValue(int size, Random random) {
+    if (size == 10) {
+      // Only values with the top bit set need all 10 bytes.
+      return random.nextLong() | Long.MIN_VALUE;
+    }
+    int bits = size * 7;
+    long value = random.nextLong() & (-1L >>> (64 - bits));
+    // Set the highest bit of the range so that the value needs all of the bytes.
+    return value | (1L << (bits - 1));
+  }
+}
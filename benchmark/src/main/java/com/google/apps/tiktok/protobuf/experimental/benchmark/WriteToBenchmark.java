@@ -2,6 +2,7 @@ package com.google.apps.tiktok.protobuf.experimental.benchmark;
 
 import com.google.apps.tiktok.protobuf.experimental.ByteString;
 import com.google.apps.tiktok.protobuf.experimental.descriptor.AnnotationMessageDescriptorFactory;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.MapEntryDescriptor;
 import com.google.apps.tiktok.protobuf.experimental.schema.GenericSchemaFactory;
 import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
 import com.google.apps.tiktok.protobuf.experimental.schema.SchemaFactory;
@@ -19,7 +20,9 @@ import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.infra.Blackhole;
 
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
 
 @State(Scope.Benchmark)
 @Fork(1)
@@ -33,6 +36,7 @@ public class WriteToBenchmark {
             AnnotationMessageDescriptorFactory.getValidatingInstance(),
             new BenchmarkSchemaNamingStrategy(TestMessage.class.getName() + "InlineSafeSchema"),
             false,
+            false,
             false)),
     ASM_INLINE_UNSAFE(
         new AsmSchemaFactory(
@@ -40,13 +44,15 @@ public class WriteToBenchmark {
             AnnotationMessageDescriptorFactory.getValidatingInstance(),
             new BenchmarkSchemaNamingStrategy(TestMessage.class.getName() + "InlineUnsafeSchema"),
             false,
-            true)),
+            true,
+            false)),
     ASM_MINCODE_SAFE(
         new AsmSchemaFactory(
             new InjectionClassLoadingStrategy(),
             AnnotationMessageDescriptorFactory.getValidatingInstance(),
             new BenchmarkSchemaNamingStrategy(TestMessage.class.getName() + "MinCodeSafeSchema"),
             true,
+            false,
             false)),
     ASM_MINCODE_UNSAFE(
         new AsmSchemaFactory(
@@ -54,7 +60,8 @@ public class WriteToBenchmark {
             AnnotationMessageDescriptorFactory.getValidatingInstance(),
             new BenchmarkSchemaNamingStrategy(TestMessage.class.getName() + "MinCodeUnsafeSchema"),
             true,
-            true));
+            true,
+            false));
 
     SchemaType(SchemaFactory factory) {
       this.factory = factory;
@@ -81,6 +88,7 @@ public class WriteToBenchmark {
   }
 
   private static final class TestWriter implements Writer {
+    private final SchemaFactory schemaFactory = new GenericSchemaFactory();
     Blackhole bh;
 
     @Override
@@ -180,7 +188,7 @@ public class WriteToBenchmark {
     }
 
     @Override
-    public void writeMessage(int fieldNumber, Object value) {
+    public <T> void writeMessage(int fieldNumber, T value, Schema<T> schema) {
       bh.consume(fieldNumber);
       bh.consume(value);
     }
@@ -282,9 +290,115 @@ public class WriteToBenchmark {
     }
 
     @Override
-    public void writeMessageList(int fieldNumber, List<?> value) {
+    public <T> void writeMessageList(int fieldNumber, List<? extends T> value, Schema<T> schema) {
+      bh.consume(fieldNumber);
+      bh.consume(value);
+    }
+
+    @Override
+    public void writeDoubleArray(int fieldNumber, double[] value) {
+      bh.consume(fieldNumber);
+      bh.consume(value);
+    }
+
+    @Override
+    public void writeFloatArray(int fieldNumber, float[] value) {
+      bh.consume(fieldNumber);
+      bh.consume(value);
+    }
+
+    @Override
+    public void writeInt64Array(int fieldNumber, long[] value) {
+      bh.consume(fieldNumber);
+      bh.consume(value);
+    }
+
+    @Override
+    public void writeUInt64Array(int fieldNumber, long[] value) {
+      bh.consume(fieldNumber);
+      bh.consume(value);
+    }
+
+    @Override
+    public void writeInt32Array(int fieldNumber, int[] value) {
+      bh.consume(fieldNumber);
+      bh.consume(value);
+    }
+
+    @Override
+    public void writeFixed64Array(int fieldNumber, long[] value) {
+      bh.consume(fieldNumber);
+      bh.consume(value);
+    }
+
+    @Override
+    public void writeFixed32Array(int fieldNumber, int[] value) {
+      bh.consume(fieldNumber);
+      bh.consume(value);
+    }
+
+    @Override
+    public void writeUInt32Array(int fieldNumber, int[] value) {
       bh.consume(fieldNumber);
       bh.consume(value);
     }
+
+    @Override
+    public void writeSFixed32Array(int fieldNumber, int[] value) {
+      bh.consume(fieldNumber);
+      bh.consume(value);
+    }
+
+    @Override
+    public void writeSFixed64Array(int fieldNumber, long[] value) {
+      bh.consume(fieldNumber);
+      bh.consume(value);
+    }
+
+    @Override
+    public void writeSInt32Array(int fieldNumber, int[] value) {
+      bh.consume(fieldNumber);
+      bh.consume(value);
+    }
+
+    @Override
+    public void writeSInt64Array(int fieldNumber, long[] value) {
+      bh.consume(fieldNumber);
+      bh.consume(value);
+    }
+
+    @Override
+    public void writeByteArray(int fieldNumber, byte[] value) {
+      bh.consume(fieldNumber);
+      bh.consume(value);
+    }
+
+    @Override
+    public void writeByteBuffer(int fieldNumber, ByteBuffer value) {
+      bh.consume(fieldNumber);
+      bh.consume(value);
+    }
+
+    @Override
+    public void writeMap(int fieldNumber, Map<?, ?> value, MapEntryDescriptor mapEntry) {
+      bh.consume(fieldNumber);
+      bh.consume(value);
+      bh.consume(mapEntry);
+    }
+
+    @Override
+    public void writeUnknownFields(ByteString value) {
+      bh.consume(value);
+    }
+
+    @Override
+    public <T> Schema<T> schemaFor(Class<T> messageType) {
+      return schemaFactory.createSchema(messageType);
+    }
+
+    @Override
+    public SchemaFactory getSchemaFactory() {
+      return schemaFactory;
+    }
   }
 }
@@ -0,0 +1,108 @@
+package com.google.apps.tiktok.protobuf.experimental;
+
+import java.util.Arrays;
+
+/**
+ * A list of {@code boolean} values backed by a {@code boolean[]}, for repeated {@code bool}
+ * fields. The elements may be accessed without boxing through {@link #getBoolean(int)},
+ * {@link #setBoolean(int, boolean)} and {@link #addBoolean(boolean)}.
+ */
+@ExperimentalApi
+public final class BooleanArrayList extends PrimitiveArrayList<Boolean> {
+  private boolean[] array;
+
+  public BooleanArrayList() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public BooleanArrayList(int initialCapacity) {
+    // The layout of a boolean[] is not specified, so elements are never copied in bulk.
+    super(1, -1);
+    if (initialCapacity < 0) {
+      throw new IllegalArgumentException("initialCapacity must be >= 0: " + initialCapacity);
+    }
+    array = new boolean[initialCapacity];
+  }
+
+  public boolean getBoolean(int index) {
+    checkElementIndex(index);
+    return array[index];
+  }
+
+  /**
+   * Replaces the element at {@code index}.
+   *
+   * @return the previous element.
+   */
+  public boolean setBoolean(int index, boolean value) {
+    checkElementIndex(index);
+    final boolean previous = array[index];
+    array[index] = value;
+    return previous;
+  }
+
+  public void addBoolean(boolean value) {
+    if (size == array.length) {
+      ensureCapacity(size + 1);
+    }
+    array[size++] = value;
+    ++modCount;
+  }
+
+  @Override
+  public Boolean get(int index) {
+    return getBoolean(index);
+  }
+
+  @Override
+  public Boolean set(int index, Boolean element) {
+    return setBoolean(index, element);
+  }
+
+  @Override
+  public boolean add(Boolean element) {
+    addBoolean(element);
+    return true;
+  }
+
+  @Override
+  public void add(int index, Boolean element) {
+    checkPositionIndex(index);
+    final boolean value = element;
+    insertGap(index);
+    array[index] = value;
+  }
+
+  @Override
+  public Boolean remove(int index) {
+    checkElementIndex(index);
+    final boolean previous = array[index];
+    removeGap(index);
+    return previous;
+  }
+
+  @Override
+  Object array() {
+    return array;
+  }
+
+  @Override
+  int capacity() {
+    return array.length;
+  }
+
+  @Override
+  void resize(int newCapacity) {
+    array = Arrays.copyOf(array, newCapacity);
+  }
+
+  @Override
+  long getBits(int index) {
+    return array[index] ? 1 : 0;
+  }
+
+  @Override
+  void setBits(int index, long bits) {
+    array[index] = bits != 0;
+  }
+}
@@ -0,0 +1,143 @@
+package com.google.apps.tiktok.protobuf.experimental;
+
+import com.google.apps.tiktok.protobuf.experimental.util.UnsafeUtil;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * A list of {@code double} values backed by a {@code double[]}, for repeated {@code double}
+ * fields. The elements may be accessed without boxing through {@link #getDouble(int)},
+ * {@link #setDouble(int, double)} and {@link #addDouble(double)}.
+ */
+@ExperimentalApi
+public final class DoubleArrayList extends PrimitiveArrayList<Double> {
+  private static final long DOUBLE_ARRAY_BASE_OFFSET =
+      UnsafeUtil.isSupported() ? UnsafeUtil.arrayBaseOffset(double[].class) : -1;
+
+  private static final double[] EMPTY_ARRAY = new double[0];
+
+  private double[] array;
+
+  public DoubleArrayList() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public DoubleArrayList(int initialCapacity) {
+    super(8, DOUBLE_ARRAY_BASE_OFFSET);
+    if (initialCapacity < 0) {
+      throw new IllegalArgumentException("initialCapacity must be >= 0: " + initialCapacity);
+    }
+    array = initialCapacity == 0 ? EMPTY_ARRAY : new double[initialCapacity];
+  }
+
+  /**
+   * Returns a list of the elements of {@code array}, or an empty list if it is {@code null}. The
+   * list is backed by the array until it grows, so appending to the list never modifies the array.
+   */
+  @InternalApi
+  public static DoubleArrayList wrap(@Nullable double[] array) {
+    final DoubleArrayList list = new DoubleArrayList(0);
+    if (array != null) {
+      list.array = array;
+      list.size = array.length;
+    }
+    return list;
+  }
+
+  /**
+   * Returns the elements as an array and leaves this list empty. The backing array is returned
+   * without copying if the list fills it.
+   */
+  @InternalApi
+  public double[] detachArray() {
+    final double[] result = size == array.length ? array : Arrays.copyOf(array, size);
+    array = EMPTY_ARRAY;
+    size = 0;
+    ++modCount;
+    return result;
+  }
+
+  public double getDouble(int index) {
+    checkElementIndex(index);
+    return array[index];
+  }
+
+  /**
+   * Replaces the element at {@code index}.
+   *
+   * @return the previous element.
+   */
+  public double setDouble(int index, double value) {
+    checkElementIndex(index);
+    final double previous = array[index];
+    array[index] = value;
+    return previous;
+  }
+
+  public void addDouble(double value) {
+    if (size == array.length) {
+      ensureCapacity(size + 1);
+    }
+    array[size++] = value;
+    ++modCount;
+  }
+
+  @Override
+  public Double get(int index) {
+    return getDouble(index);
+  }
+
+  @Override
+  public Double set(int index, Double element) {
+    return setDouble(index, element);
+  }
+
+  @Override
+  public boolean add(Double element) {
+    addDouble(element);
+    return true;
+  }
+
+  @Override
+  public void add(int index, Double element) {
+    checkPositionIndex(index);
+    final double value = element;
+    insertGap(index);
+    array[index] = value;
+  }
+
+  @Override
+  public Double remove(int index) {
+    checkElementIndex(index);
+    final double previous = array[index];
+    removeGap(index);
+    return previous;
+  }
+
+  @Override
+  Object array() {
+    return array;
+  }
+
+  @Override
+  int capacity() {
+    return array.length;
+  }
+
+  @Override
+  void resize(int newCapacity) {
+    array = Arrays.copyOf(array, newCapacity);
+  }
+
+  @Override
+  long getBits(int index) {
+    return Double.doubleToRawLongBits(array[index]);
+  }
+
+  @Override
+  void setBits(int index, long bits) {
+    array[index] = Double.longBitsToDouble(bits);
+  }
+}
@@ -4,12 +4,23 @@ import java.lang.reflect.Field;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
 /**
  * Enumeration identifying all relevant type information for a protobuf field.
+ *
+ * <p>Repeated scalar fields may be held in a {@link List} or, for the numeric types, in a primitive
+ * array such as {@code int[]}. Array fields are always written in packed form, but both forms are
+ * accepted when reading. Fields of type {@code bytes} may be held in a {@link ByteString}, a
+ * {@code byte[]} or a {@link ByteBuffer}.
+ *
+ * <p>Map fields are held in a {@link Map}, with the types of their keys and values given by a
+ * {@link com.google.apps.tiktok.protobuf.experimental.descriptor.MapEntryDescriptor}. Maps with
+ * 32-bit or 64-bit integer keys are created as an {@link IntKeyHashMap} or {@link LongKeyHashMap}.
  */
 public enum FieldType {
   DOUBLE(0, double.class, JavaType.DOUBLE, false),
@@ -59,7 +70,22 @@ public enum FieldType {
   SFIXED32_LIST_PACKED(44, List.class, JavaType.INT, true),
   SFIXED64_LIST_PACKED(45, List.class, JavaType.LONG, true),
   SINT32_LIST_PACKED(46, List.class, JavaType.INT, true),
-  SINT64_LIST_PACKED(47, List.class, JavaType.LONG, true);
+  SINT64_LIST_PACKED(47, List.class, JavaType.LONG, true),
+  DOUBLE_ARRAY(48, double[].class, JavaType.DOUBLE, true),
+  FLOAT_ARRAY(49, float[].class, JavaType.FLOAT, true),
+  INT64_ARRAY(50, long[].class, JavaType.LONG, true),
+  UINT64_ARRAY(51, long[].class, JavaType.LONG, true),
+  INT32_ARRAY(52, int[].class, JavaType.INT, true),
+  FIXED64_ARRAY(53, long[].class, JavaType.LONG, true),
+  FIXED32_ARRAY(54, int[].class, JavaType.INT, true),
+  UINT32_ARRAY(55, int[].class, JavaType.INT, true),
+  SFIXED32_ARRAY(56, int[].class, JavaType.INT, true),
+  SFIXED64_ARRAY(57, long[].class, JavaType.LONG, true),
+  SINT32_ARRAY(58, int[].class, JavaType.INT, true),
+  SINT64_ARRAY(59, long[].class, JavaType.LONG, true),
+  BYTE_ARRAY(60, byte[].class, JavaType.BYTE_STRING, false),
+  BYTE_BUFFER(61, ByteBuffer.class, JavaType.BYTE_STRING, false),
+  MAP(62, Map.class, JavaType.MESSAGE, false);
 
   FieldType(int id, Class<?> type, JavaType javaType, boolean packed) {
     this.id = id;
@@ -67,6 +93,8 @@ public enum FieldType {
     this.javaType = javaType;
     this.packed = packed;
     list = type == List.class;
+    array = type.isArray() && javaType != JavaType.BYTE_STRING;
+    map = type == Map.class;
 
     Class<?> elementType = null;
     if (list) {
@@ -103,6 +131,8 @@ public enum FieldType {
   private final int id;
   private final boolean packed;
   private final boolean list;
+  private final boolean array;
+  private final boolean map;
   private final Class<?> listElementType;
 
   /**
@@ -122,8 +152,8 @@ public enum FieldType {
   }
 
   /**
-   * Gets the {@link JavaType} for this field. For lists, this identifies the type of the elements
-   * contained within the list.
+   * Gets the {@link JavaType} for this field. For lists and arrays, this identifies the type of the
+   * elements contained within the list or array.
    */
   public JavaType getJavaType() {
     return javaType;
@@ -143,12 +173,31 @@ public enum FieldType {
     return list;
   }
 
+  /**
+   * Indicates whether this field represents a list of values held in a primitive array.
+   */
+  public boolean isArray() {
+    return array;
+  }
+
+  /**
+   * Indicates whether this field represents a map, whose entries are encoded as a repeated message
+   * with the key in field 1 and the value in field 2.
+   */
+  public boolean isMap() {
+    return map;
+  }
+
   /**
    * Indicates whether or not this {@link FieldType} can be applied to the given {@link Field}.
    */
   public boolean isValidForField(Field field) {
     if (list) {
       return isValidForList(field);
+    } else if (type.isArray() || type == ByteBuffer.class) {
+      // Schemas pass the value of the field directly to readers and writers, so it must be
+      // declared with exactly this type.
+      return field.getType() == type;
     } else {
       return type.isAssignableFrom(field.getType());
     }
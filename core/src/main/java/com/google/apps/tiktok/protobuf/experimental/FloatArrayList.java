@@ -0,0 +1,143 @@
+package com.google.apps.tiktok.protobuf.experimental;
+
+import com.google.apps.tiktok.protobuf.experimental.util.UnsafeUtil;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * A list of {@code float} values backed by a {@code float[]}, for repeated {@code float}
+ * fields. The elements may be accessed without boxing through {@link #getFloat(int)},
+ * {@link #setFloat(int, float)} and {@link #addFloat(float)}.
+ */
+@ExperimentalApi
+public final class FloatArrayList extends PrimitiveArrayList<Float> {
+  private static final long FLOAT_ARRAY_BASE_OFFSET =
+      UnsafeUtil.isSupported() ? UnsafeUtil.arrayBaseOffset(float[].class) : -1;
+
+  private static final float[] EMPTY_ARRAY = new float[0];
+
+  private float[] array;
+
+  public FloatArrayList() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public FloatArrayList(int initialCapacity) {
+    super(4, FLOAT_ARRAY_BASE_OFFSET);
+    if (initialCapacity < 0) {
+      throw new IllegalArgumentException("initialCapacity must be >= 0: " + initialCapacity);
+    }
+    array = initialCapacity == 0 ? EMPTY_ARRAY : new float[initialCapacity];
+  }
+
+  /**
+   * Returns a list of the elements of {@code array}, or an empty list if it is {@code null}. The
+   * list is backed by the array until it grows, so appending to the list never modifies the array.
+   */
+  @InternalApi
+  public static FloatArrayList wrap(@Nullable float[] array) {
+    final FloatArrayList list = new FloatArrayList(0);
+    if (array != null) {
+      list.array = array;
+      list.size = array.length;
+    }
+    return list;
+  }
+
+  /**
+   * Returns the elements as an array and leaves this list empty. The backing array is returned
+   * without copying if the list fills it.
+   */
+  @InternalApi
+  public float[] detachArray() {
+    final float[] result = size == array.length ? array : Arrays.copyOf(array, size);
+    array = EMPTY_ARRAY;
+    size = 0;
+    ++modCount;
+    return result;
+  }
+
+  public float getFloat(int index) {
+    checkElementIndex(index);
+    return array[index];
+  }
+
+  /**
+   * Replaces the element at {@code index}.
+   *
+   * @return the previous element.
+   */
+  public float setFloat(int index, float value) {
+    checkElementIndex(index);
+    final float previous = array[index];
+    array[index] = value;
+    return previous;
+  }
+
+  public void addFloat(float value) {
+    if (size == array.length) {
+      ensureCapacity(size + 1);
+    }
+    array[size++] = value;
+    ++modCount;
+  }
+
+  @Override
+  public Float get(int index) {
+    return getFloat(index);
+  }
+
+  @Override
+  public Float set(int index, Float element) {
+    return setFloat(index, element);
+  }
+
+  @Override
+  public boolean add(Float element) {
+    addFloat(element);
+    return true;
+  }
+
+  @Override
+  public void add(int index, Float element) {
+    checkPositionIndex(index);
+    final float value = element;
+    insertGap(index);
+    array[index] = value;
+  }
+
+  @Override
+  public Float remove(int index) {
+    checkElementIndex(index);
+    final float previous = array[index];
+    removeGap(index);
+    return previous;
+  }
+
+  @Override
+  Object array() {
+    return array;
+  }
+
+  @Override
+  int capacity() {
+    return array.length;
+  }
+
+  @Override
+  void resize(int newCapacity) {
+    array = Arrays.copyOf(array, newCapacity);
+  }
+
+  @Override
+  long getBits(int index) {
+    return Float.floatToRawIntBits(array[index]);
+  }
+
+  @Override
+  void setBits(int index, long bits) {
+    array[index] = Float.intBitsToFloat((int) bits);
+  }
+}
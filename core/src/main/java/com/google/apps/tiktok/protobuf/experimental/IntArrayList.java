@@ -0,0 +1,143 @@
+package com.google.apps.tiktok.protobuf.experimental;
+
+import com.google.apps.tiktok.protobuf.experimental.util.UnsafeUtil;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * A list of {@code int} values backed by a {@code int[]}, for repeated 32-bit integer fields. The
+ * elements may be accessed without boxing through {@link #getInt(int)},
+ * {@link #setInt(int, int)} and {@link #addInt(int)}.
+ */
+@ExperimentalApi
+public final class IntArrayList extends PrimitiveArrayList<Integer> {
+  private static final long INT_ARRAY_BASE_OFFSET =
+      UnsafeUtil.isSupported() ? UnsafeUtil.arrayBaseOffset(int[].class) : -1;
+
+  private static final int[] EMPTY_ARRAY = new int[0];
+
+  private int[] array;
+
+  public IntArrayList() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public IntArrayList(int initialCapacity) {
+    super(4, INT_ARRAY_BASE_OFFSET);
+    if (initialCapacity < 0) {
+      throw new IllegalArgumentException("initialCapacity must be >= 0: " + initialCapacity);
+    }
+    array = initialCapacity == 0 ? EMPTY_ARRAY : new int[initialCapacity];
+  }
+
+  /**
+   * Returns a list of the elements of {@code array}, or an empty list if it is {@code null}. The
+   * list is backed by the array until it grows, so appending to the list never modifies the array.
+   */
+  @InternalApi
+  public static IntArrayList wrap(@Nullable int[] array) {
+    final IntArrayList list = new IntArrayList(0);
+    if (array != null) {
+      list.array = array;
+      list.size = array.length;
+    }
+    return list;
+  }
+
+  /**
+   * Returns the elements as an array and leaves this list empty. The backing array is returned
+   * without copying if the list fills it.
+   */
+  @InternalApi
+  public int[] detachArray() {
+    final int[] result = size == array.length ? array : Arrays.copyOf(array, size);
+    array = EMPTY_ARRAY;
+    size = 0;
+    ++modCount;
+    return result;
+  }
+
+  public int getInt(int index) {
+    checkElementIndex(index);
+    return array[index];
+  }
+
+  /**
+   * Replaces the element at {@code index}.
+   *
+   * @return the previous element.
+   */
+  public int setInt(int index, int value) {
+    checkElementIndex(index);
+    final int previous = array[index];
+    array[index] = value;
+    return previous;
+  }
+
+  public void addInt(int value) {
+    if (size == array.length) {
+      ensureCapacity(size + 1);
+    }
+    array[size++] = value;
+    ++modCount;
+  }
+
+  @Override
+  public Integer get(int index) {
+    return getInt(index);
+  }
+
+  @Override
+  public Integer set(int index, Integer element) {
+    return setInt(index, element);
+  }
+
+  @Override
+  public boolean add(Integer element) {
+    addInt(element);
+    return true;
+  }
+
+  @Override
+  public void add(int index, Integer element) {
+    checkPositionIndex(index);
+    final int value = element;
+    insertGap(index);
+    array[index] = value;
+  }
+
+  @Override
+  public Integer remove(int index) {
+    checkElementIndex(index);
+    final int previous = array[index];
+    removeGap(index);
+    return previous;
+  }
+
+  @Override
+  Object array() {
+    return array;
+  }
+
+  @Override
+  int capacity() {
+    return array.length;
+  }
+
+  @Override
+  void resize(int newCapacity) {
+    array = Arrays.copyOf(array, newCapacity);
+  }
+
+  @Override
+  long getBits(int index) {
+    return array[index];
+  }
+
+  @Override
+  void setBits(int index, long bits) {
+    array[index] = (int) bits;
+  }
+}
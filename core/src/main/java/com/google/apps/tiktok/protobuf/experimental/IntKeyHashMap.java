@@ -0,0 +1,306 @@
+package com.google.apps.tiktok.protobuf.experimental;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A hash map with {@code int} keys, for map fields whose keys are 32-bit integers. Keys are held
+ * in a {@code int[]} and looked up with open addressing and linear probing, so entries may be
+ * added and retrieved through {@link #get(int)} and {@link #put(int, Object)} without boxing the
+ * key or allocating an entry.
+ *
+ * <p>Null values are not permitted. The views returned by {@link #entrySet()} and the other
+ * collection views are read-only, except for {@link Set#clear()}. This class is not thread-safe.
+ *
+ * @param <V> the type of the values.
+ */
+@ExperimentalApi
+public final class IntKeyHashMap<V> extends AbstractMap<Integer, V> {
+  private static final int DEFAULT_CAPACITY = 8;
+
+  private int[] keys;
+
+  /**
+   * The values of the entries, indexed by slot. A {@code null} value marks an empty slot.
+   */
+  private Object[] values;
+
+  private int size;
+  private int shift;
+  private int modCount;
+
+  public IntKeyHashMap() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a map that can hold {@code expectedSize} entries without being resized.
+   */
+  public IntKeyHashMap(int expectedSize) {
+    if (expectedSize < 0) {
+      throw new IllegalArgumentException("expectedSize must be >= 0: " + expectedSize);
+    }
+    allocate(tableSizeFor(expectedSize));
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  public boolean containsKey(int key) {
+    return findSlot(key) >= 0;
+  }
+
+  /**
+   * Returns the value for {@code key}, or {@code null} if there is none.
+   */
+  @SuppressWarnings("unchecked")
+  public V get(int key) {
+    final int slot = findSlot(key);
+    return slot < 0 ? null : (V) values[slot];
+  }
+
+  /**
+   * Associates {@code value} with {@code key}.
+   *
+   * @return the previous value for {@code key}, or {@code null} if there was none.
+   */
+  @SuppressWarnings("unchecked")
+  public V put(int key, V value) {
+    if (value == null) {
+      throw new NullPointerException("value");
+    }
+    final int mask = values.length - 1;
+    int slot = hash(key);
+    while (values[slot] != null) {
+      if (keys[slot] == key) {
+        final V previous = (V) values[slot];
+        values[slot] = value;
+        return previous;
+      }
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = key;
+    values[slot] = value;
+    ++modCount;
+    if (++size > maxSize(values.length)) {
+      resize(values.length * 2);
+    }
+    return null;
+  }
+
+  /**
+   * Removes the entry for {@code key}, if any.
+   *
+   * @return the removed value, or {@code null} if there was none.
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(int key) {
+    final int slot = findSlot(key);
+    if (slot < 0) {
+      return null;
+    }
+    final V previous = (V) values[slot];
+    removeSlot(slot);
+    return previous;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key instanceof Integer && containsKey(((Integer) key).intValue());
+  }
+
+  @Override
+  public V get(Object key) {
+    return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+  }
+
+  @Override
+  public V put(Integer key, V value) {
+    return put(key.intValue(), value);
+  }
+
+  @Override
+  public V remove(Object key) {
+    return key instanceof Integer ? remove(((Integer) key).intValue()) : null;
+  }
+
+  @Override
+  public void clear() {
+    if (size > 0) {
+      for (int i = 0; i < values.length; ++i) {
+        values[i] = null;
+      }
+      size = 0;
+      ++modCount;
+    }
+  }
+
+  @Override
+  public Set<Entry<Integer, V>> entrySet() {
+    return new EntrySet();
+  }
+
+  /**
+   * Returns the first occupied slot at or after {@code slot}, or {@code -1} if there is none. The
+   * entries of the map may be visited without allocation by starting from slot {@code 0} and
+   * passing {@code slot + 1} to find each following slot.
+   */
+  @InternalApi
+  public int nextSlot(int slot) {
+    for (; slot < values.length; ++slot) {
+      if (values[slot] != null) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the key of the entry in an occupied slot.
+   */
+  @InternalApi
+  public int keyAt(int slot) {
+    return keys[slot];
+  }
+
+  /**
+   * Returns the value of the entry in an occupied slot.
+   */
+  @InternalApi
+  @SuppressWarnings("unchecked")
+  public V valueAt(int slot) {
+    return (V) values[slot];
+  }
+
+  private int hash(int key) {
+    // Fibonacci hashing spreads sequential keys across the table.
+    return (key * 0x9E3779B9) >>> shift;
+  }
+
+  private int findSlot(int key) {
+    final int mask = values.length - 1;
+    int slot = hash(key);
+    while (values[slot] != null) {
+      if (keys[slot] == key) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Empties a slot, moving later entries of the same probe sequence back so that no lookup passes
+   * over an empty slot before reaching its key.
+   */
+  private void removeSlot(int slot) {
+    final int mask = values.length - 1;
+    int next = slot;
+    while (true) {
+      next = (next + 1) & mask;
+      if (values[next] == null) {
+        break;
+      }
+      final int ideal = hash(keys[next]);
+      if (((next - ideal) & mask) >= ((next - slot) & mask)) {
+        keys[slot] = keys[next];
+        values[slot] = values[next];
+        slot = next;
+      }
+    }
+    values[slot] = null;
+    --size;
+    ++modCount;
+  }
+
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    values = new Object[capacity];
+    shift = 32 - Integer.numberOfTrailingZeros(capacity);
+  }
+
+  private void resize(int capacity) {
+    final int[] oldKeys = keys;
+    final Object[] oldValues = values;
+    allocate(capacity);
+    final int mask = capacity - 1;
+    for (int i = 0; i < oldValues.length; ++i) {
+      if (oldValues[i] != null) {
+        int slot = hash(oldKeys[i]);
+        while (values[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * Returns the number of entries a table of the given capacity holds before it is resized, which
+   * keeps it at most three quarters full.
+   */
+  private static int maxSize(int capacity) {
+    return capacity - (capacity >>> 2);
+  }
+
+  private static int tableSizeFor(int expectedSize) {
+    // At least four slots, so that a full table still has an empty slot to end each probe.
+    int capacity = 4;
+    while (maxSize(capacity) < expectedSize) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  private final class EntrySet extends AbstractSet<Entry<Integer, V>> {
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public void clear() {
+      IntKeyHashMap.this.clear();
+    }
+
+    @Override
+    public Iterator<Entry<Integer, V>> iterator() {
+      return new Iterator<Entry<Integer, V>>() {
+        private final int expectedModCount = modCount;
+        private int slot = nextSlot(0);
+
+        @Override
+        public boolean hasNext() {
+          return slot >= 0;
+        }
+
+        @Override
+        public Entry<Integer, V> next() {
+          if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+          }
+          if (slot < 0) {
+            throw new NoSuchElementException();
+          }
+          final Entry<Integer, V> entry =
+              new SimpleImmutableEntry<Integer, V>(keyAt(slot), valueAt(slot));
+          slot = nextSlot(slot + 1);
+          return entry;
+        }
+
+        @Override
+        public void remove() {
+          // Removal moves entries between slots, so the iteration order would not be preserved.
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package com.google.apps.tiktok.protobuf.experimental;
+
+import com.google.apps.tiktok.protobuf.experimental.util.UnsafeUtil;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * A list of {@code long} values backed by a {@code long[]}, for repeated 64-bit integer fields. The
+ * elements may be accessed without boxing through {@link #getLong(int)},
+ * {@link #setLong(int, long)} and {@link #addLong(long)}.
+ */
+@ExperimentalApi
+public final class LongArrayList extends PrimitiveArrayList<Long> {
+  private static final long LONG_ARRAY_BASE_OFFSET =
+      UnsafeUtil.isSupported() ? UnsafeUtil.arrayBaseOffset(long[].class) : -1;
+
+  private static final long[] EMPTY_ARRAY = new long[0];
+
+  private long[] array;
+
+  public LongArrayList() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public LongArrayList(int initialCapacity) {
+    super(8, LONG_ARRAY_BASE_OFFSET);
+    if (initialCapacity < 0) {
+      throw new IllegalArgumentException("initialCapacity must be >= 0: " + initialCapacity);
+    }
+    array = initialCapacity == 0 ? EMPTY_ARRAY : new long[initialCapacity];
+  }
+
+  /**
+   * Returns a list of the elements of {@code array}, or an empty list if it is {@code null}. The
+   * list is backed by the array until it grows, so appending to the list never modifies the array.
+   */
+  @InternalApi
+  public static LongArrayList wrap(@Nullable long[] array) {
+    final LongArrayList list = new LongArrayList(0);
+    if (array != null) {
+      list.array = array;
+      list.size = array.length;
+    }
+    return list;
+  }
+
+  /**
+   * Returns the elements as an array and leaves this list empty. The backing array is returned
+   * without copying if the list fills it.
+   */
+  @InternalApi
+  public long[] detachArray() {
+    final long[] result = size == array.length ? array : Arrays.copyOf(array, size);
+    array = EMPTY_ARRAY;
+    size = 0;
+    ++modCount;
+    return result;
+  }
+
+  public long getLong(int index) {
+    checkElementIndex(index);
+    return array[index];
+  }
+
+  /**
+   * Replaces the element at {@code index}.
+   *
+   * @return the previous element.
+   */
+  public long setLong(int index, long value) {
+    checkElementIndex(index);
+    final long previous = array[index];
+    array[index] = value;
+    return previous;
+  }
+
+  public void addLong(long value) {
+    if (size == array.length) {
+      ensureCapacity(size + 1);
+    }
+    array[size++] = value;
+    ++modCount;
+  }
+
+  @Override
+  public Long get(int index) {
+    return getLong(index);
+  }
+
+  @Override
+  public Long set(int index, Long element) {
+    return setLong(index, element);
+  }
+
+  @Override
+  public boolean add(Long element) {
+    addLong(element);
+    return true;
+  }
+
+  @Override
+  public void add(int index, Long element) {
+    checkPositionIndex(index);
+    final long value = element;
+    insertGap(index);
+    array[index] = value;
+  }
+
+  @Override
+  public Long remove(int index) {
+    checkElementIndex(index);
+    final long previous = array[index];
+    removeGap(index);
+    return previous;
+  }
+
+  @Override
+  Object array() {
+    return array;
+  }
+
+  @Override
+  int capacity() {
+    return array.length;
+  }
+
+  @Override
+  void resize(int newCapacity) {
+    array = Arrays.copyOf(array, newCapacity);
+  }
+
+  @Override
+  long getBits(int index) {
+    return array[index];
+  }
+
+  @Override
+  void setBits(int index, long bits) {
+    array[index] = bits;
+  }
+}
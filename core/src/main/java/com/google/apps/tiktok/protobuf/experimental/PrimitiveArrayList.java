@@ -0,0 +1,373 @@
+package com.google.apps.tiktok.protobuf.experimental;
+
+import com.google.apps.tiktok.protobuf.experimental.util.UnsafeUtil;
+
+import java.nio.ByteOrder;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Base class for lists of primitive values that are backed by an array of the primitive type,
+ * rather than by an array of boxed objects. Subclasses provide methods to access the elements
+ * without boxing.
+ *
+ * <p>Since the elements of fixed-width numeric types are stored in the same little-endian layout
+ * as their packed wire format on most platforms, readers and writers copy them between the wire
+ * and the backing array in bulk. On big-endian platforms, or where {@code sun.misc.Unsafe} is not
+ * available, they are converted one at a time.
+ *
+ * <p>Like {@link java.util.ArrayList}, these lists grow as needed and support all optional
+ * operations. Null elements are not permitted. This class is not thread-safe.
+ *
+ * @param <E> the boxed type of the elements.
+ */
+@ExperimentalApi
+public abstract class PrimitiveArrayList<E> extends AbstractList<E> implements RandomAccess {
+  static final int DEFAULT_CAPACITY = 10;
+
+  private static final boolean HAS_BULK_COPY =
+      UnsafeUtil.isSupported() && ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+  private static final long BYTE_ARRAY_BASE_OFFSET = UnsafeUtil.getByteArrayBaseOffset();
+
+  private final int elementSize;
+  private final long arrayBaseOffset;
+  private final boolean bulkCopy;
+  int size;
+
+  /**
+   * @param elementSize the size in bytes of each element.
+   * @param arrayBaseOffset the base offset of the backing array type, or {@code -1} if the
+   *     elements may not be copied in bulk.
+   */
+  PrimitiveArrayList(int elementSize, long arrayBaseOffset) {
+    this.elementSize = elementSize;
+    this.arrayBaseOffset = arrayBaseOffset;
+    bulkCopy = HAS_BULK_COPY && arrayBaseOffset >= 0;
+  }
+
+  /**
+   * Returns the element of a {@code List<Integer>} at {@code index}, without boxing if it is an
+   * {@link IntArrayList}.
+   */
+  @InternalApi
+  public static int getInt(List<Integer> list, int index) {
+    return list instanceof IntArrayList ? ((IntArrayList) list).getInt(index) : list.get(index);
+  }
+
+  /**
+   * Returns the element of a {@code List<Long>} at {@code index}, without boxing if it is a
+   * {@link LongArrayList}.
+   */
+  @InternalApi
+  public static long getLong(List<Long> list, int index) {
+    return list instanceof LongArrayList ? ((LongArrayList) list).getLong(index) : list.get(index);
+  }
+
+  /**
+   * Returns the element of a {@code List<Float>} at {@code index}, without boxing if it is a
+   * {@link FloatArrayList}.
+   */
+  @InternalApi
+  public static float getFloat(List<Float> list, int index) {
+    return list instanceof FloatArrayList
+        ? ((FloatArrayList) list).getFloat(index)
+        : list.get(index);
+  }
+
+  /**
+   * Returns the element of a {@code List<Double>} at {@code index}, without boxing if it is a
+   * {@link DoubleArrayList}.
+   */
+  @InternalApi
+  public static double getDouble(List<Double> list, int index) {
+    return list instanceof DoubleArrayList
+        ? ((DoubleArrayList) list).getDouble(index)
+        : list.get(index);
+  }
+
+  /**
+   * Returns the element of a {@code List<Boolean>} at {@code index}, without boxing if it is a
+   * {@link BooleanArrayList}.
+   */
+  @InternalApi
+  public static boolean getBoolean(List<Boolean> list, int index) {
+    return list instanceof BooleanArrayList
+        ? ((BooleanArrayList) list).getBoolean(index)
+        : list.get(index);
+  }
+
+  /**
+   * Appends a value to a {@code List<Integer>}, without boxing if it is an {@link IntArrayList}.
+   */
+  @InternalApi
+  public static void addInt(List<Integer> list, int value) {
+    if (list instanceof IntArrayList) {
+      ((IntArrayList) list).addInt(value);
+    } else {
+      list.add(value);
+    }
+  }
+
+  /**
+   * Appends a value to a {@code List<Long>}, without boxing if it is a {@link LongArrayList}.
+   */
+  @InternalApi
+  public static void addLong(List<Long> list, long value) {
+    if (list instanceof LongArrayList) {
+      ((LongArrayList) list).addLong(value);
+    } else {
+      list.add(value);
+    }
+  }
+
+  /**
+   * Appends a value to a {@code List<Float>}, without boxing if it is a {@link FloatArrayList}.
+   */
+  @InternalApi
+  public static void addFloat(List<Float> list, float value) {
+    if (list instanceof FloatArrayList) {
+      ((FloatArrayList) list).addFloat(value);
+    } else {
+      list.add(value);
+    }
+  }
+
+  /**
+   * Appends a value to a {@code List<Double>}, without boxing if it is a {@link DoubleArrayList}.
+   */
+  @InternalApi
+  public static void addDouble(List<Double> list, double value) {
+    if (list instanceof DoubleArrayList) {
+      ((DoubleArrayList) list).addDouble(value);
+    } else {
+      list.add(value);
+    }
+  }
+
+  /**
+   * Appends a value to a {@code List<Boolean>}, without boxing if it is a
+   * {@link BooleanArrayList}.
+   */
+  @InternalApi
+  public static void addBoolean(List<Boolean> list, boolean value) {
+    if (list instanceof BooleanArrayList) {
+      ((BooleanArrayList) list).addBoolean(value);
+    } else {
+      list.add(value);
+    }
+  }
+
+  @Override
+  public final int size() {
+    return size;
+  }
+
+  @Override
+  public final void clear() {
+    size = 0;
+    ++modCount;
+  }
+
+  /**
+   * Grows the backing array, if necessary, so that it can hold at least {@code minCapacity}
+   * elements.
+   */
+  public final void ensureCapacity(int minCapacity) {
+    final int capacity = capacity();
+    if (minCapacity > capacity) {
+      resize(Math.max(minCapacity, capacity + (capacity >> 1) + 1));
+    }
+  }
+
+  /**
+   * Returns the size in bytes of each element.
+   */
+  @InternalApi
+  public final int getElementSize() {
+    return elementSize;
+  }
+
+  /**
+   * Appends {@code count} elements that are encoded in little-endian order in {@code source},
+   * starting at {@code offset}.
+   */
+  @InternalApi
+  public final void addLittleEndian(byte[] source, int offset, int count) {
+    checkRange(offset, (long) count * elementSize, source.length);
+    ensureCapacity(size + count);
+    if (bulkCopy) {
+      UnsafeUtil.copyMemory(
+          source,
+          BYTE_ARRAY_BASE_OFFSET + offset,
+          array(),
+          arrayBaseOffset + (long) size * elementSize,
+          (long) count * elementSize);
+    } else {
+      for (int i = size; i < size + count; ++i, offset += elementSize) {
+        long bits = 0;
+        for (int b = elementSize - 1; b >= 0; --b) {
+          bits = (bits << 8) | (source[offset + b] & 0xFF);
+        }
+        setBits(i, bits);
+      }
+    }
+    size += count;
+    ++modCount;
+  }
+
+  /**
+   * Appends {@code count} elements that are encoded in little-endian order in off-heap memory,
+   * starting at {@code address}. The caller must ensure that the memory is valid and that direct
+   * addressing is supported by {@link UnsafeUtil}.
+   */
+  @InternalApi
+  public final void addLittleEndian(long address, int count) {
+    checkRange(0, count, Integer.MAX_VALUE);
+    ensureCapacity(size + count);
+    if (bulkCopy) {
+      UnsafeUtil.copyMemory(
+          null,
+          address,
+          array(),
+          arrayBaseOffset + (long) size * elementSize,
+          (long) count * elementSize);
+    } else {
+      for (int i = size; i < size + count; ++i, address += elementSize) {
+        long bits = 0;
+        for (int b = elementSize - 1; b >= 0; --b) {
+          bits = (bits << 8) | (UnsafeUtil.getByte(address + b) & 0xFF);
+        }
+        setBits(i, bits);
+      }
+    }
+    size += count;
+    ++modCount;
+  }
+
+  /**
+   * Encodes {@code count} elements, starting at {@code fromIndex}, in little-endian order into
+   * {@code target}, starting at {@code offset}.
+   */
+  @InternalApi
+  public final void copyLittleEndian(int fromIndex, int count, byte[] target, int offset) {
+    checkRange(fromIndex, count, size);
+    checkRange(offset, (long) count * elementSize, target.length);
+    if (bulkCopy) {
+      UnsafeUtil.copyMemory(
+          array(),
+          arrayBaseOffset + (long) fromIndex * elementSize,
+          target,
+          BYTE_ARRAY_BASE_OFFSET + offset,
+          (long) count * elementSize);
+    } else {
+      for (int i = fromIndex; i < fromIndex + count; ++i, offset += elementSize) {
+        final long bits = getBits(i);
+        for (int b = 0; b < elementSize; ++b) {
+          target[offset + b] = (byte) (bits >>> (b << 3));
+        }
+      }
+    }
+  }
+
+  /**
+   * Encodes {@code count} elements, starting at {@code fromIndex}, in little-endian order into
+   * off-heap memory, starting at {@code address}. The caller must ensure that the memory is valid
+   * and that direct addressing is supported by {@link UnsafeUtil}.
+   */
+  @InternalApi
+  public final void copyLittleEndian(int fromIndex, int count, long address) {
+    checkRange(fromIndex, count, size);
+    if (bulkCopy) {
+      UnsafeUtil.copyMemory(
+          array(),
+          arrayBaseOffset + (long) fromIndex * elementSize,
+          null,
+          address,
+          (long) count * elementSize);
+    } else {
+      for (int i = fromIndex; i < fromIndex + count; ++i, address += elementSize) {
+        final long bits = getBits(i);
+        for (int b = 0; b < elementSize; ++b) {
+          UnsafeUtil.putByte(address + b, (byte) (bits >>> (b << 3)));
+        }
+      }
+    }
+  }
+
+  /**
+   * Verifies that {@code index} is the index of an existing element.
+   */
+  final void checkElementIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+
+  /**
+   * Verifies that {@code index} is a valid position at which to insert an element.
+   */
+  final void checkPositionIndex(int index) {
+    if (index < 0 || index > size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+
+  /**
+   * Opens a gap for a single element at {@code index}, shifting the following elements up.
+   */
+  final void insertGap(int index) {
+    ensureCapacity(size + 1);
+    final Object array = array();
+    System.arraycopy(array, index, array, index + 1, size - index);
+    ++size;
+    ++modCount;
+  }
+
+  /**
+   * Removes the element at {@code index}, shifting the following elements down.
+   */
+  final void removeGap(int index) {
+    final Object array = array();
+    System.arraycopy(array, index + 1, array, index, size - index - 1);
+    --size;
+    ++modCount;
+  }
+
+  /**
+   * Returns the backing array.
+   */
+  abstract Object array();
+
+  /**
+   * Returns the length of the backing array.
+   */
+  abstract int capacity();
+
+  /**
+   * Replaces the backing array with a copy of the given length.
+   */
+  abstract void resize(int newCapacity);
+
+  /**
+   * Returns the bits of the element at {@code index} as they are encoded on the wire, in the low
+   * bytes of a {@code long}.
+   */
+  abstract long getBits(int index);
+
+  /**
+   * Sets the element at {@code index} from the bits of its wire encoding. Only the low bytes of the
+   * {@code long} are used.
+   */
+  abstract void setBits(int index, long bits);
+
+  /**
+   * Verifies that the range {@code [offset, offset + length)} lies within {@code [0, bound)}.
+   */
+  private static void checkRange(long offset, long length, long bound) {
+    if (offset < 0 || length < 0 || offset + length > bound) {
+      throw new IndexOutOfBoundsException(
+          "Range [" + offset + ", " + (offset + length) + ") out of bounds for " + bound);
+    }
+  }
+}
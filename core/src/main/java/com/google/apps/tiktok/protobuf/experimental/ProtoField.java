@@ -23,4 +23,24 @@ public @interface ProtoField {
    * Gets the property type for this field.
    */
   FieldType type();
+
+  /**
+   * Gets the type of the keys of a {@link FieldType#MAP} field. This must be an integral type,
+   * {@link FieldType#BOOL} or {@link FieldType#STRING}, and is ignored for other fields.
+   */
+  FieldType keyType() default FieldType.MAP;
+
+  /**
+   * Gets the type of the values of a {@link FieldType#MAP} field. This must be a singular type, and
+   * is ignored for other fields. The class of message values is taken from the declared type of
+   * the field.
+   */
+  FieldType valueType() default FieldType.MAP;
+
+  /**
+   * Gets the class of the nested message of a {@link FieldType#MESSAGE} member of a
+   * {@link ProtoOneof}, which cannot be taken from the declared type of the shared value field.
+   * This must be given for such members, and is ignored for other fields.
+   */
+  Class<?> messageType() default Object.class;
 }
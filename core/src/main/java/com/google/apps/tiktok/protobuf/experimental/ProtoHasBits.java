@@ -0,0 +1,42 @@
+package com.google.apps.tiktok.protobuf.experimental;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation used to identify an {@code int} field in a protobuf message class that holds the
+ * has-bits of up to 32 singular fields declared in the same class. Bit {@code i} is set when the
+ * field numbered {@code fieldNumbers()[i]} is present, which is done when the field is read and is
+ * expected of the setters of the message. A field with a has-bit is written if and only if its bit
+ * is set, even if it holds the default value, so the cost of writing such fields is proportional
+ * to the number that are present.
+ *
+ * <p>Fields are written in order of field number by iterating over the bits, so the listed field
+ * numbers must increase, and the field numbers listed by different has-bits fields of a message
+ * must not interleave.
+ *
+ * <pre>
+ * &#64;ProtoHasBits(fieldNumbers = {1, 2})
+ * public int hasBits0;
+ *
+ * &#64;ProtoField(fieldNumber = 1, type = FieldType.INT32)
+ * public int int32Field;
+ *
+ * &#64;ProtoField(fieldNumber = 2, type = FieldType.STRING)
+ * public String stringField;
+ * </pre>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD})
+@Documented
+public @interface ProtoHasBits {
+  /**
+   * Gets the numbers of the fields whose presence is held in this field, indexed by bit. Each must
+   * be a {@link ProtoField} with a singular type, other than {@link FieldType#BYTE_ARRAY} or
+   * {@link FieldType#BYTE_BUFFER}.
+   */
+  int[] fieldNumbers();
+}
@@ -0,0 +1,43 @@
+package com.google.apps.tiktok.protobuf.experimental;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation used to identify the field in a protobuf message class that holds the value of a
+ * oneof. All members of the oneof share this field, which must be declared as {@link Object} and
+ * holds the boxed value of the member that is set. The number of that member is held in a separate
+ * {@code int} case field, which is {@code 0} when no member is set. A case that is not the number
+ * of a member is treated the same as {@code 0}.
+ *
+ * <pre>
+ * &#64;ProtoOneof(
+ *     caseField = "kindCase",
+ *     fields = {
+ *       &#64;ProtoField(fieldNumber = 1, type = FieldType.STRING),
+ *       &#64;ProtoField(fieldNumber = 2, type = FieldType.INT64)
+ *     })
+ * public Object kind;
+ * public int kindCase;
+ * </pre>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD})
+@Documented
+public @interface ProtoOneof {
+  /**
+   * Gets the name of the {@code int} field, declared in the same class, that holds the number of
+   * the member that is set.
+   */
+  String caseField();
+
+  /**
+   * Gets the members of the oneof. Each member must have a singular type, other than
+   * {@link FieldType#BYTE_ARRAY} or {@link FieldType#BYTE_BUFFER}. The class of a
+   * {@link FieldType#MESSAGE} member is given by {@link ProtoField#messageType()}.
+   */
+  ProtoField[] fields();
+}
@@ -0,0 +1,22 @@
+package com.google.apps.tiktok.protobuf.experimental;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation used to identify the field in a protobuf message class that preserves unknown
+ * fields. The field must be declared as {@link ByteString} and holds the encoded tags and values
+ * of all fields read whose numbers are not known to the message, in the order they were read.
+ * They are written verbatim after all known fields. A message class may have at most one such
+ * field; without one, unknown fields are discarded when read.
+ *
+ * <p>Where the reader allows it, the unknown fields are slices of the input rather than copies, so
+ * a message may be forwarded without decoding or re-encoding the fields it does not know.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD})
+@Documented
+public @interface ProtoUnknownFields {}
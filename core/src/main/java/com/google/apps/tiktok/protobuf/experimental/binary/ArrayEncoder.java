@@ -0,0 +1,162 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import com.google.apps.tiktok.protobuf.experimental.util.UnsafeUtil;
+
+import java.nio.ByteOrder;
+
+/**
+ * Low-level encoding of raw wire format values into a {@code byte[]}. Where supported by the
+ * platform, values are written to the array with {@code sun.misc.Unsafe}. Callers are responsible
+ * for ensuring that the array has sufficient capacity.
+ */
+final class ArrayEncoder {
+  private static final boolean HAS_UNSAFE_ARRAY_OPERATIONS = UnsafeUtil.isSupported();
+  private static final long BYTE_ARRAY_BASE_OFFSET = UnsafeUtil.getByteArrayBaseOffset();
+  private static final boolean IS_BIG_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+
+  private ArrayEncoder() {}
+
+  /**
+   * Encodes the given value as an unsigned 32-bit varint at the given position, returning the
+   * position immediately following the encoded value.
+   */
+  static int encodeVarint32(int value, byte[] buffer, int pos) {
+    if (HAS_UNSAFE_ARRAY_OPERATIONS) {
+      long offset = BYTE_ARRAY_BASE_OFFSET + pos;
+      while ((value & ~0x7F) != 0) {
+        UnsafeUtil.putByte(buffer, offset++, (byte) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      UnsafeUtil.putByte(buffer, offset, (byte) value);
+      return (int) (offset - BYTE_ARRAY_BASE_OFFSET) + 1;
+    }
+    while ((value & ~0x7F) != 0) {
+      buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[pos++] = (byte) value;
+    return pos;
+  }
+
+  /**
+   * Encodes the given value as a 64-bit varint at the given position, returning the position
+   * immediately following the encoded value.
+   */
+  static int encodeVarint64(long value, byte[] buffer, int pos) {
+    if (HAS_UNSAFE_ARRAY_OPERATIONS) {
+      long offset = BYTE_ARRAY_BASE_OFFSET + pos;
+      while ((value & ~0x7FL) != 0) {
+        UnsafeUtil.putByte(buffer, offset++, (byte) (((int) value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      UnsafeUtil.putByte(buffer, offset, (byte) value);
+      return (int) (offset - BYTE_ARRAY_BASE_OFFSET) + 1;
+    }
+    while ((value & ~0x7FL) != 0) {
+      buffer[pos++] = (byte) (((int) value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[pos++] = (byte) value;
+    return pos;
+  }
+
+  /**
+   * Encodes the given value as an unsigned 32-bit varint at the given position, returning the
+   * position immediately following the encoded value. Unlike {@link #encodeVarint32}, up to
+   * {@link Varint#WORD_SIZE} bytes may be written at once, overwriting bytes following the encoded
+   * value. This is only suitable for appending to the buffer.
+   */
+  static int appendVarint32(int value, byte[] buffer, int pos) {
+    return appendVarint64(value & 0xFFFFFFFFL, buffer, pos);
+  }
+
+  /**
+   * Encodes the given value as a 64-bit varint at the given position, returning the position
+   * immediately following the encoded value. Unlike {@link #encodeVarint64}, up to
+   * {@link Varint#WORD_SIZE} bytes may be written at once, overwriting bytes following the encoded
+   * value. This is only suitable for appending to the buffer.
+   */
+  static int appendVarint64(long value, byte[] buffer, int pos) {
+    if (!HAS_UNSAFE_ARRAY_OPERATIONS || buffer.length - pos < Varint.WORD_SIZE) {
+      return encodeVarint64(value, buffer, pos);
+    }
+    final int size = Varint.encodedSize(value);
+    if (size <= Varint.WORD_SIZE) {
+      putWord(buffer, pos, Varint.encode(value, size));
+      return pos + size;
+    }
+    // Write the first 56 bits as a full word, followed by the remaining bits.
+    putWord(buffer, pos, Varint.encode(value, Varint.WORD_SIZE) | (0x80L << 56));
+    return encodeVarint64(value >>> 56, buffer, pos + Varint.WORD_SIZE);
+  }
+
+  /**
+   * Encodes the given value as an unsigned 32-bit varint ending at the given position, returning
+   * the position of the first byte of the encoded value. Up to {@link Varint#WORD_SIZE} bytes may
+   * be written at once, overwriting bytes preceding the encoded value. This is only suitable for
+   * prepending to the buffer.
+   */
+  static int prependVarint32(int value, byte[] buffer, int end) {
+    return prependVarint64(value & 0xFFFFFFFFL, buffer, end);
+  }
+
+  /**
+   * Encodes the given value as a 64-bit varint ending at the given position, returning the
+   * position of the first byte of the encoded value. Up to {@link Varint#WORD_SIZE} bytes may be
+   * written at once, overwriting bytes preceding the encoded value. This is only suitable for
+   * prepending to the buffer.
+   */
+  static int prependVarint64(long value, byte[] buffer, int end) {
+    final int size = Varint.encodedSize(value);
+    final int start = end - size;
+    if (HAS_UNSAFE_ARRAY_OPERATIONS && size <= Varint.WORD_SIZE && end >= Varint.WORD_SIZE) {
+      // Align the encoded value with the end of the word.
+      putWord(
+          buffer,
+          end - Varint.WORD_SIZE,
+          Varint.encode(value, size) << ((Varint.WORD_SIZE - size) << 3));
+    } else {
+      encodeVarint64(value, buffer, start);
+    }
+    return start;
+  }
+
+  /**
+   * Encodes the given value as 4 little-endian bytes at the given position.
+   */
+  static void encodeFixed32(int value, byte[] buffer, int pos) {
+    if (HAS_UNSAFE_ARRAY_OPERATIONS) {
+      UnsafeUtil.putInt(
+          buffer, BYTE_ARRAY_BASE_OFFSET + pos, IS_BIG_ENDIAN ? Integer.reverseBytes(value) : value);
+    } else {
+      buffer[pos] = (byte) value;
+      buffer[pos + 1] = (byte) (value >> 8);
+      buffer[pos + 2] = (byte) (value >> 16);
+      buffer[pos + 3] = (byte) (value >> 24);
+    }
+  }
+
+  /**
+   * Encodes the given value as 8 little-endian bytes at the given position.
+   */
+  static void encodeFixed64(long value, byte[] buffer, int pos) {
+    if (HAS_UNSAFE_ARRAY_OPERATIONS) {
+      UnsafeUtil.putLong(
+          buffer, BYTE_ARRAY_BASE_OFFSET + pos, IS_BIG_ENDIAN ? Long.reverseBytes(value) : value);
+    } else {
+      buffer[pos] = (byte) value;
+      buffer[pos + 1] = (byte) (value >> 8);
+      buffer[pos + 2] = (byte) (value >> 16);
+      buffer[pos + 3] = (byte) (value >> 24);
+      buffer[pos + 4] = (byte) (value >> 32);
+      buffer[pos + 5] = (byte) (value >> 40);
+      buffer[pos + 6] = (byte) (value >> 48);
+      buffer[pos + 7] = (byte) (value >> 56);
+    }
+  }
+
+  private static void putWord(byte[] buffer, int pos, long word) {
+    UnsafeUtil.putLong(
+        buffer, BYTE_ARRAY_BASE_OFFSET + pos, IS_BIG_ENDIAN ? Long.reverseBytes(word) : word);
+  }
+}
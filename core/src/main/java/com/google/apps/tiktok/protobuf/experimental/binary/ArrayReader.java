@@ -0,0 +1,292 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED32_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED64_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.MAX_VARINT64_SIZE;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.ExperimentalApi;
+import com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList;
+import com.google.apps.tiktok.protobuf.experimental.UnsafeByteOperations;
+import com.google.apps.tiktok.protobuf.experimental.schema.SchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.util.Internal;
+import com.google.apps.tiktok.protobuf.experimental.util.UnsafeUtil;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A {@link BinaryReader} that decodes from a range of a {@code byte[]}. Where supported by the
+ * platform, raw values are read from the array with {@code sun.misc.Unsafe}, and the remaining
+ * input is checked once for each value rather than for each byte.
+ *
+ * <p>The array must not be modified while it is being read. Optionally, {@code bytes} fields may
+ * be returned as views of the array rather than copies, which avoids an allocation and a copy for
+ * each value. In that case, ownership of the array effectively passes to the decoded message: the
+ * caller must not modify the array for as long as any of the returned values are in use.
+ * Strings are always decoded into new objects.
+ *
+ * <p>This class is not thread-safe.
+ */
+@ExperimentalApi
+public final class ArrayReader extends BinaryReader {
+  private static final boolean HAS_UNSAFE_ARRAY_OPERATIONS = UnsafeUtil.isSupported();
+  private static final long BYTE_ARRAY_BASE_OFFSET = UnsafeUtil.getByteArrayBaseOffset();
+  private static final boolean IS_BIG_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+
+  private final byte[] buffer;
+  private final int start;
+  private final boolean aliasBytes;
+  private int pos;
+  private int limit;
+
+  public ArrayReader(SchemaFactory schemaFactory, byte[] buffer) {
+    this(schemaFactory, buffer, 0, buffer.length);
+  }
+
+  public ArrayReader(SchemaFactory schemaFactory, byte[] buffer, int offset, int length) {
+    this(schemaFactory, buffer, offset, length, false);
+  }
+
+  /**
+   * Creates a reader that decodes the range {@code [offset, offset + length)} of the given array.
+   *
+   * @param aliasBytes if {@code true}, {@code bytes} fields are returned as views of
+   *     {@code buffer} rather than copies, so the array must not be modified while they are in use.
+   */
+  public ArrayReader(
+      SchemaFactory schemaFactory, byte[] buffer, int offset, int length, boolean aliasBytes) {
+    super(schemaFactory);
+    if (offset < 0 || length < 0 || offset + length > buffer.length || offset + length < 0) {
+      throw new IndexOutOfBoundsException(
+          "Buffer range is [" + offset + ", " + (offset + length) + "), array length is "
+              + buffer.length);
+    }
+    this.buffer = buffer;
+    this.start = offset;
+    this.aliasBytes = aliasBytes;
+    this.pos = offset;
+    this.limit = offset + length;
+  }
+
+  @Override
+  public int getTotalBytesRead() {
+    return pos - start;
+  }
+
+  @Override
+  boolean isAtEnd() {
+    return pos == limit;
+  }
+
+  @Override
+  int readRawVarint32() {
+    return (int) readRawVarint64();
+  }
+
+  @Override
+  long readRawVarint64() {
+    int p = pos;
+    if (limit - p < MAX_VARINT64_SIZE) {
+      // Near the end of the input, so check each byte.
+      return readRawVarint64SlowPath();
+    }
+
+    // The whole varint is known to be within the input, so no further checks are needed.
+    final byte[] buf = buffer;
+    if (HAS_UNSAFE_ARRAY_OPERATIONS) {
+      final long word = getWord(p);
+      final int size = Varint.decodedSize(word);
+      if (size != 0) {
+        pos = p + size;
+        return Varint.decode(word, size);
+      }
+      // The varint is longer than a word, so decode the remaining bytes individually.
+      long result = Varint.decode(word, Varint.WORD_SIZE);
+      final byte b8 = buf[p + 8];
+      result |= (long) (b8 & 0x7F) << 56;
+      if (b8 >= 0) {
+        pos = p + 9;
+        return result;
+      }
+      final byte b9 = buf[p + 9];
+      if (b9 < 0) {
+        throw InvalidWireFormatException.malformedVarint();
+      }
+      pos = p + MAX_VARINT64_SIZE;
+      return result | (long) b9 << 63;
+    }
+
+    long result = 0;
+    int shift = 0;
+    final int end = p + MAX_VARINT64_SIZE;
+    do {
+      final byte b = buf[p++];
+      result |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        pos = p;
+        return result;
+      }
+      shift += 7;
+    } while (p < end);
+    throw InvalidWireFormatException.malformedVarint();
+  }
+
+  private long readRawVarint64SlowPath() {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      if (pos == limit) {
+        throw InvalidWireFormatException.truncatedMessage();
+      }
+      final byte b = buffer[pos++];
+      result |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return result;
+      }
+    }
+    throw InvalidWireFormatException.malformedVarint();
+  }
+
+  @Override
+  void skipRawVarint() {
+    if (limit - pos >= MAX_VARINT64_SIZE) {
+      if (HAS_UNSAFE_ARRAY_OPERATIONS) {
+        final int size = Varint.decodedSize(getWord(pos));
+        if (size != 0) {
+          pos += size;
+          return;
+        }
+      }
+      final byte[] buf = buffer;
+      final int end = pos + MAX_VARINT64_SIZE;
+      for (int p = pos; p < end; ++p) {
+        if (buf[p] >= 0) {
+          pos = p + 1;
+          return;
+        }
+      }
+      throw InvalidWireFormatException.malformedVarint();
+    }
+    readRawVarint64SlowPath();
+  }
+
+  @Override
+  int readRawFixed32() {
+    requireBytes(FIXED32_SIZE);
+    final int p = pos;
+    pos = p + FIXED32_SIZE;
+    if (HAS_UNSAFE_ARRAY_OPERATIONS) {
+      final int value = UnsafeUtil.getInt(buffer, BYTE_ARRAY_BASE_OFFSET + p);
+      return IS_BIG_ENDIAN ? Integer.reverseBytes(value) : value;
+    }
+    final byte[] buf = buffer;
+    return (buf[p] & 0xFF)
+        | ((buf[p + 1] & 0xFF) << 8)
+        | ((buf[p + 2] & 0xFF) << 16)
+        | ((buf[p + 3] & 0xFF) << 24);
+  }
+
+  @Override
+  long readRawFixed64() {
+    requireBytes(FIXED64_SIZE);
+    final int p = pos;
+    pos = p + FIXED64_SIZE;
+    if (HAS_UNSAFE_ARRAY_OPERATIONS) {
+      final long value = UnsafeUtil.getLong(buffer, BYTE_ARRAY_BASE_OFFSET + p);
+      return IS_BIG_ENDIAN ? Long.reverseBytes(value) : value;
+    }
+    final byte[] buf = buffer;
+    return (buf[p] & 0xFFL)
+        | ((buf[p + 1] & 0xFFL) << 8)
+        | ((buf[p + 2] & 0xFFL) << 16)
+        | ((buf[p + 3] & 0xFFL) << 24)
+        | ((buf[p + 4] & 0xFFL) << 32)
+        | ((buf[p + 5] & 0xFFL) << 40)
+        | ((buf[p + 6] & 0xFFL) << 48)
+        | ((buf[p + 7] & 0xFFL) << 56);
+  }
+
+  @Override
+  String readRawString(int size) {
+    requireBytes(size);
+    final String value = new String(buffer, pos, size, Internal.UTF_8);
+    pos += size;
+    return value;
+  }
+
+  @Override
+  ByteString readRawBytes(int size) {
+    requireBytes(size);
+    if (size == 0) {
+      return ByteString.EMPTY;
+    }
+    final ByteString value =
+        aliasBytes
+            ? UnsafeByteOperations.unsafeWrap(buffer, pos, size)
+            : ByteString.copyFrom(buffer, pos, size);
+    pos += size;
+    return value;
+  }
+
+  @Override
+  byte[] readRawByteArray(int size) {
+    requireBytes(size);
+    final byte[] bytes = Arrays.copyOfRange(buffer, pos, pos + size);
+    pos += size;
+    return bytes;
+  }
+
+  @Override
+  void skipRawBytes(int size) {
+    requireBytes(size);
+    pos += size;
+  }
+
+  @Override
+  boolean aliasesInput() {
+    return aliasBytes;
+  }
+
+  @Override
+  ByteString sliceRawBytes(int start, int size) {
+    return UnsafeByteOperations.unsafeWrap(buffer, this.start + start, size);
+  }
+
+  @Override
+  void readRawLittleEndian(PrimitiveArrayList<?> target, int count) {
+    target.addLittleEndian(buffer, pos, count);
+    pos += count * target.getElementSize();
+  }
+
+  @Override
+  int countRawVarints(int size) {
+    return countRawVarints(buffer, pos, size);
+  }
+
+  @Override
+  int pushLimit(int size) {
+    requireBytes(size);
+    final int oldLimit = limit;
+    limit = pos + size;
+    return oldLimit;
+  }
+
+  @Override
+  void popLimit(int oldLimit) {
+    limit = oldLimit;
+  }
+
+  /**
+   * Loads 8 bytes at the given position in little-endian order. Requires unsafe array operations.
+   */
+  private long getWord(int p) {
+    final long word = UnsafeUtil.getLong(buffer, BYTE_ARRAY_BASE_OFFSET + p);
+    return IS_BIG_ENDIAN ? Long.reverseBytes(word) : word;
+  }
+
+  private void requireBytes(int size) {
+    if (limit - pos < size) {
+      throw InvalidWireFormatException.truncatedMessage();
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED32_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED64_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.MAX_VARINT32_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.MAX_VARINT64_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.computeVarint32Size;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteOutput;
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.ExperimentalApi;
+import com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList;
+import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
+import com.google.apps.tiktok.protobuf.experimental.schema.SchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.util.Utf8;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A {@link BinaryWriter} that encodes into a growable {@code byte[]}. Where supported by the
+ * platform, raw values are written to the array with {@code sun.misc.Unsafe}.
+ *
+ * <p>A single instance may be reused for many messages by calling {@link #reset()} between them.
+ * This class is not thread-safe.
+ */
+@ExperimentalApi
+public final class ArrayWriter extends BinaryWriter {
+  private static final int DEFAULT_INITIAL_CAPACITY = 256;
+
+  /**
+   * The maximum number of bytes needed to encode a single Java UTF-16 char in UTF-8.
+   */
+  private static final int MAX_BYTES_PER_CHAR = 3;
+
+  private byte[] buffer;
+  private int position;
+
+  public ArrayWriter(SchemaFactory schemaFactory) {
+    this(schemaFactory, DEFAULT_INITIAL_CAPACITY);
+  }
+
+  public ArrayWriter(SchemaFactory schemaFactory, int initialCapacity) {
+    super(schemaFactory);
+    if (initialCapacity < 0) {
+      throw new IllegalArgumentException("initialCapacity must be >= 0: " + initialCapacity);
+    }
+    buffer = new byte[initialCapacity];
+  }
+
+  @Override
+  public int getTotalBytesWritten() {
+    return position;
+  }
+
+  /**
+   * Returns a copy of the bytes written so far.
+   */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buffer, position);
+  }
+
+  /**
+   * Discards all written bytes so that the writer can be reused. The underlying buffer is retained.
+   */
+  public void reset() {
+    position = 0;
+  }
+
+  /**
+   * Copies the bytes written so far into {@code target}, starting at {@code offset}.
+   */
+  void copyTo(byte[] target, int offset) {
+    System.arraycopy(buffer, 0, target, offset, position);
+  }
+
+  /**
+   * Writes the bytes written so far to the given output. The bytes are not written lazily, since
+   * the buffer is reused after a {@link #reset()}.
+   */
+  void writeTo(ByteOutput output) throws IOException {
+    output.write(buffer, 0, position);
+  }
+
+  @Override
+  void writeUInt32NoTag(int value) {
+    ensureCapacity(MAX_VARINT32_SIZE);
+    position = ArrayEncoder.appendVarint32(value, buffer, position);
+  }
+
+  @Override
+  void writeUInt64NoTag(long value) {
+    ensureCapacity(MAX_VARINT64_SIZE);
+    position = ArrayEncoder.appendVarint64(value, buffer, position);
+  }
+
+  @Override
+  void writeFixed32NoTag(int value) {
+    ensureCapacity(FIXED32_SIZE);
+    ArrayEncoder.encodeFixed32(value, buffer, position);
+    position += FIXED32_SIZE;
+  }
+
+  @Override
+  void writeFixed64NoTag(long value) {
+    ensureCapacity(FIXED64_SIZE);
+    ArrayEncoder.encodeFixed64(value, buffer, position);
+    position += FIXED64_SIZE;
+  }
+
+  @Override
+  void writeStringNoTag(String value) {
+    final int maxLength = value.length() * MAX_BYTES_PER_CHAR;
+    final int lengthSize = computeVarint32Size(value.length());
+    if (lengthSize == computeVarint32Size(maxLength)) {
+      // The size of the length prefix does not depend on the encoded length, so we can encode the
+      // string directly after the prefix in a single pass.
+      ensureCapacity(lengthSize + maxLength);
+      int start = position + lengthSize;
+      int end = Utf8.encode(value, buffer, start, buffer.length - start);
+      ArrayEncoder.encodeVarint32(end - start, buffer, position);
+      position = end;
+    } else {
+      int length = Utf8.encodedLength(value);
+      writeUInt32NoTag(length);
+      ensureCapacity(length);
+      position = Utf8.encode(value, buffer, position, length);
+    }
+  }
+
+  @Override
+  void writeRawBytes(ByteString value) {
+    final int size = value.size();
+    ensureCapacity(size);
+    value.copyTo(buffer, position);
+    position += size;
+  }
+
+  @Override
+  <T> void writeMessageNoTag(T value, Schema<T> schema) {
+    // Reserve a single byte for the length prefix, which is enough for any message smaller than
+    // 128 bytes. Larger messages are shifted to make room for the full prefix once their length
+    // is known.
+    ensureCapacity(1);
+    final int lengthPosition = position++;
+    schema.writeTo(value, this);
+    final int length = position - lengthPosition - 1;
+    final int lengthSize = computeVarint32Size(length);
+    if (lengthSize > 1) {
+      ensureCapacity(lengthSize - 1);
+      System.arraycopy(
+          buffer, lengthPosition + 1, buffer, lengthPosition + lengthSize, length);
+      position += lengthSize - 1;
+    }
+    ArrayEncoder.encodeVarint32(length, buffer, lengthPosition);
+  }
+
+  @Override
+  void writeRawLittleEndian(PrimitiveArrayList<?> value) {
+    final int length = value.size() * value.getElementSize();
+    ensureCapacity(length);
+    value.copyLittleEndian(0, value.size(), buffer, position);
+    position += length;
+  }
+
+  /**
+   * Ensures that at least {@code required} bytes are available following the current position,
+   * growing the buffer if necessary.
+   */
+  private void ensureCapacity(int required) {
+    if (buffer.length - position < required) {
+      int newCapacity = Math.max(buffer.length * 2, position + required);
+      buffer = Arrays.copyOf(buffer, newCapacity);
+    }
+  }
+}
@@ -0,0 +1,1136 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import static com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList.addBoolean;
+import static com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList.addDouble;
+import static com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList.addFloat;
+import static com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList.addInt;
+import static com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList.addLong;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED32_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED64_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.MAX_VARINT32_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.MAX_VARINT64_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.WIRETYPE_END_GROUP;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.WIRETYPE_FIXED32;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.WIRETYPE_FIXED64;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.WIRETYPE_LENGTH_DELIMITED;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.WIRETYPE_START_GROUP;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.WIRETYPE_VARINT;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.decodeZigZag32;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.decodeZigZag64;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.getTagFieldNumber;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.getTagWireType;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.makeTag;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.DoubleArrayList;
+import com.google.apps.tiktok.protobuf.experimental.ExperimentalApi;
+import com.google.apps.tiktok.protobuf.experimental.FieldType;
+import com.google.apps.tiktok.protobuf.experimental.FloatArrayList;
+import com.google.apps.tiktok.protobuf.experimental.IntArrayList;
+import com.google.apps.tiktok.protobuf.experimental.IntKeyHashMap;
+import com.google.apps.tiktok.protobuf.experimental.JavaType;
+import com.google.apps.tiktok.protobuf.experimental.LongArrayList;
+import com.google.apps.tiktok.protobuf.experimental.LongKeyHashMap;
+import com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.MapEntryDescriptor;
+import com.google.apps.tiktok.protobuf.experimental.schema.LazySchema;
+import com.google.apps.tiktok.protobuf.experimental.schema.Reader;
+import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
+import com.google.apps.tiktok.protobuf.experimental.schema.SchemaFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Base class for {@link Reader} implementations that decode fields in the protobuf binary wire
+ * format. Subclasses provide the low-level decoding of raw values from their source.
+ *
+ * <p>Repeated fields are accepted in both packed and non-packed form, regardless of the
+ * {@code packed} argument, as required by the protobuf specification. Malformed input results in
+ * an {@link InvalidWireFormatException}. Packed fixed-width fields whose target is the matching
+ * {@link PrimitiveArrayList} are copied into its backing array in bulk. Array fields are decoded
+ * the same way, through a primitive list that wraps the existing array.
+ *
+ * <p>Nested messages are read with the schema supplied by the caller, which is obtained from the
+ * {@link SchemaFactory} provided at construction through {@link #schemaFor(Class)} and cached by
+ * the schema of the enclosing message.
+ *
+ * <p>Map entries are read field by field into local variables and added to the target map, so no
+ * entry message is created. Integral keys are added to an {@link IntKeyHashMap} or
+ * {@link LongKeyHashMap} target without boxing.
+ *
+ * <p>Unknown fields are returned as slices of the input by readers that alias {@code bytes}
+ * fields, and consecutive unknown fields are returned as a single slice. Other readers copy them,
+ * re-encoding tags, varints and lengths in canonical form.
+ */
+@ExperimentalApi
+public abstract class BinaryReader implements Reader {
+  private static final int DEFAULT_RECURSION_LIMIT = 100;
+
+  private final NestedSchemas nestedSchemas;
+  private int recursionDepth;
+
+  /**
+   * The tag of the current field, or {@code 0} if the next tag has not been read yet.
+   */
+  private int tag;
+
+  /**
+   * The position of the current tag, as returned by {@link #getTotalBytesRead()}.
+   */
+  private int tagStart;
+
+  /**
+   * The unknown fields most recently returned by {@link #readUnknownField(ByteString)}. These are
+   * {@link #unknownPrefix} followed by a single slice of the input, from {@link #unknownRunStart}
+   * to {@link #unknownRunEnd}, so that a contiguous field that follows can extend the slice.
+   */
+  private ByteString lastUnknownFields;
+  private ByteString unknownPrefix;
+  private int unknownRunStart;
+  private int unknownRunEnd;
+
+  BinaryReader(SchemaFactory schemaFactory) {
+    nestedSchemas = new NestedSchemas(schemaFactory);
+  }
+
+  /**
+   * Returns the total number of bytes read by this reader.
+   */
+  public abstract int getTotalBytesRead();
+
+  @Override
+  public final int getFieldNumber() {
+    if (tag == 0) {
+      if (isAtEnd()) {
+        return READ_DONE;
+      }
+      readTag();
+    }
+    return getTagFieldNumber(tag);
+  }
+
+  @Override
+  public final boolean skipField() {
+    if (tag == 0 && getFieldNumber() == READ_DONE) {
+      return false;
+    }
+    skipValue(tag);
+    tag = 0;
+    return !isAtEnd();
+  }
+
+  @Override
+  public final ByteString readUnknownField(ByteString unknownFields) {
+    if (getFieldNumber() == READ_DONE) {
+      throw new IllegalStateException("No field to read");
+    }
+    final int fieldTag = tag;
+    final int start = tagStart;
+    tag = 0;
+    if (!aliasesInput()) {
+      return unknownFields.concat(copyRawField(fieldTag));
+    }
+
+    skipValue(fieldTag);
+    final int end = getTotalBytesRead();
+    if (unknownFields != lastUnknownFields || start != unknownRunEnd) {
+      // Not contiguous with the previous unknown field, so start a new slice.
+      unknownPrefix = unknownFields;
+      unknownRunStart = start;
+    }
+    unknownRunEnd = end;
+    lastUnknownFields =
+        unknownPrefix.concat(sliceRawBytes(unknownRunStart, end - unknownRunStart));
+    return lastUnknownFields;
+  }
+
+  @Override
+  public final double readDouble() {
+    requireWireType(WIRETYPE_FIXED64);
+    return Double.longBitsToDouble(readRawFixed64());
+  }
+
+  @Override
+  public final float readFloat() {
+    requireWireType(WIRETYPE_FIXED32);
+    return Float.intBitsToFloat(readRawFixed32());
+  }
+
+  @Override
+  public final long readUInt64() {
+    requireWireType(WIRETYPE_VARINT);
+    return readRawVarint64();
+  }
+
+  @Override
+  public final long readInt64() {
+    requireWireType(WIRETYPE_VARINT);
+    return readRawVarint64();
+  }
+
+  @Override
+  public final int readInt32() {
+    requireWireType(WIRETYPE_VARINT);
+    return readRawVarint32();
+  }
+
+  @Override
+  public final long readFixed64() {
+    requireWireType(WIRETYPE_FIXED64);
+    return readRawFixed64();
+  }
+
+  @Override
+  public final int readFixed32() {
+    requireWireType(WIRETYPE_FIXED32);
+    return readRawFixed32();
+  }
+
+  @Override
+  public final boolean readBool() {
+    requireWireType(WIRETYPE_VARINT);
+    return readRawVarint64() != 0;
+  }
+
+  @Override
+  public final String readString() {
+    requireWireType(WIRETYPE_LENGTH_DELIMITED);
+    return readRawString(readSize());
+  }
+
+  @Override
+  public final ByteString readBytes() {
+    requireWireType(WIRETYPE_LENGTH_DELIMITED);
+    return readRawBytes(readSize());
+  }
+
+  @Override
+  public final int readUInt32() {
+    requireWireType(WIRETYPE_VARINT);
+    return readRawVarint32();
+  }
+
+  @Override
+  public final int readEnum() {
+    requireWireType(WIRETYPE_VARINT);
+    return readRawVarint32();
+  }
+
+  @Override
+  public final int readSFixed32() {
+    return readFixed32();
+  }
+
+  @Override
+  public final long readSFixed64() {
+    return readFixed64();
+  }
+
+  @Override
+  public final int readSInt32() {
+    requireWireType(WIRETYPE_VARINT);
+    return decodeZigZag32(readRawVarint32());
+  }
+
+  @Override
+  public final long readSInt64() {
+    requireWireType(WIRETYPE_VARINT);
+    return decodeZigZag64(readRawVarint64());
+  }
+
+  @Override
+  public final void readDoubleList(List<Double> target, boolean packed) {
+    final int listTag = tag;
+    switch (getTagWireType(listTag)) {
+      case WIRETYPE_LENGTH_DELIMITED:
+        {
+          final int size = readPackedSize(FIXED64_SIZE);
+          final int oldLimit = pushLimit(size);
+          if (target instanceof DoubleArrayList) {
+            readRawLittleEndian((DoubleArrayList) target, size / FIXED64_SIZE);
+          } else {
+            ensureCapacity(target, size / FIXED64_SIZE);
+            while (!isAtEnd()) {
+              addDouble(target, Double.longBitsToDouble(readRawFixed64()));
+            }
+          }
+          popLimit(oldLimit);
+          tag = 0;
+          break;
+        }
+      case WIRETYPE_FIXED64:
+        do {
+          addDouble(target, Double.longBitsToDouble(readRawFixed64()));
+        } while (nextTagIs(listTag));
+        break;
+      default:
+        throw InvalidWireFormatException.invalidWireType();
+    }
+  }
+
+  @Override
+  public final void readFloatList(List<Float> target, boolean packed) {
+    final int listTag = tag;
+    switch (getTagWireType(listTag)) {
+      case WIRETYPE_LENGTH_DELIMITED:
+        {
+          final int size = readPackedSize(FIXED32_SIZE);
+          final int oldLimit = pushLimit(size);
+          if (target instanceof FloatArrayList) {
+            readRawLittleEndian((FloatArrayList) target, size / FIXED32_SIZE);
+          } else {
+            ensureCapacity(target, size / FIXED32_SIZE);
+            while (!isAtEnd()) {
+              addFloat(target, Float.intBitsToFloat(readRawFixed32()));
+            }
+          }
+          popLimit(oldLimit);
+          tag = 0;
+          break;
+        }
+      case WIRETYPE_FIXED32:
+        do {
+          addFloat(target, Float.intBitsToFloat(readRawFixed32()));
+        } while (nextTagIs(listTag));
+        break;
+      default:
+        throw InvalidWireFormatException.invalidWireType();
+    }
+  }
+
+  @Override
+  public final void readUInt64List(List<Long> target, boolean packed) {
+    readInt64List(target, packed);
+  }
+
+  @Override
+  public final void readInt64List(List<Long> target, boolean packed) {
+    final int listTag = tag;
+    switch (getTagWireType(listTag)) {
+      case WIRETYPE_LENGTH_DELIMITED:
+        {
+          final int size = readSize();
+          final int oldLimit = pushLimit(size);
+          ensureCapacity(target, countRawVarints(size));
+          while (!isAtEnd()) {
+            addLong(target, readRawVarint64());
+          }
+          popLimit(oldLimit);
+          tag = 0;
+          break;
+        }
+      case WIRETYPE_VARINT:
+        do {
+          addLong(target, readRawVarint64());
+        } while (nextTagIs(listTag));
+        break;
+      default:
+        throw InvalidWireFormatException.invalidWireType();
+    }
+  }
+
+  @Override
+  public final void readInt32List(List<Integer> target, boolean packed) {
+    final int listTag = tag;
+    switch (getTagWireType(listTag)) {
+      case WIRETYPE_LENGTH_DELIMITED:
+        {
+          final int size = readSize();
+          final int oldLimit = pushLimit(size);
+          ensureCapacity(target, countRawVarints(size));
+          while (!isAtEnd()) {
+            addInt(target, readRawVarint32());
+          }
+          popLimit(oldLimit);
+          tag = 0;
+          break;
+        }
+      case WIRETYPE_VARINT:
+        do {
+          addInt(target, readRawVarint32());
+        } while (nextTagIs(listTag));
+        break;
+      default:
+        throw InvalidWireFormatException.invalidWireType();
+    }
+  }
+
+  @Override
+  public final void readFixed64List(List<Long> target, boolean packed) {
+    final int listTag = tag;
+    switch (getTagWireType(listTag)) {
+      case WIRETYPE_LENGTH_DELIMITED:
+        {
+          final int size = readPackedSize(FIXED64_SIZE);
+          final int oldLimit = pushLimit(size);
+          if (target instanceof LongArrayList) {
+            readRawLittleEndian((LongArrayList) target, size / FIXED64_SIZE);
+          } else {
+            ensureCapacity(target, size / FIXED64_SIZE);
+            while (!isAtEnd()) {
+              addLong(target, readRawFixed64());
+            }
+          }
+          popLimit(oldLimit);
+          tag = 0;
+          break;
+        }
+      case WIRETYPE_FIXED64:
+        do {
+          addLong(target, readRawFixed64());
+        } while (nextTagIs(listTag));
+        break;
+      default:
+        throw InvalidWireFormatException.invalidWireType();
+    }
+  }
+
+  @Override
+  public final void readFixed32List(List<Integer> target, boolean packed) {
+    final int listTag = tag;
+    switch (getTagWireType(listTag)) {
+      case WIRETYPE_LENGTH_DELIMITED:
+        {
+          final int size = readPackedSize(FIXED32_SIZE);
+          final int oldLimit = pushLimit(size);
+          if (target instanceof IntArrayList) {
+            readRawLittleEndian((IntArrayList) target, size / FIXED32_SIZE);
+          } else {
+            ensureCapacity(target, size / FIXED32_SIZE);
+            while (!isAtEnd()) {
+              addInt(target, readRawFixed32());
+            }
+          }
+          popLimit(oldLimit);
+          tag = 0;
+          break;
+        }
+      case WIRETYPE_FIXED32:
+        do {
+          addInt(target, readRawFixed32());
+        } while (nextTagIs(listTag));
+        break;
+      default:
+        throw InvalidWireFormatException.invalidWireType();
+    }
+  }
+
+  @Override
+  public final void readBoolList(List<Boolean> target, boolean packed) {
+    final int listTag = tag;
+    switch (getTagWireType(listTag)) {
+      case WIRETYPE_LENGTH_DELIMITED:
+        {
+          final int size = readSize();
+          final int oldLimit = pushLimit(size);
+          ensureCapacity(target, countRawVarints(size));
+          while (!isAtEnd()) {
+            addBoolean(target, readRawVarint64() != 0);
+          }
+          popLimit(oldLimit);
+          tag = 0;
+          break;
+        }
+      case WIRETYPE_VARINT:
+        do {
+          addBoolean(target, readRawVarint64() != 0);
+        } while (nextTagIs(listTag));
+        break;
+      default:
+        throw InvalidWireFormatException.invalidWireType();
+    }
+  }
+
+  @Override
+  public final void readStringList(List<String> target) {
+    final int listTag = tag;
+    if (getTagWireType(listTag) != WIRETYPE_LENGTH_DELIMITED) {
+      throw InvalidWireFormatException.invalidWireType();
+    }
+    do {
+      target.add(readRawString(readSize()));
+    } while (nextTagIs(listTag));
+  }
+
+  @Override
+  public final <T> void mergeMessage(T message, Schema<T> schema) {
+    requireWireType(WIRETYPE_LENGTH_DELIMITED);
+    readMessageNoTag(message, schema);
+  }
+
+  @Override
+  public final <T> void readMessageList(List<T> target, Class<T> targetType, Schema<T> schema) {
+    final int listTag = tag;
+    if (getTagWireType(listTag) != WIRETYPE_LENGTH_DELIMITED) {
+      throw InvalidWireFormatException.invalidWireType();
+    }
+    do {
+      T message = newInstance(targetType);
+      readMessageNoTag(message, schema);
+      target.add(message);
+    } while (nextTagIs(listTag));
+  }
+
+  @Override
+  public final void readBytesList(List<ByteString> target) {
+    final int listTag = tag;
+    if (getTagWireType(listTag) != WIRETYPE_LENGTH_DELIMITED) {
+      throw InvalidWireFormatException.invalidWireType();
+    }
+    do {
+      target.add(readRawBytes(readSize()));
+    } while (nextTagIs(listTag));
+  }
+
+  @Override
+  public final void readUInt32List(List<Integer> target, boolean packed) {
+    readInt32List(target, packed);
+  }
+
+  @Override
+  public final void readEnumList(List<Integer> target, boolean packed) {
+    readInt32List(target, packed);
+  }
+
+  @Override
+  public final void readSFixed32List(List<Integer> target, boolean packed) {
+    readFixed32List(target, packed);
+  }
+
+  @Override
+  public final void readSFixed64List(List<Long> target, boolean packed) {
+    readFixed64List(target, packed);
+  }
+
+  @Override
+  public final void readSInt32List(List<Integer> target, boolean packed) {
+    final int listTag = tag;
+    switch (getTagWireType(listTag)) {
+      case WIRETYPE_LENGTH_DELIMITED:
+        {
+          final int size = readSize();
+          final int oldLimit = pushLimit(size);
+          ensureCapacity(target, countRawVarints(size));
+          while (!isAtEnd()) {
+            addInt(target, decodeZigZag32(readRawVarint32()));
+          }
+          popLimit(oldLimit);
+          tag = 0;
+          break;
+        }
+      case WIRETYPE_VARINT:
+        do {
+          addInt(target, decodeZigZag32(readRawVarint32()));
+        } while (nextTagIs(listTag));
+        break;
+      default:
+        throw InvalidWireFormatException.invalidWireType();
+    }
+  }
+
+  @Override
+  public final void readSInt64List(List<Long> target, boolean packed) {
+    final int listTag = tag;
+    switch (getTagWireType(listTag)) {
+      case WIRETYPE_LENGTH_DELIMITED:
+        {
+          final int size = readSize();
+          final int oldLimit = pushLimit(size);
+          ensureCapacity(target, countRawVarints(size));
+          while (!isAtEnd()) {
+            addLong(target, decodeZigZag64(readRawVarint64()));
+          }
+          popLimit(oldLimit);
+          tag = 0;
+          break;
+        }
+      case WIRETYPE_VARINT:
+        do {
+          addLong(target, decodeZigZag64(readRawVarint64()));
+        } while (nextTagIs(listTag));
+        break;
+      default:
+        throw InvalidWireFormatException.invalidWireType();
+    }
+  }
+
+  @Override
+  public final double[] readDoubleArray(double[] target) {
+    final DoubleArrayList list = DoubleArrayList.wrap(target);
+    readDoubleList(list, true);
+    return list.detachArray();
+  }
+
+  @Override
+  public final float[] readFloatArray(float[] target) {
+    final FloatArrayList list = FloatArrayList.wrap(target);
+    readFloatList(list, true);
+    return list.detachArray();
+  }
+
+  @Override
+  public final long[] readInt64Array(long[] target) {
+    final LongArrayList list = LongArrayList.wrap(target);
+    readInt64List(list, true);
+    return list.detachArray();
+  }
+
+  @Override
+  public final long[] readUInt64Array(long[] target) {
+    final LongArrayList list = LongArrayList.wrap(target);
+    readUInt64List(list, true);
+    return list.detachArray();
+  }
+
+  @Override
+  public final int[] readInt32Array(int[] target) {
+    final IntArrayList list = IntArrayList.wrap(target);
+    readInt32List(list, true);
+    return list.detachArray();
+  }
+
+  @Override
+  public final long[] readFixed64Array(long[] target) {
+    final LongArrayList list = LongArrayList.wrap(target);
+    readFixed64List(list, true);
+    return list.detachArray();
+  }
+
+  @Override
+  public final int[] readFixed32Array(int[] target) {
+    final IntArrayList list = IntArrayList.wrap(target);
+    readFixed32List(list, true);
+    return list.detachArray();
+  }
+
+  @Override
+  public final int[] readUInt32Array(int[] target) {
+    final IntArrayList list = IntArrayList.wrap(target);
+    readUInt32List(list, true);
+    return list.detachArray();
+  }
+
+  @Override
+  public final int[] readSFixed32Array(int[] target) {
+    final IntArrayList list = IntArrayList.wrap(target);
+    readSFixed32List(list, true);
+    return list.detachArray();
+  }
+
+  @Override
+  public final long[] readSFixed64Array(long[] target) {
+    final LongArrayList list = LongArrayList.wrap(target);
+    readSFixed64List(list, true);
+    return list.detachArray();
+  }
+
+  @Override
+  public final int[] readSInt32Array(int[] target) {
+    final IntArrayList list = IntArrayList.wrap(target);
+    readSInt32List(list, true);
+    return list.detachArray();
+  }
+
+  @Override
+  public final long[] readSInt64Array(long[] target) {
+    final LongArrayList list = LongArrayList.wrap(target);
+    readSInt64List(list, true);
+    return list.detachArray();
+  }
+
+  @Override
+  public final byte[] readByteArray() {
+    requireWireType(WIRETYPE_LENGTH_DELIMITED);
+    return readRawByteArray(readSize());
+  }
+
+  @Override
+  public final ByteBuffer readByteBuffer() {
+    requireWireType(WIRETYPE_LENGTH_DELIMITED);
+    return ByteBuffer.wrap(readRawByteArray(readSize()));
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public final <K, V> void readMap(Map<K, V> target, MapEntryDescriptor mapEntry) {
+    final int mapTag = tag;
+    if (getTagWireType(mapTag) != WIRETYPE_LENGTH_DELIMITED) {
+      throw InvalidWireFormatException.invalidWireType();
+    }
+    final FieldType keyType = mapEntry.getKeyType();
+    final FieldType valueType = mapEntry.getValueType();
+    final LazySchema<?> valueSchema = mapEntry.getValueSchema();
+    final JavaType keyJavaType = keyType.getJavaType();
+    final boolean primitiveKey =
+        (keyJavaType == JavaType.INT && target instanceof IntKeyHashMap)
+            || (keyJavaType == JavaType.LONG && target instanceof LongKeyHashMap);
+    do {
+      final int oldLimit = pushLimit(readSize());
+      tag = 0;
+      long primitiveKeyValue = 0;
+      Object key = null;
+      Object value = null;
+      while (!isAtEnd()) {
+        readTag();
+        switch (getTagFieldNumber(tag)) {
+          case 1:
+            if (primitiveKey) {
+              primitiveKeyValue = readMapEntryLong(keyType);
+            } else {
+              key = readMapEntryField(keyType, null, null);
+            }
+            break;
+          case 2:
+            value = readMapEntryField(valueType, valueSchema, value);
+            break;
+          default:
+            skipValue(tag);
+            tag = 0;
+            break;
+        }
+      }
+      popLimit(oldLimit);
+
+      if (value == null) {
+        value = getMapEntryDefault(valueType, valueSchema);
+      }
+      if (primitiveKey) {
+        if (keyJavaType == JavaType.INT) {
+          ((IntKeyHashMap<V>) target).put((int) primitiveKeyValue, (V) value);
+        } else {
+          ((LongKeyHashMap<V>) target).put(primitiveKeyValue, (V) value);
+        }
+      } else {
+        if (key == null) {
+          key = getMapEntryDefault(keyType, null);
+        }
+        target.put((K) key, (V) value);
+      }
+    } while (nextTagIs(mapTag));
+  }
+
+  /**
+   * Reads a length-delimited message into the given instance, using the given schema.
+   */
+  final <T> void readMessageNoTag(T message, Schema<T> schema) {
+    final int size = readSize();
+    if (++recursionDepth > DEFAULT_RECURSION_LIMIT) {
+      throw InvalidWireFormatException.recursionLimitExceeded();
+    }
+    final int oldLimit = pushLimit(size);
+    tag = 0;
+    schema.mergeFrom(message, this);
+    if (!isAtEnd()) {
+      // The schema stopped before the end of the message.
+      throw InvalidWireFormatException.truncatedMessage();
+    }
+    popLimit(oldLimit);
+    --recursionDepth;
+  }
+
+  /**
+   * Reads the key or value of a map entry, boxing values of the primitive types.
+   *
+   * @param previous the value already read for this field of the entry, into which a message is
+   *     merged, or {@code null}.
+   */
+  private Object readMapEntryField(
+      FieldType type, @Nullable LazySchema<?> messageSchema, @Nullable Object previous) {
+    switch (type) {
+      case DOUBLE:
+        return readDouble();
+      case FLOAT:
+        return readFloat();
+      case BOOL:
+        return readBool();
+      case STRING:
+        return readString();
+      case BYTES:
+        return readBytes();
+      case MESSAGE:
+        requireWireType(WIRETYPE_LENGTH_DELIMITED);
+        return readMapEntryMessage(previous, messageSchema);
+      default:
+        final long value = readMapEntryLong(type);
+        return type.getJavaType() == JavaType.LONG ? (Object) value : (Object) (int) value;
+    }
+  }
+
+  /**
+   * Reads a message value of a map entry with the given schema, merging it into the previous value
+   * if there is one.
+   */
+  @SuppressWarnings("unchecked")
+  private <T> T readMapEntryMessage(@Nullable Object previous, LazySchema<T> messageSchema) {
+    final T message = previous != null ? (T) previous : messageSchema.newInstance();
+    readMessageNoTag(message, messageSchema.get(this));
+    return message;
+  }
+
+  /**
+   * Reads the integral key or value of a map entry. Values of 32-bit types are sign-extended.
+   */
+  private long readMapEntryLong(FieldType type) {
+    switch (type) {
+      case INT64:
+        return readInt64();
+      case UINT64:
+        return readUInt64();
+      case SINT64:
+        return readSInt64();
+      case FIXED64:
+        return readFixed64();
+      case SFIXED64:
+        return readSFixed64();
+      case INT32:
+        return readInt32();
+      case UINT32:
+        return readUInt32();
+      case SINT32:
+        return readSInt32();
+      case FIXED32:
+        return readFixed32();
+      case SFIXED32:
+        return readSFixed32();
+      case ENUM:
+        return readEnum();
+      default:
+        throw new IllegalArgumentException("Unsupported map entry field type: " + type);
+    }
+  }
+
+  /**
+   * Returns the value of a map key or value that is missing from its entry.
+   */
+  private static Object getMapEntryDefault(
+      FieldType type, @Nullable LazySchema<?> messageSchema) {
+    switch (type.getJavaType()) {
+      case MESSAGE:
+        return messageSchema.newInstance();
+      case ENUM:
+        return 0;
+      default:
+        return type.getJavaType().getDefaultDefault();
+    }
+  }
+
+  /**
+   * Reads the next tag and makes it the current tag.
+   */
+  private void readTag() {
+    tagStart = getTotalBytesRead();
+    tag = readRawVarint32();
+    if (getTagFieldNumber(tag) == 0) {
+      throw InvalidWireFormatException.invalidTag();
+    }
+  }
+
+  /**
+   * Verifies that the current field has the given wire type and marks it as consumed.
+   */
+  private void requireWireType(int wireType) {
+    if (getTagWireType(tag) != wireType) {
+      throw InvalidWireFormatException.invalidWireType();
+    }
+    tag = 0;
+  }
+
+  /**
+   * Reads the next tag, if any, and returns whether it is equal to the expected tag. This is used
+   * to read consecutive elements of a non-packed repeated field.
+   */
+  private boolean nextTagIs(int expectedTag) {
+    if (isAtEnd()) {
+      tag = 0;
+      return false;
+    }
+    readTag();
+    return tag == expectedTag;
+  }
+
+  /**
+   * Reads the size of a length-delimited value.
+   */
+  private int readSize() {
+    final int size = readRawVarint32();
+    if (size < 0) {
+      throw InvalidWireFormatException.negativeSize();
+    }
+    return size;
+  }
+
+  /**
+   * Reads the size of a packed field whose elements each have the given fixed size.
+   */
+  private int readPackedSize(int elementSize) {
+    final int size = readSize();
+    if (size % elementSize != 0) {
+      throw InvalidWireFormatException.packedSizeMismatch();
+    }
+    return size;
+  }
+
+  /**
+   * Skips the value of a field with the given tag.
+   */
+  private void skipValue(int fieldTag) {
+    switch (getTagWireType(fieldTag)) {
+      case WIRETYPE_VARINT:
+        skipRawVarint();
+        break;
+      case WIRETYPE_FIXED64:
+        skipRawBytes(FIXED64_SIZE);
+        break;
+      case WIRETYPE_LENGTH_DELIMITED:
+        skipRawBytes(readSize());
+        break;
+      case WIRETYPE_START_GROUP:
+        skipGroup(fieldTag);
+        break;
+      case WIRETYPE_FIXED32:
+        skipRawBytes(FIXED32_SIZE);
+        break;
+      case WIRETYPE_END_GROUP:
+        // An end group tag that does not close a group being skipped.
+        throw InvalidWireFormatException.invalidEndTag();
+      default:
+        throw InvalidWireFormatException.invalidWireType();
+    }
+  }
+
+  private void skipGroup(int startTag) {
+    if (++recursionDepth > DEFAULT_RECURSION_LIMIT) {
+      throw InvalidWireFormatException.recursionLimitExceeded();
+    }
+    final int endTag = makeTag(getTagFieldNumber(startTag), WIRETYPE_END_GROUP);
+    while (true) {
+      if (isAtEnd()) {
+        throw InvalidWireFormatException.truncatedMessage();
+      }
+      final int fieldTag = readRawVarint32();
+      if (fieldTag == endTag) {
+        break;
+      }
+      if (getTagFieldNumber(fieldTag) == 0) {
+        throw InvalidWireFormatException.invalidTag();
+      }
+      skipValue(fieldTag);
+    }
+    --recursionDepth;
+  }
+
+  /**
+   * Reads the value of a field with the given tag, returning a copy of the encoded field. Tags,
+   * varints and lengths are re-encoded in canonical form.
+   */
+  private ByteString copyRawField(int fieldTag) {
+    final byte[] header = new byte[MAX_VARINT32_SIZE + MAX_VARINT64_SIZE];
+    int headerSize = ArrayEncoder.encodeVarint32(fieldTag, header, 0);
+    final ByteString value;
+    switch (getTagWireType(fieldTag)) {
+      case WIRETYPE_VARINT:
+        headerSize = ArrayEncoder.encodeVarint64(readRawVarint64(), header, headerSize);
+        value = ByteString.EMPTY;
+        break;
+      case WIRETYPE_FIXED64:
+        value = readRawBytes(FIXED64_SIZE);
+        break;
+      case WIRETYPE_LENGTH_DELIMITED:
+        final int size = readSize();
+        headerSize = ArrayEncoder.encodeVarint32(size, header, headerSize);
+        value = readRawBytes(size);
+        break;
+      case WIRETYPE_START_GROUP:
+        value = copyRawGroup(fieldTag);
+        break;
+      case WIRETYPE_FIXED32:
+        value = readRawBytes(FIXED32_SIZE);
+        break;
+      case WIRETYPE_END_GROUP:
+        throw InvalidWireFormatException.invalidEndTag();
+      default:
+        throw InvalidWireFormatException.invalidWireType();
+    }
+    return ByteString.copyFrom(header, 0, headerSize).concat(value);
+  }
+
+  /**
+   * Reads the fields of a group with the given start tag, returning a copy of the encoded fields
+   * followed by the end tag.
+   */
+  private ByteString copyRawGroup(int startTag) {
+    if (++recursionDepth > DEFAULT_RECURSION_LIMIT) {
+      throw InvalidWireFormatException.recursionLimitExceeded();
+    }
+    final int endTag = makeTag(getTagFieldNumber(startTag), WIRETYPE_END_GROUP);
+    ByteString fields = ByteString.EMPTY;
+    while (true) {
+      if (isAtEnd()) {
+        throw InvalidWireFormatException.truncatedMessage();
+      }
+      final int fieldTag = readRawVarint32();
+      if (fieldTag == endTag) {
+        break;
+      }
+      if (getTagFieldNumber(fieldTag) == 0) {
+        throw InvalidWireFormatException.invalidTag();
+      }
+      fields = fields.concat(copyRawField(fieldTag));
+    }
+    --recursionDepth;
+    final byte[] encodedEndTag = new byte[MAX_VARINT32_SIZE];
+    return fields.concat(
+        ByteString.copyFrom(
+            encodedEndTag, 0, ArrayEncoder.encodeVarint32(endTag, encodedEndTag, 0)));
+  }
+
+  /**
+   * Counts the varints in {@code length} bytes of the buffer. Each varint has exactly one byte with
+   * the high bit clear, its last.
+   */
+  static int countRawVarints(byte[] buffer, int offset, int length) {
+    int count = 0;
+    final int end = offset + length;
+    for (int p = offset; p < end; ++p) {
+      count += ~buffer[p] >>> 31;
+    }
+    return count;
+  }
+
+  /**
+   * Grows the target list, if it is a {@link PrimitiveArrayList} or an {@link ArrayList}, so that
+   * the given number of additional elements of a packed field can be added without reallocating
+   * its backing array.
+   */
+  private static void ensureCapacity(List<?> target, int count) {
+    if (count <= 0) {
+      return;
+    }
+    if (target instanceof PrimitiveArrayList) {
+      ((PrimitiveArrayList<?>) target).ensureCapacity(target.size() + count);
+    } else if (target instanceof ArrayList) {
+      ((ArrayList<?>) target).ensureCapacity(target.size() + count);
+    }
+  }
+
+  @Override
+  public final <T> Schema<T> schemaFor(Class<T> messageType) {
+    return nestedSchemas.schemaFor(messageType);
+  }
+
+  @Override
+  public final SchemaFactory getSchemaFactory() {
+    return nestedSchemas.getSchemaFactory();
+  }
+
+  static <T> T newInstance(Class<T> messageType) {
+    try {
+      return messageType.newInstance();
+    } catch (InstantiationException e) {
+      throw new RuntimeException(e);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Indicates whether the end of the input, or of the current limit, has been reached.
+   */
+  abstract boolean isAtEnd();
+
+  /**
+   * Reads a raw varint, truncating it to 32 bits.
+   */
+  abstract int readRawVarint32();
+
+  /**
+   * Reads a raw 64-bit varint.
+   */
+  abstract long readRawVarint64();
+
+  /**
+   * Reads 4 little-endian bytes.
+   */
+  abstract int readRawFixed32();
+
+  /**
+   * Reads 8 little-endian bytes.
+   */
+  abstract long readRawFixed64();
+
+  /**
+   * Reads {@code size} bytes and decodes them as a UTF-8 string.
+   */
+  abstract String readRawString(int size);
+
+  /**
+   * Reads {@code size} bytes.
+   */
+  abstract ByteString readRawBytes(int size);
+
+  /**
+   * Reads {@code size} bytes into a new array.
+   */
+  abstract byte[] readRawByteArray(int size);
+
+  /**
+   * Skips {@code size} bytes.
+   */
+  abstract void skipRawBytes(int size);
+
+  /**
+   * Indicates whether {@code bytes} fields are returned as views of the input rather than copies.
+   * If so, {@link #sliceRawBytes(int, int)} must be supported.
+   */
+  boolean aliasesInput() {
+    return false;
+  }
+
+  /**
+   * Returns a view of {@code size} bytes of input that have already been read, starting at the
+   * given position as returned by {@link #getTotalBytesRead()}.
+   */
+  ByteString sliceRawBytes(int start, int size) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Skips a raw varint. Subclasses may override this to avoid decoding the value.
+   */
+  void skipRawVarint() {
+    readRawVarint64();
+  }
+
+  /**
+   * Reads {@code count} elements of a packed fixed-width field, which are known to lie within the
+   * current limit, and appends them to the target in bulk.
+   */
+  abstract void readRawLittleEndian(PrimitiveArrayList<?> target, int count);
+
+  /**
+   * Counts the varints in the next {@code size} bytes, without consuming them, so that a list can
+   * be sized before a packed field is read. Subclasses that can't examine the bytes without
+   * reading further input return {@code -1}.
+   */
+  int countRawVarints(int size) {
+    return -1;
+  }
+
+  /**
+   * Limits the input to the next {@code size} bytes, until {@link #popLimit(int)} is called. This
+   * is used for length-delimited values whose contents are read field by field.
+   *
+   * @return the previous limit, to be passed to {@link #popLimit(int)}.
+   */
+  abstract int pushLimit(int size);
+
+  /**
+   * Restores the limit returned by {@link #pushLimit(int)}.
+   */
+  abstract void popLimit(int oldLimit);
+}
@@ -0,0 +1,607 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import static com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList.getBoolean;
+import static com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList.getDouble;
+import static com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList.getFloat;
+import static com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList.getInt;
+import static com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList.getLong;
+import static com.google.apps.tiktok.protobuf.experimental.util.SchemaUtil.computeMapEntrySize;
+import static com.google.apps.tiktok.protobuf.experimental.util.SchemaUtil.writeFieldValue;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED32_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED64_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.WIRETYPE_FIXED32;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.WIRETYPE_FIXED64;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.WIRETYPE_LENGTH_DELIMITED;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.WIRETYPE_VARINT;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.computeInt32Size;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.computeVarint32Size;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.computeVarint64Size;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.encodeZigZag32;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.encodeZigZag64;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.makeTag;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.DoubleArrayList;
+import com.google.apps.tiktok.protobuf.experimental.ExperimentalApi;
+import com.google.apps.tiktok.protobuf.experimental.FloatArrayList;
+import com.google.apps.tiktok.protobuf.experimental.IntArrayList;
+import com.google.apps.tiktok.protobuf.experimental.IntKeyHashMap;
+import com.google.apps.tiktok.protobuf.experimental.LongArrayList;
+import com.google.apps.tiktok.protobuf.experimental.LongKeyHashMap;
+import com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList;
+import com.google.apps.tiktok.protobuf.experimental.UnsafeByteOperations;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.MapEntryDescriptor;
+import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
+import com.google.apps.tiktok.protobuf.experimental.schema.SchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.schema.SizeCalculator;
+import com.google.apps.tiktok.protobuf.experimental.schema.Writer;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base class for {@link Writer} implementations that encode fields in the protobuf binary wire
+ * format, from front to back. Subclasses provide the low-level encoding of raw values into their
+ * target.
+ *
+ * <p>Nested messages are written with the schema obtained from the {@link SchemaFactory} provided
+ * at construction. Schemas are cached by the writer, so reusing a writer for many messages avoids
+ * repeated schema creation. Packed fixed-width fields held in the matching
+ * {@link PrimitiveArrayList} are copied from its backing array in bulk.
+ *
+ * <p>Map entries are written directly from the key and value, without creating an entry message.
+ * Since the length of each entry precedes it, message values are measured before being written.
+ */
+@ExperimentalApi
+public abstract class BinaryWriter implements Writer {
+  final NestedSchemas nestedSchemas;
+  private SizeCache sizeCache;
+
+  /**
+   * Measures the message values of map entries, whose lengths are needed to compute the length
+   * of each entry.
+   */
+  private final SizeCalculator mapValueSizes =
+      new SizeCalculator() {
+        @Override
+        public <T> int getMessageSize(T message, Schema<T> schema) {
+          return BinaryWriter.this.getMessageSize(message, schema);
+        }
+
+        @Override
+        public <T> Schema<T> schemaFor(Class<T> messageType) {
+          return nestedSchemas.schemaFor(messageType);
+        }
+
+        @Override
+        public SchemaFactory getSchemaFactory() {
+          return nestedSchemas.getSchemaFactory();
+        }
+      };
+
+  BinaryWriter(SchemaFactory schemaFactory) {
+    nestedSchemas = new NestedSchemas(schemaFactory);
+  }
+
+  /**
+   * Returns the total number of bytes written by this writer.
+   */
+  public abstract int getTotalBytesWritten();
+
+  @Override
+  public final void writeSFixed32(int fieldNumber, int value) {
+    writeFixed32(fieldNumber, value);
+  }
+
+  @Override
+  public final void writeInt64(int fieldNumber, long value) {
+    writeTag(fieldNumber, WIRETYPE_VARINT);
+    writeUInt64NoTag(value);
+  }
+
+  @Override
+  public final void writeSFixed64(int fieldNumber, long value) {
+    writeFixed64(fieldNumber, value);
+  }
+
+  @Override
+  public final void writeFloat(int fieldNumber, float value) {
+    writeFixed32(fieldNumber, Float.floatToRawIntBits(value));
+  }
+
+  @Override
+  public final void writeDouble(int fieldNumber, double value) {
+    writeFixed64(fieldNumber, Double.doubleToRawLongBits(value));
+  }
+
+  @Override
+  public final void writeEnum(int fieldNumber, int value) {
+    writeInt32(fieldNumber, value);
+  }
+
+  @Override
+  public final void writeUInt64(int fieldNumber, long value) {
+    writeTag(fieldNumber, WIRETYPE_VARINT);
+    writeUInt64NoTag(value);
+  }
+
+  @Override
+  public final void writeInt32(int fieldNumber, int value) {
+    writeTag(fieldNumber, WIRETYPE_VARINT);
+    writeInt32NoTag(value);
+  }
+
+  @Override
+  public final void writeFixed64(int fieldNumber, long value) {
+    writeTag(fieldNumber, WIRETYPE_FIXED64);
+    writeFixed64NoTag(value);
+  }
+
+  @Override
+  public final void writeFixed32(int fieldNumber, int value) {
+    writeTag(fieldNumber, WIRETYPE_FIXED32);
+    writeFixed32NoTag(value);
+  }
+
+  @Override
+  public final void writeBool(int fieldNumber, boolean value) {
+    writeTag(fieldNumber, WIRETYPE_VARINT);
+    writeUInt32NoTag(value ? 1 : 0);
+  }
+
+  @Override
+  public final void writeString(int fieldNumber, String value) {
+    writeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED);
+    writeStringNoTag(value);
+  }
+
+  @Override
+  public final void writeBytes(int fieldNumber, ByteString value) {
+    writeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED);
+    writeBytesNoTag(value);
+  }
+
+  @Override
+  public final void writeUInt32(int fieldNumber, int value) {
+    writeTag(fieldNumber, WIRETYPE_VARINT);
+    writeUInt32NoTag(value);
+  }
+
+  @Override
+  public final void writeSInt32(int fieldNumber, int value) {
+    writeTag(fieldNumber, WIRETYPE_VARINT);
+    writeUInt32NoTag(encodeZigZag32(value));
+  }
+
+  @Override
+  public final void writeSInt64(int fieldNumber, long value) {
+    writeTag(fieldNumber, WIRETYPE_VARINT);
+    writeUInt64NoTag(encodeZigZag64(value));
+  }
+
+  @Override
+  public final <T> void writeMessage(int fieldNumber, T value, Schema<T> schema) {
+    writeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED);
+    writeMessageNoTag(value, schema);
+  }
+
+  @Override
+  public final void writeInt32List(int fieldNumber, List<Integer> value, boolean packed) {
+    if (packed) {
+      int dataSize = 0;
+      for (int i = 0; i < value.size(); ++i) {
+        dataSize += computeInt32Size(getInt(value, i));
+      }
+      writePackedHeader(fieldNumber, dataSize);
+      for (int i = 0; i < value.size(); ++i) {
+        writeInt32NoTag(getInt(value, i));
+      }
+    } else {
+      for (int i = 0; i < value.size(); ++i) {
+        writeInt32(fieldNumber, getInt(value, i));
+      }
+    }
+  }
+
+  @Override
+  public final void writeFixed32List(int fieldNumber, List<Integer> value, boolean packed) {
+    if (packed) {
+      writePackedHeader(fieldNumber, value.size() * FIXED32_SIZE);
+      if (value instanceof IntArrayList) {
+        writeRawLittleEndian((IntArrayList) value);
+      } else {
+        for (int i = 0; i < value.size(); ++i) {
+          writeFixed32NoTag(getInt(value, i));
+        }
+      }
+    } else {
+      for (int i = 0; i < value.size(); ++i) {
+        writeFixed32(fieldNumber, getInt(value, i));
+      }
+    }
+  }
+
+  @Override
+  public final void writeInt64List(int fieldNumber, List<Long> value, boolean packed) {
+    writeUInt64List(fieldNumber, value, packed);
+  }
+
+  @Override
+  public final void writeUInt64List(int fieldNumber, List<Long> value, boolean packed) {
+    if (packed) {
+      int dataSize = 0;
+      for (int i = 0; i < value.size(); ++i) {
+        dataSize += computeVarint64Size(getLong(value, i));
+      }
+      writePackedHeader(fieldNumber, dataSize);
+      for (int i = 0; i < value.size(); ++i) {
+        writeUInt64NoTag(getLong(value, i));
+      }
+    } else {
+      for (int i = 0; i < value.size(); ++i) {
+        writeUInt64(fieldNumber, getLong(value, i));
+      }
+    }
+  }
+
+  @Override
+  public final void writeFixed64List(int fieldNumber, List<Long> value, boolean packed) {
+    if (packed) {
+      writePackedHeader(fieldNumber, value.size() * FIXED64_SIZE);
+      if (value instanceof LongArrayList) {
+        writeRawLittleEndian((LongArrayList) value);
+      } else {
+        for (int i = 0; i < value.size(); ++i) {
+          writeFixed64NoTag(getLong(value, i));
+        }
+      }
+    } else {
+      for (int i = 0; i < value.size(); ++i) {
+        writeFixed64(fieldNumber, getLong(value, i));
+      }
+    }
+  }
+
+  @Override
+  public final void writeFloatList(int fieldNumber, List<Float> value, boolean packed) {
+    if (packed) {
+      writePackedHeader(fieldNumber, value.size() * FIXED32_SIZE);
+      if (value instanceof FloatArrayList) {
+        writeRawLittleEndian((FloatArrayList) value);
+      } else {
+        for (int i = 0; i < value.size(); ++i) {
+          writeFixed32NoTag(Float.floatToRawIntBits(getFloat(value, i)));
+        }
+      }
+    } else {
+      for (int i = 0; i < value.size(); ++i) {
+        writeFloat(fieldNumber, getFloat(value, i));
+      }
+    }
+  }
+
+  @Override
+  public final void writeDoubleList(int fieldNumber, List<Double> value, boolean packed) {
+    if (packed) {
+      writePackedHeader(fieldNumber, value.size() * FIXED64_SIZE);
+      if (value instanceof DoubleArrayList) {
+        writeRawLittleEndian((DoubleArrayList) value);
+      } else {
+        for (int i = 0; i < value.size(); ++i) {
+          writeFixed64NoTag(Double.doubleToRawLongBits(getDouble(value, i)));
+        }
+      }
+    } else {
+      for (int i = 0; i < value.size(); ++i) {
+        writeDouble(fieldNumber, getDouble(value, i));
+      }
+    }
+  }
+
+  @Override
+  public final void writeEnumList(int fieldNumber, List<Integer> value, boolean packed) {
+    writeInt32List(fieldNumber, value, packed);
+  }
+
+  @Override
+  public final void writeBoolList(int fieldNumber, List<Boolean> value, boolean packed) {
+    if (packed) {
+      // Each bool is encoded as a single byte.
+      writePackedHeader(fieldNumber, value.size());
+      for (int i = 0; i < value.size(); ++i) {
+        writeUInt32NoTag(getBoolean(value, i) ? 1 : 0);
+      }
+    } else {
+      for (int i = 0; i < value.size(); ++i) {
+        writeBool(fieldNumber, getBoolean(value, i));
+      }
+    }
+  }
+
+  @Override
+  public final void writeStringList(int fieldNumber, List<String> value) {
+    for (int i = 0; i < value.size(); ++i) {
+      writeString(fieldNumber, value.get(i));
+    }
+  }
+
+  @Override
+  public final void writeBytesList(int fieldNumber, List<ByteString> value) {
+    for (int i = 0; i < value.size(); ++i) {
+      writeBytes(fieldNumber, value.get(i));
+    }
+  }
+
+  @Override
+  public final void writeUInt32List(int fieldNumber, List<Integer> value, boolean packed) {
+    if (packed) {
+      int dataSize = 0;
+      for (int i = 0; i < value.size(); ++i) {
+        dataSize += computeVarint32Size(getInt(value, i));
+      }
+      writePackedHeader(fieldNumber, dataSize);
+      for (int i = 0; i < value.size(); ++i) {
+        writeUInt32NoTag(getInt(value, i));
+      }
+    } else {
+      for (int i = 0; i < value.size(); ++i) {
+        writeUInt32(fieldNumber, getInt(value, i));
+      }
+    }
+  }
+
+  @Override
+  public final void writeSFixed32List(int fieldNumber, List<Integer> value, boolean packed) {
+    writeFixed32List(fieldNumber, value, packed);
+  }
+
+  @Override
+  public final void writeSFixed64List(int fieldNumber, List<Long> value, boolean packed) {
+    writeFixed64List(fieldNumber, value, packed);
+  }
+
+  @Override
+  public final void writeSInt32List(int fieldNumber, List<Integer> value, boolean packed) {
+    if (packed) {
+      int dataSize = 0;
+      for (int i = 0; i < value.size(); ++i) {
+        dataSize += computeVarint32Size(encodeZigZag32(getInt(value, i)));
+      }
+      writePackedHeader(fieldNumber, dataSize);
+      for (int i = 0; i < value.size(); ++i) {
+        writeUInt32NoTag(encodeZigZag32(getInt(value, i)));
+      }
+    } else {
+      for (int i = 0; i < value.size(); ++i) {
+        writeSInt32(fieldNumber, getInt(value, i));
+      }
+    }
+  }
+
+  @Override
+  public final void writeSInt64List(int fieldNumber, List<Long> value, boolean packed) {
+    if (packed) {
+      int dataSize = 0;
+      for (int i = 0; i < value.size(); ++i) {
+        dataSize += computeVarint64Size(encodeZigZag64(getLong(value, i)));
+      }
+      writePackedHeader(fieldNumber, dataSize);
+      for (int i = 0; i < value.size(); ++i) {
+        writeUInt64NoTag(encodeZigZag64(getLong(value, i)));
+      }
+    } else {
+      for (int i = 0; i < value.size(); ++i) {
+        writeSInt64(fieldNumber, getLong(value, i));
+      }
+    }
+  }
+
+  @Override
+  public final <T> void writeMessageList(
+      int fieldNumber, List<? extends T> value, Schema<T> schema) {
+    for (int i = 0; i < value.size(); ++i) {
+      writeMessage(fieldNumber, value.get(i), schema);
+    }
+  }
+
+  @Override
+  public final void writeDoubleArray(int fieldNumber, double[] value) {
+    writeDoubleList(fieldNumber, DoubleArrayList.wrap(value), true);
+  }
+
+  @Override
+  public final void writeFloatArray(int fieldNumber, float[] value) {
+    writeFloatList(fieldNumber, FloatArrayList.wrap(value), true);
+  }
+
+  @Override
+  public final void writeInt64Array(int fieldNumber, long[] value) {
+    writeInt64List(fieldNumber, LongArrayList.wrap(value), true);
+  }
+
+  @Override
+  public final void writeUInt64Array(int fieldNumber, long[] value) {
+    writeUInt64List(fieldNumber, LongArrayList.wrap(value), true);
+  }
+
+  @Override
+  public final void writeInt32Array(int fieldNumber, int[] value) {
+    writeInt32List(fieldNumber, IntArrayList.wrap(value), true);
+  }
+
+  @Override
+  public final void writeFixed64Array(int fieldNumber, long[] value) {
+    writeFixed64List(fieldNumber, LongArrayList.wrap(value), true);
+  }
+
+  @Override
+  public final void writeFixed32Array(int fieldNumber, int[] value) {
+    writeFixed32List(fieldNumber, IntArrayList.wrap(value), true);
+  }
+
+  @Override
+  public final void writeUInt32Array(int fieldNumber, int[] value) {
+    writeUInt32List(fieldNumber, IntArrayList.wrap(value), true);
+  }
+
+  @Override
+  public final void writeSFixed32Array(int fieldNumber, int[] value) {
+    writeSFixed32List(fieldNumber, IntArrayList.wrap(value), true);
+  }
+
+  @Override
+  public final void writeSFixed64Array(int fieldNumber, long[] value) {
+    writeSFixed64List(fieldNumber, LongArrayList.wrap(value), true);
+  }
+
+  @Override
+  public final void writeSInt32Array(int fieldNumber, int[] value) {
+    writeSInt32List(fieldNumber, IntArrayList.wrap(value), true);
+  }
+
+  @Override
+  public final void writeSInt64Array(int fieldNumber, long[] value) {
+    writeSInt64List(fieldNumber, LongArrayList.wrap(value), true);
+  }
+
+  @Override
+  public final void writeByteArray(int fieldNumber, byte[] value) {
+    writeBytes(fieldNumber, UnsafeByteOperations.unsafeWrap(value));
+  }
+
+  @Override
+  public final void writeByteBuffer(int fieldNumber, ByteBuffer value) {
+    writeBytes(fieldNumber, UnsafeByteOperations.unsafeWrap(value));
+  }
+
+  @Override
+  public final void writeMap(int fieldNumber, Map<?, ?> value, MapEntryDescriptor mapEntry) {
+    if (value instanceof IntKeyHashMap) {
+      // Visit the entries by slot so that the keys need not be boxed.
+      final IntKeyHashMap<?> map = (IntKeyHashMap<?>) value;
+      for (int slot = map.nextSlot(0); slot >= 0; slot = map.nextSlot(slot + 1)) {
+        writeMapEntry(fieldNumber, mapEntry, map.keyAt(slot), map.valueAt(slot));
+      }
+    } else if (value instanceof LongKeyHashMap) {
+      final LongKeyHashMap<?> map = (LongKeyHashMap<?>) value;
+      for (int slot = map.nextSlot(0); slot >= 0; slot = map.nextSlot(slot + 1)) {
+        writeMapEntry(fieldNumber, mapEntry, map.keyAt(slot), map.valueAt(slot));
+      }
+    } else {
+      for (Map.Entry<?, ?> entry : value.entrySet()) {
+        writeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED);
+        writeUInt32NoTag(
+            computeMapEntrySize(mapEntry, entry.getKey(), entry.getValue(), mapValueSizes));
+        writeFieldValue(1, mapEntry.getKeyType(), entry.getKey(), null, this);
+        writeFieldValue(
+            2, mapEntry.getValueType(), entry.getValue(), mapEntry.getValueSchema(), this);
+      }
+    }
+  }
+
+  @Override
+  public final <T> Schema<T> schemaFor(Class<T> messageType) {
+    return nestedSchemas.schemaFor(messageType);
+  }
+
+  @Override
+  public final SchemaFactory getSchemaFactory() {
+    return nestedSchemas.getSchemaFactory();
+  }
+
+  @Override
+  public final void writeUnknownFields(ByteString value) {
+    writeRawBytes(value);
+  }
+
+  private void writeMapEntry(
+      int fieldNumber, MapEntryDescriptor mapEntry, long key, Object value) {
+    writeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED);
+    writeUInt32NoTag(computeMapEntrySize(mapEntry, key, value, mapValueSizes));
+    writeFieldValue(1, mapEntry.getKeyType(), key, this);
+    writeFieldValue(2, mapEntry.getValueType(), value, mapEntry.getValueSchema(), this);
+  }
+
+  /**
+   * Returns the serialized size of a message that is about to be written, such as the value of a
+   * map entry whose length must be written first. By default, the sizes of the messages nested
+   * within it are discarded, since the writer measures nested messages as it writes them.
+   */
+  <T> int getMessageSize(T message, Schema<T> schema) {
+    if (sizeCache == null) {
+      sizeCache = new SizeCache(nestedSchemas);
+    }
+    try {
+      return sizeCache.getMessageSize(message, schema);
+    } finally {
+      sizeCache.clear();
+    }
+  }
+
+  final void writeTag(int fieldNumber, int wireType) {
+    writeUInt32NoTag(makeTag(fieldNumber, wireType));
+  }
+
+  private void writePackedHeader(int fieldNumber, int dataSize) {
+    writeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED);
+    writeUInt32NoTag(dataSize);
+  }
+
+  /**
+   * Writes the length of the bytes, followed by the bytes themselves.
+   */
+  final void writeBytesNoTag(ByteString value) {
+    writeUInt32NoTag(value.size());
+    writeRawBytes(value);
+  }
+
+  final void writeInt32NoTag(int value) {
+    if (value >= 0) {
+      writeUInt32NoTag(value);
+    } else {
+      // Negative values are sign-extended to 64 bits.
+      writeUInt64NoTag(value);
+    }
+  }
+
+  /**
+   * Writes the given value as an unsigned 32-bit varint.
+   */
+  abstract void writeUInt32NoTag(int value);
+
+  /**
+   * Writes the given value as a 64-bit varint.
+   */
+  abstract void writeUInt64NoTag(long value);
+
+  /**
+   * Writes the given value as 4 little-endian bytes.
+   */
+  abstract void writeFixed32NoTag(int value);
+
+  /**
+   * Writes the given value as 8 little-endian bytes.
+   */
+  abstract void writeFixed64NoTag(long value);
+
+  /**
+   * Writes the UTF-8 encoded length of the string, followed by the encoded bytes.
+   */
+  abstract void writeStringNoTag(String value);
+
+  /**
+   * Writes the given bytes, without a length.
+   */
+  abstract void writeRawBytes(ByteString value);
+
+  /**
+   * Writes the serialized length of the message, followed by the serialized message.
+   */
+  abstract <T> void writeMessageNoTag(T value, Schema<T> schema);
+
+  /**
+   * Writes the elements of a packed fixed-width field in bulk, in little-endian order.
+   */
+  abstract void writeRawLittleEndian(PrimitiveArrayList<?> value);
+}
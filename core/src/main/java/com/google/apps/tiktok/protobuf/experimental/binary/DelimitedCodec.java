@@ -0,0 +1,224 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteOutput;
+import com.google.apps.tiktok.protobuf.experimental.ExperimentalApi;
+import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
+import com.google.apps.tiktok.protobuf.experimental.schema.SchemaFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads and writes streams of messages of a single type, each preceded by its length as a varint.
+ * This is the same framing used by {@code writeDelimitedTo} and {@code parseDelimitedFrom} in the
+ * standard protobuf runtime.
+ *
+ * <p>To amortize per-message setup, a sequence of messages should be written through a single
+ * {@link StreamWriter}, either with {@link #writeAll} or by calling {@link #write(Object,
+ * StreamWriter)} repeatedly, so that the output is buffered across messages. Likewise,
+ * {@link #iterator} and {@link #readAll} decode all messages with a single {@link StreamReader}
+ * and buffer. The size limit of the reader is applied to each message separately.
+ *
+ * <p>Instances are immutable and may be shared between threads, although the writers and iterators
+ * they are used with may not.
+ */
+@ExperimentalApi
+public final class DelimitedCodec<T> {
+  private static final int DEFAULT_SIZE_LIMIT = 64 << 20; // 64MB
+
+  private final SchemaFactory schemaFactory;
+  private final Class<T> messageType;
+  private final Schema<T> schema;
+
+  public DelimitedCodec(SchemaFactory schemaFactory, Class<T> messageType) {
+    if (schemaFactory == null) {
+      throw new NullPointerException("schemaFactory");
+    }
+    if (messageType == null) {
+      throw new NullPointerException("messageType");
+    }
+    this.schemaFactory = schemaFactory;
+    this.messageType = messageType;
+    this.schema = schemaFactory.createSchema(messageType);
+  }
+
+  /**
+   * Writes a single length-delimited message to the writer. The message remains in the writer's
+   * buffer until it is flushed, so this may be called repeatedly to batch messages.
+   */
+  public void write(T message, StreamWriter writer) {
+    if (message == null) {
+      throw new NullPointerException("message");
+    }
+    writer.writeMessageNoTag(message, schema);
+  }
+
+  /**
+   * Writes a single length-delimited message to the stream. When writing several messages, use
+   * {@link #writeAll} instead.
+   */
+  public void writeDelimited(T message, OutputStream out) throws IOException {
+    StreamWriter writer = new StreamWriter(schemaFactory, out);
+    write(message, writer);
+    writer.flush();
+  }
+
+  /**
+   * Writes the messages to the stream, each preceded by its length, through a single buffer.
+   */
+  public void writeAll(Iterable<? extends T> messages, OutputStream out) throws IOException {
+    writeAll(messages, new StreamWriter(schemaFactory, out));
+  }
+
+  /**
+   * Writes the messages to the output, each preceded by its length, through a single buffer.
+   */
+  public void writeAll(Iterable<? extends T> messages, ByteOutput out) throws IOException {
+    writeAll(messages, new StreamWriter(schemaFactory, out));
+  }
+
+  private void writeAll(Iterable<? extends T> messages, StreamWriter writer) throws IOException {
+    for (T message : messages) {
+      write(message, writer);
+    }
+    writer.flush();
+  }
+
+  /**
+   * Reads a single length-delimited message from the stream. Exactly the bytes of the message are
+   * consumed, so the stream is left positioned at the start of the next message.
+   *
+   * @return the message, or {@code null} if the stream was already at its end.
+   */
+  public T parseDelimited(InputStream in) throws IOException {
+    int firstByte = in.read();
+    if (firstByte == -1) {
+      return null;
+    }
+    int size = readRawVarint32(firstByte, in);
+    if (size < 0) {
+      throw InvalidWireFormatException.negativeSize();
+    }
+    if (size > DEFAULT_SIZE_LIMIT) {
+      throw InvalidWireFormatException.sizeLimitExceeded();
+    }
+    byte[] bytes = new byte[size];
+    int offset = 0;
+    while (offset < size) {
+      int read = in.read(bytes, offset, size - offset);
+      if (read < 0) {
+        throw InvalidWireFormatException.truncatedMessage();
+      }
+      offset += read;
+    }
+    T message = BinaryReader.newInstance(messageType);
+    schema.mergeFrom(message, new ArrayReader(schemaFactory, bytes, 0, size, true));
+    return message;
+  }
+
+  /**
+   * Returns an iterator over the messages in the stream. All messages are read through one buffer,
+   * so the reader may consume bytes from the stream beyond the last message returned.
+   */
+  public Iterator<T> iterator(InputStream in) {
+    return new DelimitedIterator(new StreamReader(schemaFactory, in));
+  }
+
+  /**
+   * Returns an iterator over the messages in the channel, which must be in blocking mode. All
+   * messages are read through one buffer, so the reader may consume bytes from the channel beyond
+   * the last message returned.
+   *
+   * @throws IllegalArgumentException if the channel is a
+   *     {@link java.nio.channels.SelectableChannel} in non-blocking mode.
+   */
+  public Iterator<T> iterator(ReadableByteChannel channel) {
+    return new DelimitedIterator(new StreamReader(schemaFactory, channel));
+  }
+
+  /**
+   * Returns an iterator over the messages decoded by the reader, which must be positioned at the
+   * start of a message. This allows the buffer size and size limit of the reader to be configured.
+   */
+  public Iterator<T> iterator(StreamReader reader) {
+    return new DelimitedIterator(reader);
+  }
+
+  /**
+   * Reads all remaining messages from the stream.
+   */
+  public List<T> readAll(InputStream in) {
+    List<T> messages = new ArrayList<T>();
+    Iterator<T> it = iterator(in);
+    while (it.hasNext()) {
+      messages.add(it.next());
+    }
+    return messages;
+  }
+
+  private static int readRawVarint32(int firstByte, InputStream in) throws IOException {
+    int result = firstByte & 0x7F;
+    int b = firstByte;
+    for (int shift = 7; b >= 0x80; shift += 7) {
+      if (shift >= 64) {
+        throw InvalidWireFormatException.malformedVarint();
+      }
+      b = in.read();
+      if (b == -1) {
+        throw InvalidWireFormatException.truncatedMessage();
+      }
+      if (shift < 32) {
+        result |= (b & 0x7F) << shift;
+      }
+    }
+    return result;
+  }
+
+  private final class DelimitedIterator implements Iterator<T> {
+    private final StreamReader reader;
+    private T next;
+    private boolean done;
+
+    DelimitedIterator(StreamReader reader) {
+      if (reader == null) {
+        throw new NullPointerException("reader");
+      }
+      this.reader = reader;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (next == null && !done) {
+        reader.resetSizeCounter();
+        if (reader.isAtEnd()) {
+          done = true;
+        } else {
+          next = BinaryReader.newInstance(messageType);
+          reader.readMessageNoTag(next, schema);
+        }
+      }
+      return next != null;
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      T message = next;
+      next = null;
+      return message;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
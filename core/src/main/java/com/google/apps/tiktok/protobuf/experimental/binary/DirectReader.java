@@ -0,0 +1,316 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED32_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED64_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.MAX_VARINT64_SIZE;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.ExperimentalApi;
+import com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList;
+import com.google.apps.tiktok.protobuf.experimental.UnsafeByteOperations;
+import com.google.apps.tiktok.protobuf.experimental.schema.SchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.util.Internal;
+import com.google.apps.tiktok.protobuf.experimental.util.UnsafeUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A {@link BinaryReader} that decodes directly from off-heap memory, either a direct
+ * {@link ByteBuffer} or a raw address range, without first copying the input to the heap. All
+ * reads are performed with {@code sun.misc.Unsafe} address operations, so this reader is only
+ * available on platforms for which {@link #isSupported()} returns {@code true}.
+ *
+ * <p>When reading from a {@link ByteBuffer}, {@code bytes} fields may optionally be returned as
+ * slices of the buffer rather than copies. In that case, ownership of the buffer contents
+ * effectively passes to the decoded message: the caller must not modify or release the buffer
+ * for as long as any of the returned values are in use. Strings are always decoded into new
+ * objects.
+ *
+ * <p>Reads do not modify the position of a source {@link ByteBuffer}. The number of bytes read is
+ * available from {@link #getTotalBytesRead()}. This class is not thread-safe.
+ */
+@ExperimentalApi
+public final class DirectReader extends BinaryReader {
+  private static final boolean IS_BIG_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+  private static final long BYTE_ARRAY_BASE_OFFSET = UnsafeUtil.getByteArrayBaseOffset();
+
+  /**
+   * The source buffer, if any. A reference is held so that the memory it owns remains valid for
+   * the lifetime of this reader.
+   */
+  private final ByteBuffer buffer;
+  private final long bufferAddress;
+  private final boolean aliasBytes;
+  private final long start;
+  private long pos;
+  private long limit;
+
+  /**
+   * Scratch space used to decode strings.
+   */
+  private byte[] scratch = Internal.EMPTY_BYTE_ARRAY;
+
+  /**
+   * Indicates whether this reader is supported on the current platform.
+   */
+  public static boolean isSupported() {
+    return UnsafeUtil.isSupported() && UnsafeUtil.hasDirectAddressingOperations();
+  }
+
+  /**
+   * Creates a reader that decodes the given direct buffer, from its current position to its limit.
+   * {@code bytes} fields are copied.
+   */
+  public DirectReader(SchemaFactory schemaFactory, ByteBuffer buffer) {
+    this(schemaFactory, buffer, false);
+  }
+
+  /**
+   * Creates a reader that decodes the given direct buffer, from its current position to its limit.
+   *
+   * @param aliasBytes if {@code true}, {@code bytes} fields are returned as slices of
+   *     {@code buffer} rather than copies, so the buffer must not be modified while they are in use.
+   */
+  public DirectReader(SchemaFactory schemaFactory, ByteBuffer buffer, boolean aliasBytes) {
+    super(schemaFactory);
+    checkSupported();
+    if (!buffer.isDirect()) {
+      throw new IllegalArgumentException("buffer must be direct");
+    }
+    this.buffer = buffer;
+    this.aliasBytes = aliasBytes;
+    bufferAddress = UnsafeUtil.addressOffset(buffer);
+    start = bufferAddress + buffer.position();
+    limit = bufferAddress + buffer.limit();
+    pos = start;
+  }
+
+  /**
+   * Creates a reader that decodes the off-heap memory range {@code [address, address + length)}.
+   * The caller is responsible for ensuring that the memory remains valid for the lifetime of this
+   * reader. {@code bytes} fields are copied.
+   */
+  public DirectReader(SchemaFactory schemaFactory, long address, int length) {
+    super(schemaFactory);
+    checkSupported();
+    if (length < 0) {
+      throw new IllegalArgumentException("length must be >= 0: " + length);
+    }
+    this.buffer = null;
+    this.aliasBytes = false;
+    bufferAddress = address;
+    start = address;
+    limit = address + length;
+    pos = start;
+  }
+
+  @Override
+  public int getTotalBytesRead() {
+    return (int) (pos - start);
+  }
+
+  @Override
+  boolean isAtEnd() {
+    return pos == limit;
+  }
+
+  @Override
+  int readRawVarint32() {
+    return (int) readRawVarint64();
+  }
+
+  @Override
+  long readRawVarint64() {
+    final long p = pos;
+    if (limit - p < MAX_VARINT64_SIZE) {
+      // Near the end of the input, so check each byte.
+      return readRawVarint64SlowPath();
+    }
+
+    // The whole varint is known to be within the input, so no further checks are needed.
+    final long word = getWord(p);
+    final int size = Varint.decodedSize(word);
+    if (size != 0) {
+      pos = p + size;
+      return Varint.decode(word, size);
+    }
+    // The varint is longer than a word, so decode the remaining bytes individually.
+    long result = Varint.decode(word, Varint.WORD_SIZE);
+    final byte b8 = UnsafeUtil.getByte(p + 8);
+    result |= (long) (b8 & 0x7F) << 56;
+    if (b8 >= 0) {
+      pos = p + 9;
+      return result;
+    }
+    final byte b9 = UnsafeUtil.getByte(p + 9);
+    if (b9 < 0) {
+      throw InvalidWireFormatException.malformedVarint();
+    }
+    pos = p + MAX_VARINT64_SIZE;
+    return result | (long) b9 << 63;
+  }
+
+  private long readRawVarint64SlowPath() {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      if (pos == limit) {
+        throw InvalidWireFormatException.truncatedMessage();
+      }
+      final byte b = UnsafeUtil.getByte(pos++);
+      result |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return result;
+      }
+    }
+    throw InvalidWireFormatException.malformedVarint();
+  }
+
+  @Override
+  void skipRawVarint() {
+    if (limit - pos >= MAX_VARINT64_SIZE) {
+      final int size = Varint.decodedSize(getWord(pos));
+      if (size != 0) {
+        pos += size;
+        return;
+      }
+      final long end = pos + MAX_VARINT64_SIZE;
+      for (long p = pos; p < end; ++p) {
+        if (UnsafeUtil.getByte(p) >= 0) {
+          pos = p + 1;
+          return;
+        }
+      }
+      throw InvalidWireFormatException.malformedVarint();
+    }
+    readRawVarint64SlowPath();
+  }
+
+  @Override
+  int readRawFixed32() {
+    requireBytes(FIXED32_SIZE);
+    final int value = UnsafeUtil.getInt(pos);
+    pos += FIXED32_SIZE;
+    return IS_BIG_ENDIAN ? Integer.reverseBytes(value) : value;
+  }
+
+  @Override
+  long readRawFixed64() {
+    requireBytes(FIXED64_SIZE);
+    final long value = UnsafeUtil.getLong(pos);
+    pos += FIXED64_SIZE;
+    return IS_BIG_ENDIAN ? Long.reverseBytes(value) : value;
+  }
+
+  @Override
+  String readRawString(int size) {
+    requireBytes(size);
+    if (scratch.length < size) {
+      scratch = new byte[Math.max(size, scratch.length * 2)];
+    }
+    UnsafeUtil.copyMemory(null, pos, scratch, BYTE_ARRAY_BASE_OFFSET, size);
+    pos += size;
+    return new String(scratch, 0, size, Internal.UTF_8);
+  }
+
+  @Override
+  ByteString readRawBytes(int size) {
+    requireBytes(size);
+    if (size == 0) {
+      return ByteString.EMPTY;
+    }
+    final ByteString value;
+    if (aliasBytes) {
+      ByteBuffer slice = buffer.duplicate();
+      int index = (int) (pos - bufferAddress);
+      slice.limit(index + size);
+      slice.position(index);
+      value = UnsafeByteOperations.unsafeWrap(slice);
+    } else {
+      byte[] bytes = new byte[size];
+      UnsafeUtil.copyMemory(null, pos, bytes, BYTE_ARRAY_BASE_OFFSET, size);
+      // The array is not shared, so it can be wrapped without a further copy.
+      value = UnsafeByteOperations.unsafeWrap(bytes);
+    }
+    pos += size;
+    return value;
+  }
+
+  @Override
+  byte[] readRawByteArray(int size) {
+    requireBytes(size);
+    final byte[] bytes = new byte[size];
+    UnsafeUtil.copyMemory(null, pos, bytes, BYTE_ARRAY_BASE_OFFSET, size);
+    pos += size;
+    return bytes;
+  }
+
+  @Override
+  void skipRawBytes(int size) {
+    requireBytes(size);
+    pos += size;
+  }
+
+  @Override
+  boolean aliasesInput() {
+    return aliasBytes;
+  }
+
+  @Override
+  ByteString sliceRawBytes(int start, int size) {
+    ByteBuffer slice = buffer.duplicate();
+    int index = (int) (this.start - bufferAddress) + start;
+    slice.limit(index + size);
+    slice.position(index);
+    return UnsafeByteOperations.unsafeWrap(slice);
+  }
+
+  @Override
+  void readRawLittleEndian(PrimitiveArrayList<?> target, int count) {
+    target.addLittleEndian(pos, count);
+    pos += count * target.getElementSize();
+  }
+
+  @Override
+  int countRawVarints(int size) {
+    int count = 0;
+    final long end = pos + size;
+    for (long p = pos; p < end; ++p) {
+      count += ~UnsafeUtil.getByte(p) >>> 31;
+    }
+    return count;
+  }
+
+  @Override
+  int pushLimit(int size) {
+    requireBytes(size);
+    final int oldLimit = (int) (limit - start);
+    limit = pos + size;
+    return oldLimit;
+  }
+
+  @Override
+  void popLimit(int oldLimit) {
+    limit = start + oldLimit;
+  }
+
+  /**
+   * Loads 8 bytes at the given address in little-endian order.
+   */
+  private static long getWord(long address) {
+    final long word = UnsafeUtil.getLong(address);
+    return IS_BIG_ENDIAN ? Long.reverseBytes(word) : word;
+  }
+
+  private void requireBytes(int size) {
+    if (limit - pos < size) {
+      throw InvalidWireFormatException.truncatedMessage();
+    }
+  }
+
+  private static void checkSupported() {
+    if (!isSupported()) {
+      throw new UnsupportedOperationException("Direct addressing is not supported");
+    }
+  }
+}
@@ -0,0 +1,288 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED32_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED64_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.MAX_VARINT64_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.computeVarint32Size;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.computeVarint64Size;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteOutput;
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.ExperimentalApi;
+import com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList;
+import com.google.apps.tiktok.protobuf.experimental.UnsafeByteOperations;
+import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
+import com.google.apps.tiktok.protobuf.experimental.schema.SchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.util.UnsafeUtil;
+import com.google.apps.tiktok.protobuf.experimental.util.Utf8;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A {@link BinaryWriter} that encodes directly into off-heap memory, either a direct
+ * {@link ByteBuffer} or a raw address range. All writes are performed with
+ * {@code sun.misc.Unsafe} address operations, so this writer is only available on platforms for
+ * which {@link #isSupported()} returns {@code true}.
+ *
+ * <p>The remaining capacity is checked once for each encoded value, rather than for each byte. If
+ * the target is too small to hold the output, a {@link BufferOverflowException} is thrown.
+ *
+ * <p>Varints are written a word at a time, so bytes of the target beyond those written may be
+ * overwritten. Writes do not modify the position of a target {@link ByteBuffer}. The number of
+ * bytes written is available from {@link #getTotalBytesWritten()}. This class is not thread-safe.
+ */
+@ExperimentalApi
+public final class DirectWriter extends BinaryWriter {
+  private static final boolean IS_BIG_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+  private static final long BYTE_ARRAY_BASE_OFFSET = UnsafeUtil.getByteArrayBaseOffset();
+
+  /**
+   * The target buffer, if any. A reference is held so that the memory it owns remains valid for
+   * the lifetime of this writer.
+   */
+  private final ByteBuffer buffer;
+  private final long start;
+  private final long limit;
+  private long position;
+  private final AddressOutput addressOutput = new AddressOutput();
+
+  /**
+   * Indicates whether this writer is supported on the current platform.
+   */
+  public static boolean isSupported() {
+    return UnsafeUtil.isSupported() && UnsafeUtil.hasDirectAddressingOperations();
+  }
+
+  /**
+   * Creates a writer that encodes into the given direct buffer, starting at its current position
+   * and ending at its limit.
+   */
+  public DirectWriter(SchemaFactory schemaFactory, ByteBuffer buffer) {
+    super(schemaFactory);
+    checkSupported();
+    if (!buffer.isDirect()) {
+      throw new IllegalArgumentException("buffer must be direct");
+    }
+    this.buffer = buffer;
+    long address = UnsafeUtil.addressOffset(buffer);
+    start = address + buffer.position();
+    limit = address + buffer.limit();
+    position = start;
+  }
+
+  /**
+   * Creates a writer that encodes into the off-heap memory range
+   * {@code [address, address + length)}. The caller is responsible for ensuring that the memory
+   * remains valid for the lifetime of this writer.
+   */
+  public DirectWriter(SchemaFactory schemaFactory, long address, int length) {
+    super(schemaFactory);
+    checkSupported();
+    if (length < 0) {
+      throw new IllegalArgumentException("length must be >= 0: " + length);
+    }
+    this.buffer = null;
+    start = address;
+    limit = address + length;
+    position = start;
+  }
+
+  @Override
+  public int getTotalBytesWritten() {
+    return (int) (position - start);
+  }
+
+  /**
+   * Discards all written bytes so that the writer can be reused for the same target.
+   */
+  public void reset() {
+    position = start;
+  }
+
+  /**
+   * Returns the number of bytes remaining in the target.
+   */
+  public int spaceLeft() {
+    return (int) (limit - position);
+  }
+
+  @Override
+  void writeUInt32NoTag(int value) {
+    if (limit - position < Varint.WORD_SIZE) {
+      // Near the end of the target, so check the exact size and write a byte at a time.
+      requireSpace(computeVarint32Size(value));
+      position = encodeVarint32(value, position);
+      return;
+    }
+    position = appendVarint64(value & 0xFFFFFFFFL, position);
+  }
+
+  @Override
+  void writeUInt64NoTag(long value) {
+    if (limit - position < MAX_VARINT64_SIZE) {
+      // Near the end of the target, so check the exact size.
+      requireSpace(computeVarint64Size(value));
+      position = encodeVarint64(value, position);
+      return;
+    }
+    position = appendVarint64(value, position);
+  }
+
+  @Override
+  void writeFixed32NoTag(int value) {
+    requireSpace(FIXED32_SIZE);
+    UnsafeUtil.putInt(position, IS_BIG_ENDIAN ? Integer.reverseBytes(value) : value);
+    position += FIXED32_SIZE;
+  }
+
+  @Override
+  void writeFixed64NoTag(long value) {
+    requireSpace(FIXED64_SIZE);
+    UnsafeUtil.putLong(position, IS_BIG_ENDIAN ? Long.reverseBytes(value) : value);
+    position += FIXED64_SIZE;
+  }
+
+  @Override
+  void writeStringNoTag(String value) {
+    int length = Utf8.encodedLength(value);
+    writeUInt32NoTag(length);
+    requireSpace(length);
+    position += Utf8.encode(value, position, length);
+  }
+
+  @Override
+  void writeRawBytes(ByteString value) {
+    int size = value.size();
+    requireSpace(size);
+    try {
+      UnsafeByteOperations.unsafeWriteTo(value, addressOutput);
+    } catch (IOException e) {
+      // Writing to memory never fails.
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  <T> void writeMessageNoTag(T value, Schema<T> schema) {
+    // Reserve a single byte for the length prefix, which is enough for any message smaller than
+    // 128 bytes. Larger messages are shifted to make room for the full prefix once their length
+    // is known.
+    requireSpace(1);
+    final long lengthPosition = position++;
+    schema.writeTo(value, this);
+    final int length = (int) (position - lengthPosition - 1);
+    final int lengthSize = computeVarint32Size(length);
+    if (lengthSize > 1) {
+      requireSpace(lengthSize - 1);
+      // The source and target ranges overlap, which is supported by copyMemory.
+      UnsafeUtil.copyMemory(lengthPosition + 1, lengthPosition + lengthSize, length);
+      position += lengthSize - 1;
+    }
+    encodeVarint32(length, lengthPosition);
+  }
+
+  @Override
+  void writeRawLittleEndian(PrimitiveArrayList<?> value) {
+    final int length = value.size() * value.getElementSize();
+    requireSpace(length);
+    value.copyLittleEndian(0, value.size(), position);
+    position += length;
+  }
+
+  private static long encodeVarint32(int value, long pos) {
+    while ((value & ~0x7F) != 0) {
+      UnsafeUtil.putByte(pos++, (byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    UnsafeUtil.putByte(pos++, (byte) value);
+    return pos;
+  }
+
+  private static long encodeVarint64(long value, long pos) {
+    while ((value & ~0x7FL) != 0) {
+      UnsafeUtil.putByte(pos++, (byte) (((int) value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    UnsafeUtil.putByte(pos++, (byte) value);
+    return pos;
+  }
+
+  /**
+   * Encodes the value as a varint a word at a time. Since bytes following the encoded value may be
+   * overwritten, at least {@link Varint#WORD_SIZE} bytes, and no fewer than the encoded size of the
+   * value, must remain in the target.
+   */
+  private static long appendVarint64(long value, long pos) {
+    final int size = Varint.encodedSize(value);
+    if (size <= Varint.WORD_SIZE) {
+      putWord(pos, Varint.encode(value, size));
+      return pos + size;
+    }
+    // Write the first 56 bits as a full word, followed by the remaining bits.
+    putWord(pos, Varint.encode(value, Varint.WORD_SIZE) | (0x80L << 56));
+    return encodeVarint64(value >>> 56, pos + Varint.WORD_SIZE);
+  }
+
+  private static void putWord(long pos, long word) {
+    UnsafeUtil.putLong(pos, IS_BIG_ENDIAN ? Long.reverseBytes(word) : word);
+  }
+
+  private void requireSpace(int required) {
+    if (limit - position < required) {
+      throw new BufferOverflowException();
+    }
+  }
+
+  private static void checkSupported() {
+    if (!isSupported()) {
+      throw new UnsupportedOperationException("Direct addressing is not supported");
+    }
+  }
+
+  /**
+   * Copies the contents of {@link ByteString}s into the target memory. Space is checked by the
+   * caller before writing.
+   */
+  private final class AddressOutput extends ByteOutput {
+    @Override
+    public void write(byte value) {
+      UnsafeUtil.putByte(position++, value);
+    }
+
+    @Override
+    public void write(byte[] value, int offset, int length) {
+      UnsafeUtil.copyMemory(value, BYTE_ARRAY_BASE_OFFSET + offset, null, position, length);
+      position += length;
+    }
+
+    @Override
+    public void writeLazy(byte[] value, int offset, int length) {
+      write(value, offset, length);
+    }
+
+    @Override
+    public void write(ByteBuffer value) {
+      int length = value.remaining();
+      if (value.isDirect()) {
+        UnsafeUtil.copyMemory(UnsafeUtil.addressOffset(value) + value.position(), position, length);
+        position += length;
+        value.position(value.limit());
+      } else if (value.hasArray()) {
+        write(value.array(), value.arrayOffset() + value.position(), length);
+        value.position(value.limit());
+      } else {
+        while (value.hasRemaining()) {
+          write(value.get());
+        }
+      }
+    }
+
+    @Override
+    public void writeLazy(ByteBuffer value) {
+      write(value);
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import com.google.apps.tiktok.protobuf.experimental.ExperimentalApi;
+
+/**
+ * Thrown by a {@link BinaryReader} when the input is not a valid protobuf message in the binary
+ * wire format. Since the {@link com.google.apps.tiktok.protobuf.experimental.schema.Reader}
+ * interface does not allow checked exceptions, this is an unchecked exception.
+ */
+@ExperimentalApi
+public class InvalidWireFormatException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  public InvalidWireFormatException(String description) {
+    super(description);
+  }
+
+  static InvalidWireFormatException truncatedMessage() {
+    return new InvalidWireFormatException(
+        "While parsing a protocol message, the input ended unexpectedly in the middle of a field.");
+  }
+
+  static InvalidWireFormatException negativeSize() {
+    return new InvalidWireFormatException(
+        "Encountered an embedded string or message which claimed to have negative size.");
+  }
+
+  static InvalidWireFormatException malformedVarint() {
+    return new InvalidWireFormatException("Encountered a malformed varint.");
+  }
+
+  static InvalidWireFormatException invalidTag() {
+    return new InvalidWireFormatException("Protocol message contained an invalid tag (zero).");
+  }
+
+  static InvalidWireFormatException invalidEndTag() {
+    return new InvalidWireFormatException(
+        "Protocol message end-group tag did not match expected tag.");
+  }
+
+  static InvalidWireFormatException invalidWireType() {
+    return new InvalidWireFormatException("Protocol message tag had invalid wire type.");
+  }
+
+  static InvalidWireFormatException recursionLimitExceeded() {
+    return new InvalidWireFormatException(
+        "Protocol message had too many levels of nesting.");
+  }
+
+  static InvalidWireFormatException sizeLimitExceeded() {
+    return new InvalidWireFormatException(
+        "Protocol message was too large. May be malicious. Use StreamReader.setSizeLimit() to "
+            + "increase the size limit.");
+  }
+
+  static InvalidWireFormatException packedSizeMismatch() {
+    return new InvalidWireFormatException(
+        "Packed field length is not a multiple of the element size.");
+  }
+}
@@ -0,0 +1,51 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
+import com.google.apps.tiktok.protobuf.experimental.schema.SchemaFactory;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A per-writer (or per-reader) cache of the schemas used for nested messages. Schemas are created
+ * from the provided {@link SchemaFactory} the first time a message type is encountered.
+ */
+final class NestedSchemas {
+  private final SchemaFactory schemaFactory;
+  private final Map<Class<?>, Schema<?>> schemas = new IdentityHashMap<Class<?>, Schema<?>>();
+
+  NestedSchemas(SchemaFactory schemaFactory) {
+    if (schemaFactory == null) {
+      throw new NullPointerException("schemaFactory");
+    }
+    this.schemaFactory = schemaFactory;
+  }
+
+  /**
+   * Gets the schema for the given nested message, creating it on first use.
+   */
+  @SuppressWarnings("unchecked")
+  Schema<Object> schemaFor(Object message) {
+    return (Schema<Object>) schemaFor(message.getClass());
+  }
+
+  /**
+   * Gets the schema for the given nested message type, creating it on first use.
+   */
+  @SuppressWarnings("unchecked")
+  <T> Schema<T> schemaFor(Class<T> messageType) {
+    Schema<?> schema = schemas.get(messageType);
+    if (schema == null) {
+      schema = schemaFactory.createSchema(messageType);
+      schemas.put(messageType, schema);
+    }
+    return (Schema<T>) schema;
+  }
+
+  /**
+   * Gets the factory from which the schemas are created.
+   */
+  SchemaFactory getSchemaFactory() {
+    return schemaFactory;
+  }
+}
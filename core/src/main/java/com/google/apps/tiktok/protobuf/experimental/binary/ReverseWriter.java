@@ -0,0 +1,732 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import static com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList.getBoolean;
+import static com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList.getDouble;
+import static com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList.getFloat;
+import static com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList.getInt;
+import static com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList.getLong;
+import static com.google.apps.tiktok.protobuf.experimental.util.SchemaUtil.writeFieldValue;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED32_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED64_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.WIRETYPE_FIXED32;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.WIRETYPE_FIXED64;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.WIRETYPE_LENGTH_DELIMITED;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.WIRETYPE_VARINT;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.computeVarint32Size;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.computeVarint64Size;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.encodeZigZag32;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.encodeZigZag64;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.makeTag;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.DoubleArrayList;
+import com.google.apps.tiktok.protobuf.experimental.ExperimentalApi;
+import com.google.apps.tiktok.protobuf.experimental.FloatArrayList;
+import com.google.apps.tiktok.protobuf.experimental.IntArrayList;
+import com.google.apps.tiktok.protobuf.experimental.IntKeyHashMap;
+import com.google.apps.tiktok.protobuf.experimental.LongArrayList;
+import com.google.apps.tiktok.protobuf.experimental.LongKeyHashMap;
+import com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList;
+import com.google.apps.tiktok.protobuf.experimental.UnsafeByteOperations;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.MapEntryDescriptor;
+import com.google.apps.tiktok.protobuf.experimental.schema.LazySchema;
+import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
+import com.google.apps.tiktok.protobuf.experimental.schema.SchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.schema.Writer;
+import com.google.apps.tiktok.protobuf.experimental.util.Utf8;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link Writer} that encodes fields in the protobuf binary wire format from back to front.
+ * Since the body of a length-delimited value (e.g. a nested message or packed list) is written
+ * before its length prefix, the length is always known at the time the prefix is written and no
+ * separate size computation pass is required, regardless of the depth of the message tree.
+ *
+ * <p>Output is accumulated in fixed-size chunks. When the current chunk is full, a new chunk is
+ * prepended, reusing chunks released by {@link #reset()} where possible. The result may be
+ * obtained as a single array via {@link #toByteArray()} or, without copying, as a rope of chunks
+ * via {@link #toByteString()}.
+ *
+ * <p>Since the fields of a message are written in the order provided by the schema, they appear
+ * in reverse order in the output. This is permitted by the wire format and has no effect on
+ * parsing. The elements of repeated fields are written such that their order is preserved. Map
+ * entries are written directly from the key and value, and need no separate measurement either.
+ * Unknown fields are written as a single block, so their order is preserved.
+ *
+ * <p>This class is not thread-safe.
+ */
+@ExperimentalApi
+public final class ReverseWriter implements Writer {
+  private static final int DEFAULT_CHUNK_SIZE = 4096;
+
+  private final NestedSchemas nestedSchemas;
+  private final int chunkSize;
+
+  /**
+   * Chunks that have been filled, in the order in which they were filled. This is the reverse of
+   * the order in which they appear in the output.
+   */
+  private final ArrayList<Chunk> filledChunks = new ArrayList<Chunk>();
+
+  /**
+   * Chunks that have been released by {@link #reset()} and are available for reuse.
+   */
+  private final ArrayList<byte[]> freeChunks = new ArrayList<byte[]>();
+
+  private int filledBytes;
+
+  /**
+   * The current chunk, which holds the front of the output. Valid data occupies the range
+   * {@code [position, buffer.length)}.
+   */
+  private byte[] buffer;
+  private int position;
+
+  public ReverseWriter(SchemaFactory schemaFactory) {
+    this(schemaFactory, DEFAULT_CHUNK_SIZE);
+  }
+
+  public ReverseWriter(SchemaFactory schemaFactory, int chunkSize) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("chunkSize must be > 0: " + chunkSize);
+    }
+    this.nestedSchemas = new NestedSchemas(schemaFactory);
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Returns the total number of bytes written by this writer.
+   */
+  public int getTotalBytesWritten() {
+    return filledBytes + (buffer == null ? 0 : buffer.length - position);
+  }
+
+  /**
+   * Returns a copy of the bytes written so far as a single array.
+   */
+  public byte[] toByteArray() {
+    byte[] result = new byte[getTotalBytesWritten()];
+    int offset = 0;
+    if (buffer != null) {
+      int length = buffer.length - position;
+      System.arraycopy(buffer, position, result, offset, length);
+      offset += length;
+    }
+    for (int i = filledChunks.size() - 1; i >= 0; --i) {
+      Chunk chunk = filledChunks.get(i);
+      int length = chunk.buffer.length - chunk.start;
+      System.arraycopy(chunk.buffer, chunk.start, result, offset, length);
+      offset += length;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the bytes written so far as a {@link ByteString} that wraps the chunks of this writer
+   * without copying. Ownership of the chunks is transferred to the returned {@link ByteString}, so
+   * they will not be reused by this writer. After this call, the writer is empty.
+   */
+  public ByteString toByteString() {
+    List<ByteString> pieces = new ArrayList<ByteString>(filledChunks.size() + 1);
+    if (buffer != null && position < buffer.length) {
+      pieces.add(UnsafeByteOperations.unsafeWrap(buffer, position, buffer.length - position));
+      buffer = null;
+      position = 0;
+    }
+    for (int i = filledChunks.size() - 1; i >= 0; --i) {
+      Chunk chunk = filledChunks.get(i);
+      pieces.add(
+          UnsafeByteOperations.unsafeWrap(
+              chunk.buffer, chunk.start, chunk.buffer.length - chunk.start));
+    }
+    filledChunks.clear();
+    filledBytes = 0;
+    return ByteString.copyFrom(pieces);
+  }
+
+  /**
+   * Discards all written bytes so that the writer can be reused. Chunks that were filled are
+   * retained for reuse.
+   */
+  public void reset() {
+    for (int i = 0; i < filledChunks.size(); ++i) {
+      freeChunks.add(filledChunks.get(i).buffer);
+    }
+    filledChunks.clear();
+    filledBytes = 0;
+    if (buffer != null) {
+      position = buffer.length;
+    }
+  }
+
+  @Override
+  public void writeSFixed32(int fieldNumber, int value) {
+    writeFixed32(fieldNumber, value);
+  }
+
+  @Override
+  public void writeInt64(int fieldNumber, long value) {
+    writeUInt64(fieldNumber, value);
+  }
+
+  @Override
+  public void writeSFixed64(int fieldNumber, long value) {
+    writeFixed64(fieldNumber, value);
+  }
+
+  @Override
+  public void writeFloat(int fieldNumber, float value) {
+    writeFixed32(fieldNumber, Float.floatToRawIntBits(value));
+  }
+
+  @Override
+  public void writeDouble(int fieldNumber, double value) {
+    writeFixed64(fieldNumber, Double.doubleToRawLongBits(value));
+  }
+
+  @Override
+  public void writeEnum(int fieldNumber, int value) {
+    writeInt32(fieldNumber, value);
+  }
+
+  @Override
+  public void writeUInt64(int fieldNumber, long value) {
+    writeUInt64NoTag(value);
+    writeTag(fieldNumber, WIRETYPE_VARINT);
+  }
+
+  @Override
+  public void writeInt32(int fieldNumber, int value) {
+    writeInt32NoTag(value);
+    writeTag(fieldNumber, WIRETYPE_VARINT);
+  }
+
+  @Override
+  public void writeFixed64(int fieldNumber, long value) {
+    writeFixed64NoTag(value);
+    writeTag(fieldNumber, WIRETYPE_FIXED64);
+  }
+
+  @Override
+  public void writeFixed32(int fieldNumber, int value) {
+    writeFixed32NoTag(value);
+    writeTag(fieldNumber, WIRETYPE_FIXED32);
+  }
+
+  @Override
+  public void writeBool(int fieldNumber, boolean value) {
+    writeUInt32NoTag(value ? 1 : 0);
+    writeTag(fieldNumber, WIRETYPE_VARINT);
+  }
+
+  @Override
+  public void writeString(int fieldNumber, String value) {
+    writeStringNoTag(value);
+    writeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED);
+  }
+
+  @Override
+  public void writeBytes(int fieldNumber, ByteString value) {
+    writeBytesNoTag(value);
+    writeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED);
+  }
+
+  @Override
+  public void writeUInt32(int fieldNumber, int value) {
+    writeUInt32NoTag(value);
+    writeTag(fieldNumber, WIRETYPE_VARINT);
+  }
+
+  @Override
+  public void writeSInt32(int fieldNumber, int value) {
+    writeUInt32NoTag(encodeZigZag32(value));
+    writeTag(fieldNumber, WIRETYPE_VARINT);
+  }
+
+  @Override
+  public void writeSInt64(int fieldNumber, long value) {
+    writeUInt64NoTag(encodeZigZag64(value));
+    writeTag(fieldNumber, WIRETYPE_VARINT);
+  }
+
+  @Override
+  public <T> void writeMessage(int fieldNumber, T value, Schema<T> schema) {
+    int prevBytes = getTotalBytesWritten();
+    schema.writeTo(value, this);
+    writeUInt32NoTag(getTotalBytesWritten() - prevBytes);
+    writeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED);
+  }
+
+  @Override
+  public void writeInt32List(int fieldNumber, List<Integer> value, boolean packed) {
+    if (packed) {
+      int prevBytes = getTotalBytesWritten();
+      for (int i = value.size() - 1; i >= 0; --i) {
+        writeInt32NoTag(getInt(value, i));
+      }
+      writePackedHeader(fieldNumber, getTotalBytesWritten() - prevBytes);
+    } else {
+      for (int i = value.size() - 1; i >= 0; --i) {
+        writeInt32(fieldNumber, getInt(value, i));
+      }
+    }
+  }
+
+  @Override
+  public void writeFixed32List(int fieldNumber, List<Integer> value, boolean packed) {
+    if (packed) {
+      if (value instanceof IntArrayList) {
+        writeRawLittleEndian((IntArrayList) value);
+      } else {
+        for (int i = value.size() - 1; i >= 0; --i) {
+          writeFixed32NoTag(getInt(value, i));
+        }
+      }
+      writePackedHeader(fieldNumber, value.size() * FIXED32_SIZE);
+    } else {
+      for (int i = value.size() - 1; i >= 0; --i) {
+        writeFixed32(fieldNumber, getInt(value, i));
+      }
+    }
+  }
+
+  @Override
+  public void writeInt64List(int fieldNumber, List<Long> value, boolean packed) {
+    writeUInt64List(fieldNumber, value, packed);
+  }
+
+  @Override
+  public void writeUInt64List(int fieldNumber, List<Long> value, boolean packed) {
+    if (packed) {
+      int prevBytes = getTotalBytesWritten();
+      for (int i = value.size() - 1; i >= 0; --i) {
+        writeUInt64NoTag(getLong(value, i));
+      }
+      writePackedHeader(fieldNumber, getTotalBytesWritten() - prevBytes);
+    } else {
+      for (int i = value.size() - 1; i >= 0; --i) {
+        writeUInt64(fieldNumber, getLong(value, i));
+      }
+    }
+  }
+
+  @Override
+  public void writeFixed64List(int fieldNumber, List<Long> value, boolean packed) {
+    if (packed) {
+      if (value instanceof LongArrayList) {
+        writeRawLittleEndian((LongArrayList) value);
+      } else {
+        for (int i = value.size() - 1; i >= 0; --i) {
+          writeFixed64NoTag(getLong(value, i));
+        }
+      }
+      writePackedHeader(fieldNumber, value.size() * FIXED64_SIZE);
+    } else {
+      for (int i = value.size() - 1; i >= 0; --i) {
+        writeFixed64(fieldNumber, getLong(value, i));
+      }
+    }
+  }
+
+  @Override
+  public void writeFloatList(int fieldNumber, List<Float> value, boolean packed) {
+    if (packed) {
+      if (value instanceof FloatArrayList) {
+        writeRawLittleEndian((FloatArrayList) value);
+      } else {
+        for (int i = value.size() - 1; i >= 0; --i) {
+          writeFixed32NoTag(Float.floatToRawIntBits(getFloat(value, i)));
+        }
+      }
+      writePackedHeader(fieldNumber, value.size() * FIXED32_SIZE);
+    } else {
+      for (int i = value.size() - 1; i >= 0; --i) {
+        writeFloat(fieldNumber, getFloat(value, i));
+      }
+    }
+  }
+
+  @Override
+  public void writeDoubleList(int fieldNumber, List<Double> value, boolean packed) {
+    if (packed) {
+      if (value instanceof DoubleArrayList) {
+        writeRawLittleEndian((DoubleArrayList) value);
+      } else {
+        for (int i = value.size() - 1; i >= 0; --i) {
+          writeFixed64NoTag(Double.doubleToRawLongBits(getDouble(value, i)));
+        }
+      }
+      writePackedHeader(fieldNumber, value.size() * FIXED64_SIZE);
+    } else {
+      for (int i = value.size() - 1; i >= 0; --i) {
+        writeDouble(fieldNumber, getDouble(value, i));
+      }
+    }
+  }
+
+  @Override
+  public void writeEnumList(int fieldNumber, List<Integer> value, boolean packed) {
+    writeInt32List(fieldNumber, value, packed);
+  }
+
+  @Override
+  public void writeBoolList(int fieldNumber, List<Boolean> value, boolean packed) {
+    if (packed) {
+      for (int i = value.size() - 1; i >= 0; --i) {
+        writeUInt32NoTag(getBoolean(value, i) ? 1 : 0);
+      }
+      // Each bool is encoded as a single byte.
+      writePackedHeader(fieldNumber, value.size());
+    } else {
+      for (int i = value.size() - 1; i >= 0; --i) {
+        writeBool(fieldNumber, getBoolean(value, i));
+      }
+    }
+  }
+
+  @Override
+  public void writeStringList(int fieldNumber, List<String> value) {
+    for (int i = value.size() - 1; i >= 0; --i) {
+      writeString(fieldNumber, value.get(i));
+    }
+  }
+
+  @Override
+  public void writeBytesList(int fieldNumber, List<ByteString> value) {
+    for (int i = value.size() - 1; i >= 0; --i) {
+      writeBytes(fieldNumber, value.get(i));
+    }
+  }
+
+  @Override
+  public void writeUInt32List(int fieldNumber, List<Integer> value, boolean packed) {
+    if (packed) {
+      int prevBytes = getTotalBytesWritten();
+      for (int i = value.size() - 1; i >= 0; --i) {
+        writeUInt32NoTag(getInt(value, i));
+      }
+      writePackedHeader(fieldNumber, getTotalBytesWritten() - prevBytes);
+    } else {
+      for (int i = value.size() - 1; i >= 0; --i) {
+        writeUInt32(fieldNumber, getInt(value, i));
+      }
+    }
+  }
+
+  @Override
+  public void writeSFixed32List(int fieldNumber, List<Integer> value, boolean packed) {
+    writeFixed32List(fieldNumber, value, packed);
+  }
+
+  @Override
+  public void writeSFixed64List(int fieldNumber, List<Long> value, boolean packed) {
+    writeFixed64List(fieldNumber, value, packed);
+  }
+
+  @Override
+  public void writeSInt32List(int fieldNumber, List<Integer> value, boolean packed) {
+    if (packed) {
+      int prevBytes = getTotalBytesWritten();
+      for (int i = value.size() - 1; i >= 0; --i) {
+        writeUInt32NoTag(encodeZigZag32(getInt(value, i)));
+      }
+      writePackedHeader(fieldNumber, getTotalBytesWritten() - prevBytes);
+    } else {
+      for (int i = value.size() - 1; i >= 0; --i) {
+        writeSInt32(fieldNumber, getInt(value, i));
+      }
+    }
+  }
+
+  @Override
+  public void writeSInt64List(int fieldNumber, List<Long> value, boolean packed) {
+    if (packed) {
+      int prevBytes = getTotalBytesWritten();
+      for (int i = value.size() - 1; i >= 0; --i) {
+        writeUInt64NoTag(encodeZigZag64(getLong(value, i)));
+      }
+      writePackedHeader(fieldNumber, getTotalBytesWritten() - prevBytes);
+    } else {
+      for (int i = value.size() - 1; i >= 0; --i) {
+        writeSInt64(fieldNumber, getLong(value, i));
+      }
+    }
+  }
+
+  @Override
+  public <T> void writeMessageList(int fieldNumber, List<? extends T> value, Schema<T> schema) {
+    for (int i = value.size() - 1; i >= 0; --i) {
+      writeMessage(fieldNumber, value.get(i), schema);
+    }
+  }
+
+  @Override
+  public void writeDoubleArray(int fieldNumber, double[] value) {
+    writeDoubleList(fieldNumber, DoubleArrayList.wrap(value), true);
+  }
+
+  @Override
+  public void writeFloatArray(int fieldNumber, float[] value) {
+    writeFloatList(fieldNumber, FloatArrayList.wrap(value), true);
+  }
+
+  @Override
+  public void writeInt64Array(int fieldNumber, long[] value) {
+    writeInt64List(fieldNumber, LongArrayList.wrap(value), true);
+  }
+
+  @Override
+  public void writeUInt64Array(int fieldNumber, long[] value) {
+    writeUInt64List(fieldNumber, LongArrayList.wrap(value), true);
+  }
+
+  @Override
+  public void writeInt32Array(int fieldNumber, int[] value) {
+    writeInt32List(fieldNumber, IntArrayList.wrap(value), true);
+  }
+
+  @Override
+  public void writeFixed64Array(int fieldNumber, long[] value) {
+    writeFixed64List(fieldNumber, LongArrayList.wrap(value), true);
+  }
+
+  @Override
+  public void writeFixed32Array(int fieldNumber, int[] value) {
+    writeFixed32List(fieldNumber, IntArrayList.wrap(value), true);
+  }
+
+  @Override
+  public void writeUInt32Array(int fieldNumber, int[] value) {
+    writeUInt32List(fieldNumber, IntArrayList.wrap(value), true);
+  }
+
+  @Override
+  public void writeSFixed32Array(int fieldNumber, int[] value) {
+    writeSFixed32List(fieldNumber, IntArrayList.wrap(value), true);
+  }
+
+  @Override
+  public void writeSFixed64Array(int fieldNumber, long[] value) {
+    writeSFixed64List(fieldNumber, LongArrayList.wrap(value), true);
+  }
+
+  @Override
+  public void writeSInt32Array(int fieldNumber, int[] value) {
+    writeSInt32List(fieldNumber, IntArrayList.wrap(value), true);
+  }
+
+  @Override
+  public void writeSInt64Array(int fieldNumber, long[] value) {
+    writeSInt64List(fieldNumber, LongArrayList.wrap(value), true);
+  }
+
+  @Override
+  public void writeByteArray(int fieldNumber, byte[] value) {
+    writeBytes(fieldNumber, UnsafeByteOperations.unsafeWrap(value));
+  }
+
+  @Override
+  public void writeByteBuffer(int fieldNumber, ByteBuffer value) {
+    writeBytes(fieldNumber, UnsafeByteOperations.unsafeWrap(value));
+  }
+
+  @Override
+  public <T> Schema<T> schemaFor(Class<T> messageType) {
+    return nestedSchemas.schemaFor(messageType);
+  }
+
+  @Override
+  public SchemaFactory getSchemaFactory() {
+    return nestedSchemas.getSchemaFactory();
+  }
+
+  @Override
+  public void writeUnknownFields(ByteString value) {
+    writeRawBytes(value);
+  }
+
+  @Override
+  public void writeMap(int fieldNumber, Map<?, ?> value, MapEntryDescriptor mapEntry) {
+    final LazySchema<?> valueSchema = mapEntry.getValueSchema();
+    if (value instanceof IntKeyHashMap) {
+      // Visit the entries by slot so that the keys need not be boxed.
+      final IntKeyHashMap<?> map = (IntKeyHashMap<?>) value;
+      for (int slot = map.nextSlot(0); slot >= 0; slot = map.nextSlot(slot + 1)) {
+        final int prevBytes = getTotalBytesWritten();
+        writeFieldValue(2, mapEntry.getValueType(), map.valueAt(slot), valueSchema, this);
+        writeFieldValue(1, mapEntry.getKeyType(), map.keyAt(slot), this);
+        writeMapEntryHeader(fieldNumber, prevBytes);
+      }
+    } else if (value instanceof LongKeyHashMap) {
+      final LongKeyHashMap<?> map = (LongKeyHashMap<?>) value;
+      for (int slot = map.nextSlot(0); slot >= 0; slot = map.nextSlot(slot + 1)) {
+        final int prevBytes = getTotalBytesWritten();
+        writeFieldValue(2, mapEntry.getValueType(), map.valueAt(slot), valueSchema, this);
+        writeFieldValue(1, mapEntry.getKeyType(), map.keyAt(slot), this);
+        writeMapEntryHeader(fieldNumber, prevBytes);
+      }
+    } else {
+      for (Map.Entry<?, ?> entry : value.entrySet()) {
+        final int prevBytes = getTotalBytesWritten();
+        writeFieldValue(2, mapEntry.getValueType(), entry.getValue(), valueSchema, this);
+        writeFieldValue(1, mapEntry.getKeyType(), entry.getKey(), null, this);
+        writeMapEntryHeader(fieldNumber, prevBytes);
+      }
+    }
+  }
+
+  /**
+   * Writes the tag and length of a map entry whose key and value have been written since the
+   * given number of bytes had been written.
+   */
+  private void writeMapEntryHeader(int fieldNumber, int prevBytes) {
+    writeUInt32NoTag(getTotalBytesWritten() - prevBytes);
+    writeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED);
+  }
+
+  private void writeTag(int fieldNumber, int wireType) {
+    writeUInt32NoTag(makeTag(fieldNumber, wireType));
+  }
+
+  private void writePackedHeader(int fieldNumber, int dataSize) {
+    writeUInt32NoTag(dataSize);
+    writeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED);
+  }
+
+  private void writeInt32NoTag(int value) {
+    if (value >= 0) {
+      writeUInt32NoTag(value);
+    } else {
+      // Negative values are sign-extended to 64 bits.
+      writeUInt64NoTag(value);
+    }
+  }
+
+  private void writeUInt32NoTag(int value) {
+    requireSpace(computeVarint32Size(value));
+    position = ArrayEncoder.prependVarint32(value, buffer, position);
+  }
+
+  private void writeUInt64NoTag(long value) {
+    requireSpace(computeVarint64Size(value));
+    position = ArrayEncoder.prependVarint64(value, buffer, position);
+  }
+
+  private void writeFixed32NoTag(int value) {
+    requireSpace(FIXED32_SIZE);
+    position -= FIXED32_SIZE;
+    ArrayEncoder.encodeFixed32(value, buffer, position);
+  }
+
+  private void writeFixed64NoTag(long value) {
+    requireSpace(FIXED64_SIZE);
+    position -= FIXED64_SIZE;
+    ArrayEncoder.encodeFixed64(value, buffer, position);
+  }
+
+  private void writeStringNoTag(String value) {
+    int length = Utf8.encodedLength(value);
+    if (length <= chunkSize) {
+      requireSpace(length);
+      position -= length;
+      Utf8.encode(value, buffer, position, length);
+    } else {
+      // Too large to fit in a single chunk. Encode to a temporary array and copy it into as many
+      // chunks as necessary.
+      byte[] encoded = new byte[length];
+      Utf8.encode(value, encoded, 0, length);
+      writeRawBytes(UnsafeByteOperations.unsafeWrap(encoded));
+    }
+    writeUInt32NoTag(length);
+  }
+
+  private void writeBytesNoTag(ByteString value) {
+    writeRawBytes(value);
+    writeUInt32NoTag(value.size());
+  }
+
+  /**
+   * Writes the contents of the given {@link ByteString}, filling the available space in the
+   * current chunk before prepending new ones.
+   */
+  private void writeRawBytes(ByteString value) {
+    int remaining = value.size();
+    while (remaining > 0) {
+      if (position == 0) {
+        nextChunk(1);
+      }
+      int length = Math.min(remaining, position);
+      position -= length;
+      remaining -= length;
+      value.copyTo(buffer, remaining, position, length);
+    }
+  }
+
+  /**
+   * Writes the elements of a packed fixed-width field in bulk, filling the available space in the
+   * current chunk before prepending new ones.
+   */
+  private void writeRawLittleEndian(PrimitiveArrayList<?> value) {
+    final int elementSize = value.getElementSize();
+    int remaining = value.size();
+    while (remaining > 0) {
+      final int count = Math.min(remaining, position / elementSize);
+      if (count == 0) {
+        nextChunk(elementSize);
+        continue;
+      }
+      remaining -= count;
+      position -= count * elementSize;
+      value.copyLittleEndian(remaining, count, buffer, position);
+    }
+  }
+
+  /**
+   * Ensures that at least {@code required} contiguous bytes are available in front of the current
+   * position, prepending a new chunk if necessary.
+   */
+  private void requireSpace(int required) {
+    if (buffer == null || position < required) {
+      nextChunk(required);
+    }
+  }
+
+  private void nextChunk(int required) {
+    if (buffer != null) {
+      if (position < buffer.length) {
+        filledChunks.add(new Chunk(buffer, position));
+        filledBytes += buffer.length - position;
+      } else {
+        freeChunks.add(buffer);
+      }
+    }
+    buffer = allocateChunk(required);
+    position = buffer.length;
+  }
+
+  private byte[] allocateChunk(int required) {
+    int size = freeChunks.size();
+    if (size > 0 && freeChunks.get(size - 1).length >= required) {
+      return freeChunks.remove(size - 1);
+    }
+    return new byte[Math.max(chunkSize, required)];
+  }
+
+  /**
+   * A chunk of output that has been filled. Valid data occupies the range
+   * {@code [start, buffer.length)}.
+   */
+  private static final class Chunk {
+    final byte[] buffer;
+    final int start;
+
+    Chunk(byte[] buffer, int start) {
+      this.buffer = buffer;
+      this.start = start;
+    }
+  }
+}
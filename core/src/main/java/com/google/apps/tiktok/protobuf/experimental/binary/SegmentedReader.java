@@ -0,0 +1,406 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED32_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED64_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.MAX_VARINT64_SIZE;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.ExperimentalApi;
+import com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList;
+import com.google.apps.tiktok.protobuf.experimental.UnsafeByteOperations;
+import com.google.apps.tiktok.protobuf.experimental.schema.SchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.util.Internal;
+import com.google.apps.tiktok.protobuf.experimental.util.UnsafeUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link BinaryReader} that decodes input spread across several {@link ByteBuffer} segments,
+ * such as the pieces of a rope {@link ByteString}, without first joining them. Values that lie
+ * within a single segment are decoded directly from it; only values that span a segment boundary
+ * are assembled byte by byte.
+ *
+ * <p>Reads do not modify the positions of the source buffers. {@code bytes} fields may optionally
+ * be returned as slices of the segments rather than copies. In that case, ownership of the
+ * segments effectively passes to the decoded message: the caller must not modify them for as long
+ * as any of the returned values are in use. This class is not thread-safe.
+ */
+@ExperimentalApi
+public final class SegmentedReader extends BinaryReader {
+  private static final boolean HAS_DIRECT_ADDRESSING =
+      UnsafeUtil.isSupported() && UnsafeUtil.hasDirectAddressingOperations();
+
+  private final ByteBuffer[] segments;
+  private final boolean aliasBytes;
+  private int segmentIndex;
+
+  /**
+   * The current segment, with little-endian byte order. Values are read with absolute gets.
+   */
+  private ByteBuffer current;
+  private int currentStart;
+  private int currentPos;
+  private int currentLimit;
+
+  /**
+   * The number of bytes in the segments preceding the current one.
+   */
+  private int totalBytesRetired;
+
+  /**
+   * The absolute position of the end of the input or of the current length-delimited value.
+   */
+  private int limit;
+
+  /**
+   * Creates a reader that decodes the given {@link ByteString}. Since a {@link ByteString} is
+   * immutable, {@code bytes} fields are returned as slices of it rather than copies.
+   */
+  public SegmentedReader(SchemaFactory schemaFactory, ByteString input) {
+    this(schemaFactory, input.asReadOnlyByteBufferList(), true);
+  }
+
+  /**
+   * Creates a reader that decodes the concatenation of the given buffers, each from its current
+   * position to its limit. {@code bytes} fields are copied.
+   */
+  public SegmentedReader(SchemaFactory schemaFactory, List<ByteBuffer> segments) {
+    this(schemaFactory, segments, false);
+  }
+
+  /**
+   * Creates a reader that decodes the concatenation of the given buffers, each from its current
+   * position to its limit.
+   *
+   * @param aliasBytes if {@code true}, {@code bytes} fields are returned as slices of the segments
+   *     rather than copies, so the segments must not be modified while they are in use.
+   */
+  public SegmentedReader(
+      SchemaFactory schemaFactory, List<ByteBuffer> segments, boolean aliasBytes) {
+    super(schemaFactory);
+    this.segments = new ByteBuffer[segments.size()];
+    long totalSize = 0;
+    for (int i = 0; i < this.segments.length; ++i) {
+      ByteBuffer segment = segments.get(i).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      this.segments[i] = segment;
+      totalSize += segment.remaining();
+    }
+    if (totalSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Input is too large: " + totalSize);
+    }
+    this.aliasBytes = aliasBytes;
+    this.limit = (int) totalSize;
+    segmentIndex = -1;
+    current = ByteBuffer.allocate(0);
+    nextSegment();
+  }
+
+  @Override
+  public int getTotalBytesRead() {
+    return totalBytesRetired + currentPos - currentStart;
+  }
+
+  @Override
+  boolean isAtEnd() {
+    return getTotalBytesRead() == limit;
+  }
+
+  @Override
+  int readRawVarint32() {
+    return (int) readRawVarint64();
+  }
+
+  @Override
+  long readRawVarint64() {
+    final int p = currentPos;
+    if (available() < MAX_VARINT64_SIZE) {
+      // Near the end of the segment or the limit, so check each byte.
+      return readRawVarint64SlowPath();
+    }
+
+    // The whole varint is known to be within the segment, so no further checks are needed.
+    final ByteBuffer buf = current;
+    final long word = buf.getLong(p);
+    final int size = Varint.decodedSize(word);
+    if (size != 0) {
+      currentPos = p + size;
+      return Varint.decode(word, size);
+    }
+    // The varint is longer than a word, so decode the remaining bytes individually.
+    long result = Varint.decode(word, Varint.WORD_SIZE);
+    final byte b8 = buf.get(p + 8);
+    result |= (long) (b8 & 0x7F) << 56;
+    if (b8 >= 0) {
+      currentPos = p + 9;
+      return result;
+    }
+    final byte b9 = buf.get(p + 9);
+    if (b9 < 0) {
+      throw InvalidWireFormatException.malformedVarint();
+    }
+    currentPos = p + MAX_VARINT64_SIZE;
+    return result | (long) b9 << 63;
+  }
+
+  private long readRawVarint64SlowPath() {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      final byte b = readRawByte();
+      result |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return result;
+      }
+    }
+    throw InvalidWireFormatException.malformedVarint();
+  }
+
+  @Override
+  int readRawFixed32() {
+    if (available() >= FIXED32_SIZE) {
+      final int value = current.getInt(currentPos);
+      currentPos += FIXED32_SIZE;
+      return value;
+    }
+    // Spans a segment boundary.
+    requireBytes(FIXED32_SIZE);
+    return (readRawByte() & 0xFF)
+        | ((readRawByte() & 0xFF) << 8)
+        | ((readRawByte() & 0xFF) << 16)
+        | ((readRawByte() & 0xFF) << 24);
+  }
+
+  @Override
+  long readRawFixed64() {
+    if (available() >= FIXED64_SIZE) {
+      final long value = current.getLong(currentPos);
+      currentPos += FIXED64_SIZE;
+      return value;
+    }
+    // Spans a segment boundary.
+    requireBytes(FIXED64_SIZE);
+    return (readRawFixed32() & 0xFFFFFFFFL) | ((long) readRawFixed32() << 32);
+  }
+
+  @Override
+  String readRawString(int size) {
+    if (size <= available() && current.hasArray()) {
+      final String value =
+          new String(current.array(), current.arrayOffset() + currentPos, size, Internal.UTF_8);
+      currentPos += size;
+      return value;
+    }
+    return new String(readRawByteArray(size), Internal.UTF_8);
+  }
+
+  @Override
+  ByteString readRawBytes(int size) {
+    if (size == 0) {
+      requireBytes(0);
+      return ByteString.EMPTY;
+    }
+    if (!aliasBytes) {
+      // The array is not shared, so it can be wrapped without a further copy.
+      return UnsafeByteOperations.unsafeWrap(readRawByteArray(size));
+    }
+
+    requireBytes(size);
+    if (size <= available()) {
+      final ByteString value = UnsafeByteOperations.unsafeWrap(slice(size));
+      currentPos += size;
+      return value;
+    }
+    // Spans segments, so join slices of each into a rope.
+    final List<ByteString> pieces = new ArrayList<ByteString>();
+    int remaining = size;
+    while (remaining > 0) {
+      ensureSegment();
+      final int length = Math.min(remaining, currentLimit - currentPos);
+      pieces.add(UnsafeByteOperations.unsafeWrap(slice(length)));
+      currentPos += length;
+      remaining -= length;
+    }
+    return ByteString.copyFrom(pieces);
+  }
+
+  @Override
+  void skipRawBytes(int size) {
+    requireBytes(size);
+    int remaining = size;
+    while (remaining > 0) {
+      ensureSegment();
+      final int length = Math.min(remaining, currentLimit - currentPos);
+      currentPos += length;
+      remaining -= length;
+    }
+  }
+
+  @Override
+  boolean aliasesInput() {
+    return aliasBytes;
+  }
+
+  @Override
+  ByteString sliceRawBytes(int start, int size) {
+    // Find the segment holding the first byte, working back from the current segment.
+    int index = Math.min(segmentIndex, segments.length - 1);
+    int segmentStart = totalBytesRetired;
+    if (segmentIndex == segments.length) {
+      // The input has been consumed, so all segments have been retired.
+      segmentStart -= segments[index].remaining();
+    }
+    while (segmentStart > start) {
+      segmentStart -= segments[--index].remaining();
+    }
+
+    final List<ByteString> pieces = new ArrayList<ByteString>();
+    int offset = start - segmentStart;
+    int remaining = size;
+    while (remaining > 0) {
+      final ByteBuffer segment = segments[index++];
+      final int length = Math.min(remaining, segment.remaining() - offset);
+      if (length > 0) {
+        final ByteBuffer slice = segment.duplicate();
+        slice.position(segment.position() + offset);
+        slice.limit(slice.position() + length);
+        pieces.add(UnsafeByteOperations.unsafeWrap(slice));
+        remaining -= length;
+      }
+      offset = 0;
+    }
+    return pieces.size() == 1 ? pieces.get(0) : ByteString.copyFrom(pieces);
+  }
+
+  @Override
+  void readRawLittleEndian(PrimitiveArrayList<?> target, int count) {
+    final int elementSize = target.getElementSize();
+    target.ensureCapacity(target.size() + count);
+    while (count > 0) {
+      ensureSegment();
+      // Copy as many whole elements as the current segment holds.
+      final int length = Math.min(count, available() / elementSize);
+      if (length == 0) {
+        // The next element spans a segment boundary.
+        target.addLittleEndian(readRawByteArray(elementSize), 0, 1);
+        --count;
+      } else if (current.hasArray()) {
+        target.addLittleEndian(current.array(), current.arrayOffset() + currentPos, length);
+        currentPos += length * elementSize;
+        count -= length;
+      } else if (current.isDirect() && HAS_DIRECT_ADDRESSING) {
+        target.addLittleEndian(UnsafeUtil.addressOffset(current) + currentPos, length);
+        currentPos += length * elementSize;
+        count -= length;
+      } else {
+        target.addLittleEndian(readRawByteArray(length * elementSize), 0, length);
+        count -= length;
+      }
+    }
+  }
+
+  @Override
+  int countRawVarints(int size) {
+    if (size > currentLimit - currentPos) {
+      // The bytes span segments, so don't bother counting them.
+      return -1;
+    }
+    int count = 0;
+    final int end = currentPos + size;
+    for (int p = currentPos; p < end; ++p) {
+      count += ~current.get(p) >>> 31;
+    }
+    return count;
+  }
+
+  @Override
+  int pushLimit(int size) {
+    requireBytes(size);
+    final int oldLimit = limit;
+    limit = getTotalBytesRead() + size;
+    return oldLimit;
+  }
+
+  @Override
+  void popLimit(int oldLimit) {
+    limit = oldLimit;
+  }
+
+  /**
+   * Returns the number of bytes that can be read from the current segment without exceeding the
+   * limit.
+   */
+  private int available() {
+    return Math.min(currentLimit - currentPos, limit - getTotalBytesRead());
+  }
+
+  private byte readRawByte() {
+    if (isAtEnd()) {
+      throw InvalidWireFormatException.truncatedMessage();
+    }
+    ensureSegment();
+    return current.get(currentPos++);
+  }
+
+  /**
+   * Reads {@code size} bytes into a new array, across segments if necessary.
+   */
+  @Override
+  byte[] readRawByteArray(int size) {
+    requireBytes(size);
+    final byte[] bytes = new byte[size];
+    int offset = 0;
+    while (offset < size) {
+      ensureSegment();
+      final int length = Math.min(size - offset, currentLimit - currentPos);
+      final ByteBuffer source = current.duplicate();
+      source.position(currentPos);
+      source.get(bytes, offset, length);
+      currentPos += length;
+      offset += length;
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns a slice of the next {@code size} bytes of the current segment.
+   */
+  private ByteBuffer slice(int size) {
+    final ByteBuffer slice = current.duplicate();
+    slice.limit(currentPos + size);
+    slice.position(currentPos);
+    return slice;
+  }
+
+  /**
+   * Advances to the next non-empty segment if the current one has been consumed. The caller must
+   * ensure that there is more input.
+   */
+  private void ensureSegment() {
+    if (currentPos == currentLimit) {
+      nextSegment();
+    }
+  }
+
+  private void nextSegment() {
+    do {
+      totalBytesRetired += currentLimit - currentStart;
+      if (++segmentIndex >= segments.length) {
+        // No more input. Leave an empty segment at the end.
+        currentStart = currentPos = currentLimit = 0;
+        return;
+      }
+      current = segments[segmentIndex];
+      currentStart = current.position();
+      currentPos = currentStart;
+      currentLimit = current.limit();
+    } while (currentPos == currentLimit);
+  }
+
+  private void requireBytes(int size) {
+    if (limit - getTotalBytesRead() < size) {
+      throw InvalidWireFormatException.truncatedMessage();
+    }
+  }
+}
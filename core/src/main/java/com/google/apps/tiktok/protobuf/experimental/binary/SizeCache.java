@@ -0,0 +1,70 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import com.google.apps.tiktok.protobuf.experimental.ExperimentalApi;
+import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
+import com.google.apps.tiktok.protobuf.experimental.schema.SchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.schema.SizeCalculator;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A {@link SizeCalculator} that memoizes the serialized size of each message it computes, keyed by
+ * identity. Computing the size of a message therefore also records the sizes of all messages
+ * nested within it, so a writer that needs the length of each nested message before writing it
+ * computes each subtree only once.
+ *
+ * <p>Since the memoized sizes become stale if a message is modified, {@link #clear()} must be
+ * called before any message that has been measured is changed. Schemas are created from the
+ * provided {@link SchemaFactory} and cached. This class is not thread-safe.
+ */
+@ExperimentalApi
+public final class SizeCache implements SizeCalculator {
+  private final NestedSchemas nestedSchemas;
+  private final Map<Object, Integer> sizes = new IdentityHashMap<Object, Integer>();
+
+  public SizeCache(SchemaFactory schemaFactory) {
+    this(new NestedSchemas(schemaFactory));
+  }
+
+  /**
+   * Creates a cache that shares the schemas already cached by a writer.
+   */
+  SizeCache(NestedSchemas nestedSchemas) {
+    this.nestedSchemas = nestedSchemas;
+  }
+
+  /**
+   * Returns the number of bytes needed to encode the given message in the protobuf binary format.
+   */
+  public int getSerializedSize(Object message) {
+    return getMessageSize(message, nestedSchemas.schemaFor(message));
+  }
+
+  @Override
+  public <T> int getMessageSize(T message, Schema<T> schema) {
+    Integer size = sizes.get(message);
+    if (size == null) {
+      size = schema.getSerializedSize(message, this);
+      sizes.put(message, size);
+    }
+    return size;
+  }
+
+  @Override
+  public <T> Schema<T> schemaFor(Class<T> messageType) {
+    return nestedSchemas.schemaFor(messageType);
+  }
+
+  @Override
+  public SchemaFactory getSchemaFactory() {
+    return nestedSchemas.getSchemaFactory();
+  }
+
+  /**
+   * Discards all memoized sizes.
+   */
+  public void clear() {
+    sizes.clear();
+  }
+}
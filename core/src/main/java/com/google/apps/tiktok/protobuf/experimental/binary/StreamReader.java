@@ -0,0 +1,518 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED32_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED64_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.MAX_VARINT64_SIZE;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.ExperimentalApi;
+import com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList;
+import com.google.apps.tiktok.protobuf.experimental.UnsafeByteOperations;
+import com.google.apps.tiktok.protobuf.experimental.schema.SchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.util.Internal;
+import com.google.apps.tiktok.protobuf.experimental.util.UnsafeUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link BinaryReader} that decodes from an {@link InputStream} or {@link ReadableByteChannel}
+ * through a fixed-size buffer that is refilled as needed, so the whole message is never held in
+ * memory at once.
+ *
+ * <p>{@code bytes} fields larger than the buffer are read directly from the input into a series
+ * of chunks, which are joined into a rope {@link ByteString} without further copying. Since the
+ * buffer is reused, smaller values are always copied out of it; aliasing is not supported.
+ *
+ * <p>To guard against malicious input, the reader will not consume more than a configurable number
+ * of bytes. See {@link #setSizeLimit(int)}. The limit applies to all bytes read, so a reader used
+ * for a sequence of messages consumes it across all of them unless {@link #resetSizeCounter()} is
+ * called between messages.
+ *
+ * <p>The reader may read past the end of the message from the underlying input, up to the size of
+ * its buffer. Since the {@link com.google.apps.tiktok.protobuf.experimental.schema.Reader}
+ * interface does not allow checked exceptions, any {@link IOException} thrown by the input is
+ * rethrown wrapped in a {@link RuntimeException}. This class is not thread-safe.
+ */
+@ExperimentalApi
+public final class StreamReader extends BinaryReader {
+  private static final boolean HAS_UNSAFE_ARRAY_OPERATIONS = UnsafeUtil.isSupported();
+  private static final long BYTE_ARRAY_BASE_OFFSET = UnsafeUtil.getByteArrayBaseOffset();
+  private static final boolean IS_BIG_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+  private static final int DEFAULT_BUFFER_SIZE = 4096;
+  private static final int DEFAULT_SIZE_LIMIT = 64 << 20; // 64MB
+  private static final int NO_LIMIT = Integer.MAX_VALUE;
+
+  private final Source source;
+  private final byte[] buffer;
+  private int bufferPos;
+  private int bufferSize;
+
+  /**
+   * The number of bytes consumed before the start of the buffer.
+   */
+  private int totalBytesRetired;
+
+  /**
+   * The absolute position of the end of the current length-delimited value.
+   */
+  private int currentLimit = NO_LIMIT;
+
+  private int sizeLimit = DEFAULT_SIZE_LIMIT;
+
+  public StreamReader(SchemaFactory schemaFactory, InputStream in) {
+    this(schemaFactory, in, DEFAULT_BUFFER_SIZE);
+  }
+
+  public StreamReader(SchemaFactory schemaFactory, InputStream in, int bufferSize) {
+    this(schemaFactory, new InputStreamSource(in), bufferSize);
+  }
+
+  /**
+   * Constructs a reader of the given channel, which must be in blocking mode.
+   *
+   * @throws IllegalArgumentException if the channel is a {@link SelectableChannel} in
+   *     non-blocking mode.
+   */
+  public StreamReader(SchemaFactory schemaFactory, ReadableByteChannel channel) {
+    this(schemaFactory, channel, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Constructs a reader of the given channel, which must be in blocking mode.
+   *
+   * @throws IllegalArgumentException if the channel is a {@link SelectableChannel} in
+   *     non-blocking mode.
+   */
+  public StreamReader(SchemaFactory schemaFactory, ReadableByteChannel channel, int bufferSize) {
+    this(schemaFactory, new ChannelSource(channel), bufferSize);
+  }
+
+  private StreamReader(SchemaFactory schemaFactory, Source source, int bufferSize) {
+    super(schemaFactory);
+    if (bufferSize < MAX_VARINT64_SIZE) {
+      throw new IllegalArgumentException(
+          "bufferSize must be >= " + MAX_VARINT64_SIZE + ": " + bufferSize);
+    }
+    this.source = source;
+    this.buffer = new byte[bufferSize];
+  }
+
+  /**
+   * Sets the maximum number of bytes that this reader will consume from the input. If the limit is
+   * reached, an {@link InvalidWireFormatException} is thrown. The default limit is 64MB.
+   *
+   * @return the previous limit.
+   */
+  public int setSizeLimit(int limit) {
+    if (limit < 0) {
+      throw new IllegalArgumentException("Size limit cannot be negative: " + limit);
+    }
+    final int oldLimit = sizeLimit;
+    sizeLimit = limit;
+    return oldLimit;
+  }
+
+  /**
+   * Resets the count of bytes read to zero, so that the size limit applies from the current
+   * position. This allows one reader to consume an unbounded sequence of messages. Must not be
+   * called while reading a message.
+   */
+  public void resetSizeCounter() {
+    if (currentLimit != NO_LIMIT) {
+      throw new IllegalStateException("Cannot reset the size counter within a message");
+    }
+    totalBytesRetired = -bufferPos;
+  }
+
+  @Override
+  public int getTotalBytesRead() {
+    return totalBytesRetired + bufferPos;
+  }
+
+  @Override
+  boolean isAtEnd() {
+    final int position = totalBytesRetired + bufferPos;
+    if (position == currentLimit) {
+      return true;
+    }
+    if (bufferPos == bufferSize && !tryRefill(1)) {
+      if (currentLimit != NO_LIMIT) {
+        // The input ended within a length-delimited value.
+        throw InvalidWireFormatException.truncatedMessage();
+      }
+      return true;
+    }
+    if (position >= sizeLimit) {
+      throw InvalidWireFormatException.sizeLimitExceeded();
+    }
+    return false;
+  }
+
+  @Override
+  int readRawVarint32() {
+    return (int) readRawVarint64();
+  }
+
+  @Override
+  long readRawVarint64() {
+    int p = bufferPos;
+    final int limit = Math.min(currentLimit, sizeLimit) - totalBytesRetired;
+    if (Math.min(bufferSize, limit) - p < MAX_VARINT64_SIZE) {
+      // Near the end of the buffer or one of the limits, so check each byte.
+      return readRawVarint64SlowPath();
+    }
+
+    // The whole varint is known to be within the buffer, so no further checks are needed.
+    final byte[] buf = buffer;
+    if (HAS_UNSAFE_ARRAY_OPERATIONS) {
+      long word = UnsafeUtil.getLong(buf, BYTE_ARRAY_BASE_OFFSET + p);
+      word = IS_BIG_ENDIAN ? Long.reverseBytes(word) : word;
+      final int size = Varint.decodedSize(word);
+      if (size != 0) {
+        bufferPos = p + size;
+        return Varint.decode(word, size);
+      }
+      // The varint is longer than a word, so decode the remaining bytes individually.
+      long result = Varint.decode(word, Varint.WORD_SIZE);
+      final byte b8 = buf[p + 8];
+      result |= (long) (b8 & 0x7F) << 56;
+      if (b8 >= 0) {
+        bufferPos = p + 9;
+        return result;
+      }
+      final byte b9 = buf[p + 9];
+      if (b9 < 0) {
+        throw InvalidWireFormatException.malformedVarint();
+      }
+      bufferPos = p + MAX_VARINT64_SIZE;
+      return result | (long) b9 << 63;
+    }
+
+    final int end = p + MAX_VARINT64_SIZE;
+    long result = 0;
+    int shift = 0;
+    do {
+      final byte b = buf[p++];
+      result |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        bufferPos = p;
+        return result;
+      }
+      shift += 7;
+    } while (p < end);
+    throw InvalidWireFormatException.malformedVarint();
+  }
+
+  private long readRawVarint64SlowPath() {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      requireBytes(1);
+      final byte b = buffer[bufferPos++];
+      result |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return result;
+      }
+    }
+    throw InvalidWireFormatException.malformedVarint();
+  }
+
+  @Override
+  int readRawFixed32() {
+    requireBytes(FIXED32_SIZE);
+    final byte[] buf = buffer;
+    final int p = bufferPos;
+    bufferPos = p + FIXED32_SIZE;
+    return (buf[p] & 0xFF)
+        | ((buf[p + 1] & 0xFF) << 8)
+        | ((buf[p + 2] & 0xFF) << 16)
+        | ((buf[p + 3] & 0xFF) << 24);
+  }
+
+  @Override
+  long readRawFixed64() {
+    requireBytes(FIXED64_SIZE);
+    final byte[] buf = buffer;
+    final int p = bufferPos;
+    bufferPos = p + FIXED64_SIZE;
+    return (buf[p] & 0xFFL)
+        | ((buf[p + 1] & 0xFFL) << 8)
+        | ((buf[p + 2] & 0xFFL) << 16)
+        | ((buf[p + 3] & 0xFFL) << 24)
+        | ((buf[p + 4] & 0xFFL) << 32)
+        | ((buf[p + 5] & 0xFFL) << 40)
+        | ((buf[p + 6] & 0xFFL) << 48)
+        | ((buf[p + 7] & 0xFFL) << 56);
+  }
+
+  @Override
+  String readRawString(int size) {
+    if (size <= buffer.length) {
+      requireBytes(size);
+      final String value = new String(buffer, bufferPos, size, Internal.UTF_8);
+      bufferPos += size;
+      return value;
+    }
+
+    checkLimits(size);
+    final byte[] bytes = new byte[size];
+    final int buffered = bufferSize - bufferPos;
+    System.arraycopy(buffer, bufferPos, bytes, 0, buffered);
+    retireBuffer();
+    readFully(bytes, buffered, size - buffered);
+    return new String(bytes, Internal.UTF_8);
+  }
+
+  @Override
+  ByteString readRawBytes(int size) {
+    if (size == 0) {
+      return ByteString.EMPTY;
+    }
+    if (size <= buffer.length) {
+      requireBytes(size);
+      final ByteString value = ByteString.copyFrom(buffer, bufferPos, size);
+      bufferPos += size;
+      return value;
+    }
+
+    // Read the value in chunks, so that a huge value does not require a single huge allocation.
+    checkLimits(size);
+    final List<ByteString> chunks = new ArrayList<ByteString>();
+    final int buffered = bufferSize - bufferPos;
+    if (buffered > 0) {
+      chunks.add(ByteString.copyFrom(buffer, bufferPos, buffered));
+    }
+    retireBuffer();
+    int remaining = size - buffered;
+    final int chunkSize = Math.max(buffer.length, DEFAULT_BUFFER_SIZE);
+    while (remaining > 0) {
+      final byte[] chunk = new byte[Math.min(remaining, chunkSize)];
+      readFully(chunk, 0, chunk.length);
+      // The chunk is owned by this reader and is never modified, so it can be wrapped.
+      chunks.add(UnsafeByteOperations.unsafeWrap(chunk));
+      remaining -= chunk.length;
+    }
+    return ByteString.copyFrom(chunks);
+  }
+
+  @Override
+  byte[] readRawByteArray(int size) {
+    if (size <= buffer.length) {
+      requireBytes(size);
+      final byte[] bytes = Arrays.copyOfRange(buffer, bufferPos, bufferPos + size);
+      bufferPos += size;
+      return bytes;
+    }
+    // Read large values in chunks first, so that a corrupt size cannot force a huge allocation.
+    return readRawBytes(size).toByteArray();
+  }
+
+  @Override
+  void skipRawBytes(int size) {
+    if (size <= bufferSize - bufferPos) {
+      requireBytes(size);
+      bufferPos += size;
+      return;
+    }
+
+    checkLimits(size);
+    int remaining = size - (bufferSize - bufferPos);
+    retireBuffer();
+    while (remaining > 0) {
+      final int read = read(buffer, 0, Math.min(remaining, buffer.length));
+      if (read < 0) {
+        throw InvalidWireFormatException.truncatedMessage();
+      }
+      totalBytesRetired += read;
+      remaining -= read;
+    }
+  }
+
+  @Override
+  void readRawLittleEndian(PrimitiveArrayList<?> target, int count) {
+    final int elementSize = target.getElementSize();
+    checkLimits(count * elementSize);
+    target.ensureCapacity(target.size() + count);
+    while (count > 0) {
+      // Copy as many whole elements as are buffered, then refill.
+      final int buffered = Math.min(count, (bufferSize - bufferPos) / elementSize);
+      if (buffered == 0) {
+        requireBytes(elementSize);
+        continue;
+      }
+      target.addLittleEndian(buffer, bufferPos, buffered);
+      bufferPos += buffered * elementSize;
+      count -= buffered;
+    }
+  }
+
+  @Override
+  int countRawVarints(int size) {
+    if (size > bufferSize - bufferPos) {
+      // Counting would require reading ahead of the buffer.
+      return -1;
+    }
+    return countRawVarints(buffer, bufferPos, size);
+  }
+
+  @Override
+  int pushLimit(int size) {
+    final int newLimit = totalBytesRetired + bufferPos + size;
+    if (newLimit < 0 || newLimit > currentLimit) {
+      throw InvalidWireFormatException.truncatedMessage();
+    }
+    final int oldLimit = currentLimit;
+    currentLimit = newLimit;
+    return oldLimit;
+  }
+
+  @Override
+  void popLimit(int oldLimit) {
+    currentLimit = oldLimit;
+  }
+
+  /**
+   * Ensures that at least {@code size} bytes are available in the buffer. The caller must ensure
+   * that {@code size <= buffer.length}.
+   */
+  private void requireBytes(int size) {
+    checkLimits(size);
+    if (bufferSize - bufferPos < size && !tryRefill(size)) {
+      throw InvalidWireFormatException.truncatedMessage();
+    }
+  }
+
+  /**
+   * Verifies that a value of the given size is within the current limit and the size limit.
+   */
+  private void checkLimits(int size) {
+    if (size > currentLimit - totalBytesRetired - bufferPos) {
+      throw InvalidWireFormatException.truncatedMessage();
+    }
+    if (size > sizeLimit - totalBytesRetired - bufferPos) {
+      throw InvalidWireFormatException.sizeLimitExceeded();
+    }
+  }
+
+  /**
+   * Tries to read from the input until at least {@code size} bytes are available in the buffer. Any
+   * remaining bytes are first moved to the start of the buffer. The caller must ensure that
+   * {@code size <= buffer.length}.
+   *
+   * @return {@code true} if successful, or {@code false} if the end of the input was reached.
+   */
+  private boolean tryRefill(int size) {
+    if (bufferPos > 0) {
+      final int remaining = bufferSize - bufferPos;
+      System.arraycopy(buffer, bufferPos, buffer, 0, remaining);
+      totalBytesRetired += bufferPos;
+      bufferSize = remaining;
+      bufferPos = 0;
+    }
+    while (bufferSize < size) {
+      final int read = read(buffer, bufferSize, buffer.length - bufferSize);
+      if (read < 0) {
+        return false;
+      }
+      bufferSize += read;
+    }
+    return true;
+  }
+
+  /**
+   * Marks all bytes in the buffer as consumed.
+   */
+  private void retireBuffer() {
+    totalBytesRetired += bufferSize;
+    bufferPos = 0;
+    bufferSize = 0;
+  }
+
+  /**
+   * Reads exactly {@code length} bytes from the input, bypassing the buffer. The caller must have
+   * checked the limits and retired the buffer.
+   */
+  private void readFully(byte[] target, int offset, int length) {
+    while (length > 0) {
+      final int read = read(target, offset, length);
+      if (read < 0) {
+        throw InvalidWireFormatException.truncatedMessage();
+      }
+      offset += read;
+      length -= read;
+      totalBytesRetired += read;
+    }
+  }
+
+  private int read(byte[] target, int offset, int length) {
+    try {
+      return source.read(target, offset, length);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * The input from which bytes are read.
+   */
+  private abstract static class Source {
+    /**
+     * Reads up to {@code length} bytes into the target, blocking until at least one byte is read.
+     *
+     * @return the number of bytes read, or {@code -1} if the end of the input has been reached.
+     */
+    abstract int read(byte[] target, int offset, int length) throws IOException;
+  }
+
+  private static final class InputStreamSource extends Source {
+    private final InputStream in;
+
+    InputStreamSource(InputStream in) {
+      if (in == null) {
+        throw new NullPointerException("in");
+      }
+      this.in = in;
+    }
+
+    @Override
+    int read(byte[] target, int offset, int length) throws IOException {
+      int read;
+      do {
+        read = in.read(target, offset, length);
+      } while (read == 0);
+      return read;
+    }
+  }
+
+  private static final class ChannelSource extends Source {
+    private final ReadableByteChannel channel;
+
+    ChannelSource(ReadableByteChannel channel) {
+      if (channel == null) {
+        throw new NullPointerException("channel");
+      }
+      // A non-blocking channel may return no bytes indefinitely, so reads would spin.
+      if (channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking()) {
+        throw new IllegalArgumentException("The channel must be in blocking mode");
+      }
+      this.channel = channel;
+    }
+
+    @Override
+    int read(byte[] target, int offset, int length) throws IOException {
+      final ByteBuffer buffer = ByteBuffer.wrap(target, offset, length);
+      int read;
+      do {
+        read = channel.read(buffer);
+      } while (read == 0);
+      return read;
+    }
+  }
+}
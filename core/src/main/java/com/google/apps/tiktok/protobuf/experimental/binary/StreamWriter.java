@@ -0,0 +1,278 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED32_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED64_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.MAX_VARINT32_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.MAX_VARINT64_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.computeVarint32Size;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteOutput;
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.ExperimentalApi;
+import com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList;
+import com.google.apps.tiktok.protobuf.experimental.UnsafeByteOperations;
+import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
+import com.google.apps.tiktok.protobuf.experimental.schema.SchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.util.Utf8;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link BinaryWriter} that streams its output to a {@link ByteOutput} or {@link OutputStream}
+ * through a fixed-size buffer. The buffer is written to the output whenever it fills, and any
+ * remaining bytes are written by {@link #flush()}.
+ *
+ * <p>Large {@code bytes} values are not copied into the buffer. Instead, they are handed to
+ * {@link ByteOutput#writeLazy} so that the output may retain a reference to them. Nested messages
+ * are written directly, with their lengths obtained from a {@link SizeCache}.
+ *
+ * <p>Since the {@link com.google.apps.tiktok.protobuf.experimental.schema.Writer} interface does
+ * not allow checked exceptions, any {@link IOException} thrown by the output while writing a
+ * field is rethrown wrapped in a {@link RuntimeException}. This class is not thread-safe.
+ */
+@ExperimentalApi
+public final class StreamWriter extends BinaryWriter {
+  private static final int DEFAULT_BUFFER_SIZE = 4096;
+
+  /**
+   * The maximum number of bytes needed to encode a single Java UTF-16 char in UTF-8.
+   */
+  private static final int MAX_BYTES_PER_CHAR = 3;
+
+  private final ByteOutput output;
+  private final byte[] buffer;
+  private final int lazyThreshold;
+  private final SizeCache sizeCache;
+  private int position;
+  private int totalBytesFlushed;
+  private int nestingDepth;
+
+  public StreamWriter(SchemaFactory schemaFactory, ByteOutput output) {
+    this(schemaFactory, output, DEFAULT_BUFFER_SIZE);
+  }
+
+  public StreamWriter(SchemaFactory schemaFactory, ByteOutput output, int bufferSize) {
+    super(schemaFactory);
+    if (output == null) {
+      throw new NullPointerException("output");
+    }
+    if (bufferSize < MAX_VARINT64_SIZE) {
+      throw new IllegalArgumentException(
+          "bufferSize must be >= " + MAX_VARINT64_SIZE + ": " + bufferSize);
+    }
+    this.output = output;
+    this.buffer = new byte[bufferSize];
+    this.lazyThreshold = bufferSize / 4;
+    this.sizeCache = new SizeCache(nestedSchemas);
+  }
+
+  public StreamWriter(SchemaFactory schemaFactory, OutputStream out) {
+    this(schemaFactory, out, DEFAULT_BUFFER_SIZE);
+  }
+
+  public StreamWriter(SchemaFactory schemaFactory, OutputStream out, int bufferSize) {
+    this(schemaFactory, new OutputStreamByteOutput(out), bufferSize);
+  }
+
+  @Override
+  public int getTotalBytesWritten() {
+    return totalBytesFlushed + position;
+  }
+
+  /**
+   * Writes any buffered bytes to the output. This does not flush the output itself.
+   */
+  public void flush() throws IOException {
+    if (position > 0) {
+      output.write(buffer, 0, position);
+      totalBytesFlushed += position;
+      position = 0;
+    }
+  }
+
+  @Override
+  void writeUInt32NoTag(int value) {
+    requireSpace(MAX_VARINT32_SIZE);
+    position = ArrayEncoder.appendVarint32(value, buffer, position);
+  }
+
+  @Override
+  void writeUInt64NoTag(long value) {
+    requireSpace(MAX_VARINT64_SIZE);
+    position = ArrayEncoder.appendVarint64(value, buffer, position);
+  }
+
+  @Override
+  void writeFixed32NoTag(int value) {
+    requireSpace(FIXED32_SIZE);
+    ArrayEncoder.encodeFixed32(value, buffer, position);
+    position += FIXED32_SIZE;
+  }
+
+  @Override
+  void writeFixed64NoTag(long value) {
+    requireSpace(FIXED64_SIZE);
+    ArrayEncoder.encodeFixed64(value, buffer, position);
+    position += FIXED64_SIZE;
+  }
+
+  @Override
+  void writeStringNoTag(String value) {
+    final int maxLength = value.length() * MAX_BYTES_PER_CHAR;
+    final int lengthSize = computeVarint32Size(value.length());
+    if (lengthSize + maxLength <= buffer.length
+        && lengthSize == computeVarint32Size(maxLength)) {
+      // The size of the length prefix does not depend on the encoded length, so we can encode the
+      // string directly after the prefix in a single pass.
+      requireSpace(lengthSize + maxLength);
+      int start = position + lengthSize;
+      int end = Utf8.encode(value, buffer, start, buffer.length - start);
+      ArrayEncoder.encodeVarint32(end - start, buffer, position);
+      position = end;
+      return;
+    }
+
+    int length = Utf8.encodedLength(value);
+    writeUInt32NoTag(length);
+    if (length <= buffer.length) {
+      requireSpace(length);
+      position = Utf8.encode(value, buffer, position, length);
+    } else {
+      // Too large for the buffer. The encoded array is owned by this writer and is never modified,
+      // so it can be written lazily.
+      byte[] encoded = new byte[length];
+      Utf8.encode(value, encoded, 0, length);
+      try {
+        flush();
+        output.writeLazy(encoded, 0, length);
+        totalBytesFlushed += length;
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  @Override
+  void writeRawBytes(ByteString value) {
+    final int size = value.size();
+    if (size < lazyThreshold) {
+      requireSpace(size);
+      value.copyTo(buffer, position);
+      position += size;
+    } else {
+      try {
+        flush();
+        UnsafeByteOperations.unsafeWriteTo(value, output);
+        totalBytesFlushed += size;
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  @Override
+  <T> void writeMessageNoTag(T value, Schema<T> schema) {
+    // The length of the message must be written before the message itself. Computing it records
+    // the sizes of all messages nested within it, so each subtree is only measured once. The
+    // sizes are discarded once the outermost nested message has been written, since the messages
+    // may be modified afterwards.
+    final int length = sizeCache.getMessageSize(value, schema);
+    writeUInt32NoTag(length);
+    ++nestingDepth;
+    try {
+      schema.writeTo(value, this);
+    } finally {
+      if (--nestingDepth == 0) {
+        sizeCache.clear();
+      }
+    }
+  }
+
+  @Override
+  <T> int getMessageSize(T message, Schema<T> schema) {
+    // The message is written next, so its size and those of its nested messages are kept until
+    // it has been written.
+    return sizeCache.getMessageSize(message, schema);
+  }
+
+  @Override
+  void writeRawLittleEndian(PrimitiveArrayList<?> value) {
+    final int elementSize = value.getElementSize();
+    final int size = value.size();
+    int index = 0;
+    while (index < size) {
+      // Copy as many whole elements as fit in the buffer, then flush.
+      final int count = Math.min(size - index, (buffer.length - position) / elementSize);
+      if (count == 0) {
+        requireSpace(elementSize);
+        continue;
+      }
+      value.copyLittleEndian(index, count, buffer, position);
+      position += count * elementSize;
+      index += count;
+    }
+  }
+
+  /**
+   * Ensures that at least {@code required} bytes are available in the buffer, flushing it to the
+   * output if necessary. The caller must ensure that {@code required <= buffer.length}.
+   */
+  private void requireSpace(int required) {
+    if (buffer.length - position < required) {
+      try {
+        flush();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * A {@link ByteOutput} that writes to an {@link OutputStream}. Since the stream may not retain
+   * references to the values, lazy writes are treated the same as regular writes.
+   */
+  private static final class OutputStreamByteOutput extends ByteOutput {
+    private final OutputStream out;
+
+    OutputStreamByteOutput(OutputStream out) {
+      if (out == null) {
+        throw new NullPointerException("out");
+      }
+      this.out = out;
+    }
+
+    @Override
+    public void write(byte value) throws IOException {
+      out.write(value);
+    }
+
+    @Override
+    public void write(byte[] value, int offset, int length) throws IOException {
+      out.write(value, offset, length);
+    }
+
+    @Override
+    public void writeLazy(byte[] value, int offset, int length) throws IOException {
+      out.write(value, offset, length);
+    }
+
+    @Override
+    public void write(ByteBuffer value) throws IOException {
+      if (value.hasArray()) {
+        out.write(value.array(), value.arrayOffset() + value.position(), value.remaining());
+        value.position(value.limit());
+      } else {
+        byte[] bytes = new byte[value.remaining()];
+        value.get(bytes);
+        out.write(bytes);
+      }
+    }
+
+    @Override
+    public void writeLazy(ByteBuffer value) throws IOException {
+      write(value);
+    }
+  }
+}
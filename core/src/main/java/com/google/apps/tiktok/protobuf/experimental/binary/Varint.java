@@ -0,0 +1,69 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+/**
+ * Word-at-a-time encoding and decoding of varints. Rather than handling one byte per iteration,
+ * these methods operate on 8 bytes at once, loaded into a {@code long} in little-endian order, and
+ * use bit manipulation to locate the end of the varint and to move its 7-bit groups into place.
+ *
+ * <p>Only varints of up to 8 bytes fit in a word. Callers handle the remaining bytes of longer
+ * varints, which only occur for values of 56 bits or more, separately.
+ */
+final class Varint {
+  /**
+   * The maximum number of bytes of a varint that fit in a word.
+   */
+  static final int WORD_SIZE = 8;
+
+  private static final long MSB_MASK = 0x8080808080808080L;
+  private static final long LSB7_MASK = 0x7F7F7F7F7F7F7F7FL;
+
+  private Varint() {}
+
+  /**
+   * Returns the size in bytes of the varint that starts at the lowest byte of the word, or
+   * {@code 0} if it does not end within the word.
+   */
+  static int decodedSize(long word) {
+    // The last byte of a varint is the first one with the high bit clear.
+    final long stopBits = ~word & MSB_MASK;
+    return stopBits == 0 ? 0 : (Long.numberOfTrailingZeros(stopBits) + 1) >>> 3;
+  }
+
+  /**
+   * Decodes the varint of the given size, between 1 and {@link #WORD_SIZE} bytes, that starts at
+   * the lowest byte of the word. For a size of {@link #WORD_SIZE}, this also decodes the first 56
+   * bits of a longer varint.
+   */
+  static long decode(long word, int size) {
+    long x = word & (-1L >>> (64 - (size << 3))) & LSB7_MASK;
+    // Pack the 7-bit groups into pairs, then into groups of four, then into a single value.
+    x = ((x & 0x7F007F007F007F00L) >>> 1) | (x & 0x007F007F007F007FL);
+    x = ((x & 0x3FFF00003FFF0000L) >>> 2) | (x & 0x00003FFF00003FFFL);
+    return ((x & 0x0FFFFFFF00000000L) >>> 4) | (x & 0x000000000FFFFFFFL);
+  }
+
+  /**
+   * Returns the number of bytes needed to encode the value as a varint. This is equivalent to
+   * {@code WireFormat.computeVarint64Size(value)}, without branches.
+   */
+  static int encodedSize(long value) {
+    // ceil(significantBits / 7), computed as (significantBits * 9 + 64) / 64.
+    return ((64 - Long.numberOfLeadingZeros(value | 1)) * 9 + 64) >>> 6;
+  }
+
+  /**
+   * Encodes the value as a varint of the given size, which must be between 1 and
+   * {@link #WORD_SIZE} bytes, into the low bytes of a word. The remaining bytes are zero. For a
+   * size of {@link #WORD_SIZE}, the result is also the first 8 bytes of a longer varint if the
+   * continuation bit of the last byte is set by the caller.
+   */
+  static long encode(long value, int size) {
+    long x = value & 0x00FFFFFFFFFFFFFFL;
+    // Spread the value into groups of 28, then 14, then 7 bits, each in its own byte.
+    x = ((x & 0x00FFFFFFF0000000L) << 4) | (x & 0x000000000FFFFFFFL);
+    x = ((x & 0x0FFFC0000FFFC000L) << 2) | (x & 0x00003FFF00003FFFL);
+    x = ((x & 0x3F803F803F803F80L) << 1) | (x & 0x007F007F007F007FL);
+    // Set the continuation bit of every byte but the last.
+    return x | (MSB_MASK & ((1L << ((size - 1) << 3)) - 1));
+  }
+}
@@ -3,13 +3,22 @@ package com.google.apps.tiktok.protobuf.experimental.descriptor;
 import com.google.apps.tiktok.protobuf.experimental.FieldType;
 import com.google.apps.tiktok.protobuf.experimental.InternalApi;
 import com.google.apps.tiktok.protobuf.experimental.ProtoField;
+import com.google.apps.tiktok.protobuf.experimental.ProtoHasBits;
+import com.google.apps.tiktok.protobuf.experimental.ProtoOneof;
+import com.google.apps.tiktok.protobuf.experimental.ProtoUnknownFields;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
 
 /**
  * A factory for descriptors that relies on {@link ProtoField} annotations on the fields of the
- * message.
+ * message. The members of a oneof are given by the {@link ProtoOneof} annotation on its value
+ * field, and the field preserving unknown fields is marked with {@link ProtoUnknownFields}. The
+ * fields listed by a {@link ProtoHasBits} annotation are given has-bits in the annotated field.
  */
 @InternalApi
 public final class AnnotationMessageDescriptorFactory implements MessageDescriptorFactory {
@@ -56,19 +65,105 @@ public final class AnnotationMessageDescriptorFactory implements MessageDescript
     if (builder == null) {
       builder = MessageDescriptor.newBuilder(fields.length);
     }
+    Map<Integer, Field> hasBitsFields = new HashMap<Integer, Field>();
+    Map<Integer, Integer> hasBits = new HashMap<Integer, Integer>();
+    for (Field f : fields) {
+      ProtoHasBits protoHasBits = f.getAnnotation(ProtoHasBits.class);
+      if (protoHasBits == null) {
+        continue;
+      }
+      int[] fieldNumbers = protoHasBits.fieldNumbers();
+      for (int bit = 0; bit < fieldNumbers.length; ++bit) {
+        if (hasBitsFields.put(fieldNumbers[bit], f) != null) {
+          throw new IllegalArgumentException(
+                  String.format("Field %d has more than one has-bit", fieldNumbers[bit]));
+        }
+        hasBits.put(fieldNumbers[bit], bit);
+      }
+    }
     for (Field f : fields) {
       int mod = f.getModifiers();
+      if (Modifier.isStatic(mod) || Modifier.isTransient(mod)) {
+        continue;
+      }
       ProtoField protoField = f.getAnnotation(ProtoField.class);
-      if (!Modifier.isStatic(mod) && !Modifier.isTransient(mod) && protoField != null) {
+      ProtoOneof protoOneof = f.getAnnotation(ProtoOneof.class);
+      if (f.isAnnotationPresent(ProtoUnknownFields.class)) {
+        if (protoField != null || protoOneof != null) {
+          throw new IllegalArgumentException(
+                  String.format(
+                          "Field %s cannot both hold unknown fields and be a ProtoField",
+                          f.getName()));
+        }
+        builder.setUnknownFieldsField(f);
+      } else if (protoOneof != null) {
+        if (protoField != null) {
+          throw new IllegalArgumentException(
+                  String.format(
+                          "Field %s cannot be both a ProtoField and a ProtoOneof", f.getName()));
+        }
+        OneofDescriptor oneof = new OneofDescriptor(getCaseField(clazz, protoOneof), f);
+        for (ProtoField member : protoOneof.fields()) {
+          builder.add(
+                  new FieldDescriptor(
+                          member.fieldNumber(), member.type(), getMessageType(member), oneof));
+        }
+      } else if (protoField != null) {
         FieldType type = protoField.type();
         if (validateFields && !type.isValidForField(f)) {
           throw new IllegalArgumentException(
                   String.format(
                           "Field type %s cannot be applied to %s ", type.name(), f.getType().getName()));
         }
-        builder.add(new FieldDescriptor(f, protoField.fieldNumber(), type));
+        MapEntryDescriptor mapEntry = null;
+        if (type.isMap()) {
+          mapEntry = MapEntryDescriptor.forField(f, protoField.keyType(), protoField.valueType());
+          if (validateFields && !mapEntry.isValidForField(f)) {
+            throw new IllegalArgumentException(
+                    String.format(
+                            "Map field %s cannot hold a %s",
+                            f.getName(),
+                            mapEntry.getMapClass().getName()));
+          }
+        }
+        Field hasBitsField = hasBitsFields.remove(protoField.fieldNumber());
+        if (hasBitsField != null) {
+          builder.add(
+                  new FieldDescriptor(
+                          f,
+                          protoField.fieldNumber(),
+                          type,
+                          hasBitsField,
+                          hasBits.get(protoField.fieldNumber())));
+        } else {
+          builder.add(new FieldDescriptor(f, protoField.fieldNumber(), type, mapEntry));
+        }
       }
     }
+    if (!hasBitsFields.isEmpty()) {
+      throw new IllegalArgumentException(
+              String.format(
+                      "Has-bits are declared for fields %s, which are not ProtoFields of %s",
+                      hasBitsFields.keySet(),
+                      clazz.getName()));
+    }
     return builder;
   }
+
+  private static Field getCaseField(Class<?> clazz, ProtoOneof protoOneof) {
+    try {
+      return clazz.getDeclaredField(protoOneof.caseField());
+    } catch (NoSuchFieldException e) {
+      throw new IllegalArgumentException(
+              "Unable to find the oneof case field " + protoOneof.caseField(), e);
+    }
+  }
+
+  /**
+   * Gets the message class of a member of a oneof, or {@code null} if none is given.
+   */
+  @Nullable
+  private static Class<?> getMessageType(ProtoField member) {
+    return member.messageType() != Object.class ? member.messageType() : null;
+  }
 }
@@ -3,6 +3,10 @@ package com.google.apps.tiktok.protobuf.experimental.descriptor;
 import com.google.apps.tiktok.protobuf.experimental.FieldType;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+import javax.annotation.Nullable;
 
 /**
  * The descriptor for a single field in a protobuf message class.
@@ -11,6 +15,11 @@ public final class FieldDescriptor implements Comparable<FieldDescriptor> {
   private final Field field;
   private final FieldType type;
   private final int fieldNumber;
+  @Nullable private final Class<?> messageClass;
+  @Nullable private final MapEntryDescriptor mapEntryDescriptor;
+  @Nullable private final OneofDescriptor oneof;
+  @Nullable private final Field hasBitsField;
+  private final int hasBit;
 
   /**
    * Constructs a descriptor
@@ -20,16 +29,120 @@ public final class FieldDescriptor implements Comparable<FieldDescriptor> {
    * @param type the field type information.
    */
   public FieldDescriptor(Field field, int fieldNumber, FieldType type) {
+    this(field, fieldNumber, type, null);
+  }
+
+  /**
+   * Constructs a descriptor
+   *
+   * @param field the field from the protobuf message.
+   * @param fieldNumber the field number for the field.
+   * @param type the field type information.
+   * @param mapEntry the types of the keys and values, which must be provided if and only
+   *     if the type is {@link FieldType#MAP}.
+   */
+  public FieldDescriptor(
+      Field field, int fieldNumber, FieldType type, @Nullable MapEntryDescriptor mapEntry) {
+    this(field, fieldNumber, type, mapEntry, null, null, null, -1);
+  }
+
+  /**
+   * Constructs the descriptor for a member of a oneof, whose value is held in the value field of
+   * the oneof.
+   *
+   * @param fieldNumber the field number for the member.
+   * @param type the type of the member, which must be a singular type.
+   * @param oneof the oneof that the member belongs to.
+   */
+  public FieldDescriptor(int fieldNumber, FieldType type, OneofDescriptor oneof) {
+    this(fieldNumber, type, null, oneof);
+  }
+
+  /**
+   * Constructs the descriptor for a member of a oneof, whose value is held in the value field of
+   * the oneof.
+   *
+   * @param fieldNumber the field number for the member.
+   * @param type the type of the member, which must be a singular type.
+   * @param messageClass the class of the nested message, which must be provided if and only if
+   *     the type is {@link FieldType#MESSAGE}.
+   * @param oneof the oneof that the member belongs to.
+   */
+  public FieldDescriptor(
+      int fieldNumber, FieldType type, @Nullable Class<?> messageClass, OneofDescriptor oneof) {
+    this(oneof.getValueField(), fieldNumber, type, null, messageClass, oneof, null, -1);
+  }
+
+  /**
+   * Constructs the descriptor for a field whose presence is held in a has-bit.
+   *
+   * @param field the field from the protobuf message.
+   * @param fieldNumber the field number for the field.
+   * @param type the field type information, which must be a singular type.
+   * @param hasBitsField the {@code int} field holding the has-bit.
+   * @param hasBit the index of the has-bit within {@code hasBitsField}, from {@code 0} to
+   *     {@code 31}.
+   */
+  public FieldDescriptor(
+      Field field, int fieldNumber, FieldType type, Field hasBitsField, int hasBit) {
+    this(field, fieldNumber, type, null, null, null, hasBitsField, hasBit);
+  }
+
+  private FieldDescriptor(
+      Field field,
+      int fieldNumber,
+      FieldType type,
+      @Nullable MapEntryDescriptor mapEntry,
+      @Nullable Class<?> memberMessageClass,
+      @Nullable OneofDescriptor oneof,
+      @Nullable Field hasBitsField,
+      int hasBit) {
     if (field == null) {
       throw new NullPointerException("field");
     }
     if (type == null) {
       throw new NullPointerException("type");
     }
+    if (type.isMap() != (mapEntry != null)) {
+      throw new IllegalArgumentException(
+          "A map entry descriptor must be provided for map fields only: " + field.getName());
+    }
+    if (oneof != null && !OneofDescriptor.isValidMemberType(type)) {
+      throw new IllegalArgumentException(
+          String.format("Oneof %s cannot have a member of type %s", field.getName(), type));
+    }
+    if (oneof != null && (type == FieldType.MESSAGE) != (memberMessageClass != null)) {
+      throw new IllegalArgumentException(
+          String.format(
+              "A message class must be provided for message members of a oneof only: %d in %s",
+              fieldNumber, field.getName()));
+    }
+    if (hasBitsField != null) {
+      if (hasBitsField.getType() != int.class) {
+        throw new IllegalArgumentException("Has-bits must be held in an int: " + hasBitsField);
+      }
+      if (hasBit < 0 || hasBit >= Integer.SIZE) {
+        throw new IllegalArgumentException(
+            String.format("Has-bit %d of field %s is out of range", hasBit, field.getName()));
+      }
+      // Presence is tracked for the same types as the members of a oneof.
+      if (!OneofDescriptor.isValidMemberType(type)) {
+        throw new IllegalArgumentException(
+            String.format("Field %s of type %s cannot have a has-bit", field.getName(), type));
+      }
+    }
 
     this.field = field;
     this.type = type;
     this.fieldNumber = fieldNumber;
+    this.messageClass =
+        oneof == null
+            ? messageClassFor(field, type)
+            : memberMessageClass != null ? checkMessageClass(memberMessageClass, field) : null;
+    this.mapEntryDescriptor = mapEntry;
+    this.oneof = oneof;
+    this.hasBitsField = hasBitsField;
+    this.hasBit = hasBitsField != null ? hasBit : -1;
   }
 
   /**
@@ -53,6 +166,84 @@ public final class FieldDescriptor implements Comparable<FieldDescriptor> {
     return fieldNumber;
   }
 
+  /**
+   * Gets the class of the nested messages of a {@link FieldType#MESSAGE} or
+   * {@link FieldType#MESSAGE_LIST} field, taken from the declared type of the field or, for a
+   * member of a oneof, given when the descriptor was constructed. This is {@code null} for other
+   * fields.
+   */
+  @Nullable
+  public Class<?> getMessageClass() {
+    return messageClass;
+  }
+
+  /**
+   * Gets the types of the keys and values of a {@link FieldType#MAP} field, or {@code null} for
+   * other fields.
+   */
+  @Nullable
+  public MapEntryDescriptor getMapEntryDescriptor() {
+    return mapEntryDescriptor;
+  }
+
+  /**
+   * Gets the oneof that this field is a member of, or {@code null} if it is not a member of a
+   * oneof. The {@link #getField() field} of a member is the value field of its oneof.
+   */
+  @Nullable
+  public OneofDescriptor getOneof() {
+    return oneof;
+  }
+
+  /**
+   * Gets the {@code int} field holding the has-bit of this field, or {@code null} if the field
+   * has no has-bit and is written whenever it does not hold the default value.
+   */
+  @Nullable
+  public Field getHasBitsField() {
+    return hasBitsField;
+  }
+
+  /**
+   * Gets the index of the has-bit of this field within {@link #getHasBitsField()}, or {@code -1}
+   * if the field has no has-bit.
+   */
+  public int getHasBit() {
+    return hasBit;
+  }
+
+  @Nullable
+  private static Class<?> messageClassFor(Field field, FieldType type) {
+    Type messageType;
+    if (type == FieldType.MESSAGE) {
+      messageType = field.getType();
+    } else if (type == FieldType.MESSAGE_LIST) {
+      Type genericType = field.getGenericType();
+      messageType =
+          genericType instanceof ParameterizedType
+              ? ((ParameterizedType) genericType).getActualTypeArguments()[0]
+              : null;
+    } else {
+      return null;
+    }
+    if (!(messageType instanceof Class)) {
+      throw new IllegalArgumentException(
+          "Unable to identify the message class of field " + field.getName());
+    }
+    return checkMessageClass((Class<?>) messageType, field);
+  }
+
+  private static Class<?> checkMessageClass(Class<?> messageClass, Field field) {
+    if (messageClass == Object.class
+        || messageClass.isInterface()
+        || messageClass.isPrimitive()
+        || messageClass.isArray()) {
+      throw new IllegalArgumentException(
+          "Unable to identify the message class of field " + field.getName());
+    }
+    return messageClass;
+  }
+
   @Override
   public int compareTo(FieldDescriptor o) {
     return fieldNumber - o.fieldNumber;
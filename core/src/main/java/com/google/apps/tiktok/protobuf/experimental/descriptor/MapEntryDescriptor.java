@@ -0,0 +1,159 @@
+package com.google.apps.tiktok.protobuf.experimental.descriptor;
+
+import com.google.apps.tiktok.protobuf.experimental.FieldType;
+import com.google.apps.tiktok.protobuf.experimental.IntKeyHashMap;
+import com.google.apps.tiktok.protobuf.experimental.JavaType;
+import com.google.apps.tiktok.protobuf.experimental.LongKeyHashMap;
+import com.google.apps.tiktok.protobuf.experimental.schema.LazySchema;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * The descriptor for the entries of a {@link FieldType#MAP} field. Each entry is encoded as a
+ * message holding the key in field 1 and the value in field 2, but is never represented by an
+ * object of its own; the key and value are written and read directly.
+ *
+ * <p>Message values are written and read with the schema held by {@link #getValueSchema()}, which
+ * is looked up once for each schema factory rather than for each entry.
+ */
+public final class MapEntryDescriptor {
+  private final FieldType keyType;
+  private final FieldType valueType;
+  @Nullable private final LazySchema<?> valueSchema;
+
+  /**
+   * Constructs a descriptor.
+   *
+   * @param keyType the type of the keys, which must be an integral type, {@link FieldType#BOOL}
+   *     or {@link FieldType#STRING}.
+   * @param valueType the type of the values, which must be a singular type.
+   * @param valueClass the class of the values if they are messages, otherwise ignored.
+   */
+  public MapEntryDescriptor(FieldType keyType, FieldType valueType, @Nullable Class<?> valueClass) {
+    if (!isValidKeyType(keyType)) {
+      throw new IllegalArgumentException("Invalid map key type: " + keyType);
+    }
+    if (!isValidValueType(valueType)) {
+      throw new IllegalArgumentException("Invalid map value type: " + valueType);
+    }
+    if (valueType == FieldType.MESSAGE) {
+      if (valueClass == null || valueClass == Object.class) {
+        throw new IllegalArgumentException("The class of message map values must be provided");
+      }
+      valueSchema = LazySchema.of(valueClass);
+    } else {
+      valueSchema = null;
+    }
+    this.keyType = keyType;
+    this.valueType = valueType;
+  }
+
+  /**
+   * Creates the descriptor for a map field, taking the class of message values from the type
+   * arguments of the declared type of the field.
+   */
+  public static MapEntryDescriptor forField(Field field, FieldType keyType, FieldType valueType) {
+    Class<?> valueClass = null;
+    if (valueType == FieldType.MESSAGE) {
+      Type genericType = field.getGenericType();
+      if (genericType instanceof ParameterizedType) {
+        Type[] args = ((ParameterizedType) genericType).getActualTypeArguments();
+        Type valueArg = args[args.length - 1];
+        if (valueArg instanceof Class) {
+          valueClass = (Class<?>) valueArg;
+        }
+      }
+      if (valueClass == null) {
+        throw new IllegalArgumentException(
+            "Unable to identify the message value class of map field " + field.getName());
+      }
+    }
+    return new MapEntryDescriptor(keyType, valueType, valueClass);
+  }
+
+  /**
+   * Gets the type of the keys.
+   */
+  public FieldType getKeyType() {
+    return keyType;
+  }
+
+  /**
+   * Gets the type of the values.
+   */
+  public FieldType getValueType() {
+    return valueType;
+  }
+
+  /**
+   * Gets the class of the values if they are messages, or {@code null} for other value types.
+   */
+  @Nullable
+  public Class<?> getValueClass() {
+    return valueSchema != null ? valueSchema.getMessageType() : null;
+  }
+
+  /**
+   * Gets the schema of the values if they are messages, or {@code null} for other value types.
+   */
+  @Nullable
+  public LazySchema<?> getValueSchema() {
+    return valueSchema;
+  }
+
+  /**
+   * Gets the class of the map created for a field that has not been set. Keys of the
+   * {@link JavaType#INT} and {@link JavaType#LONG} types are held in an {@link IntKeyHashMap} or
+   * {@link LongKeyHashMap} so that they need not be boxed.
+   */
+  public Class<?> getMapClass() {
+    switch (keyType.getJavaType()) {
+      case INT:
+        return IntKeyHashMap.class;
+      case LONG:
+        return LongKeyHashMap.class;
+      default:
+        return HashMap.class;
+    }
+  }
+
+  /**
+   * Indicates whether a field may hold maps of this type, which requires it to accept the map
+   * created by {@link #getMapClass()}.
+   */
+  public boolean isValidForField(Field field) {
+    Class<?> clazz = field.getType();
+    return Map.class.isAssignableFrom(clazz) && clazz.isAssignableFrom(getMapClass());
+  }
+
+  private static boolean isValidKeyType(FieldType type) {
+    switch (type) {
+      case INT64:
+      case UINT64:
+      case INT32:
+      case FIXED64:
+      case FIXED32:
+      case BOOL:
+      case STRING:
+      case UINT32:
+      case SFIXED32:
+      case SFIXED64:
+      case SINT32:
+      case SINT64:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static boolean isValidValueType(FieldType type) {
+    return !type.isList() && !type.isArray() && !type.isMap() && type.getType() != byte[].class
+        && type != FieldType.BYTE_BUFFER;
+  }
+}
@@ -1,9 +1,17 @@
 package com.google.apps.tiktok.protobuf.experimental.descriptor;
 
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+
+import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
 
 /**
  * A descriptor for a protobuf message class. This describes all of the fields contained within a
@@ -11,14 +19,27 @@ import java.util.List;
  */
 public final class MessageDescriptor {
   private final List<FieldDescriptor> fieldDescriptors;
+  private final List<OneofDescriptor> oneofDescriptors;
+  private final List<Field> hasBitsFields;
+  @Nullable private final Field unknownFieldsField;
 
   /**
    * Constructs the descriptor.
    *
    * @param fieldDescriptors the set of fields for the message.
+   * @param oneofDescriptors the oneofs that the fields are members of.
+   * @param hasBitsFields the {@code int} fields holding the has-bits of the fields.
+   * @param unknownFieldsField the field that preserves unknown fields, or {@code null}.
    */
-  private MessageDescriptor(ArrayList<FieldDescriptor> fieldDescriptors) {
+  private MessageDescriptor(
+      ArrayList<FieldDescriptor> fieldDescriptors,
+      ArrayList<OneofDescriptor> oneofDescriptors,
+      ArrayList<Field> hasBitsFields,
+      @Nullable Field unknownFieldsField) {
     this.fieldDescriptors = Collections.unmodifiableList(fieldDescriptors);
+    this.oneofDescriptors = Collections.unmodifiableList(oneofDescriptors);
+    this.hasBitsFields = Collections.unmodifiableList(hasBitsFields);
+    this.unknownFieldsField = unknownFieldsField;
   }
 
   /**
@@ -29,6 +50,35 @@ public final class MessageDescriptor {
     return fieldDescriptors;
   }
 
+  /**
+   * Gets the list of descriptors for the oneofs within this message, in the order of the field
+   * number of their first member. The members themselves are included in
+   * {@link #getFieldDescriptors()}.
+   */
+  public List<OneofDescriptor> getOneofDescriptors() {
+    return oneofDescriptors;
+  }
+
+  /**
+   * Gets the {@code int} fields holding the has-bits of the fields within this message, in the
+   * order of the field number of the first field they hold a bit for. Fields without a has-bit
+   * are not included. The has-bits are assigned in order of field number, so that each field
+   * holds bits for higher field numbers than the fields before it, and higher bits within a field
+   * are for higher field numbers.
+   */
+  public List<Field> getHasBitsFields() {
+    return hasBitsFields;
+  }
+
+  /**
+   * Gets the {@link ByteString} field that preserves the encoded unknown fields of the message,
+   * or {@code null} if unknown fields are discarded.
+   */
+  @Nullable
+  public Field getUnknownFieldsField() {
+    return unknownFieldsField;
+  }
+
   /**
    * Helper method for creating a new builder for {@link MessageDescriptor}.
    */
@@ -48,6 +98,7 @@ public final class MessageDescriptor {
    */
   public static final class Builder {
     private final ArrayList<FieldDescriptor> fieldDescriptors;
+    private Field unknownFieldsField;
     private boolean wasBuilt;
 
     public Builder() {
@@ -65,13 +116,77 @@ public final class MessageDescriptor {
       fieldDescriptors.add(fieldDescriptor);
     }
 
+    /**
+     * Sets the field that preserves unknown fields, which must be a {@link ByteString}.
+     */
+    public void setUnknownFieldsField(Field field) {
+      if (wasBuilt) {
+        throw new IllegalStateException("Builder can only build once");
+      }
+      if (field.getType() != ByteString.class) {
+        throw new IllegalArgumentException("Unknown fields must be held in a ByteString: " + field);
+      }
+      if (unknownFieldsField != null) {
+        throw new IllegalArgumentException(
+            "Unknown fields are already held in " + unknownFieldsField.getName());
+      }
+      unknownFieldsField = field;
+    }
+
     public MessageDescriptor build() {
       if (wasBuilt) {
         throw new IllegalStateException("Builder can only build once");
       }
       wasBuilt = true;
       Collections.sort(fieldDescriptors);
-      return new MessageDescriptor(fieldDescriptors);
+      ArrayList<OneofDescriptor> oneofDescriptors = new ArrayList<OneofDescriptor>();
+      Map<OneofDescriptor, Boolean> seen = new IdentityHashMap<OneofDescriptor, Boolean>();
+      for (FieldDescriptor fieldDescriptor : fieldDescriptors) {
+        OneofDescriptor oneof = fieldDescriptor.getOneof();
+        if (oneof != null && seen.put(oneof, Boolean.TRUE) == null) {
+          oneofDescriptors.add(oneof);
+        }
+      }
+      ArrayList<Field> hasBitsFields = new ArrayList<Field>();
+      Map<Field, FieldDescriptor[]> hasBits = new HashMap<Field, FieldDescriptor[]>();
+      int lastHasBit = -1;
+      for (FieldDescriptor fieldDescriptor : fieldDescriptors) {
+        Field hasBitsField = fieldDescriptor.getHasBitsField();
+        if (hasBitsField == null) {
+          continue;
+        }
+        FieldDescriptor[] bits = hasBits.get(hasBitsField);
+        if (bits == null) {
+          bits = new FieldDescriptor[Integer.SIZE];
+          hasBits.put(hasBitsField, bits);
+          hasBitsFields.add(hasBitsField);
+          lastHasBit = -1;
+        }
+        FieldDescriptor other = bits[fieldDescriptor.getHasBit()];
+        if (other != null) {
+          throw new IllegalArgumentException(
+              String.format(
+                  "Fields %d and %d share has-bit %d of %s",
+                  other.getFieldNumber(),
+                  fieldDescriptor.getFieldNumber(),
+                  fieldDescriptor.getHasBit(),
+                  hasBitsField.getName()));
+        }
+        // Schemas write the fields in order by iterating over the bits that are set.
+        if (hasBitsField != hasBitsFields.get(hasBitsFields.size() - 1)
+            || fieldDescriptor.getHasBit() < lastHasBit) {
+          throw new IllegalArgumentException(
+              String.format(
+                  "Has-bit %d of %s is out of order for field %d",
+                  fieldDescriptor.getHasBit(),
+                  hasBitsField.getName(),
+                  fieldDescriptor.getFieldNumber()));
+        }
+        lastHasBit = fieldDescriptor.getHasBit();
+        bits[fieldDescriptor.getHasBit()] = fieldDescriptor;
+      }
+      return new MessageDescriptor(
+          fieldDescriptors, oneofDescriptors, hasBitsFields, unknownFieldsField);
     }
   }
 }
@@ -0,0 +1,63 @@
+package com.google.apps.tiktok.protobuf.experimental.descriptor;
+
+import com.google.apps.tiktok.protobuf.experimental.FieldType;
+
+import java.lang.reflect.Field;
+
+/**
+ * The descriptor for a oneof in a protobuf message class. The members of a oneof share a single
+ * {@link Object} field holding the value of the member that is set, and an {@code int} case field
+ * holding its field number, or {@code 0} if no member is set. Each member is described by a
+ * {@link FieldDescriptor} whose {@link FieldDescriptor#getOneof()} is this descriptor.
+ */
+public final class OneofDescriptor {
+  private final Field caseField;
+  private final Field valueField;
+
+  /**
+   * Constructs a descriptor.
+   *
+   * @param caseField the {@code int} field holding the number of the member that is set.
+   * @param valueField the {@link Object} field holding the value of the member that is set.
+   */
+  public OneofDescriptor(Field caseField, Field valueField) {
+    if (caseField == null) {
+      throw new NullPointerException("caseField");
+    }
+    if (valueField == null) {
+      throw new NullPointerException("valueField");
+    }
+    if (caseField.getType() != int.class) {
+      throw new IllegalArgumentException("The case field of a oneof must be an int: " + caseField);
+    }
+    if (valueField.getType() != Object.class) {
+      throw new IllegalArgumentException(
+          "The value field of a oneof must be an Object: " + valueField);
+    }
+    this.caseField = caseField;
+    this.valueField = valueField;
+  }
+
+  /**
+   * Gets the field holding the number of the member that is set.
+   */
+  public Field getCaseField() {
+    return caseField;
+  }
+
+  /**
+   * Gets the field holding the value of the member that is set.
+   */
+  public Field getValueField() {
+    return valueField;
+  }
+
+  /**
+   * Indicates whether a member of a oneof may have the given type. Members are singular fields,
+   * held as the boxed equivalent of their Java type.
+   */
+  static boolean isValidMemberType(FieldType type) {
+    return !type.isList() && !type.isArray() && !type.isMap() && type.getType() != byte[].class
+        && type != FieldType.BYTE_BUFFER;
+  }
+}
@@ -2,16 +2,28 @@ package com.google.apps.tiktok.protobuf.experimental.schema;
 
 import com.google.apps.tiktok.protobuf.experimental.FieldType;
 import com.google.apps.tiktok.protobuf.experimental.descriptor.FieldDescriptor;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.MapEntryDescriptor;
 import com.google.apps.tiktok.protobuf.experimental.descriptor.MessageDescriptor;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.OneofDescriptor;
 import com.google.apps.tiktok.protobuf.experimental.util.SchemaUtil;
 import com.google.apps.tiktok.protobuf.experimental.util.UnsafeUtil;
 
+import java.lang.reflect.Field;
 import java.util.Arrays;
 import java.util.List;
 
 /**
  * A generic schema that can be used with any protobuf message class. This class requires the use
  * of {@code sun.misc.Unsafe} for unsafe access to field values in the message.
+ *
+ * <p>Fields with a has-bit are written by iterating over the bits that are set in each has-bits
+ * field, so that sparse messages do not visit every field, and are merged with the other fields
+ * in order of field number. The members of a oneof are among the other fields, and each is
+ * written only if the case field of its oneof holds its number. Unknown fields, if preserved by the
+ * message, are written last.
+ *
+ * <p>Each message field holds a {@link LazySchema} for the declared type of its nested messages,
+ * so the nested schema is looked up through the reader or writer only once.
  */
 final class GenericSchema<T> implements Schema<T> {
   private static final int ENTRIES_PER_FIELD = 2;
@@ -20,6 +32,9 @@ final class GenericSchema<T> implements Schema<T> {
   private static final long DATA_OFFSET = UnsafeUtil.arrayBaseOffset(long[].class);
   private static final int FIELD_NUMBER_BITS = 29;
   private static final int FIELD_NUMBER_MASK = 0x1FFFFFFF;
+  private static final long ONEOF_MEMBER_FLAG = 1L << (FIELD_NUMBER_BITS + Byte.SIZE);
+  private static final long VALUE_OFFSET_MASK = 0xFFFFFFFFL;
+  private static final int HAS_BITS_SHIFT = 5;
 
   /**
    * Holds all information for accessing the message fields. Each field is represented by two
@@ -27,15 +42,63 @@ final class GenericSchema<T> implements Schema<T> {
    * {@code fieldNumber}, and the second is the unsafe offset of the field within the message.
    *
    * <p>{@code [(fieldType.id() << 29) | fieldNumber][unsafeFieldOffset]}
+   *
+   * <p>The fields with a has-bit follow the other fields. The first element of a member of a oneof
+   * also has {@link #ONEOF_MEMBER_FLAG} set, above the bits of the field type ID, and the second
+   * element holds the offsets of the case field and the value field of its oneof, as
+   * {@code (caseOffset << 32) | valueOffset}.
    */
   private final long[] data;
 
   /**
-   * The limit of the {@code data} array expressed as an unsafe offset from the beginning of the
-   * array.
+   * The limit of the fields in the {@code data} array that do not have a has-bit, expressed as an
+   * unsafe offset from the beginning of the array.
    */
   private final long dataLimit;
 
+  /**
+   * The limit of the fields in the {@code data} array that have a has-bit, expressed as an unsafe
+   * offset from the beginning of the array. These fields start at {@link #dataLimit}.
+   */
+  private final long hasBitsLimit;
+
+  /**
+   * The unsafe offsets of the has-bits fields, in the order of
+   * {@link MessageDescriptor#getHasBitsFields()}.
+   */
+  private final long[] hasBitsOffsets;
+
+  /**
+   * The position in the {@code data} array of the field with each has-bit, indexed by
+   * {@code (hasBitsIndex << 5) | bit}, or {@code -1} for bits that are not used.
+   */
+  private final long[] hasBitPositions;
+
+  /**
+   * The unsafe offset of the has-bits field and the mask of the has-bit of each field with a
+   * has-bit, indexed by the position of the field from {@link #dataLimit} and held as
+   * {@code (offset << 32) | mask}.
+   */
+  private final long[] hasBits;
+
+  /**
+   * The unsafe offset of the field that preserves unknown fields, or {@code -1} if unknown fields
+   * are discarded.
+   */
+  private final long unknownFieldsOffset;
+
+  /**
+   * The entry descriptors of map fields, indexed by the position of the field in the
+   * {@code data} array. Elements for other fields are {@code null}.
+   */
+  private final MapEntryDescriptor[] mapEntries;
+
+  /**
+   * The schemas of the nested messages of message fields, indexed by the position of the field in
+   * the {@code data} array. Elements for other fields are {@code null}.
+   */
+  private final LazySchema<?>[] messageSchemas;
+
   /**
    * Map for looking up the position in the {@code data} array for a given {@code fieldNumber}.
    */
@@ -46,219 +109,774 @@ final class GenericSchema<T> implements Schema<T> {
     final int numFields = fieldDescriptors.size();
     fieldMap = FieldMap.newFieldMap(fieldDescriptors);
     data = new long[numFields * ENTRIES_PER_FIELD];
+    mapEntries = new MapEntryDescriptor[numFields];
+    messageSchemas = new LazySchema<?>[numFields];
+    Field unknownFieldsField = descriptor.getUnknownFieldsField();
+    unknownFieldsOffset =
+        unknownFieldsField != null ? UnsafeUtil.objectFieldOffset(unknownFieldsField) : -1L;
+
+    List<Field> hasBitsFields = descriptor.getHasBitsFields();
+    hasBitsOffsets = new long[hasBitsFields.size()];
+    for (int i = 0; i < hasBitsOffsets.length; ++i) {
+      hasBitsOffsets[i] = UnsafeUtil.objectFieldOffset(hasBitsFields.get(i));
+    }
+    hasBitPositions = new long[hasBitsOffsets.length << HAS_BITS_SHIFT];
+    Arrays.fill(hasBitPositions, -1L);
+
+    int numWithHasBits = 0;
+    for (int i = 0; i < numFields; ++i) {
+      if (fieldDescriptors.get(i).getHasBitsField() != null) {
+        ++numWithHasBits;
+      }
+    }
+    hasBits = new long[numWithHasBits];
+    dataLimit = DATA_OFFSET + ((numFields - numWithHasBits) * FIELD_LENGTH);
+    hasBitsLimit = dataLimit + (numWithHasBits * FIELD_LENGTH);
+
     int lastFieldNumber = Integer.MAX_VALUE;
     long dataPos = DATA_OFFSET;
+    long hasBitsPos = dataLimit;
     for (int i = 0; i < numFields; ++i) {
       FieldDescriptor f = fieldDescriptors.get(i);
       if (f.getFieldNumber() == lastFieldNumber) {
         throw new RuntimeException("Duplicate field number: " + f.getFieldNumber());
       }
       lastFieldNumber = f.getFieldNumber();
-      fieldMap.setDataPos(f, i, dataPos);
-      UnsafeUtil.putLong(
-          data, dataPos, (((long) f.getType().id()) << FIELD_NUMBER_BITS) | f.getFieldNumber());
-      UnsafeUtil.putLong(data, dataPos + LONG_LENGTH, UnsafeUtil.objectFieldOffset(f.getField()));
-      dataPos += FIELD_LENGTH;
+      final long pos;
+      long numberAndType = (((long) f.getType().id()) << FIELD_NUMBER_BITS) | f.getFieldNumber();
+      final long offset;
+      if (f.getOneof() != null) {
+        pos = dataPos;
+        dataPos += FIELD_LENGTH;
+        numberAndType |= ONEOF_MEMBER_FLAG;
+        offset = getOneofOffsets(f.getOneof());
+      } else if (f.getHasBitsField() != null) {
+        pos = hasBitsPos;
+        hasBitsPos += FIELD_LENGTH;
+        offset = UnsafeUtil.objectFieldOffset(f.getField());
+        int hasBitsIndex = hasBitsFields.indexOf(f.getHasBitsField());
+        hasBitPositions[(hasBitsIndex << HAS_BITS_SHIFT) | f.getHasBit()] = pos;
+        hasBits[(int) ((pos - dataLimit) / FIELD_LENGTH)] =
+            (hasBitsOffsets[hasBitsIndex] << 32) | ((1L << f.getHasBit()) & 0xFFFFFFFFL);
+      } else {
+        pos = dataPos;
+        dataPos += FIELD_LENGTH;
+        offset = UnsafeUtil.objectFieldOffset(f.getField());
+      }
+      fieldMap.setDataPos(f, i, pos);
+      UnsafeUtil.putLong(data, pos, numberAndType);
+      UnsafeUtil.putLong(data, pos + LONG_LENGTH, offset);
+      mapEntries[(int) ((pos - DATA_OFFSET) / FIELD_LENGTH)] = f.getMapEntryDescriptor();
+      if (f.getMessageClass() != null) {
+        messageSchemas[(int) ((pos - DATA_OFFSET) / FIELD_LENGTH)] =
+            LazySchema.of(f.getMessageClass());
+      }
     }
-    dataLimit = DATA_OFFSET + (data.length * LONG_LENGTH);
   }
 
   @Override
   public void writeTo(T message, Writer writer) {
+    // The fields with a has-bit that are present are visited in order of field number, since the
+    // has-bits are assigned in that order, so the other fields are written in between.
+    long pos = DATA_OFFSET;
+    for (int i = 0; i < hasBitsOffsets.length; ++i) {
+      int bits = UnsafeUtil.getInt(message, hasBitsOffsets[i]);
+      while (bits != 0) {
+        final long hasBitPos =
+            hasBitPositions[(i << HAS_BITS_SHIFT) | Integer.numberOfTrailingZeros(bits)];
+        // Clear the lowest bit that is set.
+        bits &= bits - 1;
+        if (hasBitPos >= 0L) {
+          final long numberAndType = getLong(hasBitPos);
+          final int fieldNumber = getFieldNumber(numberAndType);
+          while (pos < dataLimit && getFieldNumber(getLong(pos)) < fieldNumber) {
+            writeField(message, pos, writer);
+            pos += FIELD_LENGTH;
+          }
+          final LazySchema<?> messageSchema = getMessageSchema(hasBitPos);
+          if (messageSchema != null) {
+            SchemaUtil.unsafeWriteMessage(
+                fieldNumber, message, getLong(hasBitPos + LONG_LENGTH), messageSchema, writer);
+          } else {
+            SchemaUtil.unsafeWritePresentField(
+                fieldNumber,
+                getFieldType(numberAndType),
+                message,
+                getLong(hasBitPos + LONG_LENGTH),
+                writer);
+          }
+        }
+      }
+    }
+    for (; pos < dataLimit; pos += FIELD_LENGTH) {
+      writeField(message, pos, writer);
+    }
+
+    if (unknownFieldsOffset >= 0L) {
+      SchemaUtil.unsafeWriteUnknownFields(message, unknownFieldsOffset, writer);
+    }
+  }
+
+  /**
+   * Writes the field at the given position in the {@code data} array, if it is not the default,
+   * or if it is the member that is set in its oneof.
+   */
+  private void writeField(T message, long pos, Writer writer) {
+    final long numberAndType = getLong(pos);
+    final int fieldNumber = getFieldNumber(numberAndType);
+    if (isOneofMember(numberAndType)) {
+      final long offsets = getLong(pos + LONG_LENGTH);
+      if (UnsafeUtil.getInt(message, getCaseOffset(offsets)) == fieldNumber) {
+        SchemaUtil.writeFieldValue(
+            fieldNumber,
+            getFieldType(numberAndType),
+            UnsafeUtil.getObject(message, getValueOffset(offsets)),
+            getMessageSchema(pos),
+            writer);
+      }
+      return;
+    }
+
+    // Switching on the field type ID to avoid the lookup of FieldType.
+    // Benchmarks have shown that switching on a byte is faster than an enum.
+    switch (getFieldTypeId(numberAndType)) {
+      case 0: //DOUBLE:
+        SchemaUtil.unsafeWriteDouble(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 1: //FLOAT:
+        SchemaUtil.unsafeWriteFloat(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 2: //INT64:
+        SchemaUtil.unsafeWriteInt64(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 3: //UINT64:
+        SchemaUtil.unsafeWriteUInt64(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 4: //INT32:
+        SchemaUtil.unsafeWriteInt32(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 5: //FIXED64:
+        SchemaUtil.unsafeWriteFixed64(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 6: //FIXED32:
+        SchemaUtil.unsafeWriteFixed32(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 7: //BOOL:
+        SchemaUtil.unsafeWriteBool(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 8: //STRING:
+        SchemaUtil.unsafeWriteString(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 9: //MESSAGE:
+        SchemaUtil.unsafeWriteMessage(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), getMessageSchema(pos), writer);
+        break;
+      case 10: //BYTES:
+        SchemaUtil.unsafeWriteBytes(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 11: //UINT32:
+        SchemaUtil.unsafeWriteUInt32(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 12: //ENUM:
+        SchemaUtil.unsafeWriteEnum(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 13: //SFIXED32:
+        SchemaUtil.unsafeWriteSFixed32(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 14: //SFIXED64:
+        SchemaUtil.unsafeWriteSFixed64(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 15: //SINT32:
+        SchemaUtil.unsafeWriteSInt32(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 16: //SINT64:
+        SchemaUtil.unsafeWriteSInt64(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 17: //DOUBLE_LIST:
+        SchemaUtil.unsafeWriteDoubleList(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+        break;
+      case 18: //FLOAT_LIST:
+        SchemaUtil.unsafeWriteFloatList(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+        break;
+      case 19: //INT64_LIST:
+        SchemaUtil.unsafeWriteInt64List(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+        break;
+      case 20: //UINT64_LIST:
+        SchemaUtil.unsafeWriteUInt64List(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+        break;
+      case 21: //INT32_LIST:
+        SchemaUtil.unsafeWriteInt32List(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+        break;
+      case 22: //FIXED64_LIST:
+        SchemaUtil.unsafeWriteFixed64List(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+        break;
+      case 23: //FIXED32_LIST:
+        SchemaUtil.unsafeWriteFixed32List(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+        break;
+      case 24: //BOOL_LIST:
+        SchemaUtil.unsafeWriteBoolList(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+        break;
+      case 25: //STRING_LIST:
+        SchemaUtil.unsafeWriteStringList(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 26: //MESSAGE_LIST:
+        SchemaUtil.unsafeWriteMessageList(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), getMessageSchema(pos), writer);
+        break;
+      case 27: //BYTES_LIST:
+        SchemaUtil.unsafeWriteBytesList(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 28: //UINT32_LIST:
+        SchemaUtil.unsafeWriteUInt32List(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+        break;
+      case 29: //ENUM_LIST:
+        SchemaUtil.unsafeWriteEnumList(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+        break;
+      case 30: //SFIXED32_LIST:
+        SchemaUtil.unsafeWriteSFixed32List(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+        break;
+      case 31: //SFIXED64_LIST:
+        SchemaUtil.unsafeWriteSFixed64List(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+        break;
+      case 32: //SINT32_LIST:
+        SchemaUtil.unsafeWriteSInt32List(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+        break;
+      case 33: //SINT64_LIST:
+        SchemaUtil.unsafeWriteSInt64List(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+        break;
+      case 34: //DOUBLE_LIST_PACKED:
+        SchemaUtil.unsafeWriteDoubleList(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+        break;
+      case 35: //FLOAT_LIST_PACKED:
+        SchemaUtil.unsafeWriteFloatList(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+        break;
+      case 36: //INT64_LIST_PACKED:
+        SchemaUtil.unsafeWriteInt64List(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+        break;
+      case 37: //UINT64_LIST_PACKED:
+        SchemaUtil.unsafeWriteUInt64List(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+        break;
+      case 38: //INT32_LIST_PACKED:
+        SchemaUtil.unsafeWriteInt32List(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+        break;
+      case 39: //FIXED64_LIST_PACKED:
+        SchemaUtil.unsafeWriteFixed64List(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+        break;
+      case 40: //FIXED32_LIST_PACKED:
+        SchemaUtil.unsafeWriteFixed32List(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+        break;
+      case 41: //BOOL_LIST_PACKED:
+        SchemaUtil.unsafeWriteBoolList(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+        break;
+      case 42: //UINT32_LIST_PACKED:
+        SchemaUtil.unsafeWriteUInt32List(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+        break;
+      case 43: //ENUM_LIST_PACKED:
+        SchemaUtil.unsafeWriteEnumList(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+        break;
+      case 44: //SFIXED32_LIST_PACKED:
+        SchemaUtil.unsafeWriteSFixed32List(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+        break;
+      case 45: //SFIXED64_LIST_PACKED:
+        SchemaUtil.unsafeWriteSFixed64List(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+        break;
+      case 46: //SINT32_LIST_PACKED:
+        SchemaUtil.unsafeWriteSInt32List(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+        break;
+      case 47: //SINT64_LIST_PACKED:
+        SchemaUtil.unsafeWriteSInt64List(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+        break;
+      case 48: //DOUBLE_ARRAY:
+        SchemaUtil.unsafeWriteDoubleArray(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 49: //FLOAT_ARRAY:
+        SchemaUtil.unsafeWriteFloatArray(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 50: //INT64_ARRAY:
+        SchemaUtil.unsafeWriteInt64Array(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 51: //UINT64_ARRAY:
+        SchemaUtil.unsafeWriteUInt64Array(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 52: //INT32_ARRAY:
+        SchemaUtil.unsafeWriteInt32Array(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 53: //FIXED64_ARRAY:
+        SchemaUtil.unsafeWriteFixed64Array(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 54: //FIXED32_ARRAY:
+        SchemaUtil.unsafeWriteFixed32Array(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 55: //UINT32_ARRAY:
+        SchemaUtil.unsafeWriteUInt32Array(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 56: //SFIXED32_ARRAY:
+        SchemaUtil.unsafeWriteSFixed32Array(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 57: //SFIXED64_ARRAY:
+        SchemaUtil.unsafeWriteSFixed64Array(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 58: //SINT32_ARRAY:
+        SchemaUtil.unsafeWriteSInt32Array(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 59: //SINT64_ARRAY:
+        SchemaUtil.unsafeWriteSInt64Array(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 60: //BYTE_ARRAY:
+        SchemaUtil.unsafeWriteByteArray(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 61: //BYTE_BUFFER:
+        SchemaUtil.unsafeWriteByteBuffer(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+        break;
+      case 62: //MAP:
+        SchemaUtil.unsafeWriteMap(
+            fieldNumber, message, getLong(pos + LONG_LENGTH), getMapEntry(pos), writer);
+        break;
+      default:
+        throw new IllegalArgumentException(
+            "Unsupported fieldType: " + getFieldType(getLong(pos)));
+    }
+  }
+
+  @Override
+  public int getSerializedSize(T message, SizeCalculator sizeCalculator) {
+    int size = 0;
     for (long pos = DATA_OFFSET; pos < dataLimit; pos += FIELD_LENGTH) {
-      // Switching on the field type ID to avoid the lookup of FieldType.
       final long numberAndType = getLong(pos);
       final int fieldNumber = getFieldNumber(numberAndType);
-
-      // Benchmarks have shown that switching on a byte is faster than an enum.
+      if (isOneofMember(numberAndType)) {
+        final long offsets = getLong(pos + LONG_LENGTH);
+        if (UnsafeUtil.getInt(message, getCaseOffset(offsets)) == fieldNumber) {
+          size +=
+              SchemaUtil.computeFieldValueSize(
+                  fieldNumber,
+                  getFieldType(numberAndType),
+                  UnsafeUtil.getObject(message, getValueOffset(offsets)),
+                  getMessageSchema(pos),
+                  sizeCalculator);
+        }
+        continue;
+      }
       switch (getFieldTypeId(numberAndType)) {
         case 0: //DOUBLE:
-          SchemaUtil.unsafeWriteDouble(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+          size +=
+              SchemaUtil.unsafeComputeDoubleSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
           break;
         case 1: //FLOAT:
-          SchemaUtil.unsafeWriteFloat(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+          size +=
+              SchemaUtil.unsafeComputeFloatSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
           break;
         case 2: //INT64:
-          SchemaUtil.unsafeWriteInt64(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+          size +=
+              SchemaUtil.unsafeComputeInt64Size(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
           break;
         case 3: //UINT64:
-          SchemaUtil.unsafeWriteUInt64(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+          size +=
+              SchemaUtil.unsafeComputeUInt64Size(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
           break;
         case 4: //INT32:
-          SchemaUtil.unsafeWriteInt32(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+          size +=
+              SchemaUtil.unsafeComputeInt32Size(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
           break;
         case 5: //FIXED64:
-          SchemaUtil.unsafeWriteFixed64(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+          size +=
+              SchemaUtil.unsafeComputeFixed64Size(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
           break;
         case 6: //FIXED32:
-          SchemaUtil.unsafeWriteFixed32(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+          size +=
+              SchemaUtil.unsafeComputeFixed32Size(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
           break;
         case 7: //BOOL:
-          SchemaUtil.unsafeWriteBool(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+          size +=
+              SchemaUtil.unsafeComputeBoolSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
           break;
         case 8: //STRING:
-          SchemaUtil.unsafeWriteString(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+          size +=
+              SchemaUtil.unsafeComputeStringSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
           break;
         case 9: //MESSAGE:
-          SchemaUtil.unsafeWriteMessage(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+          size +=
+              SchemaUtil.unsafeComputeMessageSize(
+                  fieldNumber,
+                  message,
+                  getLong(pos + LONG_LENGTH),
+                  getMessageSchema(pos),
+                  sizeCalculator);
           break;
         case 10: //BYTES:
-          SchemaUtil.unsafeWriteBytes(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+          size +=
+              SchemaUtil.unsafeComputeBytesSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
           break;
         case 11: //UINT32:
-          SchemaUtil.unsafeWriteUInt32(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+          size +=
+              SchemaUtil.unsafeComputeUInt32Size(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
           break;
         case 12: //ENUM:
-          SchemaUtil.unsafeWriteEnum(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+          size +=
+              SchemaUtil.unsafeComputeEnumSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
           break;
         case 13: //SFIXED32:
-          SchemaUtil.unsafeWriteSFixed32(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+          size +=
+              SchemaUtil.unsafeComputeSFixed32Size(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
           break;
         case 14: //SFIXED64:
-          SchemaUtil.unsafeWriteSFixed64(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+          size +=
+              SchemaUtil.unsafeComputeSFixed64Size(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
           break;
         case 15: //SINT32:
-          SchemaUtil.unsafeWriteSInt32(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+          size +=
+              SchemaUtil.unsafeComputeSInt32Size(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
           break;
         case 16: //SINT64:
-          SchemaUtil.unsafeWriteSInt64(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+          size +=
+              SchemaUtil.unsafeComputeSInt64Size(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
           break;
         case 17: //DOUBLE_LIST:
-          SchemaUtil.unsafeWriteDoubleList(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+          size +=
+              SchemaUtil.unsafeComputeDoubleListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, false);
           break;
         case 18: //FLOAT_LIST:
-          SchemaUtil.unsafeWriteFloatList(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+          size +=
+              SchemaUtil.unsafeComputeFloatListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, false);
           break;
         case 19: //INT64_LIST:
-          SchemaUtil.unsafeWriteInt64List(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+          size +=
+              SchemaUtil.unsafeComputeInt64ListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, false);
           break;
         case 20: //UINT64_LIST:
-          SchemaUtil.unsafeWriteUInt64List(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+          size +=
+              SchemaUtil.unsafeComputeUInt64ListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, false);
           break;
         case 21: //INT32_LIST:
-          SchemaUtil.unsafeWriteInt32List(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+          size +=
+              SchemaUtil.unsafeComputeInt32ListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, false);
           break;
         case 22: //FIXED64_LIST:
-          SchemaUtil.unsafeWriteFixed64List(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+          size +=
+              SchemaUtil.unsafeComputeFixed64ListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, false);
           break;
         case 23: //FIXED32_LIST:
-          SchemaUtil.unsafeWriteFixed32List(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+          size +=
+              SchemaUtil.unsafeComputeFixed32ListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, false);
           break;
         case 24: //BOOL_LIST:
-          SchemaUtil.unsafeWriteBoolList(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+          size +=
+              SchemaUtil.unsafeComputeBoolListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, false);
           break;
         case 25: //STRING_LIST:
-          SchemaUtil.unsafeWriteStringList(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+          size +=
+              SchemaUtil.unsafeComputeStringListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
           break;
         case 26: //MESSAGE_LIST:
-          SchemaUtil.unsafeWriteMessageList(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+          size +=
+              SchemaUtil.unsafeComputeMessageListSize(
+                  fieldNumber,
+                  message,
+                  getLong(pos + LONG_LENGTH),
+                  getMessageSchema(pos),
+                  sizeCalculator);
           break;
         case 27: //BYTES_LIST:
-          SchemaUtil.unsafeWriteBytesList(fieldNumber, message, getLong(pos + LONG_LENGTH), writer);
+          size +=
+              SchemaUtil.unsafeComputeBytesListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
           break;
         case 28: //UINT32_LIST:
-          SchemaUtil.unsafeWriteUInt32List(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+          size +=
+              SchemaUtil.unsafeComputeUInt32ListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, false);
           break;
         case 29: //ENUM_LIST:
-          SchemaUtil.unsafeWriteEnumList(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+          size +=
+              SchemaUtil.unsafeComputeEnumListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, false);
           break;
         case 30: //SFIXED32_LIST:
-          SchemaUtil.unsafeWriteSFixed32List(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+          size +=
+              SchemaUtil.unsafeComputeSFixed32ListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, false);
           break;
         case 31: //SFIXED64_LIST:
-          SchemaUtil.unsafeWriteSFixed64List(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+          size +=
+              SchemaUtil.unsafeComputeSFixed64ListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, false);
           break;
         case 32: //SINT32_LIST:
-          SchemaUtil.unsafeWriteSInt32List(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+          size +=
+              SchemaUtil.unsafeComputeSInt32ListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, false);
           break;
         case 33: //SINT64_LIST:
-          SchemaUtil.unsafeWriteSInt64List(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, false);
+          size +=
+              SchemaUtil.unsafeComputeSInt64ListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, false);
           break;
         case 34: //DOUBLE_LIST_PACKED:
-          SchemaUtil.unsafeWriteDoubleList(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+          size +=
+              SchemaUtil.unsafeComputeDoubleListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, true);
           break;
         case 35: //FLOAT_LIST_PACKED:
-          SchemaUtil.unsafeWriteFloatList(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+          size +=
+              SchemaUtil.unsafeComputeFloatListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, true);
           break;
         case 36: //INT64_LIST_PACKED:
-          SchemaUtil.unsafeWriteInt64List(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+          size +=
+              SchemaUtil.unsafeComputeInt64ListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, true);
           break;
         case 37: //UINT64_LIST_PACKED:
-          SchemaUtil.unsafeWriteUInt64List(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+          size +=
+              SchemaUtil.unsafeComputeUInt64ListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, true);
           break;
         case 38: //INT32_LIST_PACKED:
-          SchemaUtil.unsafeWriteInt32List(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+          size +=
+              SchemaUtil.unsafeComputeInt32ListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, true);
           break;
         case 39: //FIXED64_LIST_PACKED:
-          SchemaUtil.unsafeWriteFixed64List(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+          size +=
+              SchemaUtil.unsafeComputeFixed64ListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, true);
           break;
         case 40: //FIXED32_LIST_PACKED:
-          SchemaUtil.unsafeWriteFixed32List(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+          size +=
+              SchemaUtil.unsafeComputeFixed32ListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, true);
           break;
         case 41: //BOOL_LIST_PACKED:
-          SchemaUtil.unsafeWriteBoolList(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+          size +=
+              SchemaUtil.unsafeComputeBoolListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, true);
           break;
         case 42: //UINT32_LIST_PACKED:
-          SchemaUtil.unsafeWriteUInt32List(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+          size +=
+              SchemaUtil.unsafeComputeUInt32ListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, true);
           break;
         case 43: //ENUM_LIST_PACKED:
-          SchemaUtil.unsafeWriteEnumList(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+          size +=
+              SchemaUtil.unsafeComputeEnumListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, true);
           break;
         case 44: //SFIXED32_LIST_PACKED:
-          SchemaUtil.unsafeWriteSFixed32List(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+          size +=
+              SchemaUtil.unsafeComputeSFixed32ListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, true);
           break;
         case 45: //SFIXED64_LIST_PACKED:
-          SchemaUtil.unsafeWriteSFixed64List(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+          size +=
+              SchemaUtil.unsafeComputeSFixed64ListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, true);
           break;
         case 46: //SINT32_LIST_PACKED:
-          SchemaUtil.unsafeWriteSInt32List(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+          size +=
+              SchemaUtil.unsafeComputeSInt32ListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, true);
           break;
         case 47: //SINT64_LIST_PACKED:
-          SchemaUtil.unsafeWriteSInt64List(
-              fieldNumber, message, getLong(pos + LONG_LENGTH), writer, true);
+          size +=
+              SchemaUtil.unsafeComputeSInt64ListSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator, true);
+          break;
+        case 48: //DOUBLE_ARRAY:
+          size +=
+              SchemaUtil.unsafeComputeDoubleArraySize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
+          break;
+        case 49: //FLOAT_ARRAY:
+          size +=
+              SchemaUtil.unsafeComputeFloatArraySize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
+          break;
+        case 50: //INT64_ARRAY:
+          size +=
+              SchemaUtil.unsafeComputeInt64ArraySize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
+          break;
+        case 51: //UINT64_ARRAY:
+          size +=
+              SchemaUtil.unsafeComputeUInt64ArraySize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
+          break;
+        case 52: //INT32_ARRAY:
+          size +=
+              SchemaUtil.unsafeComputeInt32ArraySize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
+          break;
+        case 53: //FIXED64_ARRAY:
+          size +=
+              SchemaUtil.unsafeComputeFixed64ArraySize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
+          break;
+        case 54: //FIXED32_ARRAY:
+          size +=
+              SchemaUtil.unsafeComputeFixed32ArraySize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
+          break;
+        case 55: //UINT32_ARRAY:
+          size +=
+              SchemaUtil.unsafeComputeUInt32ArraySize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
+          break;
+        case 56: //SFIXED32_ARRAY:
+          size +=
+              SchemaUtil.unsafeComputeSFixed32ArraySize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
+          break;
+        case 57: //SFIXED64_ARRAY:
+          size +=
+              SchemaUtil.unsafeComputeSFixed64ArraySize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
+          break;
+        case 58: //SINT32_ARRAY:
+          size +=
+              SchemaUtil.unsafeComputeSInt32ArraySize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
+          break;
+        case 59: //SINT64_ARRAY:
+          size +=
+              SchemaUtil.unsafeComputeSInt64ArraySize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
+          break;
+        case 60: //BYTE_ARRAY:
+          size +=
+              SchemaUtil.unsafeComputeByteArraySize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
+          break;
+        case 61: //BYTE_BUFFER:
+          size +=
+              SchemaUtil.unsafeComputeByteBufferSize(
+                  fieldNumber, message, getLong(pos + LONG_LENGTH), sizeCalculator);
+          break;
+        case 62: //MAP:
+          size +=
+              SchemaUtil.unsafeComputeMapSize(
+                  fieldNumber,
+                  message,
+                  getLong(pos + LONG_LENGTH),
+                  getMapEntry(pos),
+                  sizeCalculator);
           break;
         default:
           throw new IllegalArgumentException(
               "Unsupported fieldType: " + getFieldType(getLong(pos)));
       }
     }
+
+    for (int i = 0; i < hasBitsOffsets.length; ++i) {
+      int bits = UnsafeUtil.getInt(message, hasBitsOffsets[i]);
+      while (bits != 0) {
+        final long pos =
+            hasBitPositions[(i << HAS_BITS_SHIFT) | Integer.numberOfTrailingZeros(bits)];
+        bits &= bits - 1;
+        if (pos >= 0L) {
+          final long numberAndType = getLong(pos);
+          final LazySchema<?> messageSchema = getMessageSchema(pos);
+          size +=
+              messageSchema != null
+                  ? SchemaUtil.unsafeComputeMessageSize(
+                      getFieldNumber(numberAndType),
+                      message,
+                      getLong(pos + LONG_LENGTH),
+                      messageSchema,
+                      sizeCalculator)
+                  : SchemaUtil.unsafeComputePresentFieldSize(
+                      getFieldNumber(numberAndType),
+                      getFieldType(numberAndType),
+                      message,
+                      getLong(pos + LONG_LENGTH),
+                      sizeCalculator);
+        }
+      }
+    }
+
+    if (unknownFieldsOffset >= 0L) {
+      size += SchemaUtil.unsafeComputeUnknownFieldsSize(message, unknownFieldsOffset);
+    }
+    return size;
   }
 
   @Override
   public void mergeFrom(T message, Reader reader) {
     while (true) {
-      final long pos = fieldMap.getDataPos(reader.getFieldNumber());
+      final int fieldNumber = reader.getFieldNumber();
+      final long pos = fieldMap.getDataPos(fieldNumber);
       if (pos < 0L) {
         // Unknown field.
+        if (unknownFieldsOffset >= 0L && fieldNumber != Reader.READ_DONE) {
+          SchemaUtil.unsafeReadUnknownField(message, unknownFieldsOffset, reader);
+          continue;
+        }
         if (reader.skipField()) {
           continue;
         }
@@ -266,6 +884,11 @@ final class GenericSchema<T> implements Schema<T> {
         return;
       }
 
+      if (isOneofMember(getLong(pos))) {
+        readOneofMember(message, pos, reader);
+        continue;
+      }
+
       // Benchmarks have shown that switching on a byte is faster than an enum.
       switch (getFieldTypeId(getLong(pos))) {
         case 0: //DOUBLE:
@@ -296,7 +919,8 @@ final class GenericSchema<T> implements Schema<T> {
           SchemaUtil.unsafeReadString(message, getLong(pos + LONG_LENGTH), reader);
           break;
         case 9: //MESSAGE:
-          SchemaUtil.unsafeReadMessage(message, getLong(pos + LONG_LENGTH), reader);
+          SchemaUtil.unsafeReadMessage(
+              message, getLong(pos + LONG_LENGTH), getMessageSchema(pos), reader);
           break;
         case 10: //BYTES:
           SchemaUtil.unsafeReadBytes(message, getLong(pos + LONG_LENGTH), reader);
@@ -348,7 +972,7 @@ final class GenericSchema<T> implements Schema<T> {
           break;
         case 26: //MESSAGE_LIST:
           SchemaUtil.unsafeReadMessageList(
-              message, getLong(pos + LONG_LENGTH), reader, Object.class);
+              message, getLong(pos + LONG_LENGTH), getMessageSchema(pos), reader);
           break;
         case 27: //BYTES_LIST:
           SchemaUtil.unsafeReadBytesList(message, getLong(pos + LONG_LENGTH), reader);
@@ -413,10 +1037,60 @@ final class GenericSchema<T> implements Schema<T> {
         case 47: //SINT64_LIST_PACKED:
           SchemaUtil.unsafeReadSInt64List(message, getLong(pos + LONG_LENGTH), reader, true);
           break;
+        case 48: //DOUBLE_ARRAY:
+          SchemaUtil.unsafeReadDoubleArray(message, getLong(pos + LONG_LENGTH), reader);
+          break;
+        case 49: //FLOAT_ARRAY:
+          SchemaUtil.unsafeReadFloatArray(message, getLong(pos + LONG_LENGTH), reader);
+          break;
+        case 50: //INT64_ARRAY:
+          SchemaUtil.unsafeReadInt64Array(message, getLong(pos + LONG_LENGTH), reader);
+          break;
+        case 51: //UINT64_ARRAY:
+          SchemaUtil.unsafeReadUInt64Array(message, getLong(pos + LONG_LENGTH), reader);
+          break;
+        case 52: //INT32_ARRAY:
+          SchemaUtil.unsafeReadInt32Array(message, getLong(pos + LONG_LENGTH), reader);
+          break;
+        case 53: //FIXED64_ARRAY:
+          SchemaUtil.unsafeReadFixed64Array(message, getLong(pos + LONG_LENGTH), reader);
+          break;
+        case 54: //FIXED32_ARRAY:
+          SchemaUtil.unsafeReadFixed32Array(message, getLong(pos + LONG_LENGTH), reader);
+          break;
+        case 55: //UINT32_ARRAY:
+          SchemaUtil.unsafeReadUInt32Array(message, getLong(pos + LONG_LENGTH), reader);
+          break;
+        case 56: //SFIXED32_ARRAY:
+          SchemaUtil.unsafeReadSFixed32Array(message, getLong(pos + LONG_LENGTH), reader);
+          break;
+        case 57: //SFIXED64_ARRAY:
+          SchemaUtil.unsafeReadSFixed64Array(message, getLong(pos + LONG_LENGTH), reader);
+          break;
+        case 58: //SINT32_ARRAY:
+          SchemaUtil.unsafeReadSInt32Array(message, getLong(pos + LONG_LENGTH), reader);
+          break;
+        case 59: //SINT64_ARRAY:
+          SchemaUtil.unsafeReadSInt64Array(message, getLong(pos + LONG_LENGTH), reader);
+          break;
+        case 60: //BYTE_ARRAY:
+          SchemaUtil.unsafeReadByteArray(message, getLong(pos + LONG_LENGTH), reader);
+          break;
+        case 61: //BYTE_BUFFER:
+          SchemaUtil.unsafeReadByteBuffer(message, getLong(pos + LONG_LENGTH), reader);
+          break;
+        case 62: //MAP:
+          SchemaUtil.unsafeReadMap(message, getLong(pos + LONG_LENGTH), getMapEntry(pos), reader);
+          break;
         default:
           throw new IllegalArgumentException(
               "Unsupported fieldType: " + getFieldType(getLong(pos)));
       }
+      if (pos >= dataLimit && pos < hasBitsLimit) {
+        final long offsetAndMask = hasBits[(int) ((pos - dataLimit) / FIELD_LENGTH)];
+        SchemaUtil.unsafeSetHasBits(
+            message, offsetAndMask >>> 32, (int) offsetAndMask);
+      }
     }
   }
 
@@ -424,6 +1098,53 @@ final class GenericSchema<T> implements Schema<T> {
     return UnsafeUtil.getLong(data, pos);
   }
 
+  private MapEntryDescriptor getMapEntry(long pos) {
+    return mapEntries[(int) ((pos - DATA_OFFSET) / FIELD_LENGTH)];
+  }
+
+  private LazySchema<?> getMessageSchema(long pos) {
+    return messageSchemas[(int) ((pos - DATA_OFFSET) / FIELD_LENGTH)];
+  }
+
+  private void readOneofMember(Object message, long pos, Reader reader) {
+    final long numberAndType = getLong(pos);
+    final long offsets = getLong(pos + LONG_LENGTH);
+    if (getMessageSchema(pos) != null) {
+      SchemaUtil.unsafeReadOneofMessage(
+          message,
+          getCaseOffset(offsets),
+          getValueOffset(offsets),
+          getFieldNumber(numberAndType),
+          getMessageSchema(pos),
+          reader);
+      return;
+    }
+    SchemaUtil.unsafeReadOneof(
+        message,
+        getCaseOffset(offsets),
+        getValueOffset(offsets),
+        getFieldNumber(numberAndType),
+        getFieldType(numberAndType),
+        reader);
+  }
+
+  private static long getOneofOffsets(OneofDescriptor oneof) {
+    return (UnsafeUtil.objectFieldOffset(oneof.getCaseField()) << 32)
+        | UnsafeUtil.objectFieldOffset(oneof.getValueField());
+  }
+
+  private static long getCaseOffset(long offsets) {
+    return offsets >>> 32;
+  }
+
+  private static long getValueOffset(long offsets) {
+    return offsets & VALUE_OFFSET_MASK;
+  }
+
+  private static boolean isOneofMember(long data) {
+    return (data & ONEOF_MEMBER_FLAG) != 0L;
+  }
+
   private static FieldType getFieldType(long data) {
     return FieldType.forId(getFieldTypeId(data));
   }
@@ -487,6 +1208,8 @@ final class GenericSchema<T> implements Schema<T> {
       max = fields.get(fields.size() - 1).getFieldNumber();
       int numPositions = (max - min) + 1;
       positions = new long[numPositions];
+      // Field numbers in the range that are not used are unknown fields.
+      Arrays.fill(positions, -1L);
     }
 
     @Override
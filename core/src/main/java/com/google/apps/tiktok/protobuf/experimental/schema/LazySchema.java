@@ -0,0 +1,113 @@
+package com.google.apps.tiktok.protobuf.experimental.schema;
+
+import com.google.apps.tiktok.protobuf.experimental.InternalApi;
+
+/**
+ * The schema of the nested messages of a single field, which is looked up through the reader,
+ * writer or size calculator the first time it is needed and then cached. A schema therefore holds
+ * one of these for each of its message fields, and processes nested messages by calling the cached
+ * schema directly rather than looking it up for each message.
+ *
+ * <p>The cached schema is tied to the {@link SchemaFactory} it was obtained from, since generated
+ * schemas hold these in static fields that are shared by every factory that loads them. It is
+ * looked up again whenever the reader, writer or size calculator uses a different factory, so
+ * each factory always gets its own schemas.
+ *
+ * <p>Lookups are not synchronized, so concurrent first uses may each look up the schema, and the
+ * last one is retained. Since every schema of a factory for a type behaves the same, any of them
+ * may be used.
+ *
+ * @param <T> the type of the nested messages.
+ */
+@InternalApi
+public final class LazySchema<T> {
+  private final Class<T> messageType;
+  private volatile Binding<T> binding;
+
+  public LazySchema(Class<T> messageType) {
+    if (messageType == null) {
+      throw new NullPointerException("messageType");
+    }
+    this.messageType = messageType;
+  }
+
+  /**
+   * Creates the lazy schema of the given type, capturing its type parameter.
+   */
+  public static <T> LazySchema<T> of(Class<T> messageType) {
+    return new LazySchema<T>(messageType);
+  }
+
+  /**
+   * Gets the type of the nested messages.
+   */
+  public Class<T> getMessageType() {
+    return messageType;
+  }
+
+  /**
+   * Creates a new, empty message of the nested type.
+   */
+  public T newInstance() {
+    try {
+      return messageType.newInstance();
+    } catch (InstantiationException e) {
+      throw new RuntimeException(e);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Gets the schema, looking it up through the given reader on first use with its factory.
+   */
+  public Schema<T> get(Reader reader) {
+    final SchemaFactory schemaFactory = reader.getSchemaFactory();
+    Binding<T> binding = this.binding;
+    if (binding == null || binding.schemaFactory != schemaFactory) {
+      binding = new Binding<T>(schemaFactory, reader.schemaFor(messageType));
+      this.binding = binding;
+    }
+    return binding.schema;
+  }
+
+  /**
+   * Gets the schema, looking it up through the given writer on first use with its factory.
+   */
+  public Schema<T> get(Writer writer) {
+    final SchemaFactory schemaFactory = writer.getSchemaFactory();
+    Binding<T> binding = this.binding;
+    if (binding == null || binding.schemaFactory != schemaFactory) {
+      binding = new Binding<T>(schemaFactory, writer.schemaFor(messageType));
+      this.binding = binding;
+    }
+    return binding.schema;
+  }
+
+  /**
+   * Gets the schema, looking it up through the given size calculator on first use with its
+   * factory.
+   */
+  public Schema<T> get(SizeCalculator sizeCalculator) {
+    final SchemaFactory schemaFactory = sizeCalculator.getSchemaFactory();
+    Binding<T> binding = this.binding;
+    if (binding == null || binding.schemaFactory != schemaFactory) {
+      binding = new Binding<T>(schemaFactory, sizeCalculator.schemaFor(messageType));
+      this.binding = binding;
+    }
+    return binding.schema;
+  }
+
+  /**
+   * A cached schema and the factory it was obtained from, which are published together.
+   */
+  private static final class Binding<T> {
+    final SchemaFactory schemaFactory;
+    final Schema<T> schema;
+
+    Binding(SchemaFactory schemaFactory, Schema<T> schema) {
+      this.schemaFactory = schemaFactory;
+      this.schema = schema;
+    }
+  }
+}
@@ -2,13 +2,23 @@ package com.google.apps.tiktok.protobuf.experimental.schema;
 
 import com.google.apps.tiktok.protobuf.experimental.ByteString;
 import com.google.apps.tiktok.protobuf.experimental.FieldType;
+import com.google.apps.tiktok.protobuf.experimental.JavaType;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.MapEntryDescriptor;
 
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
 
 /**
  * A reader of fields from a serialized protobuf message.
+ *
+ * <p>Repeated fields are added to a target list provided by the schema. Schemas should provide a
+ * {@link com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList} for primitive elements, or
+ * an {@link java.util.ArrayList} otherwise, so that readers that know the number of elements in a
+ * packed field can size the list once before adding to it.
  */
-// TODO(nathanmittler): Refactor to allow the reader to allocate properly sized lists.
 public interface Reader {
   /**
    * Value used to indicate that the end of input has been reached.
@@ -30,6 +40,16 @@ public interface Reader {
    */
   boolean skipField();
 
+  /**
+   * Reads the current field as an unknown field and advances the reader to the next field. The
+   * encoded tag and value of the field are appended to the given unknown fields, which are
+   * concatenated without copying where possible. Must not be called at the end of input.
+   *
+   * @param unknownFields the unknown fields read so far, or {@link ByteString#EMPTY}.
+   * @return the unknown fields followed by the encoding of the current field.
+   */
+  ByteString readUnknownField(ByteString unknownFields);
+
   /**
    * Reads and returns the next field of type {@link FieldType#DOUBLE} and advances the reader to
    * the next field.
@@ -85,10 +105,10 @@ public interface Reader {
   String readString();
 
   /**
-   * Reads and returns the next field of type {@link FieldType#MESSAGE} and advances the reader to
-   * the next field.
+   * Reads the next field of type {@link FieldType#MESSAGE} and advances the reader to the next
+   * field, merging the nested message into the given message with the given schema.
    */
-  Object readMessage();
+  <T> void mergeMessage(T message, Schema<T> schema);
 
   /**
    * Reads and returns the next field of type {@link FieldType#BYTES} and advances the reader to
@@ -214,12 +234,14 @@ public interface Reader {
 
   /**
    * Reads the next field of type {@link FieldType#MESSAGE_LIST} and advances the reader to the
-   * next field.
+   * next field, merging each nested message into a new instance of {@code targetType} with the
+   * given schema.
    *
    * @param target the list that will receive the read values.
    * @param targetType the type of the elements stored in the {@code target} list.
+   * @param schema the schema of {@code targetType}.
    */
-  <T> void readMessageList(List<T> target, Class<T> targetType);
+  <T> void readMessageList(List<T> target, Class<T> targetType, Schema<T> schema);
 
   /**
    * Reads the next field of type {@link FieldType#BYTES_LIST} and advances the reader to the next
@@ -282,4 +304,146 @@ public interface Reader {
    * @param packed {@code true} the field type is packed.
    */
   void readSInt64List(List<Long> target, boolean packed);
+
+  /**
+   * Reads the next field of type {@link FieldType#DOUBLE_ARRAY} and advances the reader to the
+   * next field.
+   *
+   * @param target the array holding the values read so far, or {@code null}.
+   * @return an array holding the values of {@code target} followed by the read values.
+   */
+  double[] readDoubleArray(@Nullable double[] target);
+
+  /**
+   * Reads the next field of type {@link FieldType#FLOAT_ARRAY} and advances the reader to the
+   * next field.
+   *
+   * @param target the array holding the values read so far, or {@code null}.
+   * @return an array holding the values of {@code target} followed by the read values.
+   */
+  float[] readFloatArray(@Nullable float[] target);
+
+  /**
+   * Reads the next field of type {@link FieldType#INT64_ARRAY} and advances the reader to the
+   * next field.
+   *
+   * @param target the array holding the values read so far, or {@code null}.
+   * @return an array holding the values of {@code target} followed by the read values.
+   */
+  long[] readInt64Array(@Nullable long[] target);
+
+  /**
+   * Reads the next field of type {@link FieldType#UINT64_ARRAY} and advances the reader to the
+   * next field.
+   *
+   * @param target the array holding the values read so far, or {@code null}.
+   * @return an array holding the values of {@code target} followed by the read values.
+   */
+  long[] readUInt64Array(@Nullable long[] target);
+
+  /**
+   * Reads the next field of type {@link FieldType#INT32_ARRAY} and advances the reader to the
+   * next field.
+   *
+   * @param target the array holding the values read so far, or {@code null}.
+   * @return an array holding the values of {@code target} followed by the read values.
+   */
+  int[] readInt32Array(@Nullable int[] target);
+
+  /**
+   * Reads the next field of type {@link FieldType#FIXED64_ARRAY} and advances the reader to the
+   * next field.
+   *
+   * @param target the array holding the values read so far, or {@code null}.
+   * @return an array holding the values of {@code target} followed by the read values.
+   */
+  long[] readFixed64Array(@Nullable long[] target);
+
+  /**
+   * Reads the next field of type {@link FieldType#FIXED32_ARRAY} and advances the reader to the
+   * next field.
+   *
+   * @param target the array holding the values read so far, or {@code null}.
+   * @return an array holding the values of {@code target} followed by the read values.
+   */
+  int[] readFixed32Array(@Nullable int[] target);
+
+  /**
+   * Reads the next field of type {@link FieldType#UINT32_ARRAY} and advances the reader to the
+   * next field.
+   *
+   * @param target the array holding the values read so far, or {@code null}.
+   * @return an array holding the values of {@code target} followed by the read values.
+   */
+  int[] readUInt32Array(@Nullable int[] target);
+
+  /**
+   * Reads the next field of type {@link FieldType#SFIXED32_ARRAY} and advances the reader to the
+   * next field.
+   *
+   * @param target the array holding the values read so far, or {@code null}.
+   * @return an array holding the values of {@code target} followed by the read values.
+   */
+  int[] readSFixed32Array(@Nullable int[] target);
+
+  /**
+   * Reads the next field of type {@link FieldType#SFIXED64_ARRAY} and advances the reader to the
+   * next field.
+   *
+   * @param target the array holding the values read so far, or {@code null}.
+   * @return an array holding the values of {@code target} followed by the read values.
+   */
+  long[] readSFixed64Array(@Nullable long[] target);
+
+  /**
+   * Reads the next field of type {@link FieldType#SINT32_ARRAY} and advances the reader to the
+   * next field.
+   *
+   * @param target the array holding the values read so far, or {@code null}.
+   * @return an array holding the values of {@code target} followed by the read values.
+   */
+  int[] readSInt32Array(@Nullable int[] target);
+
+  /**
+   * Reads the next field of type {@link FieldType#SINT64_ARRAY} and advances the reader to the
+   * next field.
+   *
+   * @param target the array holding the values read so far, or {@code null}.
+   * @return an array holding the values of {@code target} followed by the read values.
+   */
+  long[] readSInt64Array(@Nullable long[] target);
+
+  /**
+   * Reads and returns the next field of type {@link FieldType#BYTE_ARRAY} and advances the reader
+   * to the next field.
+   */
+  byte[] readByteArray();
+
+  /**
+   * Reads and returns the next field of type {@link FieldType#BYTE_BUFFER} and advances the reader
+   * to the next field.
+   */
+  ByteBuffer readByteBuffer();
+
+  /**
+   * Reads the next field of type {@link FieldType#MAP}, adding its entries to the target map, and
+   * advances the reader to the next field. A missing key or value takes its default value, and an
+   * entry replaces any previous entry with the same key. Entries with {@link JavaType#INT} or
+   * {@link JavaType#LONG} keys are added without boxing the key if the target is an
+   * {@link com.google.apps.tiktok.protobuf.experimental.IntKeyHashMap} or
+   * {@link com.google.apps.tiktok.protobuf.experimental.LongKeyHashMap}.
+   */
+  <K, V> void readMap(Map<K, V> target, MapEntryDescriptor mapEntry);
+
+  /**
+   * Gets the schema used by this reader for nested messages of the given type. Schemas call this
+   * once for each message field and schema factory, and cache the result.
+   */
+  <T> Schema<T> schemaFor(Class<T> messageType);
+
+  /**
+   * Gets the factory of the schemas returned by {@link #schemaFor(Class)}, which identifies the
+   * schemas cached by a {@link LazySchema}.
+   */
+  SchemaFactory getSchemaFactory();
 }
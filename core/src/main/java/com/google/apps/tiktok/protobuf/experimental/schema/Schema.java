@@ -14,4 +14,10 @@ public interface Schema<T> {
    * Reads fields from the given {@link Reader} and merges them into the message.
    */
   void mergeFrom(T message, Reader reader);
+
+  /**
+   * Returns the number of bytes needed to encode the message in the protobuf binary format. The
+   * sizes of nested messages are obtained from the given {@link SizeCalculator}.
+   */
+  int getSerializedSize(T message, SizeCalculator sizeCalculator);
 }
@@ -0,0 +1,148 @@
+package com.google.apps.tiktok.protobuf.experimental.schema;
+
+import com.google.apps.tiktok.protobuf.experimental.InternalApi;
+
+/**
+ * A thread-safe {@link SchemaFactory} that creates at most one schema for each message type from
+ * another factory, and returns the same instance for every later request. Concurrent first
+ * requests for a type share a single creation, so a factory that defines a class for each schema
+ * never defines it twice.
+ *
+ * <p>Lookups of schemas that have been created take no locks and allocate nothing. Schemas are
+ * held strongly for the life of the registry and are never created again, since a factory that
+ * defines a class for each schema cannot define it a second time in the same class loader. A
+ * registry therefore keeps the message types it has seen loaded; where message types are loaded by
+ * a class loader that should be unloadable, use a separate registry for that class loader and
+ * release it along with the class loader.
+ */
+@InternalApi
+public final class SchemaRegistry implements SchemaFactory {
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final SchemaFactory schemaFactory;
+
+  /**
+   * The entries of the registry, looked up with open addressing and linear probing. The array is
+   * never modified once published; entries are added to a copy while holding the lock of this
+   * registry, and less than half of its slots are ever filled.
+   */
+  private volatile Entry[] entries = new Entry[INITIAL_CAPACITY];
+
+  /**
+   * The number of entries in {@link #entries}. Guarded by this registry.
+   */
+  private int size;
+
+  public SchemaRegistry(SchemaFactory schemaFactory) {
+    if (schemaFactory == null) {
+      throw new NullPointerException("schemaFactory");
+    }
+    this.schemaFactory = schemaFactory;
+  }
+
+  @Override
+  public <T> Schema<T> createSchema(Class<T> messageType) {
+    return schemaFor(messageType);
+  }
+
+  /**
+   * Returns the schema for the given protobuf message type, creating it if needed.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> Schema<T> schemaFor(Class<T> messageType) {
+    if (messageType == null) {
+      throw new NullPointerException("messageType");
+    }
+    Entry entry = find(entries, messageType);
+    if (entry == null) {
+      entry = addEntry(messageType);
+    }
+    Schema<T> schema = (Schema<T>) entry.schema;
+    if (schema == null) {
+      schema = (Schema<T>) entry.createSchema(messageType, schemaFactory);
+    }
+    return schema;
+  }
+
+  private static Entry find(Entry[] entries, Class<?> messageType) {
+    final int mask = entries.length - 1;
+    int slot = hash(messageType) & mask;
+    Entry entry;
+    while ((entry = entries[slot]) != null) {
+      if (entry.messageType == messageType) {
+        return entry;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return null;
+  }
+
+  private synchronized Entry addEntry(Class<?> messageType) {
+    Entry[] current = entries;
+    Entry entry = find(current, messageType);
+    if (entry != null) {
+      return entry;
+    }
+    entry = new Entry(messageType);
+    ++size;
+    Entry[] updated;
+    if (2 * size < current.length) {
+      updated = current.clone();
+    } else {
+      updated = new Entry[current.length << 1];
+      for (Entry e : current) {
+        if (e != null) {
+          insert(updated, e);
+        }
+      }
+    }
+    insert(updated, entry);
+    entries = updated;
+    return entry;
+  }
+
+  private static void insert(Entry[] entries, Entry entry) {
+    final int mask = entries.length - 1;
+    int slot = entry.hash & mask;
+    while (entries[slot] != null) {
+      slot = (slot + 1) & mask;
+    }
+    entries[slot] = entry;
+  }
+
+  private static int hash(Class<?> messageType) {
+    final int h = System.identityHashCode(messageType);
+    // Spread the bits, since identity hash codes may be clustered.
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * The schema of a single message type.
+   */
+  private static final class Entry {
+    final Class<?> messageType;
+    final int hash;
+    volatile Schema<?> schema;
+
+    Entry(Class<?> messageType) {
+      this.messageType = messageType;
+      this.hash = hash(messageType);
+    }
+
+    /**
+     * Creates the schema unless another thread already has, waiting for any creation in progress.
+     * Failures are not cached, so a later request tries again.
+     */
+    synchronized Schema<?> createSchema(Class<?> messageType, SchemaFactory schemaFactory) {
+      Schema<?> schema = this.schema;
+      if (schema == null) {
+        schema = schemaFactory.createSchema(messageType);
+        if (schema == null) {
+          throw new NullPointerException("schemaFactory returned null for " + messageType);
+        }
+        this.schema = schema;
+      }
+      return schema;
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package com.google.apps.tiktok.protobuf.experimental.schema;
+
+/**
+ * Computes the serialized sizes of nested messages on behalf of a {@link Schema}. Since a schema
+ * only has access to the fields of its own message type, the sizes of nested messages are obtained
+ * from the calculator, which is responsible for locating their schemas.
+ */
+public interface SizeCalculator {
+  /**
+   * Returns the number of bytes needed to encode the given message with the given schema,
+   * excluding any tag or length prefix. Implementations may memoize the result.
+   */
+  <T> int getMessageSize(T message, Schema<T> schema);
+
+  /**
+   * Gets the schema used by this calculator for nested messages of the given type. Schemas call
+   * this once for each message field and schema factory, and cache the result.
+   */
+  <T> Schema<T> schemaFor(Class<T> messageType);
+
+  /**
+   * Gets the factory of the schemas returned by {@link #schemaFor(Class)}, which identifies the
+   * schemas cached by a {@link LazySchema}.
+   */
+  SchemaFactory getSchemaFactory();
+}
@@ -0,0 +1,156 @@
+package com.google.apps.tiktok.protobuf.experimental.schema;
+
+import com.google.apps.tiktok.protobuf.experimental.InternalApi;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link SchemaFactory} whose schemas start out served by a schema that is cheap to create, such
+ * as a {@link GenericSchema}, and are promoted to a schema that is faster but expensive to create,
+ * such as one generated by {@code AsmSchemaFactory}, once they have been used enough. Each schema
+ * counts the calls to its methods, and once the count reaches the promotion threshold it creates
+ * the optimized schema on the given executor and then switches to it. Calls made before the switch
+ * continue to use the initial schema, so a message type that is rarely used never pays for the
+ * optimized schema.
+ *
+ * <p>The optimized schema is created at most once for each schema returned by this factory, so
+ * this factory should be wrapped in a {@link SchemaRegistry} to share a single schema, and a single
+ * count, among all users of a message type. If the optimized schema cannot be created, the initial
+ * schema continues to be used. If the executor rejects the creation, it is attempted again once
+ * the threshold is reached again.
+ */
+@InternalApi
+public final class TieredSchemaFactory implements SchemaFactory {
+  private static final Logger logger = Logger.getLogger(TieredSchemaFactory.class.getName());
+
+  private final SchemaFactory initialFactory;
+  private final SchemaFactory optimizedFactory;
+  private final Executor executor;
+  private final int promotionThreshold;
+
+  /**
+   * Creates a factory whose schemas are promoted from those of {@code initialFactory} to those of
+   * {@code optimizedFactory} after {@code promotionThreshold} calls, by a task run on
+   * {@code executor}.
+   */
+  public TieredSchemaFactory(
+      SchemaFactory initialFactory,
+      SchemaFactory optimizedFactory,
+      Executor executor,
+      int promotionThreshold) {
+    if (initialFactory == null) {
+      throw new NullPointerException("initialFactory");
+    }
+    if (optimizedFactory == null) {
+      throw new NullPointerException("optimizedFactory");
+    }
+    if (executor == null) {
+      throw new NullPointerException("executor");
+    }
+    if (promotionThreshold <= 0) {
+      throw new IllegalArgumentException("promotionThreshold must be positive");
+    }
+    this.initialFactory = initialFactory;
+    this.optimizedFactory = optimizedFactory;
+    this.executor = executor;
+    this.promotionThreshold = promotionThreshold;
+  }
+
+  @Override
+  public <T> Schema<T> createSchema(Class<T> messageType) {
+    return new TieredSchema<T>(messageType, initialFactory.createSchema(messageType), this);
+  }
+
+  /**
+   * A schema that delegates to the initial schema of a message type until the optimized schema has
+   * been created.
+   */
+  private static final class TieredSchema<T> implements Schema<T>, Runnable {
+    private final Class<T> messageType;
+    private final TieredSchemaFactory factory;
+    private final AtomicBoolean promotionStarted = new AtomicBoolean();
+    private volatile Schema<T> schema;
+
+    /**
+     * The number of calls remaining before promotion. Updates are not atomic, so concurrent calls
+     * may be missed, which only delays the promotion slightly.
+     */
+    private int remainingCalls;
+
+    TieredSchema(Class<T> messageType, Schema<T> initialSchema, TieredSchemaFactory factory) {
+      this.messageType = messageType;
+      this.schema = initialSchema;
+      this.factory = factory;
+      this.remainingCalls = factory.promotionThreshold;
+    }
+
+    @Override
+    public void mergeFrom(T message, Reader reader) {
+      schema().mergeFrom(message, reader);
+    }
+
+    @Override
+    public void writeTo(T message, Writer writer) {
+      schema().writeTo(message, writer);
+    }
+
+    @Override
+    public int getSerializedSize(T message, SizeCalculator sizeCalculator) {
+      return schema().getSerializedSize(message, sizeCalculator);
+    }
+
+    /**
+     * Gets the current schema, counting the call and starting the promotion once the threshold
+     * has been reached.
+     */
+    private Schema<T> schema() {
+      if (!promotionStarted.get() && --remainingCalls <= 0) {
+        promote();
+      }
+      return schema;
+    }
+
+    private void promote() {
+      if (!promotionStarted.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        factory.executor.execute(this);
+      } catch (RejectedExecutionException e) {
+        remainingCalls = factory.promotionThreshold;
+        promotionStarted.set(false);
+      }
+    }
+
+    /**
+     * Creates the optimized schema and switches to it.
+     */
+    @Override
+    public void run() {
+      Schema<T> optimizedSchema;
+      try {
+        optimizedSchema = factory.optimizedFactory.createSchema(messageType);
+        if (optimizedSchema == null) {
+          throw new NullPointerException("optimizedFactory returned null");
+        }
+      } catch (RuntimeException e) {
+        logFailure(e);
+        return;
+      } catch (LinkageError e) {
+        // Thrown if a generated class cannot be defined or verified.
+        logFailure(e);
+        return;
+      }
+      schema = optimizedSchema;
+    }
+
+    private void logFailure(Throwable t) {
+      logger.log(
+          Level.WARNING, "Unable to create an optimized schema for " + messageType.getName(), t);
+    }
+  }
+}
@@ -1,8 +1,11 @@
 package com.google.apps.tiktok.protobuf.experimental.schema;
 
 import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.MapEntryDescriptor;
 
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A writer that performs serialization of protobuf message fields.
@@ -106,9 +109,10 @@ public interface Writer {
 
   /**
    * Writes a field of type
-   * {@link com.google.apps.tiktok.protobuf.experimental.FieldType#MESSAGE}.
+   * {@link com.google.apps.tiktok.protobuf.experimental.FieldType#MESSAGE} with the given schema
+   * of the nested message.
    */
-  void writeMessage(int fieldNumber, Object value);
+  <T> void writeMessage(int fieldNumber, T value, Schema<T> schema);
 
   /**
    * Writes a list field of type
@@ -208,7 +212,118 @@ public interface Writer {
 
   /**
    * Writes a list field of type
-   * {@link com.google.apps.tiktok.protobuf.experimental.FieldType#MESSAGE}.
+   * {@link com.google.apps.tiktok.protobuf.experimental.FieldType#MESSAGE} with the given schema
+   * of the nested messages.
    */
-  void writeMessageList(int fieldNumber, List<?> value);
+  <T> void writeMessageList(int fieldNumber, List<? extends T> value, Schema<T> schema);
+
+  /**
+   * Writes a packed list field of type
+   * {@link com.google.apps.tiktok.protobuf.experimental.FieldType#DOUBLE}.
+   */
+  void writeDoubleArray(int fieldNumber, double[] value);
+
+  /**
+   * Writes a packed list field of type
+   * {@link com.google.apps.tiktok.protobuf.experimental.FieldType#FLOAT}.
+   */
+  void writeFloatArray(int fieldNumber, float[] value);
+
+  /**
+   * Writes a packed list field of type
+   * {@link com.google.apps.tiktok.protobuf.experimental.FieldType#INT64}.
+   */
+  void writeInt64Array(int fieldNumber, long[] value);
+
+  /**
+   * Writes a packed list field of type
+   * {@link com.google.apps.tiktok.protobuf.experimental.FieldType#UINT64}.
+   */
+  void writeUInt64Array(int fieldNumber, long[] value);
+
+  /**
+   * Writes a packed list field of type
+   * {@link com.google.apps.tiktok.protobuf.experimental.FieldType#INT32}.
+   */
+  void writeInt32Array(int fieldNumber, int[] value);
+
+  /**
+   * Writes a packed list field of type
+   * {@link com.google.apps.tiktok.protobuf.experimental.FieldType#FIXED64}.
+   */
+  void writeFixed64Array(int fieldNumber, long[] value);
+
+  /**
+   * Writes a packed list field of type
+   * {@link com.google.apps.tiktok.protobuf.experimental.FieldType#FIXED32}.
+   */
+  void writeFixed32Array(int fieldNumber, int[] value);
+
+  /**
+   * Writes a packed list field of type
+   * {@link com.google.apps.tiktok.protobuf.experimental.FieldType#UINT32}.
+   */
+  void writeUInt32Array(int fieldNumber, int[] value);
+
+  /**
+   * Writes a packed list field of type
+   * {@link com.google.apps.tiktok.protobuf.experimental.FieldType#SFIXED32}.
+   */
+  void writeSFixed32Array(int fieldNumber, int[] value);
+
+  /**
+   * Writes a packed list field of type
+   * {@link com.google.apps.tiktok.protobuf.experimental.FieldType#SFIXED64}.
+   */
+  void writeSFixed64Array(int fieldNumber, long[] value);
+
+  /**
+   * Writes a packed list field of type
+   * {@link com.google.apps.tiktok.protobuf.experimental.FieldType#SINT32}.
+   */
+  void writeSInt32Array(int fieldNumber, int[] value);
+
+  /**
+   * Writes a packed list field of type
+   * {@link com.google.apps.tiktok.protobuf.experimental.FieldType#SINT64}.
+   */
+  void writeSInt64Array(int fieldNumber, long[] value);
+
+  /**
+   * Writes a field of type
+   * {@link com.google.apps.tiktok.protobuf.experimental.FieldType#BYTES} from a byte array.
+   */
+  void writeByteArray(int fieldNumber, byte[] value);
+
+  /**
+   * Writes a field of type
+   * {@link com.google.apps.tiktok.protobuf.experimental.FieldType#BYTES} from the remaining bytes
+   * of a buffer, without changing its position.
+   */
+  void writeByteBuffer(int fieldNumber, ByteBuffer value);
+
+  /**
+   * Writes a field of type {@link com.google.apps.tiktok.protobuf.experimental.FieldType#MAP}.
+   * Each entry is written as a message holding the key in field 1 and the value in field 2, both
+   * of which are always written.
+   */
+  void writeMap(int fieldNumber, Map<?, ?> value, MapEntryDescriptor mapEntry);
+
+  /**
+   * Writes the given unknown fields verbatim. They must hold the encoded tags and values of whole
+   * fields, as returned by {@link Reader#readUnknownField(ByteString)}.
+   */
+  void writeUnknownFields(ByteString value);
+
+  /**
+   * Gets the schema used by this writer for nested messages of the given type. Schemas call this
+   * once for each message field and schema factory, and cache the result.
+   */
+  <T> Schema<T> schemaFor(Class<T> messageType);
+
+  /**
+   * Gets the factory of the schemas returned by {@link #schemaFor(Class)}, which identifies the
+   * schemas cached by a {@link LazySchema}.
+   */
+  SchemaFactory getSchemaFactory();
 }
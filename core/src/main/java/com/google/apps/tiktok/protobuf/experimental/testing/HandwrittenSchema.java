@@ -1,9 +1,17 @@
 package com.google.apps.tiktok.protobuf.experimental.testing;
 
+import com.google.apps.tiktok.protobuf.experimental.BooleanArrayList;
 import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.DoubleArrayList;
+import com.google.apps.tiktok.protobuf.experimental.FloatArrayList;
+import com.google.apps.tiktok.protobuf.experimental.IntArrayList;
+import com.google.apps.tiktok.protobuf.experimental.LongArrayList;
+import com.google.apps.tiktok.protobuf.experimental.schema.LazySchema;
 import com.google.apps.tiktok.protobuf.experimental.schema.Reader;
 import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
+import com.google.apps.tiktok.protobuf.experimental.schema.SizeCalculator;
 import com.google.apps.tiktok.protobuf.experimental.schema.Writer;
+import com.google.apps.tiktok.protobuf.experimental.util.SchemaUtil;
 
 import java.util.ArrayList;
 
@@ -12,6 +20,9 @@ import java.util.ArrayList;
  * dynamically-generated schemas.
  */
 final class HandwrittenSchema implements Schema<TestMessage> {
+  private static final LazySchema<TestMessage.InnerMessage> INNER_MESSAGE_SCHEMA =
+      LazySchema.of(TestMessage.InnerMessage.class);
+
   @Override
   public void writeTo(TestMessage message, Writer writer) {
     if (message.doubleField != 0.0) {
@@ -42,7 +53,7 @@ final class HandwrittenSchema implements Schema<TestMessage> {
       writer.writeString(9, message.stringField);
     }
     if (message.messageField != null) {
-      writer.writeMessage(10, message.messageField);
+      writer.writeMessage(10, message.messageField, INNER_MESSAGE_SCHEMA.get(writer));
     }
     if (message.bytesField != null) {
       writer.writeBytes(11, message.bytesField);
@@ -65,101 +76,173 @@ final class HandwrittenSchema implements Schema<TestMessage> {
     if (message.sint64Field != 0L) {
       writer.writeSInt64(17, message.sint64Field);
     }
-    if (message.doubleListField != null) {
+    if (message.doubleListField != null && !message.doubleListField.isEmpty()) {
       writer.writeDoubleList(18, message.doubleListField, false);
     }
-    if (message.floatListField != null) {
+    if (message.floatListField != null && !message.floatListField.isEmpty()) {
       writer.writeFloatList(19, message.floatListField, false);
     }
-    if (message.int64ListField != null) {
+    if (message.int64ListField != null && !message.int64ListField.isEmpty()) {
       writer.writeInt64List(20, message.int64ListField, false);
     }
-    if (message.uint64ListField != null) {
+    if (message.uint64ListField != null && !message.uint64ListField.isEmpty()) {
       writer.writeUInt64List(21, message.uint64ListField, false);
     }
-    if (message.int32ListField != null) {
+    if (message.int32ListField != null && !message.int32ListField.isEmpty()) {
       writer.writeInt32List(22, message.int32ListField, false);
     }
-    if (message.fixed64ListField != null) {
+    if (message.fixed64ListField != null && !message.fixed64ListField.isEmpty()) {
       writer.writeFixed64List(23, message.fixed64ListField, false);
     }
-    if (message.fixed32ListField != null) {
+    if (message.fixed32ListField != null && !message.fixed32ListField.isEmpty()) {
       writer.writeFixed32List(24, message.fixed32ListField, false);
     }
-    if (message.getBoolListField() != null) {
+    if (message.getBoolListField() != null && !message.getBoolListField().isEmpty()) {
       writer.writeBoolList(25, message.getBoolListField(), false);
     }
-    if (message.stringListField != null) {
+    if (message.stringListField != null && !message.stringListField.isEmpty()) {
       writer.writeStringList(26, message.stringListField);
     }
-    if (message.messageListField != null) {
-      writer.writeMessageList(27, message.messageListField);
+    if (message.messageListField != null && !message.messageListField.isEmpty()) {
+      writer.writeMessageList(27, message.messageListField, INNER_MESSAGE_SCHEMA.get(writer));
     }
-    if (message.bytesListField != null) {
+    if (message.bytesListField != null && !message.bytesListField.isEmpty()) {
       writer.writeBytesList(28, message.bytesListField);
     }
-    if (message.uint32ListField != null) {
+    if (message.uint32ListField != null && !message.uint32ListField.isEmpty()) {
       writer.writeUInt32List(29, message.uint32ListField, false);
     }
-    if (message.enumListField != null) {
+    if (message.enumListField != null && !message.enumListField.isEmpty()) {
       writer.writeEnumList(30, message.enumListField, false);
     }
-    if (message.sfixed32ListField != null) {
+    if (message.sfixed32ListField != null && !message.sfixed32ListField.isEmpty()) {
       writer.writeSFixed32List(31, message.sfixed32ListField, false);
     }
-    if (message.sfixed64ListField != null) {
+    if (message.sfixed64ListField != null && !message.sfixed64ListField.isEmpty()) {
       writer.writeSFixed64List(32, message.sfixed64ListField, false);
     }
-    if (message.sint32ListField != null) {
+    if (message.sint32ListField != null && !message.sint32ListField.isEmpty()) {
       writer.writeSInt32List(33, message.sint32ListField, false);
     }
-    if (message.sint64ListField != null) {
+    if (message.sint64ListField != null && !message.sint64ListField.isEmpty()) {
       writer.writeSInt64List(34, message.sint64ListField, false);
     }
-    if (message.doublePackedListField != null) {
+    if (message.doublePackedListField != null && !message.doublePackedListField.isEmpty()) {
       writer.writeDoubleList(35, message.doublePackedListField, true);
     }
-    if (message.floatPackedListField != null) {
+    if (message.floatPackedListField != null && !message.floatPackedListField.isEmpty()) {
       writer.writeFloatList(36, message.floatPackedListField, true);
     }
-    if (message.int64PackedListField != null) {
+    if (message.int64PackedListField != null && !message.int64PackedListField.isEmpty()) {
       writer.writeInt64List(37, message.int64PackedListField, true);
     }
-    if (message.uint64PackedListField != null) {
+    if (message.uint64PackedListField != null && !message.uint64PackedListField.isEmpty()) {
       writer.writeUInt64List(38, message.uint64PackedListField, true);
     }
-    if (message.int32PackedListField != null) {
+    if (message.int32PackedListField != null && !message.int32PackedListField.isEmpty()) {
       writer.writeInt32List(39, message.int32PackedListField, true);
     }
-    if (message.fixed64PackedListField != null) {
+    if (message.fixed64PackedListField != null && !message.fixed64PackedListField.isEmpty()) {
       writer.writeFixed64List(40, message.fixed64PackedListField, true);
     }
-    if (message.fixed32PackedListField != null) {
+    if (message.fixed32PackedListField != null && !message.fixed32PackedListField.isEmpty()) {
       writer.writeFixed32List(41, message.fixed32PackedListField, true);
     }
-    if (message.getBoolPackedListField() != null) {
+    if (message.getBoolPackedListField() != null && !message.getBoolPackedListField().isEmpty()) {
       writer.writeBoolList(42, message.getBoolPackedListField(), true);
     }
-    if (message.uint32PackedListField != null) {
+    if (message.uint32PackedListField != null && !message.uint32PackedListField.isEmpty()) {
       writer.writeUInt32List(43, message.uint32PackedListField, true);
     }
-    if (message.enumPackedListField != null) {
+    if (message.enumPackedListField != null && !message.enumPackedListField.isEmpty()) {
       writer.writeEnumList(44, message.enumPackedListField, true);
     }
-    if (message.sfixed32PackedListField != null) {
+    if (message.sfixed32PackedListField != null && !message.sfixed32PackedListField.isEmpty()) {
       writer.writeSFixed32List(45, message.sfixed32PackedListField, true);
     }
-    if (message.sfixed64PackedListField != null) {
+    if (message.sfixed64PackedListField != null && !message.sfixed64PackedListField.isEmpty()) {
       writer.writeSFixed64List(46, message.sfixed64PackedListField, true);
     }
-    if (message.sint32PackedListField != null) {
+    if (message.sint32PackedListField != null && !message.sint32PackedListField.isEmpty()) {
       writer.writeSInt32List(47, message.sint32PackedListField, true);
     }
-    if (message.sint64PackedListField != null) {
+    if (message.sint64PackedListField != null && !message.sint64PackedListField.isEmpty()) {
       writer.writeSInt64List(48, message.sint64PackedListField, true);
     }
   }
 
+  @Override
+  public int getSerializedSize(TestMessage message, SizeCalculator sizeCalculator) {
+    int size = 0;
+    size += SchemaUtil.computeDoubleSize(1, message.doubleField, sizeCalculator);
+    size += SchemaUtil.computeFloatSize(2, message.floatField, sizeCalculator);
+    size += SchemaUtil.computeInt64Size(3, message.int64Field, sizeCalculator);
+    size += SchemaUtil.computeUInt64Size(4, message.uint64Field, sizeCalculator);
+    size += SchemaUtil.computeInt32Size(5, message.int32Field, sizeCalculator);
+    size += SchemaUtil.computeFixed64Size(6, message.fixed64Field, sizeCalculator);
+    size += SchemaUtil.computeFixed32Size(7, message.fixed32Field, sizeCalculator);
+    size += SchemaUtil.computeBoolSize(8, message.isBoolField(), sizeCalculator);
+    size += SchemaUtil.computeStringSize(9, message.stringField, sizeCalculator);
+    size +=
+        SchemaUtil.computeMessageSize(
+            10, message.messageField, INNER_MESSAGE_SCHEMA, sizeCalculator);
+    size += SchemaUtil.computeBytesSize(11, message.bytesField, sizeCalculator);
+    size += SchemaUtil.computeUInt32Size(12, message.uint32Field, sizeCalculator);
+    size += SchemaUtil.computeEnumSize(13, message.enumField, sizeCalculator);
+    size += SchemaUtil.computeSFixed32Size(14, message.sfixed32Field, sizeCalculator);
+    size += SchemaUtil.computeSFixed64Size(15, message.sfixed64Field, sizeCalculator);
+    size += SchemaUtil.computeSInt32Size(16, message.sint32Field, sizeCalculator);
+    size += SchemaUtil.computeSInt64Size(17, message.sint64Field, sizeCalculator);
+    size += SchemaUtil.computeDoubleListSize(18, message.doubleListField, sizeCalculator, false);
+    size += SchemaUtil.computeFloatListSize(19, message.floatListField, sizeCalculator, false);
+    size += SchemaUtil.computeInt64ListSize(20, message.int64ListField, sizeCalculator, false);
+    size += SchemaUtil.computeUInt64ListSize(21, message.uint64ListField, sizeCalculator, false);
+    size += SchemaUtil.computeInt32ListSize(22, message.int32ListField, sizeCalculator, false);
+    size += SchemaUtil.computeFixed64ListSize(23, message.fixed64ListField, sizeCalculator, false);
+    size += SchemaUtil.computeFixed32ListSize(24, message.fixed32ListField, sizeCalculator, false);
+    size += SchemaUtil.computeBoolListSize(25, message.getBoolListField(), sizeCalculator, false);
+    size += SchemaUtil.computeStringListSize(26, message.stringListField, sizeCalculator);
+    size +=
+        SchemaUtil.computeMessageListSize(
+            27, message.messageListField, INNER_MESSAGE_SCHEMA, sizeCalculator);
+    size += SchemaUtil.computeBytesListSize(28, message.bytesListField, sizeCalculator);
+    size += SchemaUtil.computeUInt32ListSize(29, message.uint32ListField, sizeCalculator, false);
+    size += SchemaUtil.computeEnumListSize(30, message.enumListField, sizeCalculator, false);
+    size +=
+        SchemaUtil.computeSFixed32ListSize(31, message.sfixed32ListField, sizeCalculator, false);
+    size +=
+        SchemaUtil.computeSFixed64ListSize(32, message.sfixed64ListField, sizeCalculator, false);
+    size += SchemaUtil.computeSInt32ListSize(33, message.sint32ListField, sizeCalculator, false);
+    size += SchemaUtil.computeSInt64ListSize(34, message.sint64ListField, sizeCalculator, false);
+    size +=
+        SchemaUtil.computeDoubleListSize(35, message.doublePackedListField, sizeCalculator, true);
+    size += SchemaUtil.computeFloatListSize(36, message.floatPackedListField, sizeCalculator, true);
+    size += SchemaUtil.computeInt64ListSize(37, message.int64PackedListField, sizeCalculator, true);
+    size +=
+        SchemaUtil.computeUInt64ListSize(38, message.uint64PackedListField, sizeCalculator, true);
+    size += SchemaUtil.computeInt32ListSize(39, message.int32PackedListField, sizeCalculator, true);
+    size +=
+        SchemaUtil.computeFixed64ListSize(40, message.fixed64PackedListField, sizeCalculator, true);
+    size +=
+        SchemaUtil.computeFixed32ListSize(41, message.fixed32PackedListField, sizeCalculator, true);
+    size +=
+        SchemaUtil.computeBoolListSize(42, message.getBoolPackedListField(), sizeCalculator, true);
+    size +=
+        SchemaUtil.computeUInt32ListSize(43, message.uint32PackedListField, sizeCalculator, true);
+    size += SchemaUtil.computeEnumListSize(44, message.enumPackedListField, sizeCalculator, true);
+    size +=
+        SchemaUtil.computeSFixed32ListSize(
+            45, message.sfixed32PackedListField, sizeCalculator, true);
+    size +=
+        SchemaUtil.computeSFixed64ListSize(
+            46, message.sfixed64PackedListField, sizeCalculator, true);
+    size +=
+        SchemaUtil.computeSInt32ListSize(47, message.sint32PackedListField, sizeCalculator, true);
+    size +=
+        SchemaUtil.computeSInt64ListSize(48, message.sint64PackedListField, sizeCalculator, true);
+    return size;
+  }
+
   @Override
   public void mergeFrom(TestMessage message, Reader reader) {
     while (true) {
@@ -197,7 +280,8 @@ final class HandwrittenSchema implements Schema<TestMessage> {
           message.stringField = reader.readString();
           break;
         case 10:
-          message.messageField = (TestMessage.InnerMessage) reader.readMessage();
+          message.messageField =
+              SchemaUtil.mergeMessage(message.messageField, INNER_MESSAGE_SCHEMA, reader);
           break;
         case 11:
           message.bytesField = reader.readBytes();
@@ -222,49 +306,49 @@ final class HandwrittenSchema implements Schema<TestMessage> {
           break;
         case 18:
           if (message.doubleListField == null) {
-            message.doubleListField = new ArrayList<Double>();
+            message.doubleListField = new DoubleArrayList();
           }
           reader.readDoubleList(message.doubleListField, false);
           break;
         case 19:
           if (message.floatListField == null) {
-            message.floatListField = new ArrayList<Float>();
+            message.floatListField = new FloatArrayList();
           }
           reader.readFloatList(message.floatListField, false);
           break;
         case 20:
           if (message.int64ListField == null) {
-            message.int64ListField = new ArrayList<Long>();
+            message.int64ListField = new LongArrayList();
           }
           reader.readInt64List(message.int64ListField, false);
           break;
         case 21:
           if (message.uint64ListField == null) {
-            message.uint64ListField = new ArrayList<Long>();
+            message.uint64ListField = new LongArrayList();
           }
           reader.readUInt64List(message.uint64ListField, false);
           break;
         case 22:
           if (message.int32ListField == null) {
-            message.int32ListField = new ArrayList<Integer>();
+            message.int32ListField = new IntArrayList();
           }
           reader.readInt32List(message.int32ListField, false);
           break;
         case 23:
           if (message.fixed64ListField == null) {
-            message.fixed64ListField = new ArrayList<Long>();
+            message.fixed64ListField = new LongArrayList();
           }
           reader.readFixed64List(message.fixed64ListField, false);
           break;
         case 24:
           if (message.fixed32ListField == null) {
-            message.fixed32ListField = new ArrayList<Integer>();
+            message.fixed32ListField = new IntArrayList();
           }
           reader.readFixed32List(message.fixed32ListField, false);
           break;
         case 25:
           if (message.getBoolListField() == null) {
-            message.setBoolListField(new ArrayList<Boolean>());
+            message.setBoolListField(new BooleanArrayList());
           }
           reader.readBoolList(message.getBoolListField(), false);
           break;
@@ -278,7 +362,7 @@ final class HandwrittenSchema implements Schema<TestMessage> {
           if (message.messageListField == null) {
             message.messageListField = new ArrayList<TestMessage.InnerMessage>();
           }
-          reader.readMessageList(message.messageListField, TestMessage.InnerMessage.class);
+          SchemaUtil.readMessageList(message.messageListField, INNER_MESSAGE_SCHEMA, reader);
           break;
         case 28:
           if (message.bytesListField == null) {
@@ -288,121 +372,121 @@ final class HandwrittenSchema implements Schema<TestMessage> {
           break;
         case 29:
           if (message.uint32ListField == null) {
-            message.uint32ListField = new ArrayList<Integer>();
+            message.uint32ListField = new IntArrayList();
           }
           reader.readUInt32List(message.uint32ListField, false);
           break;
         case 30:
           if (message.enumListField == null) {
-            message.enumListField = new ArrayList<Integer>();
+            message.enumListField = new IntArrayList();
           }
           reader.readEnumList(message.enumListField, false);
           break;
         case 31:
           if (message.sfixed32ListField == null) {
-            message.sfixed32ListField = new ArrayList<Integer>();
+            message.sfixed32ListField = new IntArrayList();
           }
           reader.readSFixed32List(message.sfixed32ListField, false);
           break;
         case 32:
           if (message.sfixed64ListField == null) {
-            message.sfixed64ListField = new ArrayList<Long>();
+            message.sfixed64ListField = new LongArrayList();
           }
           reader.readSFixed64List(message.sfixed64ListField, false);
           break;
         case 33:
           if (message.sint32ListField == null) {
-            message.sint32ListField = new ArrayList<Integer>();
+            message.sint32ListField = new IntArrayList();
           }
           reader.readSInt32List(message.sint32ListField, false);
           break;
         case 34:
           if (message.sint64ListField == null) {
-            message.sint64ListField = new ArrayList<Long>();
+            message.sint64ListField = new LongArrayList();
           }
           reader.readSInt64List(message.sint64ListField, false);
           break;
         case 35:
           if (message.doublePackedListField == null) {
-            message.doublePackedListField = new ArrayList<Double>();
+            message.doublePackedListField = new DoubleArrayList();
           }
           reader.readDoubleList(message.doublePackedListField, true);
           break;
         case 36:
           if (message.floatPackedListField == null) {
-            message.floatPackedListField = new ArrayList<Float>();
+            message.floatPackedListField = new FloatArrayList();
           }
           reader.readFloatList(message.floatPackedListField, true);
           break;
         case 37:
           if (message.int64PackedListField == null) {
-            message.int64PackedListField = new ArrayList<Long>();
+            message.int64PackedListField = new LongArrayList();
           }
           reader.readInt64List(message.int64PackedListField, true);
           break;
         case 38:
           if (message.uint64PackedListField == null) {
-            message.uint64PackedListField = new ArrayList<Long>();
+            message.uint64PackedListField = new LongArrayList();
           }
           reader.readUInt64List(message.uint64PackedListField, true);
           break;
         case 39:
           if (message.int32PackedListField == null) {
-            message.int32PackedListField = new ArrayList<Integer>();
+            message.int32PackedListField = new IntArrayList();
           }
           reader.readInt32List(message.int32PackedListField, true);
           break;
         case 40:
           if (message.fixed64PackedListField == null) {
-            message.fixed64PackedListField = new ArrayList<Long>();
+            message.fixed64PackedListField = new LongArrayList();
           }
           reader.readFixed64List(message.fixed64PackedListField, true);
           break;
         case 41:
           if (message.fixed32PackedListField == null) {
-            message.fixed32PackedListField = new ArrayList<Integer>();
+            message.fixed32PackedListField = new IntArrayList();
           }
           reader.readFixed32List(message.fixed32PackedListField, true);
           break;
         case 42:
           if (message.getBoolPackedListField() == null) {
-            message.setBoolPackedListField(new ArrayList<Boolean>());
+            message.setBoolPackedListField(new BooleanArrayList());
           }
           reader.readBoolList(message.getBoolPackedListField(), true);
           break;
         case 43:
           if (message.uint32PackedListField == null) {
-            message.uint32PackedListField = new ArrayList<Integer>();
+            message.uint32PackedListField = new IntArrayList();
           }
           reader.readUInt32List(message.uint32PackedListField, true);
           break;
         case 44:
           if (message.enumPackedListField == null) {
-            message.enumPackedListField = new ArrayList<Integer>();
+            message.enumPackedListField = new IntArrayList();
           }
           reader.readEnumList(message.enumPackedListField, true);
           break;
         case 45:
           if (message.sfixed32PackedListField == null) {
-            message.sfixed32PackedListField = new ArrayList<Integer>();
+            message.sfixed32PackedListField = new IntArrayList();
           }
           reader.readSFixed32List(message.sfixed32PackedListField, true);
           break;
         case 46:
           if (message.sfixed64PackedListField == null) {
-            message.sfixed64PackedListField = new ArrayList<Long>();
+            message.sfixed64PackedListField = new LongArrayList();
           }
           reader.readSFixed64List(message.sfixed64PackedListField, true);
           break;
         case 47:
           if (message.sint32PackedListField == null) {
-            message.sint32PackedListField = new ArrayList<Integer>();
+            message.sint32PackedListField = new IntArrayList();
           }
           reader.readSInt32List(message.sint32PackedListField, true);
           break;
         case 48:
           if (message.sint64PackedListField == null) {
-            message.sint64PackedListField = new ArrayList<Long>();
+            message.sint64PackedListField = new LongArrayList();
           }
           reader.readSInt64List(message.sint64PackedListField, true);
           break;
@@ -0,0 +1,156 @@
+package com.google.apps.tiktok.protobuf.experimental.testing;
+
+import com.google.apps.tiktok.protobuf.experimental.FieldType;
+import com.google.apps.tiktok.protobuf.experimental.ProtoField;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A test message with a field of each of the array types.
+ */
+public final class TestArrayMessage {
+  @ProtoField(fieldNumber = 1, type = FieldType.DOUBLE_ARRAY)
+  public double[] doubleArrayField;
+
+  @ProtoField(fieldNumber = 2, type = FieldType.FLOAT_ARRAY)
+  public float[] floatArrayField;
+
+  @ProtoField(fieldNumber = 3, type = FieldType.INT64_ARRAY)
+  public long[] int64ArrayField;
+
+  @ProtoField(fieldNumber = 4, type = FieldType.UINT64_ARRAY)
+  public long[] uint64ArrayField;
+
+  @ProtoField(fieldNumber = 5, type = FieldType.INT32_ARRAY)
+  public int[] int32ArrayField;
+
+  @ProtoField(fieldNumber = 6, type = FieldType.FIXED64_ARRAY)
+  public long[] fixed64ArrayField;
+
+  @ProtoField(fieldNumber = 7, type = FieldType.FIXED32_ARRAY)
+  public int[] fixed32ArrayField;
+
+  @ProtoField(fieldNumber = 8, type = FieldType.UINT32_ARRAY)
+  public int[] uint32ArrayField;
+
+  @ProtoField(fieldNumber = 9, type = FieldType.SFIXED32_ARRAY)
+  public int[] sfixed32ArrayField;
+
+  @ProtoField(fieldNumber = 10, type = FieldType.SFIXED64_ARRAY)
+  public long[] sfixed64ArrayField;
+
+  @ProtoField(fieldNumber = 11, type = FieldType.SINT32_ARRAY)
+  public int[] sint32ArrayField;
+
+  @ProtoField(fieldNumber = 12, type = FieldType.SINT64_ARRAY)
+  public long[] sint64ArrayField;
+
+  @ProtoField(fieldNumber = 13, type = FieldType.BYTE_ARRAY)
+  public byte[] byteArrayField;
+
+  @ProtoField(fieldNumber = 14, type = FieldType.BYTE_BUFFER)
+  public ByteBuffer byteBufferField;
+
+  /**
+   * Creates a new message with all fields set.
+   */
+  public static TestArrayMessage newTestArrayMessage() {
+    TestArrayMessage msg = new TestArrayMessage();
+    msg.doubleArrayField = new double[] {1.0, -2.5};
+    msg.floatArrayField = new float[] {3.0f, Float.MAX_VALUE};
+    msg.int64ArrayField = new long[] {4, -5};
+    msg.uint64ArrayField = new long[] {6, Long.MAX_VALUE};
+    msg.int32ArrayField = new int[] {7, -8};
+    msg.fixed64ArrayField = new long[] {9, 10};
+    msg.fixed32ArrayField = new int[] {11, 12};
+    msg.uint32ArrayField = new int[] {13, 1 << 30};
+    msg.sfixed32ArrayField = new int[] {14, -15};
+    msg.sfixed64ArrayField = new long[] {16, -17};
+    msg.sint32ArrayField = new int[] {18, Integer.MIN_VALUE};
+    msg.sint64ArrayField = new long[] {19, Long.MIN_VALUE};
+    msg.byteArrayField = new byte[] {20, 21, 22};
+    msg.byteBufferField = ByteBuffer.wrap(new byte[] {23, 24, 25, 26});
+    return msg;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = 1;
+    result = 31 * result + Arrays.hashCode(doubleArrayField);
+    result = 31 * result + Arrays.hashCode(floatArrayField);
+    result = 31 * result + Arrays.hashCode(int64ArrayField);
+    result = 31 * result + Arrays.hashCode(uint64ArrayField);
+    result = 31 * result + Arrays.hashCode(int32ArrayField);
+    result = 31 * result + Arrays.hashCode(fixed64ArrayField);
+    result = 31 * result + Arrays.hashCode(fixed32ArrayField);
+    result = 31 * result + Arrays.hashCode(uint32ArrayField);
+    result = 31 * result + Arrays.hashCode(sfixed32ArrayField);
+    result = 31 * result + Arrays.hashCode(sfixed64ArrayField);
+    result = 31 * result + Arrays.hashCode(sint32ArrayField);
+    result = 31 * result + Arrays.hashCode(sint64ArrayField);
+    result = 31 * result + Arrays.hashCode(byteArrayField);
+    result = 31 * result + (byteBufferField == null ? 0 : byteBufferField.hashCode());
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof TestArrayMessage)) {
+      return false;
+    }
+    TestArrayMessage other = (TestArrayMessage) obj;
+    return Arrays.equals(doubleArrayField, other.doubleArrayField)
+        && Arrays.equals(floatArrayField, other.floatArrayField)
+        && Arrays.equals(int64ArrayField, other.int64ArrayField)
+        && Arrays.equals(uint64ArrayField, other.uint64ArrayField)
+        && Arrays.equals(int32ArrayField, other.int32ArrayField)
+        && Arrays.equals(fixed64ArrayField, other.fixed64ArrayField)
+        && Arrays.equals(fixed32ArrayField, other.fixed32ArrayField)
+        && Arrays.equals(uint32ArrayField, other.uint32ArrayField)
+        && Arrays.equals(sfixed32ArrayField, other.sfixed32ArrayField)
+        && Arrays.equals(sfixed64ArrayField, other.sfixed64ArrayField)
+        && Arrays.equals(sint32ArrayField, other.sint32ArrayField)
+        && Arrays.equals(sint64ArrayField, other.sint64ArrayField)
+        && Arrays.equals(byteArrayField, other.byteArrayField)
+        && (byteBufferField == null
+            ? other.byteBufferField == null
+            : byteBufferField.equals(other.byteBufferField));
+  }
+
+  @Override
+  public String toString() {
+    return "TestArrayMessage [doubleArrayField="
+        + Arrays.toString(doubleArrayField)
+        + ", floatArrayField="
+        + Arrays.toString(floatArrayField)
+        + ", int64ArrayField="
+        + Arrays.toString(int64ArrayField)
+        + ", uint64ArrayField="
+        + Arrays.toString(uint64ArrayField)
+        + ", int32ArrayField="
+        + Arrays.toString(int32ArrayField)
+        + ", fixed64ArrayField="
+        + Arrays.toString(fixed64ArrayField)
+        + ", fixed32ArrayField="
+        + Arrays.toString(fixed32ArrayField)
+        + ", uint32ArrayField="
+        + Arrays.toString(uint32ArrayField)
+        + ", sfixed32ArrayField="
+        + Arrays.toString(sfixed32ArrayField)
+        + ", sfixed64ArrayField="
+        + Arrays.toString(sfixed64ArrayField)
+        + ", sint32ArrayField="
+        + Arrays.toString(sint32ArrayField)
+        + ", sint64ArrayField="
+        + Arrays.toString(sint64ArrayField)
+        + ", byteArrayField="
+        + Arrays.toString(byteArrayField)
+        + ", byteBufferField="
+        + byteBufferField
+        + "]";
+  }
+}
@@ -0,0 +1,172 @@
+package com.google.apps.tiktok.protobuf.experimental.testing;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.FieldType;
+import com.google.apps.tiktok.protobuf.experimental.ProtoField;
+import com.google.apps.tiktok.protobuf.experimental.ProtoHasBits;
+
+/**
+ * A test message whose fields have has-bits held in two fields, except for one field that is
+ * written whenever it is not the default.
+ */
+public final class TestHasBitsMessage {
+  @ProtoHasBits(fieldNumbers = {1, 2, 3, 5, 6, 7, 8})
+  public int hasBits0;
+
+  @ProtoHasBits(fieldNumbers = {40})
+  public int hasBits1;
+
+  @ProtoField(fieldNumber = 1, type = FieldType.INT32)
+  public int int32Field;
+
+  @ProtoField(fieldNumber = 2, type = FieldType.SINT64)
+  public long sint64Field;
+
+  @ProtoField(fieldNumber = 3, type = FieldType.STRING)
+  public String stringField;
+
+  @ProtoField(fieldNumber = 4, type = FieldType.STRING)
+  public String plainField;
+
+  @ProtoField(fieldNumber = 5, type = FieldType.DOUBLE)
+  public double doubleField;
+
+  @ProtoField(fieldNumber = 6, type = FieldType.BOOL)
+  public boolean boolField;
+
+  @ProtoField(fieldNumber = 7, type = FieldType.BYTES)
+  public ByteString bytesField;
+
+  @ProtoField(fieldNumber = 8, type = FieldType.ENUM)
+  public int enumField;
+
+  @ProtoField(fieldNumber = 40, type = FieldType.FLOAT)
+  public float floatField;
+
+  /**
+   * Creates a new message with all fields that have has-bits present, holding default values.
+   */
+  public static TestHasBitsMessage newDefaultValuesMessage() {
+    TestHasBitsMessage msg = new TestHasBitsMessage();
+    msg.setInt32Field(0);
+    msg.setSInt64Field(0L);
+    msg.setStringField("");
+    msg.setDoubleField(0.0);
+    msg.setBoolField(false);
+    msg.setBytesField(ByteString.EMPTY);
+    msg.setEnumField(0);
+    msg.setFloatField(0.0f);
+    return msg;
+  }
+
+  public void setInt32Field(int value) {
+    int32Field = value;
+    hasBits0 |= 1;
+  }
+
+  public void setSInt64Field(long value) {
+    sint64Field = value;
+    hasBits0 |= 1 << 1;
+  }
+
+  public void setStringField(String value) {
+    stringField = value;
+    hasBits0 |= 1 << 2;
+  }
+
+  public void setDoubleField(double value) {
+    doubleField = value;
+    hasBits0 |= 1 << 3;
+  }
+
+  public void setBoolField(boolean value) {
+    boolField = value;
+    hasBits0 |= 1 << 4;
+  }
+
+  public void setBytesField(ByteString value) {
+    bytesField = value;
+    hasBits0 |= 1 << 5;
+  }
+
+  public void setEnumField(int value) {
+    enumField = value;
+    hasBits0 |= 1 << 6;
+  }
+
+  public void setFloatField(float value) {
+    floatField = value;
+    hasBits1 |= 1;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = 1;
+    result = 31 * result + hasBits0;
+    result = 31 * result + hasBits1;
+    result = 31 * result + int32Field;
+    result = 31 * result + (int) (sint64Field ^ (sint64Field >>> 32));
+    result = 31 * result + (stringField == null ? 0 : stringField.hashCode());
+    result = 31 * result + (plainField == null ? 0 : plainField.hashCode());
+    long temp = Double.doubleToLongBits(doubleField);
+    result = 31 * result + (int) (temp ^ (temp >>> 32));
+    result = 31 * result + (boolField ? 1231 : 1237);
+    result = 31 * result + (bytesField == null ? 0 : bytesField.hashCode());
+    result = 31 * result + enumField;
+    result = 31 * result + Float.floatToIntBits(floatField);
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof TestHasBitsMessage)) {
+      return false;
+    }
+    TestHasBitsMessage other = (TestHasBitsMessage) obj;
+    return hasBits0 == other.hasBits0
+        && hasBits1 == other.hasBits1
+        && int32Field == other.int32Field
+        && sint64Field == other.sint64Field
+        && equal(stringField, other.stringField)
+        && equal(plainField, other.plainField)
+        && Double.doubleToLongBits(doubleField) == Double.doubleToLongBits(other.doubleField)
+        && boolField == other.boolField
+        && equal(bytesField, other.bytesField)
+        && enumField == other.enumField
+        && Float.floatToIntBits(floatField) == Float.floatToIntBits(other.floatField);
+  }
+
+  private static boolean equal(Object a, Object b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  @Override
+  public String toString() {
+    return "TestHasBitsMessage [hasBits0="
+        + hasBits0
+        + ", hasBits1="
+        + hasBits1
+        + ", int32Field="
+        + int32Field
+        + ", sint64Field="
+        + sint64Field
+        + ", stringField="
+        + stringField
+        + ", plainField="
+        + plainField
+        + ", doubleField="
+        + doubleField
+        + ", boolField="
+        + boolField
+        + ", bytesField="
+        + bytesField
+        + ", enumField="
+        + enumField
+        + ", floatField="
+        + floatField
+        + "]";
+  }
+}
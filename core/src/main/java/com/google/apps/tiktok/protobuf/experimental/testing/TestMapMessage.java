@@ -0,0 +1,158 @@
+package com.google.apps.tiktok.protobuf.experimental.testing;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.FieldType;
+import com.google.apps.tiktok.protobuf.experimental.IntKeyHashMap;
+import com.google.apps.tiktok.protobuf.experimental.LongKeyHashMap;
+import com.google.apps.tiktok.protobuf.experimental.ProtoField;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A test message with map fields covering each kind of key and a variety of values.
+ */
+public final class TestMapMessage {
+  @ProtoField(
+      fieldNumber = 1,
+      type = FieldType.MAP,
+      keyType = FieldType.STRING,
+      valueType = FieldType.STRING)
+  public Map<String, String> stringToStringField;
+
+  @ProtoField(
+      fieldNumber = 2,
+      type = FieldType.MAP,
+      keyType = FieldType.INT64,
+      valueType = FieldType.MESSAGE)
+  public Map<Long, TestArrayMessage> int64ToMessageField;
+
+  @ProtoField(
+      fieldNumber = 3,
+      type = FieldType.MAP,
+      keyType = FieldType.SINT32,
+      valueType = FieldType.ENUM)
+  public Map<Integer, Integer> sint32ToEnumField;
+
+  @ProtoField(
+      fieldNumber = 4,
+      type = FieldType.MAP,
+      keyType = FieldType.UINT32,
+      valueType = FieldType.STRING)
+  public IntKeyHashMap<String> uint32ToStringField;
+
+  @ProtoField(
+      fieldNumber = 5,
+      type = FieldType.MAP,
+      keyType = FieldType.FIXED64,
+      valueType = FieldType.DOUBLE)
+  public Map<Long, Double> fixed64ToDoubleField;
+
+  @ProtoField(
+      fieldNumber = 6,
+      type = FieldType.MAP,
+      keyType = FieldType.BOOL,
+      valueType = FieldType.BYTES)
+  public Map<Boolean, ByteString> boolToBytesField;
+
+  @ProtoField(
+      fieldNumber = 7,
+      type = FieldType.MAP,
+      keyType = FieldType.SFIXED32,
+      valueType = FieldType.FLOAT)
+  public Map<Integer, Float> sfixed32ToFloatField;
+
+  /**
+   * Creates a new message with all fields set. Each map includes an entry whose key and value are
+   * both defaults, which must still be written.
+   */
+  public static TestMapMessage newTestMapMessage() {
+    TestMapMessage msg = new TestMapMessage();
+    msg.stringToStringField = new HashMap<String, String>();
+    msg.stringToStringField.put("", "");
+    msg.stringToStringField.put("key", "value");
+
+    msg.int64ToMessageField = new LongKeyHashMap<TestArrayMessage>();
+    msg.int64ToMessageField.put(0L, new TestArrayMessage());
+    msg.int64ToMessageField.put(-1L, TestArrayMessage.newTestArrayMessage());
+    msg.int64ToMessageField.put(Long.MAX_VALUE, TestArrayMessage.newTestArrayMessage());
+
+    msg.sint32ToEnumField = new IntKeyHashMap<Integer>();
+    msg.sint32ToEnumField.put(0, 0);
+    msg.sint32ToEnumField.put(Integer.MIN_VALUE, -3);
+
+    msg.uint32ToStringField = new IntKeyHashMap<String>();
+    msg.uint32ToStringField.put(0, "");
+    msg.uint32ToStringField.put(-1, "max");
+    for (int i = 1; i <= 20; ++i) {
+      msg.uint32ToStringField.put(i, "value" + i);
+    }
+
+    msg.fixed64ToDoubleField = new HashMap<Long, Double>();
+    msg.fixed64ToDoubleField.put(0L, 0.0);
+    msg.fixed64ToDoubleField.put(7L, -1.5);
+
+    msg.boolToBytesField = new HashMap<Boolean, ByteString>();
+    msg.boolToBytesField.put(false, ByteString.EMPTY);
+    msg.boolToBytesField.put(true, ByteString.copyFromUtf8("bytes"));
+
+    msg.sfixed32ToFloatField = new HashMap<Integer, Float>();
+    msg.sfixed32ToFloatField.put(0, 0.0f);
+    msg.sfixed32ToFloatField.put(-8, Float.MAX_VALUE);
+    return msg;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = 1;
+    result = 31 * result + (stringToStringField == null ? 0 : stringToStringField.hashCode());
+    result = 31 * result + (int64ToMessageField == null ? 0 : int64ToMessageField.hashCode());
+    result = 31 * result + (sint32ToEnumField == null ? 0 : sint32ToEnumField.hashCode());
+    result = 31 * result + (uint32ToStringField == null ? 0 : uint32ToStringField.hashCode());
+    result = 31 * result + (fixed64ToDoubleField == null ? 0 : fixed64ToDoubleField.hashCode());
+    result = 31 * result + (boolToBytesField == null ? 0 : boolToBytesField.hashCode());
+    result = 31 * result + (sfixed32ToFloatField == null ? 0 : sfixed32ToFloatField.hashCode());
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof TestMapMessage)) {
+      return false;
+    }
+    TestMapMessage other = (TestMapMessage) obj;
+    return equal(stringToStringField, other.stringToStringField)
+        && equal(int64ToMessageField, other.int64ToMessageField)
+        && equal(sint32ToEnumField, other.sint32ToEnumField)
+        && equal(uint32ToStringField, other.uint32ToStringField)
+        && equal(fixed64ToDoubleField, other.fixed64ToDoubleField)
+        && equal(boolToBytesField, other.boolToBytesField)
+        && equal(sfixed32ToFloatField, other.sfixed32ToFloatField);
+  }
+
+  private static boolean equal(Map<?, ?> a, Map<?, ?> b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  @Override
+  public String toString() {
+    return "TestMapMessage [stringToStringField="
+        + stringToStringField
+        + ", int64ToMessageField="
+        + int64ToMessageField
+        + ", sint32ToEnumField="
+        + sint32ToEnumField
+        + ", uint32ToStringField="
+        + uint32ToStringField
+        + ", fixed64ToDoubleField="
+        + fixed64ToDoubleField
+        + ", boolToBytesField="
+        + boolToBytesField
+        + ", sfixed32ToFloatField="
+        + sfixed32ToFloatField
+        + "]";
+  }
+}
@@ -1,19 +1,31 @@
 package com.google.apps.tiktok.protobuf.experimental.testing;
 
 import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.DoubleArrayList;
+import com.google.apps.tiktok.protobuf.experimental.FloatArrayList;
+import com.google.apps.tiktok.protobuf.experimental.IntArrayList;
+import com.google.apps.tiktok.protobuf.experimental.LongArrayList;
 import com.google.apps.tiktok.protobuf.experimental.descriptor.AnnotationMessageDescriptorFactory;
 import com.google.apps.tiktok.protobuf.experimental.descriptor.FieldDescriptor;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.MapEntryDescriptor;
+import com.google.apps.tiktok.protobuf.experimental.schema.GenericSchemaFactory;
 import com.google.apps.tiktok.protobuf.experimental.schema.Reader;
+import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
+import com.google.apps.tiktok.protobuf.experimental.schema.SchemaFactory;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
- * A reader of fields directly from a {@link TestMessage}.
+ * A reader of fields directly from a {@link TestMessage}. Nested messages are provided as the
+ * objects held by the source message, and merging one copies its fields.
  */
 public final class TestMessageReader implements Reader {
+  private final SchemaFactory schemaFactory = new GenericSchemaFactory();
   private final FieldValue[] fieldValues;
   private int index;
 
@@ -38,6 +50,12 @@ public final class TestMessageReader implements Reader {
     return ++index < fieldValues.length;
   }
 
+  @Override
+  public ByteString readUnknownField(ByteString unknownFields) {
+    // All fields of a TestMessage are known.
+    throw new UnsupportedOperationException();
+  }
+
   @Override
   public double readDouble() {
     return fieldValues[index++].getDouble();
@@ -84,8 +102,8 @@ public final class TestMessageReader implements Reader {
   }
 
   @Override
-  public Object readMessage() {
-    return fieldValues[index++].value;
+  public <T> void mergeMessage(T message, Schema<T> schema) {
+    copyFields(fieldValues[index++].value, message);
   }
 
   @Override
@@ -169,7 +187,7 @@ public final class TestMessageReader implements Reader {
   }
 
   @Override
-  public <T> void readMessageList(List<T> target, Class<T> targetType) {
+  public <T> void readMessageList(List<T> target, Class<T> targetType, Schema<T> schema) {
     target.addAll(fieldValues[index++].<T>getObjectList());
   }
 
@@ -208,6 +226,132 @@ public final class TestMessageReader implements Reader {
     target.addAll(fieldValues[index++].getLongList());
   }
 
+  @Override
+  public double[] readDoubleArray(double[] target) {
+    DoubleArrayList list = DoubleArrayList.wrap(target);
+    list.addAll(DoubleArrayList.wrap((double[]) fieldValues[index++].value));
+    return list.detachArray();
+  }
+
+  @Override
+  public float[] readFloatArray(float[] target) {
+    FloatArrayList list = FloatArrayList.wrap(target);
+    list.addAll(FloatArrayList.wrap((float[]) fieldValues[index++].value));
+    return list.detachArray();
+  }
+
+  @Override
+  public long[] readUInt64Array(long[] target) {
+    LongArrayList list = LongArrayList.wrap(target);
+    list.addAll(LongArrayList.wrap((long[]) fieldValues[index++].value));
+    return list.detachArray();
+  }
+
+  @Override
+  public long[] readInt64Array(long[] target) {
+    LongArrayList list = LongArrayList.wrap(target);
+    list.addAll(LongArrayList.wrap((long[]) fieldValues[index++].value));
+    return list.detachArray();
+  }
+
+  @Override
+  public int[] readInt32Array(int[] target) {
+    IntArrayList list = IntArrayList.wrap(target);
+    list.addAll(IntArrayList.wrap((int[]) fieldValues[index++].value));
+    return list.detachArray();
+  }
+
+  @Override
+  public long[] readFixed64Array(long[] target) {
+    LongArrayList list = LongArrayList.wrap(target);
+    list.addAll(LongArrayList.wrap((long[]) fieldValues[index++].value));
+    return list.detachArray();
+  }
+
+  @Override
+  public int[] readFixed32Array(int[] target) {
+    IntArrayList list = IntArrayList.wrap(target);
+    list.addAll(IntArrayList.wrap((int[]) fieldValues[index++].value));
+    return list.detachArray();
+  }
+
+  @Override
+  public int[] readUInt32Array(int[] target) {
+    IntArrayList list = IntArrayList.wrap(target);
+    list.addAll(IntArrayList.wrap((int[]) fieldValues[index++].value));
+    return list.detachArray();
+  }
+
+  @Override
+  public int[] readSFixed32Array(int[] target) {
+    IntArrayList list = IntArrayList.wrap(target);
+    list.addAll(IntArrayList.wrap((int[]) fieldValues[index++].value));
+    return list.detachArray();
+  }
+
+  @Override
+  public long[] readSFixed64Array(long[] target) {
+    LongArrayList list = LongArrayList.wrap(target);
+    list.addAll(LongArrayList.wrap((long[]) fieldValues[index++].value));
+    return list.detachArray();
+  }
+
+  @Override
+  public int[] readSInt32Array(int[] target) {
+    IntArrayList list = IntArrayList.wrap(target);
+    list.addAll(IntArrayList.wrap((int[]) fieldValues[index++].value));
+    return list.detachArray();
+  }
+
+  @Override
+  public long[] readSInt64Array(long[] target) {
+    LongArrayList list = LongArrayList.wrap(target);
+    list.addAll(LongArrayList.wrap((long[]) fieldValues[index++].value));
+    return list.detachArray();
+  }
+
+  @Override
+  public byte[] readByteArray() {
+    return (byte[]) fieldValues[index++].value;
+  }
+
+  @Override
+  public ByteBuffer readByteBuffer() {
+    return (ByteBuffer) fieldValues[index++].value;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <K, V> void readMap(Map<K, V> target, MapEntryDescriptor mapEntry) {
+    target.putAll((Map<K, V>) fieldValues[index++].value);
+  }
+
+  @Override
+  public <T> Schema<T> schemaFor(Class<T> messageType) {
+    return schemaFactory.createSchema(messageType);
+  }
+
+  @Override
+  public SchemaFactory getSchemaFactory() {
+    return schemaFactory;
+  }
+
+  /**
+   * Merges a nested message held by the source into the target, by copying all of its fields.
+   */
+  private static void copyFields(Object source, Object target) {
+    try {
+      for (Field field : source.getClass().getDeclaredFields()) {
+        if (!Modifier.isStatic(field.getModifiers())) {
+          field.setAccessible(true);
+          field.set(target, field.get(source));
+        }
+      }
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   private static FieldValue[] fieldValuesFor(TestMessage msg) {
     List<FieldValue> fieldValues = new ArrayList<FieldValue>();
     List<FieldDescriptor> protoProperties =
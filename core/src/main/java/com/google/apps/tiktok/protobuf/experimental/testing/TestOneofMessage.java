@@ -0,0 +1,143 @@
+package com.google.apps.tiktok.protobuf.experimental.testing;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.FieldType;
+import com.google.apps.tiktok.protobuf.experimental.ProtoField;
+import com.google.apps.tiktok.protobuf.experimental.ProtoOneof;
+
+/**
+ * A test message with two oneofs, whose members are interleaved with other fields.
+ */
+public final class TestOneofMessage {
+  @ProtoField(fieldNumber = 1, type = FieldType.INT32)
+  public int int32Field;
+
+  @ProtoOneof(
+      caseField = "kindCase",
+      fields = {
+        @ProtoField(fieldNumber = 2, type = FieldType.STRING),
+        @ProtoField(fieldNumber = 3, type = FieldType.SINT64),
+        @ProtoField(fieldNumber = 5, type = FieldType.BOOL),
+        @ProtoField(fieldNumber = 6, type = FieldType.BYTES),
+        @ProtoField(fieldNumber = 7, type = FieldType.ENUM),
+        @ProtoField(
+            fieldNumber = 11,
+            type = FieldType.MESSAGE,
+            messageType = TestMessage.InnerMessage.class)
+      })
+  public Object kind;
+
+  public int kindCase;
+
+  @ProtoField(fieldNumber = 4, type = FieldType.STRING)
+  public String stringField;
+
+  @ProtoOneof(
+      caseField = "numberCase",
+      fields = {
+        @ProtoField(fieldNumber = 8, type = FieldType.DOUBLE),
+        @ProtoField(fieldNumber = 9, type = FieldType.FIXED32),
+        @ProtoField(fieldNumber = 10, type = FieldType.UINT64)
+      })
+  public Object number;
+
+  public int numberCase;
+
+  /**
+   * Creates a new message with all fields set, including a member of each oneof.
+   */
+  public static TestOneofMessage newTestOneofMessage() {
+    TestOneofMessage msg = new TestOneofMessage();
+    msg.int32Field = 1;
+    msg.stringField = "string";
+    msg.setKind(3, -5L);
+    msg.setNumber(9, 7);
+    return msg;
+  }
+
+  /**
+   * Sets the member of the {@code kind} oneof with the given field number.
+   */
+  public void setKind(int fieldNumber, Object value) {
+    kindCase = fieldNumber;
+    kind = value;
+  }
+
+  /**
+   * Sets the member of the {@code number} oneof with the given field number.
+   */
+  public void setNumber(int fieldNumber, Object value) {
+    numberCase = fieldNumber;
+    number = value;
+  }
+
+  /**
+   * Returns one value for each member of the {@code kind} oneof, indexed by field number.
+   */
+  public static Object[] kindValues() {
+    return new Object[] {
+      null,
+      null,
+      "kind",
+      Long.MIN_VALUE,
+      null,
+      true,
+      ByteString.copyFromUtf8("bytes"),
+      3,
+      null,
+      null,
+      null,
+      new TestMessage.InnerMessage(true)
+    };
+  }
+
+  @Override
+  public int hashCode() {
+    int result = 1;
+    result = 31 * result + int32Field;
+    result = 31 * result + kindCase;
+    result = 31 * result + (kind == null ? 0 : kind.hashCode());
+    result = 31 * result + (stringField == null ? 0 : stringField.hashCode());
+    result = 31 * result + numberCase;
+    result = 31 * result + (number == null ? 0 : number.hashCode());
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof TestOneofMessage)) {
+      return false;
+    }
+    TestOneofMessage other = (TestOneofMessage) obj;
+    return int32Field == other.int32Field
+        && kindCase == other.kindCase
+        && equal(kind, other.kind)
+        && equal(stringField, other.stringField)
+        && numberCase == other.numberCase
+        && equal(number, other.number);
+  }
+
+  private static boolean equal(Object a, Object b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  @Override
+  public String toString() {
+    return "TestOneofMessage [int32Field="
+        + int32Field
+        + ", kindCase="
+        + kindCase
+        + ", kind="
+        + kind
+        + ", stringField="
+        + stringField
+        + ", numberCase="
+        + numberCase
+        + ", number="
+        + number
+        + "]";
+  }
+}
@@ -0,0 +1,58 @@
+package com.google.apps.tiktok.protobuf.experimental.testing;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.FieldType;
+import com.google.apps.tiktok.protobuf.experimental.ProtoField;
+import com.google.apps.tiktok.protobuf.experimental.ProtoUnknownFields;
+
+/**
+ * A test message that knows only some of the fields in its input and preserves the others.
+ */
+public final class TestUnknownFieldsMessage {
+  @ProtoField(fieldNumber = 1, type = FieldType.INT32)
+  public int int32Field;
+
+  @ProtoField(fieldNumber = 4, type = FieldType.STRING)
+  public String stringField;
+
+  @ProtoUnknownFields
+  public ByteString unknownFields;
+
+  @Override
+  public int hashCode() {
+    int result = 1;
+    result = 31 * result + int32Field;
+    result = 31 * result + (stringField == null ? 0 : stringField.hashCode());
+    result = 31 * result + (unknownFields == null ? 0 : unknownFields.hashCode());
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof TestUnknownFieldsMessage)) {
+      return false;
+    }
+    TestUnknownFieldsMessage other = (TestUnknownFieldsMessage) obj;
+    return int32Field == other.int32Field
+        && equal(stringField, other.stringField)
+        && equal(unknownFields, other.unknownFields);
+  }
+
+  private static boolean equal(Object a, Object b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  @Override
+  public String toString() {
+    return "TestUnknownFieldsMessage [int32Field="
+        + int32Field
+        + ", stringField="
+        + stringField
+        + ", unknownFields="
+        + unknownFields
+        + "]";
+  }
+}
@@ -1,13 +1,40 @@
 package com.google.apps.tiktok.protobuf.experimental.util;
 
+import static com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList.getInt;
+import static com.google.apps.tiktok.protobuf.experimental.PrimitiveArrayList.getLong;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED32_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.FIXED64_SIZE;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.computeTagSize;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.computeVarint32Size;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.computeVarint64Size;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.encodeZigZag32;
+import static com.google.apps.tiktok.protobuf.experimental.util.WireFormat.encodeZigZag64;
+
+import com.google.apps.tiktok.protobuf.experimental.BooleanArrayList;
 import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.DoubleArrayList;
+import com.google.apps.tiktok.protobuf.experimental.FieldType;
+import com.google.apps.tiktok.protobuf.experimental.FloatArrayList;
+import com.google.apps.tiktok.protobuf.experimental.IntArrayList;
+import com.google.apps.tiktok.protobuf.experimental.IntKeyHashMap;
 import com.google.apps.tiktok.protobuf.experimental.InternalApi;
+import com.google.apps.tiktok.protobuf.experimental.LongArrayList;
+import com.google.apps.tiktok.protobuf.experimental.LongKeyHashMap;
 import com.google.apps.tiktok.protobuf.experimental.descriptor.FieldDescriptor;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.MapEntryDescriptor;
+import com.google.apps.tiktok.protobuf.experimental.schema.LazySchema;
 import com.google.apps.tiktok.protobuf.experimental.schema.Reader;
+import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
+import com.google.apps.tiktok.protobuf.experimental.schema.SizeCalculator;
 import com.google.apps.tiktok.protobuf.experimental.schema.Writer;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
 
 /**
  * Helper methods used by schemas.
@@ -112,9 +139,13 @@ public final class SchemaUtil {
     }
   }
 
-  public static void writeMessage(int fieldNumber, Object value, Writer writer) {
+  /**
+   * Writes a message field with the schema of the declared type of the field.
+   */
+  public static <T> void writeMessage(
+      int fieldNumber, T value, LazySchema<T> schema, Writer writer) {
     if (value != null) {
-      writer.writeMessage(fieldNumber, value);
+      writer.writeMessage(fieldNumber, value, schema.get(writer));
     }
   }
 
@@ -183,7 +214,7 @@ public final class SchemaUtil {
 
   public static void writeSInt32List(
       int fieldNumber, List<Integer> value, Writer writer, boolean packed) {
-    if (value != null) {
+    if (value != null && !value.isEmpty()) {
       writer.writeSInt32List(fieldNumber, value, packed);
     }
   }
@@ -228,9 +259,230 @@ public final class SchemaUtil {
     }
   }
 
-  public static void writeMessageList(int fieldNumber, List<?> value, Writer writer) {
+  /**
+   * Writes a repeated message field with the schema of the declared element type of the field.
+   */
+  public static <T> void writeMessageList(
+      int fieldNumber, List<? extends T> value, LazySchema<T> schema, Writer writer) {
+    if (value != null && !value.isEmpty()) {
+      writer.writeMessageList(fieldNumber, value, schema.get(writer));
+    }
+  }
+
+  public static void writeDoubleArray(int fieldNumber, double[] value, Writer writer) {
+    if (value != null && value.length != 0) {
+      writer.writeDoubleArray(fieldNumber, value);
+    }
+  }
+
+  public static void writeFloatArray(int fieldNumber, float[] value, Writer writer) {
+    if (value != null && value.length != 0) {
+      writer.writeFloatArray(fieldNumber, value);
+    }
+  }
+
+  public static void writeInt64Array(int fieldNumber, long[] value, Writer writer) {
+    if (value != null && value.length != 0) {
+      writer.writeInt64Array(fieldNumber, value);
+    }
+  }
+
+  public static void writeUInt64Array(int fieldNumber, long[] value, Writer writer) {
+    if (value != null && value.length != 0) {
+      writer.writeUInt64Array(fieldNumber, value);
+    }
+  }
+
+  public static void writeSInt64Array(int fieldNumber, long[] value, Writer writer) {
+    if (value != null && value.length != 0) {
+      writer.writeSInt64Array(fieldNumber, value);
+    }
+  }
+
+  public static void writeFixed64Array(int fieldNumber, long[] value, Writer writer) {
+    if (value != null && value.length != 0) {
+      writer.writeFixed64Array(fieldNumber, value);
+    }
+  }
+
+  public static void writeSFixed64Array(int fieldNumber, long[] value, Writer writer) {
+    if (value != null && value.length != 0) {
+      writer.writeSFixed64Array(fieldNumber, value);
+    }
+  }
+
+  public static void writeInt32Array(int fieldNumber, int[] value, Writer writer) {
+    if (value != null && value.length != 0) {
+      writer.writeInt32Array(fieldNumber, value);
+    }
+  }
+
+  public static void writeUInt32Array(int fieldNumber, int[] value, Writer writer) {
+    if (value != null && value.length != 0) {
+      writer.writeUInt32Array(fieldNumber, value);
+    }
+  }
+
+  public static void writeSInt32Array(int fieldNumber, int[] value, Writer writer) {
+    if (value != null && value.length != 0) {
+      writer.writeSInt32Array(fieldNumber, value);
+    }
+  }
+
+  public static void writeFixed32Array(int fieldNumber, int[] value, Writer writer) {
+    if (value != null && value.length != 0) {
+      writer.writeFixed32Array(fieldNumber, value);
+    }
+  }
+
+  public static void writeSFixed32Array(int fieldNumber, int[] value, Writer writer) {
+    if (value != null && value.length != 0) {
+      writer.writeSFixed32Array(fieldNumber, value);
+    }
+  }
+
+  public static void writeByteArray(int fieldNumber, byte[] value, Writer writer) {
+    if (value != null) {
+      writer.writeByteArray(fieldNumber, value);
+    }
+  }
+
+  public static void writeByteBuffer(int fieldNumber, ByteBuffer value, Writer writer) {
+    if (value != null) {
+      writer.writeByteBuffer(fieldNumber, value);
+    }
+  }
+
+  public static void writeMap(
+      int fieldNumber, Map<?, ?> value, MapEntryDescriptor mapEntry, Writer writer) {
     if (value != null && !value.isEmpty()) {
-      writer.writeMessageList(fieldNumber, value);
+      writer.writeMap(fieldNumber, value, mapEntry);
+    }
+  }
+
+  /**
+   * Writes the key or value of a map entry, or the value of a oneof member, held as the boxed
+   * equivalent of its Java type. Unlike the other write methods, the field is written even if it
+   * has the default value.
+   *
+   * @param messageSchema the schema of a {@link FieldType#MESSAGE} value, or {@code null} for
+   *     other types.
+   */
+  public static void writeFieldValue(
+      int fieldNumber,
+      FieldType type,
+      Object value,
+      @Nullable LazySchema<?> messageSchema,
+      Writer writer) {
+    switch (type.getJavaType()) {
+      case INT:
+      case LONG:
+      case ENUM:
+        writeFieldValue(fieldNumber, type, ((Number) value).longValue(), writer);
+        break;
+      case FLOAT:
+        writer.writeFloat(fieldNumber, (Float) value);
+        break;
+      case DOUBLE:
+        writer.writeDouble(fieldNumber, (Double) value);
+        break;
+      case BOOLEAN:
+        writer.writeBool(fieldNumber, (Boolean) value);
+        break;
+      case STRING:
+        writer.writeString(fieldNumber, (String) value);
+        break;
+      case BYTE_STRING:
+        writer.writeBytes(fieldNumber, (ByteString) value);
+        break;
+      case MESSAGE:
+        writeMessageValue(fieldNumber, value, messageSchema, writer);
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported field value type: " + type);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> void writeMessageValue(
+      int fieldNumber, Object value, LazySchema<T> schema, Writer writer) {
+    writer.writeMessage(fieldNumber, (T) value, schema.get(writer));
+  }
+
+  /**
+   * Writes an integral field value without boxing it. Values of 32-bit types are truncated to 32
+   * bits.
+   */
+  public static void writeFieldValue(int fieldNumber, FieldType type, long value, Writer writer) {
+    switch (type) {
+      case INT64:
+        writer.writeInt64(fieldNumber, value);
+        break;
+      case UINT64:
+        writer.writeUInt64(fieldNumber, value);
+        break;
+      case SINT64:
+        writer.writeSInt64(fieldNumber, value);
+        break;
+      case FIXED64:
+        writer.writeFixed64(fieldNumber, value);
+        break;
+      case SFIXED64:
+        writer.writeSFixed64(fieldNumber, value);
+        break;
+      case INT32:
+        writer.writeInt32(fieldNumber, (int) value);
+        break;
+      case UINT32:
+        writer.writeUInt32(fieldNumber, (int) value);
+        break;
+      case SINT32:
+        writer.writeSInt32(fieldNumber, (int) value);
+        break;
+      case FIXED32:
+        writer.writeFixed32(fieldNumber, (int) value);
+        break;
+      case SFIXED32:
+        writer.writeSFixed32(fieldNumber, (int) value);
+        break;
+      case ENUM:
+        writer.writeEnum(fieldNumber, (int) value);
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported field value type: " + type);
+    }
+  }
+
+  /**
+   * Writes a field whose has-bit is set. Unlike the other write methods, a scalar field is written
+   * even if it has the default value, and only a {@code null} reference is skipped. Message fields
+   * are written by {@link #unsafeWriteMessage} with their schema instead.
+   */
+  public static void unsafeWritePresentField(
+      int fieldNumber, FieldType type, Object message, long offset, Writer writer) {
+    switch (type.getJavaType()) {
+      case INT:
+      case ENUM:
+        writeFieldValue(fieldNumber, type, UnsafeUtil.getInt(message, offset), writer);
+        break;
+      case LONG:
+        writeFieldValue(fieldNumber, type, UnsafeUtil.getLong(message, offset), writer);
+        break;
+      case FLOAT:
+        writer.writeFloat(fieldNumber, UnsafeUtil.getFloat(message, offset));
+        break;
+      case DOUBLE:
+        writer.writeDouble(fieldNumber, UnsafeUtil.getDouble(message, offset));
+        break;
+      case BOOLEAN:
+        writer.writeBool(fieldNumber, UnsafeUtil.getBoolean(message, offset));
+        break;
+      default:
+        Object value = UnsafeUtil.getObject(message, offset);
+        if (value != null) {
+          writeFieldValue(fieldNumber, type, value, null, writer);
+        }
+        break;
     }
   }
 
@@ -308,9 +560,11 @@ public final class SchemaUtil {
     writeBytes(fieldNumber, (ByteString) UnsafeUtil.getObject(message, offset), writer);
   }
 
+  @SuppressWarnings("unchecked")
   public static void unsafeWriteMessage(
-      int fieldNumber, Object message, long offset, Writer writer) {
-    writeMessage(fieldNumber, UnsafeUtil.getObject(message, offset), writer);
+      int fieldNumber, Object message, long offset, LazySchema<?> schema, Writer writer) {
+    writeMessage(
+        fieldNumber, UnsafeUtil.getObject(message, offset), (LazySchema<Object>) schema, writer);
   }
 
   @SuppressWarnings("unchecked")
@@ -424,176 +678,1454 @@ public final class SchemaUtil {
 
   @SuppressWarnings("unchecked")
   public static void unsafeWriteMessageList(
+      int fieldNumber, Object message, long offset, LazySchema<?> schema, Writer writer) {
+    writeMessageList(
+        fieldNumber,
+        (List<Object>) UnsafeUtil.getObject(message, offset),
+        (LazySchema<Object>) schema,
+        writer);
+  }
+
+  public static void unsafeWriteDoubleArray(
       int fieldNumber, Object message, long offset, Writer writer) {
-    writeMessageList(fieldNumber, (List<?>) UnsafeUtil.getObject(message, offset), writer);
+    writeDoubleArray(fieldNumber, (double[]) UnsafeUtil.getObject(message, offset), writer);
   }
 
-  public static void unsafeReadDouble(Object message, long offset, Reader reader) {
-    UnsafeUtil.putDouble(message, offset, reader.readDouble());
+  public static void unsafeWriteFloatArray(
+      int fieldNumber, Object message, long offset, Writer writer) {
+    writeFloatArray(fieldNumber, (float[]) UnsafeUtil.getObject(message, offset), writer);
   }
 
-  public static void unsafeReadFloat(Object message, long offset, Reader reader) {
-    UnsafeUtil.putFloat(message, offset, reader.readFloat());
+  public static void unsafeWriteInt64Array(
+      int fieldNumber, Object message, long offset, Writer writer) {
+    writeInt64Array(fieldNumber, (long[]) UnsafeUtil.getObject(message, offset), writer);
   }
 
-  public static void unsafeReadInt64(Object message, long offset, Reader reader) {
-    UnsafeUtil.putLong(message, offset, reader.readInt64());
+  public static void unsafeWriteUInt64Array(
+      int fieldNumber, Object message, long offset, Writer writer) {
+    writeUInt64Array(fieldNumber, (long[]) UnsafeUtil.getObject(message, offset), writer);
   }
 
-  public static void unsafeReadUInt64(Object message, long offset, Reader reader) {
-    UnsafeUtil.putLong(message, offset, reader.readUInt64());
+  public static void unsafeWriteSInt64Array(
+      int fieldNumber, Object message, long offset, Writer writer) {
+    writeSInt64Array(fieldNumber, (long[]) UnsafeUtil.getObject(message, offset), writer);
   }
 
-  public static void unsafeReadSInt64(Object message, long offset, Reader reader) {
-    UnsafeUtil.putLong(message, offset, reader.readSInt64());
+  public static void unsafeWriteFixed64Array(
+      int fieldNumber, Object message, long offset, Writer writer) {
+    writeFixed64Array(fieldNumber, (long[]) UnsafeUtil.getObject(message, offset), writer);
   }
 
-  public static void unsafeReadFixed64(Object message, long offset, Reader reader) {
-    UnsafeUtil.putLong(message, offset, reader.readFixed64());
+  public static void unsafeWriteSFixed64Array(
+      int fieldNumber, Object message, long offset, Writer writer) {
+    writeSFixed64Array(fieldNumber, (long[]) UnsafeUtil.getObject(message, offset), writer);
   }
 
-  public static void unsafeReadSFixed64(Object message, long offset, Reader reader) {
-    UnsafeUtil.putLong(message, offset, reader.readSFixed64());
+  public static void unsafeWriteInt32Array(
+      int fieldNumber, Object message, long offset, Writer writer) {
+    writeInt32Array(fieldNumber, (int[]) UnsafeUtil.getObject(message, offset), writer);
   }
 
-  public static void unsafeReadInt32(Object message, long offset, Reader reader) {
-    UnsafeUtil.putInt(message, offset, reader.readInt32());
+  public static void unsafeWriteUInt32Array(
+      int fieldNumber, Object message, long offset, Writer writer) {
+    writeUInt32Array(fieldNumber, (int[]) UnsafeUtil.getObject(message, offset), writer);
   }
 
-  public static void unsafeReadUInt32(Object message, long offset, Reader reader) {
-    UnsafeUtil.putInt(message, offset, reader.readUInt32());
+  public static void unsafeWriteSInt32Array(
+      int fieldNumber, Object message, long offset, Writer writer) {
+    writeSInt32Array(fieldNumber, (int[]) UnsafeUtil.getObject(message, offset), writer);
   }
 
-  public static void unsafeReadSInt32(Object message, long offset, Reader reader) {
-    UnsafeUtil.putInt(message, offset, reader.readSInt32());
+  public static void unsafeWriteFixed32Array(
+      int fieldNumber, Object message, long offset, Writer writer) {
+    writeFixed32Array(fieldNumber, (int[]) UnsafeUtil.getObject(message, offset), writer);
   }
 
-  public static void unsafeReadFixed32(Object message, long offset, Reader reader) {
-    UnsafeUtil.putInt(message, offset, reader.readFixed32());
+  public static void unsafeWriteSFixed32Array(
+      int fieldNumber, Object message, long offset, Writer writer) {
+    writeSFixed32Array(fieldNumber, (int[]) UnsafeUtil.getObject(message, offset), writer);
   }
 
-  public static void unsafeReadSFixed32(Object message, long offset, Reader reader) {
-    UnsafeUtil.putInt(message, offset, reader.readSFixed32());
+  public static void unsafeWriteByteArray(
+      int fieldNumber, Object message, long offset, Writer writer) {
+    writeByteArray(fieldNumber, (byte[]) UnsafeUtil.getObject(message, offset), writer);
   }
 
-  public static void unsafeReadEnum(Object message, long offset, Reader reader) {
-    UnsafeUtil.putInt(message, offset, reader.readEnum());
+  public static void unsafeWriteByteBuffer(
+      int fieldNumber, Object message, long offset, Writer writer) {
+    writeByteBuffer(fieldNumber, (ByteBuffer) UnsafeUtil.getObject(message, offset), writer);
   }
 
-  public static void unsafeReadBool(Object message, long offset, Reader reader) {
-    UnsafeUtil.putBoolean(message, offset, reader.readBool());
+  public static void unsafeWriteMap(
+      int fieldNumber, Object message, long offset, MapEntryDescriptor mapEntry, Writer writer) {
+    writeMap(fieldNumber, (Map<?, ?>) UnsafeUtil.getObject(message, offset), mapEntry, writer);
   }
 
-  public static void unsafeReadString(Object message, long offset, Reader reader) {
-    UnsafeUtil.putObject(message, offset, reader.readString());
+  public static void writeUnknownFields(ByteString value, Writer writer) {
+    if (value != null && !value.isEmpty()) {
+      writer.writeUnknownFields(value);
+    }
   }
 
-  public static void unsafeReadBytes(Object message, long offset, Reader reader) {
-    UnsafeUtil.putObject(message, offset, reader.readBytes());
+  public static void unsafeWriteUnknownFields(Object message, long offset, Writer writer) {
+    writeUnknownFields((ByteString) UnsafeUtil.getObject(message, offset), writer);
   }
 
-  public static void unsafeReadMessage(Object message, long offset, Reader reader) {
-    UnsafeUtil.putObject(message, offset, reader.readMessage());
+  public static int computeDoubleSize(
+      int fieldNumber, double value, SizeCalculator sizeCalculator) {
+    return Double.compare(value, 0.0) != 0 ? computeTagSize(fieldNumber) + FIXED64_SIZE : 0;
   }
 
-  public static void unsafeReadDoubleList(
-      Object message, long offset, Reader reader, boolean packed) {
-    reader.readDoubleList(SchemaUtil.<Double>getOrCreateList(message, offset), packed);
+  public static int computeFloatSize(int fieldNumber, float value, SizeCalculator sizeCalculator) {
+    return Float.compare(value, 0.0f) != 0 ? computeTagSize(fieldNumber) + FIXED32_SIZE : 0;
   }
 
-  public static void unsafeReadFloatList(
-      Object message, long offset, Reader reader, boolean packed) {
-    reader.readFloatList(SchemaUtil.<Float>getOrCreateList(message, offset), packed);
+  public static int computeInt64Size(int fieldNumber, long value, SizeCalculator sizeCalculator) {
+    return value != 0 ? computeTagSize(fieldNumber) + computeVarint64Size(value) : 0;
   }
 
-  public static void unsafeReadInt64List(
-      Object message, long offset, Reader reader, boolean packed) {
-    reader.readInt64List(SchemaUtil.<Long>getOrCreateList(message, offset), packed);
+  public static int computeUInt64Size(int fieldNumber, long value, SizeCalculator sizeCalculator) {
+    return value != 0 ? computeTagSize(fieldNumber) + computeVarint64Size(value) : 0;
   }
 
-  public static void unsafeReadUInt64List(
-      Object message, long offset, Reader reader, boolean packed) {
-    reader.readUInt64List(SchemaUtil.<Long>getOrCreateList(message, offset), packed);
+  public static int computeSInt64Size(int fieldNumber, long value, SizeCalculator sizeCalculator) {
+    return value != 0
+        ? computeTagSize(fieldNumber) + computeVarint64Size(encodeZigZag64(value))
+        : 0;
   }
 
-  public static void unsafeReadSInt64List(
-      Object message, long offset, Reader reader, boolean packed) {
-    reader.readSInt64List(SchemaUtil.<Long>getOrCreateList(message, offset), packed);
+  public static int computeFixed64Size(int fieldNumber, long value, SizeCalculator sizeCalculator) {
+    return value != 0 ? computeTagSize(fieldNumber) + FIXED64_SIZE : 0;
   }
 
-  public static void unsafeReadFixed64List(
-      Object message, long offset, Reader reader, boolean packed) {
-    reader.readFixed64List(SchemaUtil.<Long>getOrCreateList(message, offset), packed);
+  public static int computeSFixed64Size(
+      int fieldNumber, long value, SizeCalculator sizeCalculator) {
+    return value != 0 ? computeTagSize(fieldNumber) + FIXED64_SIZE : 0;
   }
 
-  public static void unsafeReadSFixed64List(
-      Object message, long offset, Reader reader, boolean packed) {
-    reader.readSFixed64List(SchemaUtil.<Long>getOrCreateList(message, offset), packed);
+  public static int computeInt32Size(int fieldNumber, int value, SizeCalculator sizeCalculator) {
+    return value != 0 ? computeTagSize(fieldNumber) + WireFormat.computeInt32Size(value) : 0;
   }
 
-  public static void unsafeReadInt32List(
-      Object message, long offset, Reader reader, boolean packed) {
-    reader.readInt32List(SchemaUtil.<Integer>getOrCreateList(message, offset), packed);
+  public static int computeUInt32Size(int fieldNumber, int value, SizeCalculator sizeCalculator) {
+    return value != 0 ? computeTagSize(fieldNumber) + computeVarint32Size(value) : 0;
   }
 
-  public static void unsafeReadUInt32List(
-      Object message, long offset, Reader reader, boolean packed) {
-    reader.readUInt32List(SchemaUtil.<Integer>getOrCreateList(message, offset), packed);
+  public static int computeSInt32Size(int fieldNumber, int value, SizeCalculator sizeCalculator) {
+    return value != 0
+        ? computeTagSize(fieldNumber) + computeVarint32Size(encodeZigZag32(value))
+        : 0;
   }
 
-  public static void unsafeReadSInt32List(
-      Object message, long offset, Reader reader, boolean packed) {
-    reader.readSInt32List(SchemaUtil.<Integer>getOrCreateList(message, offset), packed);
+  public static int computeFixed32Size(int fieldNumber, int value, SizeCalculator sizeCalculator) {
+    return value != 0 ? computeTagSize(fieldNumber) + FIXED32_SIZE : 0;
   }
 
-  public static void unsafeReadFixed32List(
-      Object message, long offset, Reader reader, boolean packed) {
-    reader.readFixed32List(SchemaUtil.<Integer>getOrCreateList(message, offset), packed);
+  public static int computeSFixed32Size(int fieldNumber, int value, SizeCalculator sizeCalculator) {
+    return value != 0 ? computeTagSize(fieldNumber) + FIXED32_SIZE : 0;
   }
 
-  public static void unsafeReadSFixed32List(
-      Object message, long offset, Reader reader, boolean packed) {
-    reader.readSFixed32List(SchemaUtil.<Integer>getOrCreateList(message, offset), packed);
+  public static int computeEnumSize(int fieldNumber, int value, SizeCalculator sizeCalculator) {
+    return value != 0 ? computeTagSize(fieldNumber) + WireFormat.computeInt32Size(value) : 0;
   }
 
-  public static void unsafeReadEnumList(
-      Object message, long offset, Reader reader, boolean packed) {
-    reader.readEnumList(SchemaUtil.<Integer>getOrCreateList(message, offset), packed);
+  public static int computeBoolSize(int fieldNumber, boolean value, SizeCalculator sizeCalculator) {
+    return value ? computeTagSize(fieldNumber) + 1 : 0;
   }
 
-  public static void unsafeReadBoolList(
-      Object message, long offset, Reader reader, boolean packed) {
-    reader.readBoolList(SchemaUtil.<Boolean>getOrCreateList(message, offset), packed);
+  public static int computeStringSize(
+      int fieldNumber, String value, SizeCalculator sizeCalculator) {
+    return value != null
+        ? computeLengthDelimitedFieldSize(fieldNumber, Utf8.encodedLength(value))
+        : 0;
   }
 
-  public static void unsafeReadStringList(Object message, long offset, Reader reader) {
-    reader.readStringList(SchemaUtil.<String>getOrCreateList(message, offset));
+  public static int computeBytesSize(
+      int fieldNumber, ByteString value, SizeCalculator sizeCalculator) {
+    return value != null ? computeLengthDelimitedFieldSize(fieldNumber, value.size()) : 0;
   }
 
-  public static void unsafeReadBytesList(Object message, long offset, Reader reader) {
-    reader.readBytesList(SchemaUtil.<ByteString>getOrCreateList(message, offset));
+  public static <T> int computeMessageSize(
+      int fieldNumber, T value, LazySchema<T> schema, SizeCalculator sizeCalculator) {
+    return value != null
+        ? computeLengthDelimitedFieldSize(
+            fieldNumber, sizeCalculator.getMessageSize(value, schema.get(sizeCalculator)))
+        : 0;
   }
 
-  public static <T> void unsafeReadMessageList(
-      Object message, long offset, Reader reader, Class<T> targetType) {
-    reader.readMessageList(SchemaUtil.<T>getOrCreateList(message, offset), targetType);
+  public static int computeDoubleListSize(
+      int fieldNumber, List<Double> value, SizeCalculator sizeCalculator, boolean packed) {
+    if (value == null || value.isEmpty()) {
+      return 0;
+    }
+    final int dataSize = value.size() * FIXED64_SIZE;
+    return packed
+        ? computeLengthDelimitedFieldSize(fieldNumber, dataSize)
+        : value.size() * computeTagSize(fieldNumber) + dataSize;
   }
 
-  public static <L> List<L> getOrCreateList(List<L> list) {
-    if (list == null) {
-      list = new ArrayList<L>();
+  public static int computeFloatListSize(
+      int fieldNumber, List<Float> value, SizeCalculator sizeCalculator, boolean packed) {
+    if (value == null || value.isEmpty()) {
+      return 0;
     }
-    return list;
+    final int dataSize = value.size() * FIXED32_SIZE;
+    return packed
+        ? computeLengthDelimitedFieldSize(fieldNumber, dataSize)
+        : value.size() * computeTagSize(fieldNumber) + dataSize;
   }
 
-  private static <L> List<L> getOrCreateList(Object message, long offset) {
-    @SuppressWarnings("unchecked")
-    List<L> list = (List<L>) UnsafeUtil.getObject(message, offset);
-    if (list == null) {
-      list = new ArrayList<L>();
-      UnsafeUtil.putObject(message, offset, list);
+  public static int computeInt64ListSize(
+      int fieldNumber, List<Long> value, SizeCalculator sizeCalculator, boolean packed) {
+    if (value == null || value.isEmpty()) {
+      return 0;
+    }
+    int dataSize = 0;
+    for (int i = 0; i < value.size(); ++i) {
+      dataSize += computeVarint64Size(getLong(value, i));
+    }
+    return packed
+        ? computeLengthDelimitedFieldSize(fieldNumber, dataSize)
+        : value.size() * computeTagSize(fieldNumber) + dataSize;
+  }
+
+  public static int computeUInt64ListSize(
+      int fieldNumber, List<Long> value, SizeCalculator sizeCalculator, boolean packed) {
+    if (value == null || value.isEmpty()) {
+      return 0;
+    }
+    int dataSize = 0;
+    for (int i = 0; i < value.size(); ++i) {
+      dataSize += computeVarint64Size(getLong(value, i));
+    }
+    return packed
+        ? computeLengthDelimitedFieldSize(fieldNumber, dataSize)
+        : value.size() * computeTagSize(fieldNumber) + dataSize;
+  }
+
+  public static int computeSInt64ListSize(
+      int fieldNumber, List<Long> value, SizeCalculator sizeCalculator, boolean packed) {
+    if (value == null || value.isEmpty()) {
+      return 0;
+    }
+    int dataSize = 0;
+    for (int i = 0; i < value.size(); ++i) {
+      dataSize += computeVarint64Size(encodeZigZag64(getLong(value, i)));
+    }
+    return packed
+        ? computeLengthDelimitedFieldSize(fieldNumber, dataSize)
+        : value.size() * computeTagSize(fieldNumber) + dataSize;
+  }
+
+  public static int computeFixed64ListSize(
+      int fieldNumber, List<Long> value, SizeCalculator sizeCalculator, boolean packed) {
+    if (value == null || value.isEmpty()) {
+      return 0;
+    }
+    final int dataSize = value.size() * FIXED64_SIZE;
+    return packed
+        ? computeLengthDelimitedFieldSize(fieldNumber, dataSize)
+        : value.size() * computeTagSize(fieldNumber) + dataSize;
+  }
+
+  public static int computeSFixed64ListSize(
+      int fieldNumber, List<Long> value, SizeCalculator sizeCalculator, boolean packed) {
+    if (value == null || value.isEmpty()) {
+      return 0;
+    }
+    final int dataSize = value.size() * FIXED64_SIZE;
+    return packed
+        ? computeLengthDelimitedFieldSize(fieldNumber, dataSize)
+        : value.size() * computeTagSize(fieldNumber) + dataSize;
+  }
+
+  public static int computeInt32ListSize(
+      int fieldNumber, List<Integer> value, SizeCalculator sizeCalculator, boolean packed) {
+    if (value == null || value.isEmpty()) {
+      return 0;
+    }
+    int dataSize = 0;
+    for (int i = 0; i < value.size(); ++i) {
+      dataSize += WireFormat.computeInt32Size(getInt(value, i));
+    }
+    return packed
+        ? computeLengthDelimitedFieldSize(fieldNumber, dataSize)
+        : value.size() * computeTagSize(fieldNumber) + dataSize;
+  }
+
+  public static int computeUInt32ListSize(
+      int fieldNumber, List<Integer> value, SizeCalculator sizeCalculator, boolean packed) {
+    if (value == null || value.isEmpty()) {
+      return 0;
+    }
+    int dataSize = 0;
+    for (int i = 0; i < value.size(); ++i) {
+      dataSize += computeVarint32Size(getInt(value, i));
+    }
+    return packed
+        ? computeLengthDelimitedFieldSize(fieldNumber, dataSize)
+        : value.size() * computeTagSize(fieldNumber) + dataSize;
+  }
+
+  public static int computeSInt32ListSize(
+      int fieldNumber, List<Integer> value, SizeCalculator sizeCalculator, boolean packed) {
+    if (value == null || value.isEmpty()) {
+      return 0;
+    }
+    int dataSize = 0;
+    for (int i = 0; i < value.size(); ++i) {
+      dataSize += computeVarint32Size(encodeZigZag32(getInt(value, i)));
+    }
+    return packed
+        ? computeLengthDelimitedFieldSize(fieldNumber, dataSize)
+        : value.size() * computeTagSize(fieldNumber) + dataSize;
+  }
+
+  public static int computeFixed32ListSize(
+      int fieldNumber, List<Integer> value, SizeCalculator sizeCalculator, boolean packed) {
+    if (value == null || value.isEmpty()) {
+      return 0;
+    }
+    final int dataSize = value.size() * FIXED32_SIZE;
+    return packed
+        ? computeLengthDelimitedFieldSize(fieldNumber, dataSize)
+        : value.size() * computeTagSize(fieldNumber) + dataSize;
+  }
+
+  public static int computeSFixed32ListSize(
+      int fieldNumber, List<Integer> value, SizeCalculator sizeCalculator, boolean packed) {
+    if (value == null || value.isEmpty()) {
+      return 0;
+    }
+    final int dataSize = value.size() * FIXED32_SIZE;
+    return packed
+        ? computeLengthDelimitedFieldSize(fieldNumber, dataSize)
+        : value.size() * computeTagSize(fieldNumber) + dataSize;
+  }
+
+  public static int computeEnumListSize(
+      int fieldNumber, List<Integer> value, SizeCalculator sizeCalculator, boolean packed) {
+    if (value == null || value.isEmpty()) {
+      return 0;
+    }
+    int dataSize = 0;
+    for (int i = 0; i < value.size(); ++i) {
+      dataSize += WireFormat.computeInt32Size(getInt(value, i));
+    }
+    return packed
+        ? computeLengthDelimitedFieldSize(fieldNumber, dataSize)
+        : value.size() * computeTagSize(fieldNumber) + dataSize;
+  }
+
+  public static int computeBoolListSize(
+      int fieldNumber, List<Boolean> value, SizeCalculator sizeCalculator, boolean packed) {
+    if (value == null || value.isEmpty()) {
+      return 0;
+    }
+    final int dataSize = value.size() * 1;
+    return packed
+        ? computeLengthDelimitedFieldSize(fieldNumber, dataSize)
+        : value.size() * computeTagSize(fieldNumber) + dataSize;
+  }
+
+  public static int computeStringListSize(
+      int fieldNumber, List<String> value, SizeCalculator sizeCalculator) {
+    if (value == null) {
+      return 0;
+    }
+    int size = value.size() * computeTagSize(fieldNumber);
+    for (int i = 0; i < value.size(); ++i) {
+      size += computeLengthDelimitedSize(Utf8.encodedLength(value.get(i)));
+    }
+    return size;
+  }
+
+  public static int computeBytesListSize(
+      int fieldNumber, List<ByteString> value, SizeCalculator sizeCalculator) {
+    if (value == null) {
+      return 0;
+    }
+    int size = value.size() * computeTagSize(fieldNumber);
+    for (int i = 0; i < value.size(); ++i) {
+      size += computeLengthDelimitedSize(value.get(i).size());
+    }
+    return size;
+  }
+
+  public static <T> int computeMessageListSize(
+      int fieldNumber,
+      List<? extends T> value,
+      LazySchema<T> schema,
+      SizeCalculator sizeCalculator) {
+    if (value == null || value.isEmpty()) {
+      return 0;
+    }
+    final Schema<T> messageSchema = schema.get(sizeCalculator);
+    int size = value.size() * computeTagSize(fieldNumber);
+    for (int i = 0; i < value.size(); ++i) {
+      size +=
+          computeLengthDelimitedSize(sizeCalculator.getMessageSize(value.get(i), messageSchema));
+    }
+    return size;
+  }
+
+  public static int computeDoubleArraySize(
+      int fieldNumber, double[] value, SizeCalculator sizeCalculator) {
+    return computeDoubleListSize(fieldNumber, DoubleArrayList.wrap(value), sizeCalculator, true);
+  }
+
+  public static int computeFloatArraySize(
+      int fieldNumber, float[] value, SizeCalculator sizeCalculator) {
+    return computeFloatListSize(fieldNumber, FloatArrayList.wrap(value), sizeCalculator, true);
+  }
+
+  public static int computeInt64ArraySize(
+      int fieldNumber, long[] value, SizeCalculator sizeCalculator) {
+    return computeInt64ListSize(fieldNumber, LongArrayList.wrap(value), sizeCalculator, true);
+  }
+
+  public static int computeUInt64ArraySize(
+      int fieldNumber, long[] value, SizeCalculator sizeCalculator) {
+    return computeUInt64ListSize(fieldNumber, LongArrayList.wrap(value), sizeCalculator, true);
+  }
+
+  public static int computeSInt64ArraySize(
+      int fieldNumber, long[] value, SizeCalculator sizeCalculator) {
+    return computeSInt64ListSize(fieldNumber, LongArrayList.wrap(value), sizeCalculator, true);
+  }
+
+  public static int computeFixed64ArraySize(
+      int fieldNumber, long[] value, SizeCalculator sizeCalculator) {
+    return computeFixed64ListSize(fieldNumber, LongArrayList.wrap(value), sizeCalculator, true);
+  }
+
+  public static int computeSFixed64ArraySize(
+      int fieldNumber, long[] value, SizeCalculator sizeCalculator) {
+    return computeSFixed64ListSize(fieldNumber, LongArrayList.wrap(value), sizeCalculator, true);
+  }
+
+  public static int computeInt32ArraySize(
+      int fieldNumber, int[] value, SizeCalculator sizeCalculator) {
+    return computeInt32ListSize(fieldNumber, IntArrayList.wrap(value), sizeCalculator, true);
+  }
+
+  public static int computeUInt32ArraySize(
+      int fieldNumber, int[] value, SizeCalculator sizeCalculator) {
+    return computeUInt32ListSize(fieldNumber, IntArrayList.wrap(value), sizeCalculator, true);
+  }
+
+  public static int computeSInt32ArraySize(
+      int fieldNumber, int[] value, SizeCalculator sizeCalculator) {
+    return computeSInt32ListSize(fieldNumber, IntArrayList.wrap(value), sizeCalculator, true);
+  }
+
+  public static int computeFixed32ArraySize(
+      int fieldNumber, int[] value, SizeCalculator sizeCalculator) {
+    return computeFixed32ListSize(fieldNumber, IntArrayList.wrap(value), sizeCalculator, true);
+  }
+
+  public static int computeSFixed32ArraySize(
+      int fieldNumber, int[] value, SizeCalculator sizeCalculator) {
+    return computeSFixed32ListSize(fieldNumber, IntArrayList.wrap(value), sizeCalculator, true);
+  }
+
+  public static int computeByteArraySize(
+      int fieldNumber, byte[] value, SizeCalculator sizeCalculator) {
+    return value != null ? computeLengthDelimitedFieldSize(fieldNumber, value.length) : 0;
+  }
+
+  public static int computeByteBufferSize(
+      int fieldNumber, ByteBuffer value, SizeCalculator sizeCalculator) {
+    return value != null ? computeLengthDelimitedFieldSize(fieldNumber, value.remaining()) : 0;
+  }
+
+  public static int computeMapSize(
+      int fieldNumber,
+      Map<?, ?> value,
+      MapEntryDescriptor mapEntry,
+      SizeCalculator sizeCalculator) {
+    if (value == null || value.isEmpty()) {
+      return 0;
+    }
+    int size = value.size() * computeTagSize(fieldNumber);
+    if (value instanceof IntKeyHashMap) {
+      // Visit the entries by slot so that the keys need not be boxed.
+      final IntKeyHashMap<?> map = (IntKeyHashMap<?>) value;
+      for (int slot = map.nextSlot(0); slot >= 0; slot = map.nextSlot(slot + 1)) {
+        size += computeLengthDelimitedSize(
+            computeMapEntrySize(mapEntry, map.keyAt(slot), map.valueAt(slot), sizeCalculator));
+      }
+    } else if (value instanceof LongKeyHashMap) {
+      final LongKeyHashMap<?> map = (LongKeyHashMap<?>) value;
+      for (int slot = map.nextSlot(0); slot >= 0; slot = map.nextSlot(slot + 1)) {
+        size += computeLengthDelimitedSize(
+            computeMapEntrySize(mapEntry, map.keyAt(slot), map.valueAt(slot), sizeCalculator));
+      }
+    } else {
+      for (Map.Entry<?, ?> entry : value.entrySet()) {
+        size += computeLengthDelimitedSize(
+            computeMapEntrySize(mapEntry, entry.getKey(), entry.getValue(), sizeCalculator));
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Returns the size of the contents of a map entry, excluding its tag and length prefix.
+   */
+  public static int computeMapEntrySize(
+      MapEntryDescriptor mapEntry, Object key, Object value, SizeCalculator sizeCalculator) {
+    return computeFieldValueSize(1, mapEntry.getKeyType(), key, null, sizeCalculator)
+        + computeFieldValueSize(
+            2, mapEntry.getValueType(), value, mapEntry.getValueSchema(), sizeCalculator);
+  }
+
+  /**
+   * Returns the size of the contents of a map entry with an integral key, without boxing the key.
+   */
+  public static int computeMapEntrySize(
+      MapEntryDescriptor mapEntry, long key, Object value, SizeCalculator sizeCalculator) {
+    return computeFieldValueSize(1, mapEntry.getKeyType(), key)
+        + computeFieldValueSize(
+            2, mapEntry.getValueType(), value, mapEntry.getValueSchema(), sizeCalculator);
+  }
+
+  /**
+   * Returns the size of a field value written by
+   * {@link #writeFieldValue(int, FieldType, Object, LazySchema, Writer)}, including its tag.
+   */
+  public static int computeFieldValueSize(
+      int fieldNumber,
+      FieldType type,
+      Object value,
+      @Nullable LazySchema<?> messageSchema,
+      SizeCalculator sizeCalculator) {
+    switch (type.getJavaType()) {
+      case INT:
+      case LONG:
+      case ENUM:
+        return computeFieldValueSize(fieldNumber, type, ((Number) value).longValue());
+      case FLOAT:
+        return computeTagSize(fieldNumber) + FIXED32_SIZE;
+      case DOUBLE:
+        return computeTagSize(fieldNumber) + FIXED64_SIZE;
+      case BOOLEAN:
+        return computeTagSize(fieldNumber) + 1;
+      case STRING:
+        return computeLengthDelimitedFieldSize(fieldNumber, Utf8.encodedLength((String) value));
+      case BYTE_STRING:
+        return computeLengthDelimitedFieldSize(fieldNumber, ((ByteString) value).size());
+      case MESSAGE:
+        return computeLengthDelimitedFieldSize(
+            fieldNumber, computeMessageValueSize(value, messageSchema, sizeCalculator));
+      default:
+        throw new IllegalArgumentException("Unsupported field value type: " + type);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> int computeMessageValueSize(
+      Object value, LazySchema<T> schema, SizeCalculator sizeCalculator) {
+    return sizeCalculator.getMessageSize((T) value, schema.get(sizeCalculator));
+  }
+
+  /**
+   * Returns the size of an integral field value written by
+   * {@link #writeFieldValue(int, FieldType, long, Writer)}, including its tag.
+   */
+  public static int computeFieldValueSize(int fieldNumber, FieldType type, long value) {
+    final int tagSize = computeTagSize(fieldNumber);
+    switch (type) {
+      case INT64:
+      case UINT64:
+        return tagSize + computeVarint64Size(value);
+      case SINT64:
+        return tagSize + computeVarint64Size(encodeZigZag64(value));
+      case FIXED64:
+      case SFIXED64:
+        return tagSize + FIXED64_SIZE;
+      case INT32:
+      case ENUM:
+        return tagSize + WireFormat.computeInt32Size((int) value);
+      case UINT32:
+        return tagSize + computeVarint32Size((int) value);
+      case SINT32:
+        return tagSize + computeVarint32Size(encodeZigZag32((int) value));
+      case FIXED32:
+      case SFIXED32:
+        return tagSize + FIXED32_SIZE;
+      default:
+        throw new IllegalArgumentException("Unsupported field value type: " + type);
+    }
+  }
+
+  /**
+   * Returns the size of a field written by
+   * {@link #unsafeWritePresentField(int, FieldType, Object, long, Writer)}.
+   */
+  public static int unsafeComputePresentFieldSize(
+      int fieldNumber,
+      FieldType type,
+      Object message,
+      long offset,
+      SizeCalculator sizeCalculator) {
+    switch (type.getJavaType()) {
+      case INT:
+      case ENUM:
+        return computeFieldValueSize(fieldNumber, type, UnsafeUtil.getInt(message, offset));
+      case LONG:
+        return computeFieldValueSize(fieldNumber, type, UnsafeUtil.getLong(message, offset));
+      case FLOAT:
+        return computeTagSize(fieldNumber) + FIXED32_SIZE;
+      case DOUBLE:
+        return computeTagSize(fieldNumber) + FIXED64_SIZE;
+      case BOOLEAN:
+        return computeTagSize(fieldNumber) + 1;
+      default:
+        Object value = UnsafeUtil.getObject(message, offset);
+        return value != null
+            ? computeFieldValueSize(fieldNumber, type, value, null, sizeCalculator)
+            : 0;
+    }
+  }
+
+  public static int unsafeComputeDoubleSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeDoubleSize(fieldNumber, UnsafeUtil.getDouble(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeFloatSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeFloatSize(fieldNumber, UnsafeUtil.getFloat(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeInt64Size(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeInt64Size(fieldNumber, UnsafeUtil.getLong(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeUInt64Size(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeUInt64Size(fieldNumber, UnsafeUtil.getLong(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeSInt64Size(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeSInt64Size(fieldNumber, UnsafeUtil.getLong(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeFixed64Size(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeFixed64Size(fieldNumber, UnsafeUtil.getLong(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeSFixed64Size(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeSFixed64Size(fieldNumber, UnsafeUtil.getLong(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeInt32Size(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeInt32Size(fieldNumber, UnsafeUtil.getInt(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeUInt32Size(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeUInt32Size(fieldNumber, UnsafeUtil.getInt(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeSInt32Size(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeSInt32Size(fieldNumber, UnsafeUtil.getInt(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeFixed32Size(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeFixed32Size(fieldNumber, UnsafeUtil.getInt(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeSFixed32Size(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeSFixed32Size(fieldNumber, UnsafeUtil.getInt(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeEnumSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeEnumSize(fieldNumber, UnsafeUtil.getInt(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeBoolSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeBoolSize(fieldNumber, UnsafeUtil.getBoolean(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeStringSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeStringSize(
+        fieldNumber, (String) UnsafeUtil.getObject(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeBytesSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeBytesSize(
+        fieldNumber, (ByteString) UnsafeUtil.getObject(message, offset), sizeCalculator);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static int unsafeComputeMessageSize(
+      int fieldNumber,
+      Object message,
+      long offset,
+      LazySchema<?> schema,
+      SizeCalculator sizeCalculator) {
+    return computeMessageSize(
+        fieldNumber,
+        UnsafeUtil.getObject(message, offset),
+        (LazySchema<Object>) schema,
+        sizeCalculator);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static int unsafeComputeDoubleListSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator, boolean packed) {
+    return computeDoubleListSize(
+        fieldNumber, (List<Double>) UnsafeUtil.getObject(message, offset), sizeCalculator, packed);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static int unsafeComputeFloatListSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator, boolean packed) {
+    return computeFloatListSize(
+        fieldNumber, (List<Float>) UnsafeUtil.getObject(message, offset), sizeCalculator, packed);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static int unsafeComputeInt64ListSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator, boolean packed) {
+    return computeInt64ListSize(
+        fieldNumber, (List<Long>) UnsafeUtil.getObject(message, offset), sizeCalculator, packed);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static int unsafeComputeUInt64ListSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator, boolean packed) {
+    return computeUInt64ListSize(
+        fieldNumber, (List<Long>) UnsafeUtil.getObject(message, offset), sizeCalculator, packed);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static int unsafeComputeSInt64ListSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator, boolean packed) {
+    return computeSInt64ListSize(
+        fieldNumber, (List<Long>) UnsafeUtil.getObject(message, offset), sizeCalculator, packed);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static int unsafeComputeFixed64ListSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator, boolean packed) {
+    return computeFixed64ListSize(
+        fieldNumber, (List<Long>) UnsafeUtil.getObject(message, offset), sizeCalculator, packed);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static int unsafeComputeSFixed64ListSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator, boolean packed) {
+    return computeSFixed64ListSize(
+        fieldNumber, (List<Long>) UnsafeUtil.getObject(message, offset), sizeCalculator, packed);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static int unsafeComputeInt32ListSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator, boolean packed) {
+    return computeInt32ListSize(
+        fieldNumber, (List<Integer>) UnsafeUtil.getObject(message, offset), sizeCalculator, packed);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static int unsafeComputeUInt32ListSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator, boolean packed) {
+    return computeUInt32ListSize(
+        fieldNumber, (List<Integer>) UnsafeUtil.getObject(message, offset), sizeCalculator, packed);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static int unsafeComputeSInt32ListSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator, boolean packed) {
+    return computeSInt32ListSize(
+        fieldNumber, (List<Integer>) UnsafeUtil.getObject(message, offset), sizeCalculator, packed);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static int unsafeComputeFixed32ListSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator, boolean packed) {
+    return computeFixed32ListSize(
+        fieldNumber, (List<Integer>) UnsafeUtil.getObject(message, offset), sizeCalculator, packed);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static int unsafeComputeSFixed32ListSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator, boolean packed) {
+    return computeSFixed32ListSize(
+        fieldNumber, (List<Integer>) UnsafeUtil.getObject(message, offset), sizeCalculator, packed);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static int unsafeComputeEnumListSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator, boolean packed) {
+    return computeEnumListSize(
+        fieldNumber, (List<Integer>) UnsafeUtil.getObject(message, offset), sizeCalculator, packed);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static int unsafeComputeBoolListSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator, boolean packed) {
+    return computeBoolListSize(
+        fieldNumber, (List<Boolean>) UnsafeUtil.getObject(message, offset), sizeCalculator, packed);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static int unsafeComputeStringListSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeStringListSize(
+        fieldNumber, (List<String>) UnsafeUtil.getObject(message, offset), sizeCalculator);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static int unsafeComputeBytesListSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeBytesListSize(
+        fieldNumber, (List<ByteString>) UnsafeUtil.getObject(message, offset), sizeCalculator);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static int unsafeComputeMessageListSize(
+      int fieldNumber,
+      Object message,
+      long offset,
+      LazySchema<?> schema,
+      SizeCalculator sizeCalculator) {
+    return computeMessageListSize(
+        fieldNumber,
+        (List<Object>) UnsafeUtil.getObject(message, offset),
+        (LazySchema<Object>) schema,
+        sizeCalculator);
+  }
+
+  public static int unsafeComputeDoubleArraySize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeDoubleArraySize(
+        fieldNumber, (double[]) UnsafeUtil.getObject(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeFloatArraySize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeFloatArraySize(
+        fieldNumber, (float[]) UnsafeUtil.getObject(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeInt64ArraySize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeInt64ArraySize(
+        fieldNumber, (long[]) UnsafeUtil.getObject(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeUInt64ArraySize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeUInt64ArraySize(
+        fieldNumber, (long[]) UnsafeUtil.getObject(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeSInt64ArraySize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeSInt64ArraySize(
+        fieldNumber, (long[]) UnsafeUtil.getObject(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeFixed64ArraySize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeFixed64ArraySize(
+        fieldNumber, (long[]) UnsafeUtil.getObject(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeSFixed64ArraySize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeSFixed64ArraySize(
+        fieldNumber, (long[]) UnsafeUtil.getObject(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeInt32ArraySize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeInt32ArraySize(
+        fieldNumber, (int[]) UnsafeUtil.getObject(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeUInt32ArraySize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeUInt32ArraySize(
+        fieldNumber, (int[]) UnsafeUtil.getObject(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeSInt32ArraySize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeSInt32ArraySize(
+        fieldNumber, (int[]) UnsafeUtil.getObject(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeFixed32ArraySize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeFixed32ArraySize(
+        fieldNumber, (int[]) UnsafeUtil.getObject(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeSFixed32ArraySize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeSFixed32ArraySize(
+        fieldNumber, (int[]) UnsafeUtil.getObject(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeByteArraySize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeByteArraySize(
+        fieldNumber, (byte[]) UnsafeUtil.getObject(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeByteBufferSize(
+      int fieldNumber, Object message, long offset, SizeCalculator sizeCalculator) {
+    return computeByteBufferSize(
+        fieldNumber, (ByteBuffer) UnsafeUtil.getObject(message, offset), sizeCalculator);
+  }
+
+  public static int unsafeComputeMapSize(
+      int fieldNumber,
+      Object message,
+      long offset,
+      MapEntryDescriptor mapEntry,
+      SizeCalculator sizeCalculator) {
+    return computeMapSize(
+        fieldNumber, (Map<?, ?>) UnsafeUtil.getObject(message, offset), mapEntry, sizeCalculator);
+  }
+
+  public static int computeUnknownFieldsSize(ByteString value) {
+    return value != null ? value.size() : 0;
+  }
+
+  public static int unsafeComputeUnknownFieldsSize(Object message, long offset) {
+    return computeUnknownFieldsSize((ByteString) UnsafeUtil.getObject(message, offset));
+  }
+
+  private static int computeLengthDelimitedFieldSize(int fieldNumber, int length) {
+    return computeTagSize(fieldNumber) + computeLengthDelimitedSize(length);
+  }
+
+  private static int computeLengthDelimitedSize(int length) {
+    return computeVarint32Size(length) + length;
+  }
+
+  public static void unsafeReadDouble(Object message, long offset, Reader reader) {
+    UnsafeUtil.putDouble(message, offset, reader.readDouble());
+  }
+
+  public static void unsafeReadFloat(Object message, long offset, Reader reader) {
+    UnsafeUtil.putFloat(message, offset, reader.readFloat());
+  }
+
+  public static void unsafeReadInt64(Object message, long offset, Reader reader) {
+    UnsafeUtil.putLong(message, offset, reader.readInt64());
+  }
+
+  public static void unsafeReadUInt64(Object message, long offset, Reader reader) {
+    UnsafeUtil.putLong(message, offset, reader.readUInt64());
+  }
+
+  public static void unsafeReadSInt64(Object message, long offset, Reader reader) {
+    UnsafeUtil.putLong(message, offset, reader.readSInt64());
+  }
+
+  public static void unsafeReadFixed64(Object message, long offset, Reader reader) {
+    UnsafeUtil.putLong(message, offset, reader.readFixed64());
+  }
+
+  public static void unsafeReadSFixed64(Object message, long offset, Reader reader) {
+    UnsafeUtil.putLong(message, offset, reader.readSFixed64());
+  }
+
+  public static void unsafeReadInt32(Object message, long offset, Reader reader) {
+    UnsafeUtil.putInt(message, offset, reader.readInt32());
+  }
+
+  public static void unsafeReadUInt32(Object message, long offset, Reader reader) {
+    UnsafeUtil.putInt(message, offset, reader.readUInt32());
+  }
+
+  public static void unsafeReadSInt32(Object message, long offset, Reader reader) {
+    UnsafeUtil.putInt(message, offset, reader.readSInt32());
+  }
+
+  public static void unsafeReadFixed32(Object message, long offset, Reader reader) {
+    UnsafeUtil.putInt(message, offset, reader.readFixed32());
+  }
+
+  public static void unsafeReadSFixed32(Object message, long offset, Reader reader) {
+    UnsafeUtil.putInt(message, offset, reader.readSFixed32());
+  }
+
+  public static void unsafeReadEnum(Object message, long offset, Reader reader) {
+    UnsafeUtil.putInt(message, offset, reader.readEnum());
+  }
+
+  public static void unsafeReadBool(Object message, long offset, Reader reader) {
+    UnsafeUtil.putBoolean(message, offset, reader.readBool());
+  }
+
+  public static void unsafeReadString(Object message, long offset, Reader reader) {
+    UnsafeUtil.putObject(message, offset, reader.readString());
+  }
+
+  public static void unsafeReadBytes(Object message, long offset, Reader reader) {
+    UnsafeUtil.putObject(message, offset, reader.readBytes());
+  }
+
+  /**
+   * Reads a message field, merging it into the current value of the field or into a new message
+   * if there is none, as required for singular message fields that occur more than once.
+   *
+   * @return the message into which the field was merged.
+   */
+  public static <T> T mergeMessage(T value, LazySchema<T> schema, Reader reader) {
+    if (value == null) {
+      value = schema.newInstance();
+    }
+    reader.mergeMessage(value, schema.get(reader));
+    return value;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static void unsafeReadMessage(
+      Object message, long offset, LazySchema<?> schema, Reader reader) {
+    UnsafeUtil.putObject(
+        message,
+        offset,
+        mergeMessage(UnsafeUtil.getObject(message, offset), (LazySchema<Object>) schema, reader));
+  }
+
+  public static void unsafeReadDoubleList(
+      Object message, long offset, Reader reader, boolean packed) {
+    reader.readDoubleList(getOrCreateDoubleList(message, offset), packed);
+  }
+
+  public static void unsafeReadFloatList(
+      Object message, long offset, Reader reader, boolean packed) {
+    reader.readFloatList(getOrCreateFloatList(message, offset), packed);
+  }
+
+  public static void unsafeReadInt64List(
+      Object message, long offset, Reader reader, boolean packed) {
+    reader.readInt64List(getOrCreateLongList(message, offset), packed);
+  }
+
+  public static void unsafeReadUInt64List(
+      Object message, long offset, Reader reader, boolean packed) {
+    reader.readUInt64List(getOrCreateLongList(message, offset), packed);
+  }
+
+  public static void unsafeReadSInt64List(
+      Object message, long offset, Reader reader, boolean packed) {
+    reader.readSInt64List(getOrCreateLongList(message, offset), packed);
+  }
+
+  public static void unsafeReadFixed64List(
+      Object message, long offset, Reader reader, boolean packed) {
+    reader.readFixed64List(getOrCreateLongList(message, offset), packed);
+  }
+
+  public static void unsafeReadSFixed64List(
+      Object message, long offset, Reader reader, boolean packed) {
+    reader.readSFixed64List(getOrCreateLongList(message, offset), packed);
+  }
+
+  public static void unsafeReadInt32List(
+      Object message, long offset, Reader reader, boolean packed) {
+    reader.readInt32List(getOrCreateIntList(message, offset), packed);
+  }
+
+  public static void unsafeReadUInt32List(
+      Object message, long offset, Reader reader, boolean packed) {
+    reader.readUInt32List(getOrCreateIntList(message, offset), packed);
+  }
+
+  public static void unsafeReadSInt32List(
+      Object message, long offset, Reader reader, boolean packed) {
+    reader.readSInt32List(getOrCreateIntList(message, offset), packed);
+  }
+
+  public static void unsafeReadFixed32List(
+      Object message, long offset, Reader reader, boolean packed) {
+    reader.readFixed32List(getOrCreateIntList(message, offset), packed);
+  }
+
+  public static void unsafeReadSFixed32List(
+      Object message, long offset, Reader reader, boolean packed) {
+    reader.readSFixed32List(getOrCreateIntList(message, offset), packed);
+  }
+
+  public static void unsafeReadEnumList(
+      Object message, long offset, Reader reader, boolean packed) {
+    reader.readEnumList(getOrCreateIntList(message, offset), packed);
+  }
+
+  public static void unsafeReadBoolList(
+      Object message, long offset, Reader reader, boolean packed) {
+    reader.readBoolList(getOrCreateBooleanList(message, offset), packed);
+  }
+
+  public static void unsafeReadStringList(Object message, long offset, Reader reader) {
+    reader.readStringList(SchemaUtil.<String>getOrCreateList(message, offset));
+  }
+
+  public static void unsafeReadBytesList(Object message, long offset, Reader reader) {
+    reader.readBytesList(SchemaUtil.<ByteString>getOrCreateList(message, offset));
+  }
+
+  /**
+   * Reads a repeated message field with the schema of the declared element type of the field.
+   */
+  public static <T> void readMessageList(List<T> target, LazySchema<T> schema, Reader reader) {
+    reader.readMessageList(target, schema.getMessageType(), schema.get(reader));
+  }
+
+  @SuppressWarnings("unchecked")
+  public static void unsafeReadMessageList(
+      Object message, long offset, LazySchema<?> schema, Reader reader) {
+    readMessageList(
+        SchemaUtil.<Object>getOrCreateList(message, offset), (LazySchema<Object>) schema, reader);
+  }
+
+  public static void unsafeReadDoubleArray(Object message, long offset, Reader reader) {
+    UnsafeUtil.putObject(
+        message, offset, reader.readDoubleArray((double[]) UnsafeUtil.getObject(message, offset)));
+  }
+
+  public static void unsafeReadFloatArray(Object message, long offset, Reader reader) {
+    UnsafeUtil.putObject(
+        message, offset, reader.readFloatArray((float[]) UnsafeUtil.getObject(message, offset)));
+  }
+
+  public static void unsafeReadInt64Array(Object message, long offset, Reader reader) {
+    UnsafeUtil.putObject(
+        message, offset, reader.readInt64Array((long[]) UnsafeUtil.getObject(message, offset)));
+  }
+
+  public static void unsafeReadUInt64Array(Object message, long offset, Reader reader) {
+    UnsafeUtil.putObject(
+        message, offset, reader.readUInt64Array((long[]) UnsafeUtil.getObject(message, offset)));
+  }
+
+  public static void unsafeReadSInt64Array(Object message, long offset, Reader reader) {
+    UnsafeUtil.putObject(
+        message, offset, reader.readSInt64Array((long[]) UnsafeUtil.getObject(message, offset)));
+  }
+
+  public static void unsafeReadFixed64Array(Object message, long offset, Reader reader) {
+    UnsafeUtil.putObject(
+        message, offset, reader.readFixed64Array((long[]) UnsafeUtil.getObject(message, offset)));
+  }
+
+  public static void unsafeReadSFixed64Array(Object message, long offset, Reader reader) {
+    UnsafeUtil.putObject(
+        message, offset, reader.readSFixed64Array((long[]) UnsafeUtil.getObject(message, offset)));
+  }
+
+  public static void unsafeReadInt32Array(Object message, long offset, Reader reader) {
+    UnsafeUtil.putObject(
+        message, offset, reader.readInt32Array((int[]) UnsafeUtil.getObject(message, offset)));
+  }
+
+  public static void unsafeReadUInt32Array(Object message, long offset, Reader reader) {
+    UnsafeUtil.putObject(
+        message, offset, reader.readUInt32Array((int[]) UnsafeUtil.getObject(message, offset)));
+  }
+
+  public static void unsafeReadSInt32Array(Object message, long offset, Reader reader) {
+    UnsafeUtil.putObject(
+        message, offset, reader.readSInt32Array((int[]) UnsafeUtil.getObject(message, offset)));
+  }
+
+  public static void unsafeReadFixed32Array(Object message, long offset, Reader reader) {
+    UnsafeUtil.putObject(
+        message, offset, reader.readFixed32Array((int[]) UnsafeUtil.getObject(message, offset)));
+  }
+
+  public static void unsafeReadSFixed32Array(Object message, long offset, Reader reader) {
+    UnsafeUtil.putObject(
+        message, offset, reader.readSFixed32Array((int[]) UnsafeUtil.getObject(message, offset)));
+  }
+
+  public static void unsafeReadByteArray(Object message, long offset, Reader reader) {
+    UnsafeUtil.putObject(message, offset, reader.readByteArray());
+  }
+
+  public static void unsafeReadByteBuffer(Object message, long offset, Reader reader) {
+    UnsafeUtil.putObject(message, offset, reader.readByteBuffer());
+  }
+
+  public static void unsafeReadMap(
+      Object message, long offset, MapEntryDescriptor mapEntry, Reader reader) {
+    reader.readMap(getOrCreateMap(message, offset, mapEntry), mapEntry);
+  }
+
+  /**
+   * Reads the value of a oneof member and makes it the member that is set, by storing the value
+   * and the field number of the member together.
+   */
+  public static void unsafeReadOneof(
+      Object message,
+      long caseOffset,
+      long valueOffset,
+      int fieldNumber,
+      FieldType type,
+      Reader reader) {
+    UnsafeUtil.putObject(message, valueOffset, readFieldValue(type, reader));
+    UnsafeUtil.putInt(message, caseOffset, fieldNumber);
+  }
+
+  /**
+   * Reads a message member of a oneof, merging it into the current value if the member is already
+   * set, or into a new message otherwise.
+   *
+   * @param oneofCase the number of the member of the oneof that is set.
+   * @param value the value of the member of the oneof that is set.
+   * @return the message into which the member was merged.
+   */
+  @SuppressWarnings("unchecked")
+  public static Object mergeOneofMessage(
+      int oneofCase, Object value, int fieldNumber, LazySchema<?> schema, Reader reader) {
+    return mergeMessage(
+        oneofCase == fieldNumber ? value : null, (LazySchema<Object>) schema, reader);
+  }
+
+  /**
+   * Reads a message member of a oneof and makes it the member that is set, as in
+   * {@link #mergeOneofMessage}.
+   */
+  public static void unsafeReadOneofMessage(
+      Object message,
+      long caseOffset,
+      long valueOffset,
+      int fieldNumber,
+      LazySchema<?> schema,
+      Reader reader) {
+    UnsafeUtil.putObject(
+        message,
+        valueOffset,
+        mergeOneofMessage(
+            UnsafeUtil.getInt(message, caseOffset),
+            UnsafeUtil.getObject(message, valueOffset),
+            fieldNumber,
+            schema,
+            reader));
+    UnsafeUtil.putInt(message, caseOffset, fieldNumber);
+  }
+
+  /**
+   * Sets the given has-bits in the {@code int} field at the given offset.
+   */
+  public static void unsafeSetHasBits(Object message, long offset, int bits) {
+    UnsafeUtil.putInt(message, offset, UnsafeUtil.getInt(message, offset) | bits);
+  }
+
+  /**
+   * Reads a field value of the given singular type, boxed as the equivalent of its Java type.
+   * Messages are not supported, since they are merged with the schema of their class, as in
+   * {@link #mergeOneofMessage}.
+   */
+  public static Object readFieldValue(FieldType type, Reader reader) {
+    switch (type) {
+      case DOUBLE:
+        return reader.readDouble();
+      case FLOAT:
+        return reader.readFloat();
+      case INT64:
+        return reader.readInt64();
+      case UINT64:
+        return reader.readUInt64();
+      case INT32:
+        return reader.readInt32();
+      case FIXED64:
+        return reader.readFixed64();
+      case FIXED32:
+        return reader.readFixed32();
+      case BOOL:
+        return reader.readBool();
+      case STRING:
+        return reader.readString();
+      case BYTES:
+        return reader.readBytes();
+      case UINT32:
+        return reader.readUInt32();
+      case ENUM:
+        return reader.readEnum();
+      case SFIXED32:
+        return reader.readSFixed32();
+      case SFIXED64:
+        return reader.readSFixed64();
+      case SINT32:
+        return reader.readSInt32();
+      case SINT64:
+        return reader.readSInt64();
+      default:
+        throw new IllegalArgumentException("Unsupported field value type: " + type);
+    }
+  }
+
+  public static <L> List<L> getOrCreateList(List<L> list) {
+    if (list == null) {
+      list = new ArrayList<L>();
+    }
+    return list;
+  }
+
+  public static List<Integer> getOrCreateIntList(List<Integer> list) {
+    if (list == null) {
+      list = new IntArrayList();
+    }
+    return list;
+  }
+
+  public static List<Long> getOrCreateLongList(List<Long> list) {
+    if (list == null) {
+      list = new LongArrayList();
+    }
+    return list;
+  }
+
+  public static List<Float> getOrCreateFloatList(List<Float> list) {
+    if (list == null) {
+      list = new FloatArrayList();
+    }
+    return list;
+  }
+
+  public static List<Double> getOrCreateDoubleList(List<Double> list) {
+    if (list == null) {
+      list = new DoubleArrayList();
+    }
+    return list;
+  }
+
+  public static List<Boolean> getOrCreateBooleanList(List<Boolean> list) {
+    if (list == null) {
+      list = new BooleanArrayList();
+    }
+    return list;
+  }
+
+  /**
+   * Reads the current field as an unknown field, returning the given unknown fields followed by
+   * the encoded field.
+   */
+  public static ByteString readUnknownField(ByteString unknownFields, Reader reader) {
+    return reader.readUnknownField(unknownFields != null ? unknownFields : ByteString.EMPTY);
+  }
+
+  public static void unsafeReadUnknownField(Object message, long offset, Reader reader) {
+    UnsafeUtil.putObject(
+        message,
+        offset,
+        readUnknownField((ByteString) UnsafeUtil.getObject(message, offset), reader));
+  }
+
+  /**
+   * Returns the given map or, if it is {@code null}, a new map of the class given by
+   * {@link MapEntryDescriptor#getMapClass()}.
+   */
+  public static <K, V> Map<K, V> getOrCreateMap(Map<K, V> map, MapEntryDescriptor mapEntry) {
+    if (map == null) {
+      map = newMap(mapEntry);
+    }
+    return map;
+  }
+
+  private static List<Integer> getOrCreateIntList(Object message, long offset) {
+    @SuppressWarnings("unchecked")
+    List<Integer> list = (List<Integer>) UnsafeUtil.getObject(message, offset);
+    if (list == null) {
+      list = new IntArrayList();
+      UnsafeUtil.putObject(message, offset, list);
+    }
+    return list;
+  }
+
+  private static List<Long> getOrCreateLongList(Object message, long offset) {
+    @SuppressWarnings("unchecked")
+    List<Long> list = (List<Long>) UnsafeUtil.getObject(message, offset);
+    if (list == null) {
+      list = new LongArrayList();
+      UnsafeUtil.putObject(message, offset, list);
+    }
+    return list;
+  }
+
+  private static List<Float> getOrCreateFloatList(Object message, long offset) {
+    @SuppressWarnings("unchecked")
+    List<Float> list = (List<Float>) UnsafeUtil.getObject(message, offset);
+    if (list == null) {
+      list = new FloatArrayList();
+      UnsafeUtil.putObject(message, offset, list);
+    }
+    return list;
+  }
+
+  private static List<Double> getOrCreateDoubleList(Object message, long offset) {
+    @SuppressWarnings("unchecked")
+    List<Double> list = (List<Double>) UnsafeUtil.getObject(message, offset);
+    if (list == null) {
+      list = new DoubleArrayList();
+      UnsafeUtil.putObject(message, offset, list);
+    }
+    return list;
+  }
+
+  private static List<Boolean> getOrCreateBooleanList(Object message, long offset) {
+    @SuppressWarnings("unchecked")
+    List<Boolean> list = (List<Boolean>) UnsafeUtil.getObject(message, offset);
+    if (list == null) {
+      list = new BooleanArrayList();
+      UnsafeUtil.putObject(message, offset, list);
+    }
+    return list;
+  }
+
+  private static <L> List<L> getOrCreateList(Object message, long offset) {
+    @SuppressWarnings("unchecked")
+    List<L> list = (List<L>) UnsafeUtil.getObject(message, offset);
+    if (list == null) {
+      list = new ArrayList<L>();
+      UnsafeUtil.putObject(message, offset, list);
+    }
+    return list;
+  }
+
+  private static <K, V> Map<K, V> getOrCreateMap(
+      Object message, long offset, MapEntryDescriptor mapEntry) {
+    @SuppressWarnings("unchecked")
+    Map<K, V> map = (Map<K, V>) UnsafeUtil.getObject(message, offset);
+    if (map == null) {
+      map = newMap(mapEntry);
+      UnsafeUtil.putObject(message, offset, map);
+    }
+    return map;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> Map<K, V> newMap(MapEntryDescriptor mapEntry) {
+    switch (mapEntry.getKeyType().getJavaType()) {
+      case INT:
+        return (Map<K, V>) new IntKeyHashMap<V>();
+      case LONG:
+        return (Map<K, V>) new LongKeyHashMap<V>();
+      default:
+        return new HashMap<K, V>();
     }
-    return list;
   }
 
   /**
@@ -117,6 +117,14 @@ public final class UnsafeUtil {
     STRATEGY.putByte(address, value);
   }
 
+  public static int getInt(long address) {
+    return STRATEGY.getInt(address);
+  }
+
+  public static void putInt(long address, int value) {
+    STRATEGY.putInt(address, value);
+  }
+
   public static long getLong(long address) {
     return STRATEGY.getLong(address);
   }
@@ -234,6 +242,10 @@ public final class UnsafeUtil {
 
     abstract void putByte(long address, byte value);
 
+    abstract int getInt(long address);
+
+    abstract void putInt(long address, int value);
+
     abstract long getLong(long address);
 
     abstract void putLong(long address, long value);
@@ -277,6 +289,8 @@ public final class UnsafeUtil {
           // Direct memory operations.
           clazz.getMethod("getByte", long.class);
           clazz.getMethod("putByte", long.class, byte.class);
+          clazz.getMethod("getInt", long.class);
+          clazz.getMethod("putInt", long.class, int.class);
           clazz.getMethod("getLong", long.class);
           clazz.getMethod("putLong", long.class, long.class);
           clazz.getMethod("setMemory", long.class, long.class, byte.class);
@@ -319,7 +333,7 @@ public final class UnsafeUtil {
 
     @Override
     int getInt(Object target, long offset) {
-      return UNSAFE.getByte(target, offset);
+      return UNSAFE.getInt(target, offset);
     }
 
     @Override
@@ -402,6 +416,16 @@ public final class UnsafeUtil {
       UNSAFE.putByte(address, value);
     }
 
+    @Override
+    int getInt(long address) {
+      return UNSAFE.getInt(address);
+    }
+
+    @Override
+    void putInt(long address, int value) {
+      UNSAFE.putInt(address, value);
+    }
+
     @Override
     long getLong(long address) {
       return UNSAFE.getLong(address);
@@ -578,6 +602,16 @@ public final class UnsafeUtil {
       throw new UnsupportedOperationException();
     }
 
+    @Override
+    int getInt(long address) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    void putInt(long address, int value) {
+      throw new UnsupportedOperationException();
+    }
+
     @Override
     long getLong(long address) {
       throw new UnsupportedOperationException();
@@ -318,6 +318,24 @@ public final class Utf8 {
     processor.encodeUtf8(in, out);
   }
 
+  /**
+   * Encodes the given characters to the off-heap address range starting at {@code address} using
+   * UTF-8 encoding. Requires {@link UnsafeUtil#hasDirectAddressingOperations()}.
+   *
+   * @param in the source string to be encoded
+   * @param address the address at which to begin writing
+   * @param length the number of bytes available starting at {@code address}
+   * @return the number of bytes written
+   * @throws ArrayIndexOutOfBoundsException if the encoded string does not fit in {@code length}
+   *     bytes
+   */
+  public static int encode(CharSequence in, long address, int length) {
+    if (!UnsafeProcessor.isAvailable()) {
+      throw new UnsupportedOperationException("Direct addressing is not supported");
+    }
+    return UnsafeProcessor.encodeUtf8(in, address, length);
+  }
+
   /**
    * Counts (approximately) the number of consecutive ASCII characters in the given buffer.
    * The byte order of the {@link ByteBuffer} does not matter, so performance can be improved if
@@ -1227,13 +1245,22 @@ public final class Utf8 {
     @Override
     void encodeUtf8Direct(CharSequence in, ByteBuffer out) {
       final long address = UnsafeUtil.addressOffset(out);
-      long outIx = address + out.position();
-      final long outLimit = address + out.limit();
+      final int written = encodeUtf8(in, address + out.position(), out.remaining());
+      out.position(out.position() + written);
+    }
+
+    /**
+     * Encodes the given characters to the off-heap address range starting at {@code address} and
+     * returns the number of bytes written.
+     */
+    static int encodeUtf8(CharSequence in, final long address, final int length) {
+      long outIx = address;
+      final long outLimit = address + length;
       final int inLimit = in.length();
       if (inLimit > outLimit - outIx) {
         // Not even enough room for an ASCII-encoded string.
         throw new ArrayIndexOutOfBoundsException(
-            "Failed writing " + in.charAt(inLimit - 1) + " at index " + out.limit());
+            "Failed writing " + in.charAt(inLimit - 1) + " at index " + length);
       }
 
       // Designed to take advantage of
@@ -1244,8 +1271,7 @@ public final class Utf8 {
       }
       if (inIx == inLimit) {
         // We're done, it was ASCII encoded.
-        out.position((int) (outIx - address));
-        return;
+        return (int) (outIx - address);
       }
 
       for (char c; inIx < inLimit; ++inIx) {
@@ -1279,12 +1305,13 @@ public final class Utf8 {
             throw new UnpairedSurrogateException(inIx, inLimit);
           }
           // Not enough space in the output buffer.
-          throw new ArrayIndexOutOfBoundsException("Failed writing " + c + " at index " + outIx);
+          throw new ArrayIndexOutOfBoundsException(
+              "Failed writing " + c + " at index " + (outIx - address));
         }
       }
 
       // All bytes have been encoded.
-      out.position((int) (outIx - address));
+      return (int) (outIx - address);
     }
 
     /**
@@ -0,0 +1,148 @@
+package com.google.apps.tiktok.protobuf.experimental.util;
+
+import com.google.apps.tiktok.protobuf.experimental.InternalApi;
+
+/**
+ * Constants and helper methods for working with the protobuf binary wire format.
+ */
+@InternalApi
+public final class WireFormat {
+  public static final int WIRETYPE_VARINT = 0;
+  public static final int WIRETYPE_FIXED64 = 1;
+  public static final int WIRETYPE_LENGTH_DELIMITED = 2;
+  public static final int WIRETYPE_START_GROUP = 3;
+  public static final int WIRETYPE_END_GROUP = 4;
+  public static final int WIRETYPE_FIXED32 = 5;
+
+  public static final int FIXED32_SIZE = 4;
+  public static final int FIXED64_SIZE = 8;
+  public static final int MAX_VARINT32_SIZE = 5;
+  public static final int MAX_VARINT64_SIZE = 10;
+
+  static final int TAG_TYPE_BITS = 3;
+  static final int TAG_TYPE_MASK = (1 << TAG_TYPE_BITS) - 1;
+
+  private WireFormat() {}
+
+  /**
+   * Makes a tag value given a field number and wire type.
+   */
+  public static int makeTag(int fieldNumber, int wireType) {
+    return (fieldNumber << TAG_TYPE_BITS) | wireType;
+  }
+
+  /**
+   * Given a tag value, determines the wire type (the lower 3 bits).
+   */
+  public static int getTagWireType(int tag) {
+    return tag & TAG_TYPE_MASK;
+  }
+
+  /**
+   * Given a tag value, determines the field number (the upper 29 bits).
+   */
+  public static int getTagFieldNumber(int tag) {
+    return tag >>> TAG_TYPE_BITS;
+  }
+
+  /**
+   * Computes the number of bytes that would be needed to encode the given value as an unsigned
+   * 32-bit varint.
+   */
+  public static int computeVarint32Size(int value) {
+    if ((value & (~0 << 7)) == 0) {
+      return 1;
+    }
+    if ((value & (~0 << 14)) == 0) {
+      return 2;
+    }
+    if ((value & (~0 << 21)) == 0) {
+      return 3;
+    }
+    if ((value & (~0 << 28)) == 0) {
+      return 4;
+    }
+    return 5;
+  }
+
+  /**
+   * Computes the number of bytes that would be needed to encode the given value as a 64-bit
+   * varint.
+   */
+  public static int computeVarint64Size(long value) {
+    // Handle two popular special cases up front ...
+    if ((value & (~0L << 7)) == 0L) {
+      return 1;
+    }
+    if (value < 0L) {
+      return 10;
+    }
+    // ... leaving us with 8 remaining, which we can divide and conquer
+    int n = 2;
+    if ((value & (~0L << 35)) != 0L) {
+      n += 4;
+      value >>>= 28;
+    }
+    if ((value & (~0L << 21)) != 0L) {
+      n += 2;
+      value >>>= 14;
+    }
+    if ((value & (~0L << 14)) != 0L) {
+      n += 1;
+    }
+    return n;
+  }
+
+  /**
+   * Computes the number of bytes that would be needed to encode the given value as an {@code int32}
+   * field value. Negative values are sign-extended to 64 bits and always take 10 bytes.
+   */
+  public static int computeInt32Size(int value) {
+    return value >= 0 ? computeVarint32Size(value) : MAX_VARINT64_SIZE;
+  }
+
+  /**
+   * Computes the number of bytes that would be needed to encode a tag with the given field number.
+   */
+  public static int computeTagSize(int fieldNumber) {
+    return computeVarint32Size(makeTag(fieldNumber, 0));
+  }
+
+  /**
+   * Encodes a ZigZag-encoded 32-bit value. ZigZag encodes signed integers into values that can be
+   * efficiently encoded with varint. (Otherwise, negative values must be sign-extended to 64 bits
+   * to be varint encoded, thus always taking 10 bytes on the wire.)
+   */
+  public static int encodeZigZag32(int n) {
+    // Note: the right-shift must be arithmetic
+    return (n << 1) ^ (n >> 31);
+  }
+
+  /**
+   * Encodes a ZigZag-encoded 64-bit value.
+   *
+   * @see #encodeZigZag32(int)
+   */
+  public static long encodeZigZag64(long n) {
+    // Note: the right-shift must be arithmetic
+    return (n << 1) ^ (n >> 63);
+  }
+
+  /**
+   * Decodes a ZigZag-encoded 32-bit value.
+   *
+   * @see #encodeZigZag32(int)
+   */
+  public static int decodeZigZag32(int n) {
+    return (n >>> 1) ^ -(n & 1);
+  }
+
+  /**
+   * Decodes a ZigZag-encoded 64-bit value.
+   *
+   * @see #encodeZigZag32(int)
+   */
+  public static long decodeZigZag64(long n) {
+    return (n >>> 1) ^ -(n & 1);
+  }
+}
@@ -3,6 +3,7 @@ package com.google.apps.tiktok.protobuf.experimental;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import com.google.apps.tiktok.protobuf.experimental.testing.TestArrayMessage;
 import com.google.apps.tiktok.protobuf.experimental.testing.TestMessage;
 
 import org.junit.Test;
@@ -110,6 +111,21 @@ public class FieldTypeTest {
     assertFalse(FieldType.INT64_LIST.isValidForField(complexListField("unparameterizedList")));
   }
 
+  @Test
+  public void arrayFieldMustMatchExactly() throws Exception {
+    Field int32ArrayField = TestArrayMessage.class.getDeclaredField("int32ArrayField");
+    Field byteBufferField = TestArrayMessage.class.getDeclaredField("byteBufferField");
+    assertTrue(FieldType.INT32_ARRAY.isValidForField(int32ArrayField));
+    assertTrue(FieldType.SINT32_ARRAY.isValidForField(int32ArrayField));
+    assertTrue(FieldType.BYTE_BUFFER.isValidForField(byteBufferField));
+    assertFalse(FieldType.INT64_ARRAY.isValidForField(int32ArrayField));
+    assertFalse(FieldType.INT32_LIST.isValidForField(int32ArrayField));
+    assertFalse(FieldType.BYTE_ARRAY.isValidForField(byteBufferField));
+    assertFalse(FieldType.INT32_ARRAY.isValidForField(field("int32ListField")));
+    assertTrue(FieldType.INT32_ARRAY.isArray());
+    assertFalse(FieldType.BYTE_ARRAY.isArray());
+  }
+
   private static Field field(String name) {
     try {
       return TestMessage.class.getDeclaredField(name);
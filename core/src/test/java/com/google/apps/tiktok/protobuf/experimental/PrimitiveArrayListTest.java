@@ -0,0 +1,143 @@
+package com.google.apps.tiktok.protobuf.experimental;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class PrimitiveArrayListTest {
+  @Test
+  public void shouldBehaveLikeArrayList() {
+    IntArrayList list = new IntArrayList(0);
+    List<Integer> expected = new ArrayList<Integer>();
+    for (int i = 0; i < 20; ++i) {
+      list.addInt(i);
+      expected.add(i);
+    }
+    list.add(0, -1);
+    expected.add(0, -1);
+    list.add(list.size(), 100);
+    expected.add(expected.size(), 100);
+    assertEquals(expected.remove(5), list.remove(5));
+    assertEquals(expected.set(3, 42), list.set(3, 42));
+    assertEquals(expected, list);
+    assertEquals(expected.hashCode(), list.hashCode());
+    assertEquals(42, list.getInt(3));
+
+    list.clear();
+    assertEquals(0, list.size());
+  }
+
+  @Test
+  public void indexShouldBeChecked() {
+    DoubleArrayList list = new DoubleArrayList();
+    list.addDouble(1.0);
+    try {
+      list.getDouble(1);
+      fail();
+    } catch (IndexOutOfBoundsException expected) {
+    }
+    try {
+      list.add(2, 2.0);
+      fail();
+    } catch (IndexOutOfBoundsException expected) {
+    }
+  }
+
+  @Test
+  public void booleanListShouldConvertBits() {
+    BooleanArrayList list = new BooleanArrayList();
+    list.addBoolean(true);
+    list.add(false);
+    assertEquals(Arrays.asList(true, false), list);
+
+    byte[] target = new byte[2];
+    list.copyLittleEndian(0, 2, target, 0);
+    assertArrayEquals(new byte[] {1, 0}, target);
+    list.addLittleEndian(new byte[] {0, 2}, 0, 2);
+    assertEquals(Arrays.asList(true, false, false, true), list);
+  }
+
+  @Test
+  public void staticAccessorsShouldHandleAnyList() {
+    List<Integer> boxed = new ArrayList<Integer>();
+    List<Integer> primitive = new IntArrayList();
+    PrimitiveArrayList.addInt(boxed, 7);
+    PrimitiveArrayList.addInt(primitive, 7);
+    assertEquals(boxed, primitive);
+    assertEquals(7, PrimitiveArrayList.getInt(boxed, 0));
+    assertEquals(7, PrimitiveArrayList.getInt(primitive, 0));
+
+    List<Boolean> booleans = new ArrayList<Boolean>();
+    PrimitiveArrayList.addBoolean(booleans, true);
+    assertEquals(true, PrimitiveArrayList.getBoolean(booleans, 0));
+  }
+
+  @Test
+  public void wrappedArrayShouldBeDetached() {
+    int[] array = new int[] {1, 2, 3};
+    IntArrayList list = IntArrayList.wrap(array);
+    assertEquals(Arrays.asList(1, 2, 3), list);
+    assertSame(array, list.detachArray());
+    assertEquals(0, list.size());
+
+    list = IntArrayList.wrap(array);
+    list.addInt(4);
+    assertArrayEquals(new int[] {1, 2, 3, 4}, list.detachArray());
+    assertArrayEquals(new int[] {1, 2, 3}, array);
+
+    assertArrayEquals(new long[0], LongArrayList.wrap(null).detachArray());
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void nullElementShouldBeRejected() {
+    new LongArrayList().add(null);
+  }
+
+  @Test
+  public void littleEndianCopiesShouldRoundTrip() {
+    byte[] bytes = new byte[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17};
+
+    IntArrayList ints = new IntArrayList(0);
+    ints.addInt(-1);
+    ints.addLittleEndian(bytes, 1, 4);
+    assertEquals(Arrays.asList(-1, 0x04030201, 0x08070605, 0x0C0B0A09, 0x100F0E0D), ints);
+
+    LongArrayList longs = new LongArrayList(0);
+    longs.addLittleEndian(bytes, 2, 2);
+    assertEquals(Arrays.asList(0x0908070605040302L, 0x11100F0E0D0C0B0AL), longs);
+
+    FloatArrayList floats = new FloatArrayList();
+    floats.addFloat(1.5f);
+    floats.addFloat(Float.NaN);
+    DoubleArrayList doubles = new DoubleArrayList();
+    doubles.addDouble(-0.25);
+
+    byte[] target = new byte[18];
+    floats.copyLittleEndian(0, 2, target, 1);
+    doubles.copyLittleEndian(0, 1, target, 9);
+    FloatArrayList newFloats = new FloatArrayList();
+    newFloats.addLittleEndian(target, 1, 2);
+    DoubleArrayList newDoubles = new DoubleArrayList();
+    newDoubles.addLittleEndian(target, 9, 1);
+    assertEquals(floats, newFloats);
+    assertEquals(doubles, newDoubles);
+
+    ints.copyLittleEndian(1, 4, target, 0);
+    assertArrayEquals(Arrays.copyOfRange(bytes, 1, 17), Arrays.copyOf(target, 16));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void littleEndianRangeShouldBeChecked() {
+    new LongArrayList().addLittleEndian(new byte[12], 0, 2);
+  }
+}
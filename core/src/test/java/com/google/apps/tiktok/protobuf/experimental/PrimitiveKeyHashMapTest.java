@@ -0,0 +1,96 @@
+package com.google.apps.tiktok.protobuf.experimental;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+@RunWith(JUnit4.class)
+public class PrimitiveKeyHashMapTest {
+  @Test
+  public void intKeyMapShouldBehaveLikeHashMap() {
+    Random random = new Random(1);
+    IntKeyHashMap<Integer> map = new IntKeyHashMap<Integer>(0);
+    Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+    for (int i = 0; i < 10000; ++i) {
+      // A small key range makes sure that removals and replacements hit existing entries.
+      int key = random.nextInt(200) - 100;
+      if (random.nextInt(3) == 0) {
+        assertEquals(expected.remove(key), map.remove(key));
+      } else {
+        assertEquals(expected.put(key, i), map.put(key, Integer.valueOf(i)));
+      }
+      assertEquals(expected.size(), map.size());
+    }
+    assertEquals(expected, map);
+    assertEquals(map, expected);
+    assertEquals(expected.hashCode(), map.hashCode());
+    for (int key = -101; key <= 100; ++key) {
+      assertEquals(expected.get(key), map.get(key));
+      assertEquals(expected.containsKey(key), map.containsKey(key));
+    }
+    assertNull(map.get("1"));
+
+    int visited = 0;
+    for (int slot = map.nextSlot(0); slot >= 0; slot = map.nextSlot(slot + 1)) {
+      assertEquals(expected.get(map.keyAt(slot)), map.valueAt(slot));
+      ++visited;
+    }
+    assertEquals(expected.size(), visited);
+
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertEquals(-1, map.nextSlot(0));
+  }
+
+  @Test
+  public void longKeyMapShouldBehaveLikeHashMap() {
+    Random random = new Random(1);
+    LongKeyHashMap<Integer> map = new LongKeyHashMap<Integer>(0);
+    Map<Long, Integer> expected = new HashMap<Long, Integer>();
+    for (int i = 0; i < 10000; ++i) {
+      // Spread keys across the high bits as well as the low bits.
+      long key = (random.nextInt(100) - 50) * 0x100000001L;
+      if (random.nextInt(3) == 0) {
+        assertEquals(expected.remove(key), map.remove(key));
+      } else {
+        assertEquals(expected.put(key, i), map.put(key, Integer.valueOf(i)));
+      }
+      assertEquals(expected.size(), map.size());
+    }
+    assertEquals(expected, map);
+    assertEquals(map, expected);
+    assertEquals(expected.hashCode(), map.hashCode());
+    assertFalse(map.containsKey(Integer.valueOf(0)));
+
+    int visited = 0;
+    for (int slot = map.nextSlot(0); slot >= 0; slot = map.nextSlot(slot + 1)) {
+      assertEquals(expected.get(map.keyAt(slot)), map.valueAt(slot));
+      ++visited;
+    }
+    assertEquals(expected.size(), visited);
+  }
+
+  @Test
+  public void nullValuesShouldBeRejected() {
+    try {
+      new IntKeyHashMap<String>().put(1, null);
+      fail();
+    } catch (NullPointerException expected) {
+    }
+    try {
+      new LongKeyHashMap<String>().put(1L, null);
+      fail();
+    } catch (NullPointerException expected) {
+    }
+  }
+}
@@ -0,0 +1,281 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.schema.GenericSchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.schema.Reader;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessage;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessageFactory;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class BinaryReaderTest {
+  @Test
+  public void scalarsShouldBeDecoded() {
+    BinaryReader reader =
+        reader(
+            0x08, 0x96, 0x01, // int32 = 150
+            0x10, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01, // int32 = -1
+            0x18, 0x03, // sint32 = -2
+            0x25, 0x01, 0x02, 0x03, 0x04, // fixed32
+            0x29, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, // fixed64
+            0x32, 0x02, 'h', 'i', // string
+            0x3A, 0x01, 0x7F); // bytes
+    assertEquals(1, reader.getFieldNumber());
+    assertEquals(150, reader.readInt32());
+    assertEquals(2, reader.getFieldNumber());
+    assertEquals(-1, reader.readInt32());
+    assertEquals(3, reader.getFieldNumber());
+    assertEquals(-2, reader.readSInt32());
+    assertEquals(4, reader.getFieldNumber());
+    assertEquals(0x04030201, reader.readFixed32());
+    assertEquals(5, reader.getFieldNumber());
+    assertEquals(0x0807060504030201L, reader.readFixed64());
+    assertEquals(6, reader.getFieldNumber());
+    assertEquals("hi", reader.readString());
+    assertEquals(7, reader.getFieldNumber());
+    assertEquals(ByteString.copyFrom(new byte[] {0x7F}), reader.readBytes());
+    assertEquals(Reader.READ_DONE, reader.getFieldNumber());
+    assertEquals(37, reader.getTotalBytesRead());
+  }
+
+  @Test
+  public void listsShouldAcceptPackedAndNonPacked() {
+    BinaryReader reader =
+        reader(
+            0x20, 0x03, 0x20, 0x8E, 0x02, // non-packed
+            0x22, 0x02, 0x9E, 0x01); // packed
+    List<Integer> values = new ArrayList<Integer>();
+    assertEquals(4, reader.getFieldNumber());
+    reader.readInt32List(values, true);
+    assertEquals(4, reader.getFieldNumber());
+    reader.readInt32List(values, false);
+    assertEquals(Reader.READ_DONE, reader.getFieldNumber());
+    assertEquals(Arrays.asList(3, 270, 158), values);
+  }
+
+  @Test
+  public void packedVarintsShouldBeCounted() {
+    List<Long> expected = Arrays.asList(0L, 1L, 300L, -1L, Long.MAX_VALUE, 127L, 128L);
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    writer.writeInt64List(1, expected, true);
+    byte[] bytes = writer.toByteArray();
+
+    // Skip the tag and the length.
+    assertEquals(expected.size(), BinaryReader.countRawVarints(bytes, 2, bytes.length - 2));
+
+    ArrayReader reader = new ArrayReader(new GenericSchemaFactory(), bytes);
+    List<Long> actual = new ArrayList<Long>();
+    assertEquals(1, reader.getFieldNumber());
+    reader.readInt64List(actual, true);
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void skipFieldShouldSkipAllWireTypes() {
+    BinaryReader reader =
+        reader(
+            0x08, 0xFF, 0xFF, 0x01, // varint
+            0x11, 0, 0, 0, 0, 0, 0, 0, 0, // fixed64
+            0x1A, 0x02, 0, 0, // length delimited
+            0x23, 0x08, 0x01, 0x2B, 0x2C, 0x24, // group containing a nested group
+            0x2D, 0, 0, 0, 0, // fixed32
+            0x30, 0x05);
+    for (int i = 0; i < 5; ++i) {
+      assertEquals(i + 1, reader.getFieldNumber());
+      assertTrue(reader.skipField());
+    }
+    assertEquals(6, reader.getFieldNumber());
+    assertEquals(5, reader.readInt32());
+    assertFalse(reader.skipField());
+  }
+
+  @Test
+  public void unknownFieldsShouldBeSlicedFromInput() {
+    byte[] bytes = allWireTypes();
+    ArrayReader reader =
+        new ArrayReader(new GenericSchemaFactory(), bytes, 0, bytes.length, true);
+    ByteString unknownFields = ByteString.EMPTY;
+    for (int i = 0; i < 5; ++i) {
+      assertEquals(i + 1, reader.getFieldNumber());
+      unknownFields = reader.readUnknownField(unknownFields);
+    }
+    assertEquals(6, reader.getFieldNumber());
+    assertEquals(5, reader.readInt32());
+    assertEquals(ByteString.copyFrom(bytes, 0, bytes.length - 2), unknownFields);
+
+    // The contiguous fields are a single view of the array.
+    bytes[1] = 0x7F;
+    assertEquals(0x7F, unknownFields.byteAt(1));
+  }
+
+  @Test
+  public void unknownFieldsShouldBeCopiedByDefault() {
+    byte[] bytes = allWireTypes();
+    ArrayReader reader = new ArrayReader(new GenericSchemaFactory(), bytes);
+    ByteString unknownFields = ByteString.EMPTY;
+    for (int i = 0; i < 5; ++i) {
+      assertEquals(i + 1, reader.getFieldNumber());
+      unknownFields = reader.readUnknownField(unknownFields);
+    }
+    assertEquals(ByteString.copyFrom(bytes, 0, bytes.length - 2), unknownFields);
+    bytes[1] = 0x7F;
+    assertEquals((byte) 0xFF, unknownFields.byteAt(1));
+  }
+
+  @Test
+  public void messageListShouldBeDecoded() {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    List<TestMessage.InnerMessage> expected =
+        Arrays.asList(new TestMessage.InnerMessage(true), new TestMessage.InnerMessage(false));
+    writer.writeMessageList(1, expected, writer.schemaFor(TestMessage.InnerMessage.class));
+    writer.writeInt32(2, 7);
+
+    BinaryReader reader = new ArrayReader(new GenericSchemaFactory(), writer.toByteArray());
+    List<TestMessage.InnerMessage> actual = new ArrayList<TestMessage.InnerMessage>();
+    assertEquals(1, reader.getFieldNumber());
+    reader.readMessageList(
+        actual,
+        TestMessage.InnerMessage.class,
+        reader.schemaFor(TestMessage.InnerMessage.class));
+    assertEquals(expected, actual);
+    assertEquals(2, reader.getFieldNumber());
+    assertEquals(7, reader.readInt32());
+  }
+
+  @Test(expected = InvalidWireFormatException.class)
+  public void truncatedInputShouldFail() {
+    BinaryReader reader = reader(0x0D, 0x01, 0x02);
+    reader.getFieldNumber();
+    reader.readFixed32();
+  }
+
+  @Test(expected = InvalidWireFormatException.class)
+  public void truncatedVarintShouldFail() {
+    BinaryReader reader = reader(0x08, 0x80);
+    reader.getFieldNumber();
+    reader.readInt32();
+  }
+
+  @Test(expected = InvalidWireFormatException.class)
+  public void zeroTagShouldFail() {
+    reader(0x00, 0x01).getFieldNumber();
+  }
+
+  @Test(expected = InvalidWireFormatException.class)
+  public void wrongWireTypeShouldFail() {
+    BinaryReader reader = reader(0x0D, 0x01, 0x02, 0x03, 0x04);
+    reader.getFieldNumber();
+    reader.readInt32();
+  }
+
+  @Test(expected = InvalidWireFormatException.class)
+  public void unmatchedEndGroupShouldFail() {
+    BinaryReader reader = reader(0x0C);
+    reader.getFieldNumber();
+    reader.skipField();
+  }
+
+  @Test
+  public void arrayReaderShouldAliasBytes() {
+    byte[] bytes = new byte[] {0x0A, 0x02, 0x01, 0x02};
+    ArrayReader reader =
+        new ArrayReader(new GenericSchemaFactory(), bytes, 0, bytes.length, true);
+    assertEquals(1, reader.getFieldNumber());
+    ByteString value = reader.readBytes();
+    assertEquals(ByteString.copyFrom(new byte[] {0x01, 0x02}), value);
+
+    // The value is a view of the array.
+    bytes[2] = 0x03;
+    assertEquals(ByteString.copyFrom(new byte[] {0x03, 0x02}), value);
+  }
+
+  @Test
+  public void arrayReaderShouldCopyBytesByDefault() {
+    byte[] bytes = new byte[] {0x0A, 0x02, 0x01, 0x02};
+    ArrayReader reader = new ArrayReader(new GenericSchemaFactory(), bytes);
+    assertEquals(1, reader.getFieldNumber());
+    ByteString value = reader.readBytes();
+    bytes[2] = 0x03;
+    assertEquals(ByteString.copyFrom(new byte[] {0x01, 0x02}), value);
+  }
+
+  @Test
+  public void directReaderShouldMatchArrayReader() {
+    assumeTrue(DirectReader.isSupported());
+    TestMessage msg = TestMessageFactory.newTestMessage();
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    new GenericSchemaFactory().createSchema(TestMessage.class).writeTo(msg, writer);
+    byte[] bytes = writer.toByteArray();
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 2);
+    buffer.position(1);
+    buffer.put(bytes);
+    buffer.flip();
+    buffer.position(1);
+    DirectReader reader = new DirectReader(new GenericSchemaFactory(), buffer);
+    TestMessage newMsg = new TestMessage();
+    new GenericSchemaFactory().createSchema(TestMessage.class).mergeFrom(newMsg, reader);
+
+    assertEquals(msg, newMsg);
+    assertEquals(bytes.length, reader.getTotalBytesRead());
+    assertEquals(1, buffer.position());
+  }
+
+  @Test
+  public void directReaderShouldAliasBytes() {
+    assumeTrue(DirectReader.isSupported());
+    ByteBuffer buffer = ByteBuffer.allocateDirect(4);
+    buffer.put(new byte[] {0x0A, 0x02, 0x01, 0x02});
+    buffer.flip();
+
+    DirectReader reader = new DirectReader(new GenericSchemaFactory(), buffer, true);
+    assertEquals(1, reader.getFieldNumber());
+    ByteString value = reader.readBytes();
+    assertEquals(ByteString.copyFrom(new byte[] {0x01, 0x02}), value);
+
+    // The value is a view of the buffer.
+    buffer.put(2, (byte) 0x03);
+    assertEquals(ByteString.copyFrom(new byte[] {0x03, 0x02}), value);
+  }
+
+  /**
+   * Returns fields 1 to 5 with each wire type, followed by an int32 field 6 of value 5.
+   */
+  private static byte[] allWireTypes() {
+    int[] values = {
+      0x08, 0xFF, 0xFF, 0x01, // varint
+      0x11, 1, 2, 3, 4, 5, 6, 7, 8, // fixed64
+      0x1A, 0x02, 9, 10, // length delimited
+      0x23, 0x08, 0x01, 0x2B, 0x2C, 0x24, // group containing a nested group
+      0x2D, 11, 12, 13, 14, // fixed32
+      0x30, 0x05
+    };
+    byte[] bytes = new byte[values.length];
+    for (int i = 0; i < values.length; ++i) {
+      bytes[i] = (byte) values[i];
+    }
+    return bytes;
+  }
+
+  private static BinaryReader reader(int... values) {
+    byte[] bytes = new byte[values.length + 2];
+    for (int i = 0; i < values.length; ++i) {
+      bytes[i + 1] = (byte) values[i];
+    }
+    // Read from the middle of the array to verify that offsets are respected.
+    return new ArrayReader(new GenericSchemaFactory(), bytes, 1, values.length);
+  }
+}
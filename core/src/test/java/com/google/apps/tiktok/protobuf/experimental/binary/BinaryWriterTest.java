@@ -0,0 +1,210 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.schema.GenericSchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.schema.Reader;
+import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
+import com.google.apps.tiktok.protobuf.experimental.schema.SchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.schema.SizeCalculator;
+import com.google.apps.tiktok.protobuf.experimental.schema.Writer;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessage;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessageFactory;
+import com.google.apps.tiktok.protobuf.experimental.util.SchemaUtil;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+@RunWith(JUnit4.class)
+public class BinaryWriterTest {
+  private ArrayWriter writer;
+
+  @Before
+  public void setup() {
+    // Start with an empty buffer to exercise growth.
+    writer = new ArrayWriter(new GenericSchemaFactory(), 0);
+  }
+
+  @Test
+  public void varintsShouldBeEncoded() {
+    writer.writeInt32(1, 150);
+    writer.writeUInt64(2, 1);
+    assertBytes(0x08, 0x96, 0x01, 0x10, 0x01);
+  }
+
+  @Test
+  public void negativeInt32ShouldBeSignExtended() {
+    writer.writeInt32(1, -1);
+    assertBytes(0x08, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01);
+  }
+
+  @Test
+  public void signedVarintsShouldBeZigZagEncoded() {
+    writer.writeSInt32(1, -1);
+    writer.writeSInt64(2, -2);
+    assertBytes(0x08, 0x01, 0x10, 0x03);
+  }
+
+  @Test
+  public void fixedValuesShouldBeLittleEndian() {
+    writer.writeFixed32(1, 0x01020304);
+    writer.writeFixed64(2, 0x0102030405060708L);
+    assertBytes(
+        0x0D, 0x04, 0x03, 0x02, 0x01, 0x11, 0x08, 0x07, 0x06, 0x05, 0x04, 0x03, 0x02, 0x01);
+  }
+
+  @Test
+  public void stringsShouldBeUtf8Encoded() {
+    writer.writeString(2, "testing");
+    writer.writeString(3, "\u00e9");
+    assertBytes(
+        0x12, 0x07, 0x74, 0x65, 0x73, 0x74, 0x69, 0x6E, 0x67, 0x1A, 0x02, 0xC3, 0xA9);
+  }
+
+  @Test
+  public void bytesShouldBeLengthDelimited() {
+    writer.writeBytes(1, ByteString.copyFrom(new byte[] {1, 2, 3}));
+    assertBytes(0x0A, 0x03, 0x01, 0x02, 0x03);
+  }
+
+  @Test
+  public void packedListShouldBeLengthDelimited() {
+    writer.writeInt32List(4, Arrays.asList(3, 270, 86942), true);
+    assertBytes(0x22, 0x06, 0x03, 0x8E, 0x02, 0x9E, 0xA7, 0x05);
+  }
+
+  @Test
+  public void nonPackedListShouldRepeatTag() {
+    writer.writeInt32List(4, Arrays.asList(3, 270), false);
+    assertBytes(0x20, 0x03, 0x20, 0x8E, 0x02);
+  }
+
+  @Test
+  public void nestedMessageShouldBeLengthDelimited() {
+    writer.writeMessage(
+        3,
+        new TestMessage.InnerMessage(true),
+        writer.schemaFor(TestMessage.InnerMessage.class));
+    assertBytes(0x1A, 0x02, 0x08, 0x01);
+  }
+
+  @Test
+  public void largeNestedMessageShouldHaveMultiByteLength() throws Exception {
+    char[] chars = new char[200];
+    Arrays.fill(chars, 'a');
+    final String value = new String(chars);
+    writer = new ArrayWriter(new SchemaFactory() {
+      @SuppressWarnings("unchecked")
+      @Override
+      public <T> Schema<T> createSchema(Class<T> messageType) {
+        return (Schema<T>) new Schema<Object>() {
+          @Override
+          public void writeTo(Object message, Writer writer) {
+            writer.writeString(1, value);
+          }
+
+          @Override
+          public int getSerializedSize(Object message, SizeCalculator sizeCalculator) {
+            return SchemaUtil.computeStringSize(1, value, sizeCalculator);
+          }
+
+          @Override
+          public void mergeFrom(Object message, Reader reader) {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    }, 0);
+
+    writer.writeMessage(3, new Object(), writer.schemaFor(Object.class));
+
+    // Tag, 2-byte length (203), then the nested tag and 2-byte string length (200).
+    byte[] bytes = writer.toByteArray();
+    assertEquals(3 + 203, bytes.length);
+    assertArrayEquals(
+        toBytes(0x1A, 0xCB, 0x01, 0x0A, 0xC8, 0x01), Arrays.copyOf(bytes, 6));
+    assertEquals(value, new String(bytes, 6, 200, "UTF-8"));
+  }
+
+  @Test
+  public void resetShouldDiscardBytes() {
+    writer.writeInt32(1, 1);
+    writer.reset();
+    writer.writeInt32(2, 2);
+    assertBytes(0x10, 0x02);
+  }
+
+  @Test
+  public void directWriterShouldMatchArrayWriter() {
+    assumeTrue(DirectWriter.isSupported());
+    TestMessage msg = TestMessageFactory.newTestMessage();
+    new GenericSchemaFactory().createSchema(TestMessage.class).writeTo(msg, writer);
+    byte[] expected = writer.toByteArray();
+
+    // Size the buffer exactly to verify that no extra space is required.
+    ByteBuffer buffer = ByteBuffer.allocateDirect(expected.length + 2);
+    buffer.position(1);
+    buffer.limit(expected.length + 1);
+    DirectWriter directWriter = new DirectWriter(new GenericSchemaFactory(), buffer);
+    new GenericSchemaFactory().createSchema(TestMessage.class).writeTo(msg, directWriter);
+
+    assertEquals(expected.length, directWriter.getTotalBytesWritten());
+    assertEquals(0, directWriter.spaceLeft());
+    byte[] actual = new byte[expected.length];
+    buffer.get(actual);
+    assertArrayEquals(expected, actual);
+  }
+
+  @Test(expected = BufferOverflowException.class)
+  public void directWriterShouldNotOverflow() {
+    assumeTrue(DirectWriter.isSupported());
+    DirectWriter directWriter =
+        new DirectWriter(new GenericSchemaFactory(), ByteBuffer.allocateDirect(4));
+    directWriter.writeFixed32(1, 1);
+  }
+
+  @Test
+  public void directWriterShouldNotWritePastLimit() {
+    assumeTrue(DirectWriter.isSupported());
+    ByteBuffer buffer = ByteBuffer.allocateDirect(16);
+    for (int i = 0; i < buffer.capacity(); ++i) {
+      buffer.put(i, (byte) 0x55);
+    }
+    // Leave fewer bytes than a word, but more than a varint32 needs.
+    buffer.limit(6);
+    DirectWriter directWriter = new DirectWriter(new GenericSchemaFactory(), buffer);
+    directWriter.writeUInt32(1, 5);
+    directWriter.writeUInt32(2, 300);
+
+    assertEquals(5, directWriter.getTotalBytesWritten());
+    buffer.limit(buffer.capacity());
+    for (int i = 0; i < 5; ++i) {
+      assertEquals(toBytes(0x08, 0x05, 0x10, 0xAC, 0x02)[i], buffer.get(i));
+    }
+    for (int i = 5; i < buffer.capacity(); ++i) {
+      assertEquals((byte) 0x55, buffer.get(i));
+    }
+  }
+
+  private void assertBytes(int... expected) {
+    assertEquals(expected.length, writer.getTotalBytesWritten());
+    assertArrayEquals(toBytes(expected), writer.toByteArray());
+  }
+
+  private static byte[] toBytes(int... values) {
+    byte[] bytes = new byte[values.length];
+    for (int i = 0; i < values.length; ++i) {
+      bytes[i] = (byte) values[i];
+    }
+    return bytes;
+  }
+}
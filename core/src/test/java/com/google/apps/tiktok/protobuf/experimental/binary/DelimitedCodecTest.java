@@ -0,0 +1,102 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.apps.tiktok.protobuf.experimental.schema.GenericSchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessage;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessageFactory;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class DelimitedCodecTest {
+  private final DelimitedCodec<TestMessage> codec =
+      new DelimitedCodec<TestMessage>(new GenericSchemaFactory(), TestMessage.class);
+
+  @Test
+  public void readAllShouldMatchWriteAll() throws IOException {
+    List<TestMessage> messages = newMessages(50);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    codec.writeAll(messages, out);
+    assertEquals(messages, codec.readAll(new ByteArrayInputStream(out.toByteArray())));
+  }
+
+  @Test
+  public void iteratorShouldReuseSmallBuffer() throws IOException {
+    List<TestMessage> messages = newMessages(10);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    codec.writeAll(messages, out);
+
+    StreamReader reader =
+        new StreamReader(
+            new GenericSchemaFactory(), new ByteArrayInputStream(out.toByteArray()), 16);
+    // The size limit applies to each message rather than the whole stream.
+    reader.setSizeLimit(out.size() / 2);
+    List<TestMessage> result = new ArrayList<TestMessage>();
+    Iterator<TestMessage> it = codec.iterator(reader);
+    while (it.hasNext()) {
+      result.add(it.next());
+    }
+    assertEquals(messages, result);
+    assertFalse(it.hasNext());
+  }
+
+  @Test
+  public void parseDelimitedShouldConsumeOneMessage() throws IOException {
+    List<TestMessage> messages = newMessages(3);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (TestMessage message : messages) {
+      codec.writeDelimited(message, out);
+    }
+    ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+    for (TestMessage message : messages) {
+      assertEquals(message, codec.parseDelimited(in));
+    }
+    assertNull(codec.parseDelimited(in));
+  }
+
+  @Test
+  public void emptyMessagesShouldBeRead() throws IOException {
+    List<TestMessage> messages = Arrays.asList(new TestMessage(), new TestMessage());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    codec.writeAll(messages, out);
+    assertEquals(2, out.size());
+    assertEquals(messages, codec.readAll(new ByteArrayInputStream(out.toByteArray())));
+  }
+
+  @Test
+  public void emptyStreamShouldHaveNoMessages() {
+    assertTrue(codec.readAll(new ByteArrayInputStream(new byte[0])).isEmpty());
+  }
+
+  @Test(expected = InvalidWireFormatException.class)
+  public void truncatedStreamShouldFail() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    codec.writeAll(newMessages(2), out);
+    byte[] bytes = Arrays.copyOf(out.toByteArray(), out.size() - 1);
+    codec.readAll(new ByteArrayInputStream(bytes));
+  }
+
+  private static List<TestMessage> newMessages(int count) {
+    List<TestMessage> messages = new ArrayList<TestMessage>();
+    for (int i = 0; i < count; ++i) {
+      TestMessage msg = TestMessageFactory.newTestMessage();
+      msg.int32Field = i;
+      messages.add(msg);
+    }
+    return messages;
+  }
+}
@@ -0,0 +1,162 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.google.apps.tiktok.protobuf.experimental.DoubleArrayList;
+import com.google.apps.tiktok.protobuf.experimental.FloatArrayList;
+import com.google.apps.tiktok.protobuf.experimental.IntArrayList;
+import com.google.apps.tiktok.protobuf.experimental.LongArrayList;
+import com.google.apps.tiktok.protobuf.experimental.schema.GenericSchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.schema.Reader;
+import com.google.apps.tiktok.protobuf.experimental.schema.Writer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Verifies that packed fixed-width fields held in primitive lists, which are copied in bulk, are
+ * encoded and decoded the same as boxed lists by every reader and writer.
+ */
+@RunWith(JUnit4.class)
+public class PackedFixedWidthTest {
+  private static final int NUM_VALUES = 100;
+
+  private final IntArrayList ints = new IntArrayList();
+  private final LongArrayList longs = new LongArrayList();
+  private final FloatArrayList floats = new FloatArrayList();
+  private final DoubleArrayList doubles = new DoubleArrayList();
+  private byte[] expected;
+
+  @Before
+  public void setup() {
+    Random random = new Random(1);
+    for (int i = 0; i < NUM_VALUES; ++i) {
+      ints.addInt(random.nextInt());
+      longs.addLong(random.nextLong());
+      floats.addFloat(random.nextFloat());
+      doubles.addDouble(random.nextDouble());
+    }
+
+    // Boxed lists are encoded one element at a time.
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    writeFields(
+        writer,
+        new ArrayList<Integer>(ints),
+        new ArrayList<Long>(longs),
+        new ArrayList<Float>(floats),
+        new ArrayList<Double>(doubles),
+        false);
+    expected = writer.toByteArray();
+  }
+
+  @Test
+  public void writersShouldMatchElementEncoding() throws Exception {
+    ArrayWriter arrayWriter = new ArrayWriter(new GenericSchemaFactory());
+    writeFields(arrayWriter, ints, longs, floats, doubles, false);
+    assertArrayEquals(expected, arrayWriter.toByteArray());
+
+    // Small buffers and chunks split the lists.
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StreamWriter streamWriter = new StreamWriter(new GenericSchemaFactory(), out, 20);
+    writeFields(streamWriter, ints, longs, floats, doubles, false);
+    streamWriter.flush();
+    assertArrayEquals(expected, out.toByteArray());
+
+    ReverseWriter reverseWriter = new ReverseWriter(new GenericSchemaFactory(), 20);
+    writeFields(reverseWriter, ints, longs, floats, doubles, true);
+    assertArrayEquals(expected, reverseWriter.toByteArray());
+
+    if (DirectWriter.isSupported()) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(expected.length);
+      DirectWriter directWriter = new DirectWriter(new GenericSchemaFactory(), buffer);
+      writeFields(directWriter, ints, longs, floats, doubles, false);
+      byte[] actual = new byte[directWriter.getTotalBytesWritten()];
+      buffer.get(actual);
+      assertArrayEquals(expected, actual);
+    }
+  }
+
+  @Test
+  public void readersShouldMatchElementDecoding() {
+    assertFields(new ArrayReader(new GenericSchemaFactory(), expected));
+    assertFields(
+        new StreamReader(new GenericSchemaFactory(), new ByteArrayInputStream(expected), 20));
+
+    // Segments that split elements, both on and off the heap.
+    List<ByteBuffer> heapSegments = new ArrayList<ByteBuffer>();
+    List<ByteBuffer> directSegments = new ArrayList<ByteBuffer>();
+    for (int i = 0; i < expected.length; i += 13) {
+      byte[] segment = Arrays.copyOfRange(expected, i, Math.min(i + 13, expected.length));
+      heapSegments.add(ByteBuffer.wrap(segment));
+      ByteBuffer direct = ByteBuffer.allocateDirect(segment.length);
+      direct.put(segment);
+      direct.flip();
+      directSegments.add(direct);
+    }
+    assertFields(new SegmentedReader(new GenericSchemaFactory(), heapSegments));
+    assertFields(new SegmentedReader(new GenericSchemaFactory(), directSegments));
+
+    if (DirectReader.isSupported()) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(expected.length);
+      buffer.put(expected);
+      buffer.flip();
+      assertFields(new DirectReader(new GenericSchemaFactory(), buffer));
+    }
+  }
+
+  private void assertFields(Reader reader) {
+    IntArrayList newInts = new IntArrayList();
+    LongArrayList newLongs = new LongArrayList();
+    FloatArrayList newFloats = new FloatArrayList();
+    DoubleArrayList newDoubles = new DoubleArrayList();
+    assertEquals(1, reader.getFieldNumber());
+    reader.readFixed32List(newInts, true);
+    assertEquals(2, reader.getFieldNumber());
+    reader.readSFixed64List(newLongs, true);
+    assertEquals(3, reader.getFieldNumber());
+    reader.readFloatList(newFloats, true);
+    assertEquals(4, reader.getFieldNumber());
+    reader.readDoubleList(newDoubles, true);
+    assertEquals(Reader.READ_DONE, reader.getFieldNumber());
+
+    assertEquals(ints, newInts);
+    assertEquals(longs, newLongs);
+    assertEquals(floats, newFloats);
+    assertEquals(doubles, newDoubles);
+  }
+
+  /**
+   * Writes each list as a packed field. Fields are written in reverse order if the writer reverses
+   * them, so that the output is the same for all writers.
+   */
+  private static void writeFields(
+      Writer writer,
+      List<Integer> ints,
+      List<Long> longs,
+      List<Float> floats,
+      List<Double> doubles,
+      boolean reverse) {
+    if (reverse) {
+      writer.writeDoubleList(4, doubles, true);
+      writer.writeFloatList(3, floats, true);
+      writer.writeSFixed64List(2, longs, true);
+      writer.writeFixed32List(1, ints, true);
+    } else {
+      writer.writeFixed32List(1, ints, true);
+      writer.writeSFixed64List(2, longs, true);
+      writer.writeFloatList(3, floats, true);
+      writer.writeDoubleList(4, doubles, true);
+    }
+  }
+}
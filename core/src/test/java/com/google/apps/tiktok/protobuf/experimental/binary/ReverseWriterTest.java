@@ -0,0 +1,89 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.schema.GenericSchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessage;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+
+@RunWith(JUnit4.class)
+public class ReverseWriterTest {
+  private ReverseWriter writer = new ReverseWriter(new GenericSchemaFactory());
+
+  @Test
+  public void fieldsShouldBeWrittenInReverseOrder() {
+    writer.writeInt32(1, 150);
+    writer.writeUInt64(2, 1);
+    assertBytes(0x10, 0x01, 0x08, 0x96, 0x01);
+  }
+
+  @Test
+  public void packedListShouldPreserveOrder() {
+    writer.writeInt32List(4, Arrays.asList(3, 270, 86942), true);
+    assertBytes(0x22, 0x06, 0x03, 0x8E, 0x02, 0x9E, 0xA7, 0x05);
+  }
+
+  @Test
+  public void nonPackedListShouldPreserveOrder() {
+    writer.writeInt32List(4, Arrays.asList(3, 270), false);
+    assertBytes(0x20, 0x03, 0x20, 0x8E, 0x02);
+  }
+
+  @Test
+  public void nestedMessageShouldBeLengthDelimited() {
+    writer.writeMessage(
+        3,
+        new TestMessage.InnerMessage(true),
+        writer.schemaFor(TestMessage.InnerMessage.class));
+    assertBytes(0x1A, 0x02, 0x08, 0x01);
+  }
+
+  @Test
+  public void valuesShouldSpanChunks() {
+    writer = new ReverseWriter(new GenericSchemaFactory(), 8);
+    byte[] bytes = new byte[20];
+    for (int i = 0; i < bytes.length; ++i) {
+      bytes[i] = (byte) i;
+    }
+    String string = "abcdefghijklmnopqrstuvwxyz";
+    writer.writeBytes(1, ByteString.copyFrom(bytes));
+    writer.writeString(2, string);
+    writer.writeFixed64(3, 0x0102030405060708L);
+
+    ArrayWriter expected = new ArrayWriter(new GenericSchemaFactory());
+    expected.writeFixed64(3, 0x0102030405060708L);
+    expected.writeString(2, string);
+    expected.writeBytes(1, ByteString.copyFrom(bytes));
+
+    assertArrayEquals(expected.toByteArray(), writer.toByteArray());
+    assertArrayEquals(expected.toByteArray(), writer.toByteString().toByteArray());
+    assertEquals(0, writer.getTotalBytesWritten());
+  }
+
+  @Test
+  public void resetShouldReuseChunks() {
+    writer = new ReverseWriter(new GenericSchemaFactory(), 4);
+    writer.writeFixed64(1, 1L);
+    writer.writeFixed64(2, 2L);
+    writer.reset();
+    assertEquals(0, writer.getTotalBytesWritten());
+    writer.writeInt32(2, 2);
+    assertBytes(0x10, 0x02);
+  }
+
+  private void assertBytes(int... expected) {
+    byte[] bytes = new byte[expected.length];
+    for (int i = 0; i < expected.length; ++i) {
+      bytes[i] = (byte) expected[i];
+    }
+    assertEquals(expected.length, writer.getTotalBytesWritten());
+    assertArrayEquals(bytes, writer.toByteArray());
+  }
+}
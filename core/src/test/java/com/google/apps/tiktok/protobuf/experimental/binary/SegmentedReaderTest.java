@@ -0,0 +1,138 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.schema.GenericSchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.schema.Reader;
+import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessage;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessageFactory;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class SegmentedReaderTest {
+  private final Schema<TestMessage> schema =
+      new GenericSchemaFactory().createSchema(TestMessage.class);
+
+  @Test
+  public void singleByteSegmentsShouldMatchWrittenMessage() {
+    TestMessage msg = TestMessageFactory.newTestMessage();
+    byte[] bytes = serialize(msg);
+    SegmentedReader reader = new SegmentedReader(new GenericSchemaFactory(), split(bytes, 1));
+    TestMessage newMsg = new TestMessage();
+    schema.mergeFrom(newMsg, reader);
+    assertEquals(msg, newMsg);
+    assertEquals(bytes.length, reader.getTotalBytesRead());
+  }
+
+  @Test
+  public void unevenSegmentsShouldMatchWrittenMessage() {
+    TestMessage msg = TestMessageFactory.newTestMessage();
+    byte[] bytes = serialize(msg);
+    for (int segmentSize = 2; segmentSize < 20; ++segmentSize) {
+      SegmentedReader reader =
+          new SegmentedReader(new GenericSchemaFactory(), split(bytes, segmentSize), true);
+      TestMessage newMsg = new TestMessage();
+      schema.mergeFrom(newMsg, reader);
+      assertEquals(msg, newMsg);
+    }
+  }
+
+  @Test
+  public void ropeShouldMatchWrittenMessage() {
+    TestMessage msg = TestMessageFactory.newTestMessage();
+    byte[] bytes = serialize(msg);
+    ByteString rope = ByteString.EMPTY;
+    for (ByteBuffer segment : split(bytes, 7)) {
+      rope = rope.concat(ByteString.copyFrom(segment));
+    }
+    TestMessage newMsg = new TestMessage();
+    schema.mergeFrom(newMsg, new SegmentedReader(new GenericSchemaFactory(), rope));
+    assertEquals(msg, newMsg);
+  }
+
+  @Test
+  public void valuesSpanningSegmentsShouldBeRead() {
+    byte[] bytes = new byte[100];
+    for (int i = 0; i < bytes.length; ++i) {
+      bytes[i] = (byte) i;
+    }
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    writer.writeBytes(1, ByteString.copyFrom(bytes));
+    writer.writeFixed64(2, 0x0102030405060708L);
+    writer.writeString(3, "hello, world");
+    writer.writeBytes(4, ByteString.copyFrom(bytes));
+    writer.writeUInt64(5, -1L);
+
+    List<ByteBuffer> segments = split(writer.toByteArray(), 3);
+    // Include empty segments, which should be skipped.
+    segments.add(2, ByteBuffer.allocate(0));
+    segments.add(ByteBuffer.allocate(0));
+    SegmentedReader reader = new SegmentedReader(new GenericSchemaFactory(), segments, true);
+    assertEquals(1, reader.getFieldNumber());
+    assertEquals(ByteString.copyFrom(bytes), reader.readBytes());
+    assertEquals(2, reader.getFieldNumber());
+    assertEquals(0x0102030405060708L, reader.readFixed64());
+    assertEquals(3, reader.getFieldNumber());
+    assertEquals("hello, world", reader.readString());
+    assertEquals(4, reader.getFieldNumber());
+    assertTrue(reader.skipField());
+    assertEquals(5, reader.getFieldNumber());
+    assertEquals(-1L, reader.readUInt64());
+    assertEquals(Reader.READ_DONE, reader.getFieldNumber());
+  }
+
+  @Test
+  public void unknownFieldsSpanningSegmentsShouldBeSliced() {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    writer.writeString(1, "hello, world");
+    writer.writeFixed64(2, 0x0102030405060708L);
+    writer.writeInt32(3, 5);
+    byte[] bytes = writer.toByteArray();
+
+    for (int segmentSize = 1; segmentSize < bytes.length; ++segmentSize) {
+      SegmentedReader reader =
+          new SegmentedReader(new GenericSchemaFactory(), split(bytes, segmentSize), true);
+      assertEquals(1, reader.getFieldNumber());
+      ByteString unknownFields = reader.readUnknownField(ByteString.EMPTY);
+      assertEquals(2, reader.getFieldNumber());
+      unknownFields = reader.readUnknownField(unknownFields);
+      assertEquals(3, reader.getFieldNumber());
+      unknownFields = reader.readUnknownField(unknownFields);
+      assertEquals(Reader.READ_DONE, reader.getFieldNumber());
+      assertEquals(ByteString.copyFrom(bytes), unknownFields);
+    }
+  }
+
+  @Test(expected = InvalidWireFormatException.class)
+  public void truncatedInputShouldFail() {
+    byte[] bytes = serialize(TestMessageFactory.newTestMessage());
+    List<ByteBuffer> segments = split(bytes, 5);
+    ByteBuffer last = segments.get(segments.size() - 1);
+    last.limit(last.limit() - 1);
+    schema.mergeFrom(new TestMessage(), new SegmentedReader(new GenericSchemaFactory(), segments));
+  }
+
+  private byte[] serialize(TestMessage msg) {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    schema.writeTo(msg, writer);
+    return writer.toByteArray();
+  }
+
+  private static List<ByteBuffer> split(byte[] bytes, int segmentSize) {
+    List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+    for (int i = 0; i < bytes.length; i += segmentSize) {
+      segments.add(ByteBuffer.wrap(bytes, i, Math.min(segmentSize, bytes.length - i)));
+    }
+    return segments;
+  }
+}
@@ -0,0 +1,142 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.schema.GenericSchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.schema.Reader;
+import com.google.apps.tiktok.protobuf.experimental.schema.Schema;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessage;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessageFactory;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+
+@RunWith(JUnit4.class)
+public class StreamReaderTest {
+  private final Schema<TestMessage> schema =
+      new GenericSchemaFactory().createSchema(TestMessage.class);
+
+  @Test
+  public void streamShouldMatchWrittenMessage() {
+    TestMessage msg = TestMessageFactory.newTestMessage();
+    // Use a small buffer so that values span refills.
+    StreamReader reader =
+        new StreamReader(new GenericSchemaFactory(), new ByteArrayInputStream(serialize(msg)), 16);
+    TestMessage newMsg = new TestMessage();
+    schema.mergeFrom(newMsg, reader);
+    assertEquals(msg, newMsg);
+  }
+
+  @Test
+  public void channelShouldMatchWrittenMessage() {
+    TestMessage msg = TestMessageFactory.newTestMessage();
+    byte[] bytes = serialize(msg);
+    StreamReader reader =
+        new StreamReader(
+            new GenericSchemaFactory(), Channels.newChannel(new ByteArrayInputStream(bytes)), 16);
+    TestMessage newMsg = new TestMessage();
+    schema.mergeFrom(newMsg, reader);
+    assertEquals(msg, newMsg);
+    assertEquals(bytes.length, reader.getTotalBytesRead());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nonBlockingChannelShouldBeRejected() throws Exception {
+    Pipe pipe = Pipe.open();
+    try {
+      pipe.source().configureBlocking(false);
+      new StreamReader(new GenericSchemaFactory(), pipe.source());
+    } finally {
+      pipe.source().close();
+      pipe.sink().close();
+    }
+  }
+
+  @Test
+  public void trickledInputShouldMatchWrittenMessage() {
+    TestMessage msg = TestMessageFactory.newTestMessage();
+    StreamReader reader =
+        new StreamReader(new GenericSchemaFactory(), new TrickleInputStream(serialize(msg)), 16);
+    TestMessage newMsg = new TestMessage();
+    schema.mergeFrom(newMsg, reader);
+    assertEquals(msg, newMsg);
+  }
+
+  @Test
+  public void largeValuesShouldBeReadInChunks() {
+    byte[] bytes = new byte[10000];
+    for (int i = 0; i < bytes.length; ++i) {
+      bytes[i] = (byte) i;
+    }
+    StringBuilder string = new StringBuilder();
+    for (int i = 0; i < 1000; ++i) {
+      string.append((char) ('a' + i % 26));
+    }
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    writer.writeBytes(1, ByteString.copyFrom(bytes));
+    writer.writeString(2, string.toString());
+    writer.writeBytes(3, ByteString.copyFrom(bytes));
+    writer.writeInt32(4, 1);
+
+    StreamReader reader =
+        new StreamReader(
+            new GenericSchemaFactory(), new ByteArrayInputStream(writer.toByteArray()), 64);
+    assertEquals(1, reader.getFieldNumber());
+    assertEquals(ByteString.copyFrom(bytes), reader.readBytes());
+    assertEquals(2, reader.getFieldNumber());
+    assertEquals(string.toString(), reader.readString());
+    assertEquals(3, reader.getFieldNumber());
+    assertTrue(reader.skipField());
+    assertEquals(4, reader.getFieldNumber());
+    assertEquals(1, reader.readInt32());
+    assertEquals(Reader.READ_DONE, reader.getFieldNumber());
+  }
+
+  @Test(expected = InvalidWireFormatException.class)
+  public void sizeLimitShouldBeEnforced() {
+    byte[] bytes = serialize(TestMessageFactory.newTestMessage());
+    StreamReader reader =
+        new StreamReader(new GenericSchemaFactory(), new ByteArrayInputStream(bytes));
+    reader.setSizeLimit(bytes.length - 1);
+    schema.mergeFrom(new TestMessage(), reader);
+  }
+
+  @Test
+  public void sizeLimitShouldAllowMessageOfExactSize() {
+    TestMessage msg = TestMessageFactory.newTestMessage();
+    byte[] bytes = serialize(msg);
+    StreamReader reader =
+        new StreamReader(new GenericSchemaFactory(), new ByteArrayInputStream(bytes));
+    reader.setSizeLimit(bytes.length);
+    TestMessage newMsg = new TestMessage();
+    schema.mergeFrom(newMsg, reader);
+    assertEquals(msg, newMsg);
+  }
+
+  private byte[] serialize(TestMessage msg) {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    schema.writeTo(msg, writer);
+    return writer.toByteArray();
+  }
+
+  /**
+   * An input stream that returns at most one byte per read.
+   */
+  private static final class TrickleInputStream extends ByteArrayInputStream {
+    TrickleInputStream(byte[] bytes) {
+      super(bytes);
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) {
+      return super.read(b, off, Math.min(len, 1));
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteOutput;
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.UnsafeByteOperations;
+import com.google.apps.tiktok.protobuf.experimental.schema.GenericSchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessage;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessageFactory;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class StreamWriterTest {
+  @Test
+  public void outputShouldMatchArrayWriter() throws Exception {
+    TestMessage msg = TestMessageFactory.newTestMessage();
+    ArrayWriter expected = new ArrayWriter(new GenericSchemaFactory());
+    new GenericSchemaFactory().createSchema(TestMessage.class).writeTo(msg, expected);
+
+    // Use a small buffer so that values are split across many flushes.
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StreamWriter writer = new StreamWriter(new GenericSchemaFactory(), out, 16);
+    new GenericSchemaFactory().createSchema(TestMessage.class).writeTo(msg, writer);
+    writer.flush();
+
+    assertEquals(expected.getTotalBytesWritten(), writer.getTotalBytesWritten());
+    assertArrayEquals(expected.toByteArray(), out.toByteArray());
+  }
+
+  @Test
+  public void largeBytesShouldBeWrittenLazily() throws Exception {
+    byte[] bytes = new byte[100];
+    for (int i = 0; i < bytes.length; ++i) {
+      bytes[i] = (byte) i;
+    }
+    RecordingByteOutput output = new RecordingByteOutput();
+    StreamWriter writer = new StreamWriter(new GenericSchemaFactory(), output, 64);
+    writer.writeInt32(1, 1);
+    writer.writeBytes(2, UnsafeByteOperations.unsafeWrap(bytes));
+    writer.writeInt32(3, 3);
+    writer.flush();
+
+    assertSame(bytes, output.lazyArrays.get(0));
+    assertEquals(1, output.lazyArrays.size());
+
+    ArrayWriter expected = new ArrayWriter(new GenericSchemaFactory());
+    expected.writeInt32(1, 1);
+    expected.writeBytes(2, ByteString.copyFrom(bytes));
+    expected.writeInt32(3, 3);
+    assertEquals(expected.getTotalBytesWritten(), writer.getTotalBytesWritten());
+    assertArrayEquals(expected.toByteArray(), output.out.toByteArray());
+  }
+
+  @Test
+  public void largeNestedMessageShouldBeWritten() throws Exception {
+    TestMessage msg = TestMessageFactory.newTestMessage();
+    ArrayWriter expected = new ArrayWriter(new GenericSchemaFactory());
+    expected.writeMessage(1, msg, expected.schemaFor(TestMessage.class));
+
+    // The nested message is larger than the buffer.
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StreamWriter writer = new StreamWriter(new GenericSchemaFactory(), out, 16);
+    writer.writeMessage(1, msg, writer.schemaFor(TestMessage.class));
+    writer.flush();
+
+    assertArrayEquals(expected.toByteArray(), out.toByteArray());
+  }
+
+  /**
+   * Records the arrays passed to {@link #writeLazy(byte[], int, int)}.
+   */
+  private static final class RecordingByteOutput extends ByteOutput {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final List<byte[]> lazyArrays = new ArrayList<byte[]>();
+
+    @Override
+    public void write(byte value) {
+      out.write(value);
+    }
+
+    @Override
+    public void write(byte[] value, int offset, int length) {
+      out.write(value, offset, length);
+    }
+
+    @Override
+    public void writeLazy(byte[] value, int offset, int length) {
+      lazyArrays.add(value);
+      out.write(value, offset, length);
+    }
+
+    @Override
+    public void write(ByteBuffer value) {
+      while (value.hasRemaining()) {
+        out.write(value.get());
+      }
+    }
+
+    @Override
+    public void writeLazy(ByteBuffer value) {
+      write(value);
+    }
+  }
+}
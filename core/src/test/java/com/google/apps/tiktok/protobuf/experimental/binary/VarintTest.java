@@ -0,0 +1,146 @@
+package com.google.apps.tiktok.protobuf.experimental.binary;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.google.apps.tiktok.protobuf.experimental.schema.GenericSchemaFactory;
+import com.google.apps.tiktok.protobuf.experimental.util.WireFormat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+@RunWith(JUnit4.class)
+public class VarintTest {
+  @Test
+  public void encodedSizeShouldMatchWireFormat() {
+    for (long value : testValues()) {
+      assertEquals(WireFormat.computeVarint64Size(value), Varint.encodedSize(value));
+    }
+  }
+
+  @Test
+  public void wordShouldMatchBytewiseEncoding() {
+    for (long value : testValues()) {
+      int size = Varint.encodedSize(value);
+      if (size > Varint.WORD_SIZE) {
+        continue;
+      }
+      byte[] expected = new byte[Varint.WORD_SIZE];
+      ArrayEncoder.encodeVarint64(value, expected, 0);
+      long word = Varint.encode(value, size);
+      assertArrayEquals(expected, toBytes(word));
+      assertEquals(size, Varint.decodedSize(word));
+      assertEquals(value, Varint.decode(word, size));
+    }
+  }
+
+  @Test
+  public void appendAndPrependShouldMatchBytewiseEncoding() {
+    for (long value : testValues()) {
+      int size = WireFormat.computeVarint64Size(value);
+      byte[] expected = new byte[size];
+      ArrayEncoder.encodeVarint64(value, expected, 0);
+
+      byte[] buffer = new byte[32];
+      assertEquals(12 + size, ArrayEncoder.appendVarint64(value, buffer, 12));
+      assertArrayEquals(expected, Arrays.copyOfRange(buffer, 12, 12 + size));
+
+      buffer = new byte[32];
+      Arrays.fill(buffer, 20, 32, (byte) 0x55);
+      assertEquals(20 - size, ArrayEncoder.prependVarint64(value, buffer, 20));
+      assertArrayEquals(expected, Arrays.copyOfRange(buffer, 20 - size, 20));
+      // The following bytes must be preserved.
+      assertEquals(0x55, buffer[20]);
+    }
+  }
+
+  @Test
+  public void readersShouldDecodeAllSizes() throws Exception {
+    List<Long> values = testValues();
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    for (long value : values) {
+      writer.writeUInt64(1, value);
+    }
+    byte[] bytes = writer.toByteArray();
+
+    ReverseWriter reverseWriter = new ReverseWriter(new GenericSchemaFactory());
+    for (int i = values.size() - 1; i >= 0; --i) {
+      reverseWriter.writeUInt64(1, values.get(i));
+    }
+    assertArrayEquals(bytes, reverseWriter.toByteArray());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StreamWriter streamWriter = new StreamWriter(new GenericSchemaFactory(), out, 16);
+    for (long value : values) {
+      streamWriter.writeUInt64(1, value);
+    }
+    streamWriter.flush();
+    assertArrayEquals(bytes, out.toByteArray());
+
+    assertValues(values, new ArrayReader(new GenericSchemaFactory(), bytes));
+    assertValues(
+        values,
+        new StreamReader(new GenericSchemaFactory(), new ByteArrayInputStream(bytes), 16));
+    assertValues(
+        values,
+        new SegmentedReader(new GenericSchemaFactory(), Arrays.asList(ByteBuffer.wrap(bytes))));
+    if (DirectReader.isSupported()) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+      buffer.put(bytes);
+      buffer.flip();
+      assertValues(values, new DirectReader(new GenericSchemaFactory(), buffer));
+    }
+  }
+
+  @Test(expected = InvalidWireFormatException.class)
+  public void overlongVarintShouldFail() {
+    byte[] bytes = new byte[16];
+    Arrays.fill(bytes, (byte) 0x80);
+    bytes[0] = 0x08;
+    BinaryReader reader = new ArrayReader(new GenericSchemaFactory(), bytes);
+    reader.getFieldNumber();
+    reader.readUInt64();
+  }
+
+  private static void assertValues(List<Long> expected, BinaryReader reader) {
+    for (long value : expected) {
+      assertEquals(1, reader.getFieldNumber());
+      assertEquals(value, reader.readUInt64());
+    }
+  }
+
+  /**
+   * Returns values of every encoded size, including the boundaries between sizes, in a random
+   * order.
+   */
+  private static List<Long> testValues() {
+    List<Long> values = new ArrayList<Long>();
+    values.add(0L);
+    for (int bits = 1; bits <= 64; ++bits) {
+      long max = -1L >>> (64 - bits);
+      values.add(max);
+      values.add(1L << (bits - 1));
+      values.add((max ^ 0x5555555555555555L) & max);
+    }
+    Collections.shuffle(values, new Random(1));
+    return values;
+  }
+
+  private static byte[] toBytes(long word) {
+    byte[] bytes = new byte[Varint.WORD_SIZE];
+    for (int i = 0; i < bytes.length; ++i) {
+      bytes[i] = (byte) (word >>> (i * 8));
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,118 @@
+package com.google.apps.tiktok.protobuf.experimental.schema;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import com.google.apps.tiktok.protobuf.experimental.IntArrayList;
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayReader;
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayWriter;
+import com.google.apps.tiktok.protobuf.experimental.binary.SizeCache;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestArrayMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+
+public abstract class AbstractArraySchemaFactoryTest {
+  private TestArrayMessage msg;
+  private Schema<TestArrayMessage> schema;
+
+  @Mock private Writer writer;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    msg = TestArrayMessage.newTestArrayMessage();
+    schema = schema();
+  }
+
+  protected abstract Schema<TestArrayMessage> schema();
+
+  @Test
+  public void nullAndEmptyArraysAreNotWritten() {
+    schema.writeTo(new TestArrayMessage(), writer);
+    TestArrayMessage empty = new TestArrayMessage();
+    empty.int32ArrayField = new int[0];
+    empty.doubleArrayField = new double[0];
+    schema.writeTo(empty, writer);
+    verifyNoMoreInteractions(writer);
+    assertEquals(0, schema.getSerializedSize(empty, new SizeCache(new GenericSchemaFactory())));
+  }
+
+  @Test
+  public void writeToShouldWriteAllFieldsInOrder() {
+    schema.writeTo(msg, writer);
+    InOrder inorder = inOrder(writer);
+    inorder.verify(writer).writeDoubleArray(eq(1), same(msg.doubleArrayField));
+    inorder.verify(writer).writeFloatArray(eq(2), same(msg.floatArrayField));
+    inorder.verify(writer).writeInt64Array(eq(3), same(msg.int64ArrayField));
+    inorder.verify(writer).writeUInt64Array(eq(4), same(msg.uint64ArrayField));
+    inorder.verify(writer).writeInt32Array(eq(5), same(msg.int32ArrayField));
+    inorder.verify(writer).writeFixed64Array(eq(6), same(msg.fixed64ArrayField));
+    inorder.verify(writer).writeFixed32Array(eq(7), same(msg.fixed32ArrayField));
+    inorder.verify(writer).writeUInt32Array(eq(8), same(msg.uint32ArrayField));
+    inorder.verify(writer).writeSFixed32Array(eq(9), same(msg.sfixed32ArrayField));
+    inorder.verify(writer).writeSFixed64Array(eq(10), same(msg.sfixed64ArrayField));
+    inorder.verify(writer).writeSInt32Array(eq(11), same(msg.sint32ArrayField));
+    inorder.verify(writer).writeSInt64Array(eq(12), same(msg.sint64ArrayField));
+    inorder.verify(writer).writeByteArray(eq(13), same(msg.byteArrayField));
+    inorder.verify(writer).writeByteBuffer(eq(14), same(msg.byteBufferField));
+    inorder.verifyNoMoreInteractions();
+  }
+
+  @Test
+  public void serializedSizeShouldMatchBytesWritten() {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    schema.writeTo(msg, writer);
+    assertEquals(
+        writer.getTotalBytesWritten(),
+        schema.getSerializedSize(msg, new SizeCache(new GenericSchemaFactory())));
+  }
+
+  @Test
+  public void binaryRoundTripShouldPreserveAllFields() {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    schema.writeTo(msg, writer);
+    assertEquals(0, msg.byteBufferField.position());
+
+    TestArrayMessage newMsg = new TestArrayMessage();
+    schema.mergeFrom(newMsg, new ArrayReader(new GenericSchemaFactory(), writer.toByteArray()));
+    assertEquals(msg, newMsg);
+  }
+
+  @Test
+  public void mergeFromShouldAppendToArrays() {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    schema.writeTo(msg, writer);
+    byte[] bytes = writer.toByteArray();
+
+    TestArrayMessage newMsg = new TestArrayMessage();
+    schema.mergeFrom(newMsg, new ArrayReader(new GenericSchemaFactory(), bytes));
+    schema.mergeFrom(newMsg, new ArrayReader(new GenericSchemaFactory(), bytes));
+    assertArrayEquals(new long[] {4, -5, 4, -5}, newMsg.int64ArrayField);
+    assertArrayEquals(new int[] {11, 12, 11, 12}, newMsg.fixed32ArrayField);
+    // Bytes fields are replaced rather than appended to.
+    assertArrayEquals(msg.byteArrayField, newMsg.byteArrayField);
+  }
+
+  @Test
+  public void mergeFromShouldAcceptUnpackedValues() {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    writer.writeInt32List(5, Arrays.asList(1, -2, 3), false);
+    writer.writeSFixed32List(9, new IntArrayList(), true);
+    writer.writeSFixed32List(9, Arrays.asList(4, 5), false);
+
+    TestArrayMessage newMsg = new TestArrayMessage();
+    schema.mergeFrom(newMsg, new ArrayReader(new GenericSchemaFactory(), writer.toByteArray()));
+    assertArrayEquals(new int[] {1, -2, 3}, newMsg.int32ArrayField);
+    assertArrayEquals(new int[] {4, 5}, newMsg.sfixed32ArrayField);
+  }
+}
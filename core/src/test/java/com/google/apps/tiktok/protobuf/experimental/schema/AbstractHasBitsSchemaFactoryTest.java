@@ -0,0 +1,135 @@
+package com.google.apps.tiktok.protobuf.experimental.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayReader;
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayWriter;
+import com.google.apps.tiktok.protobuf.experimental.binary.SizeCache;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestHasBitsMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public abstract class AbstractHasBitsSchemaFactoryTest {
+  private Schema<TestHasBitsMessage> schema;
+
+  @Mock private Writer writer;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    schema = schema();
+  }
+
+  protected abstract Schema<TestHasBitsMessage> schema();
+
+  @Test
+  public void writeToShouldWriteOnlyFieldsWithHasBitsSet() {
+    TestHasBitsMessage msg = new TestHasBitsMessage();
+    msg.setFloatField(1.5f);
+    msg.setInt32Field(3);
+    msg.sint64Field = -5L;
+    msg.plainField = "plain";
+    msg.setDoubleField(2.5);
+    schema.writeTo(msg, writer);
+    InOrder inorder = inOrder(writer);
+    inorder.verify(writer).writeInt32(1, 3);
+    inorder.verify(writer).writeString(4, "plain");
+    inorder.verify(writer).writeDouble(5, 2.5);
+    inorder.verify(writer).writeFloat(40, 1.5f);
+    inorder.verifyNoMoreInteractions();
+  }
+
+  @Test
+  public void presentFieldsWithDefaultValuesShouldBeWritten() {
+    schema.writeTo(TestHasBitsMessage.newDefaultValuesMessage(), writer);
+    verify(writer).writeInt32(1, 0);
+    verify(writer).writeSInt64(2, 0L);
+    verify(writer).writeString(3, "");
+    verify(writer).writeDouble(5, 0.0);
+    verify(writer).writeBool(6, false);
+    verify(writer).writeBytes(7, ByteString.EMPTY);
+    verify(writer).writeEnum(8, 0);
+    verify(writer).writeFloat(40, 0.0f);
+    verifyNoMoreInteractions(writer);
+  }
+
+  @Test
+  public void presentNullFieldsShouldNotBeWritten() {
+    TestHasBitsMessage msg = new TestHasBitsMessage();
+    msg.setStringField(null);
+    msg.setBytesField(null);
+    msg.setBoolField(true);
+    schema.writeTo(msg, writer);
+    verify(writer).writeBool(6, true);
+    verifyNoMoreInteractions(writer);
+  }
+
+  @Test
+  public void unusedHasBitsShouldBeIgnored() {
+    TestHasBitsMessage msg = new TestHasBitsMessage();
+    msg.hasBits0 = 1 << 20;
+    msg.hasBits1 = -2;
+    schema.writeTo(msg, writer);
+    verifyNoMoreInteractions(writer);
+    assertEquals(0, schema.getSerializedSize(msg, new SizeCache(new GenericSchemaFactory())));
+  }
+
+  @Test
+  public void serializedSizeShouldMatchBytesWritten() {
+    TestHasBitsMessage msg = TestHasBitsMessage.newDefaultValuesMessage();
+    assertEquals(toByteArray(msg).length, serializedSize(msg));
+
+    msg.setInt32Field(-1);
+    msg.setSInt64Field(Long.MIN_VALUE);
+    msg.setStringField("string");
+    msg.setEnumField(300);
+    assertEquals(toByteArray(msg).length, serializedSize(msg));
+
+    msg.setStringField(null);
+    assertEquals(toByteArray(msg).length, serializedSize(msg));
+  }
+
+  @Test
+  public void mergeFromShouldSetHasBits() {
+    TestHasBitsMessage msg = new TestHasBitsMessage();
+    msg.setInt32Field(0);
+    msg.setStringField("string");
+    msg.setFloatField(2.5f);
+    msg.plainField = "plain";
+
+    TestHasBitsMessage newMsg = roundTrip(msg);
+    assertEquals(msg.hasBits0, newMsg.hasBits0);
+    assertEquals(msg.hasBits1, newMsg.hasBits1);
+    assertEquals(msg, newMsg);
+  }
+
+  @Test
+  public void binaryRoundTripShouldPreserveDefaultValues() {
+    TestHasBitsMessage msg = TestHasBitsMessage.newDefaultValuesMessage();
+    assertEquals(msg, roundTrip(msg));
+  }
+
+  private int serializedSize(TestHasBitsMessage msg) {
+    return schema.getSerializedSize(msg, new SizeCache(new GenericSchemaFactory()));
+  }
+
+  private TestHasBitsMessage roundTrip(TestHasBitsMessage msg) {
+    TestHasBitsMessage newMsg = new TestHasBitsMessage();
+    schema.mergeFrom(newMsg, new ArrayReader(new GenericSchemaFactory(), toByteArray(msg)));
+    return newMsg;
+  }
+
+  private byte[] toByteArray(TestHasBitsMessage msg) {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    schema.writeTo(msg, writer);
+    return writer.toByteArray();
+  }
+}
@@ -0,0 +1,164 @@
+package com.google.apps.tiktok.protobuf.experimental.schema;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import com.google.apps.tiktok.protobuf.experimental.IntKeyHashMap;
+import com.google.apps.tiktok.protobuf.experimental.LongKeyHashMap;
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayReader;
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayWriter;
+import com.google.apps.tiktok.protobuf.experimental.binary.ReverseWriter;
+import com.google.apps.tiktok.protobuf.experimental.binary.SizeCache;
+import com.google.apps.tiktok.protobuf.experimental.binary.StreamReader;
+import com.google.apps.tiktok.protobuf.experimental.binary.StreamWriter;
+import com.google.apps.tiktok.protobuf.experimental.descriptor.MapEntryDescriptor;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestArrayMessage;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMapMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+public abstract class AbstractMapSchemaFactoryTest {
+  private TestMapMessage msg;
+  private Schema<TestMapMessage> schema;
+
+  @Mock private Writer writer;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    msg = TestMapMessage.newTestMapMessage();
+    schema = schema();
+  }
+
+  protected abstract Schema<TestMapMessage> schema();
+
+  @Test
+  public void nullAndEmptyMapsAreNotWritten() {
+    schema.writeTo(new TestMapMessage(), writer);
+    TestMapMessage empty = new TestMapMessage();
+    empty.stringToStringField = new HashMap<String, String>();
+    empty.uint32ToStringField = new IntKeyHashMap<String>();
+    schema.writeTo(empty, writer);
+    verifyNoMoreInteractions(writer);
+    assertEquals(0, schema.getSerializedSize(empty, new SizeCache(new GenericSchemaFactory())));
+  }
+
+  @Test
+  public void writeToShouldWriteAllFieldsInOrder() {
+    schema.writeTo(msg, writer);
+    InOrder inorder = inOrder(writer);
+    inorder.verify(writer)
+        .writeMap(eq(1), same(msg.stringToStringField), any(MapEntryDescriptor.class));
+    inorder.verify(writer)
+        .writeMap(eq(2), same(msg.int64ToMessageField), any(MapEntryDescriptor.class));
+    inorder.verify(writer)
+        .writeMap(eq(3), same(msg.sint32ToEnumField), any(MapEntryDescriptor.class));
+    inorder.verify(writer)
+        .writeMap(eq(4), same(msg.uint32ToStringField), any(MapEntryDescriptor.class));
+    inorder.verify(writer)
+        .writeMap(eq(5), same(msg.fixed64ToDoubleField), any(MapEntryDescriptor.class));
+    inorder.verify(writer)
+        .writeMap(eq(6), same(msg.boolToBytesField), any(MapEntryDescriptor.class));
+    inorder.verify(writer)
+        .writeMap(eq(7), same(msg.sfixed32ToFloatField), any(MapEntryDescriptor.class));
+    inorder.verifyNoMoreInteractions();
+  }
+
+  @Test
+  public void serializedSizeShouldMatchBytesWritten() {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    schema.writeTo(msg, writer);
+    assertEquals(
+        writer.getTotalBytesWritten(),
+        schema.getSerializedSize(msg, new SizeCache(new GenericSchemaFactory())));
+  }
+
+  @Test
+  public void binaryRoundTripShouldPreserveAllFields() {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    schema.writeTo(msg, writer);
+
+    TestMapMessage newMsg = new TestMapMessage();
+    schema.mergeFrom(newMsg, new ArrayReader(new GenericSchemaFactory(), writer.toByteArray()));
+    assertEquals(msg, newMsg);
+    assertTrue(newMsg.int64ToMessageField instanceof LongKeyHashMap);
+    assertTrue(newMsg.sint32ToEnumField instanceof IntKeyHashMap);
+    assertTrue(newMsg.stringToStringField instanceof HashMap);
+  }
+
+  @Test
+  public void allWritersShouldEncodeTheSameEntries() throws Exception {
+    ArrayWriter arrayWriter = new ArrayWriter(new GenericSchemaFactory());
+    schema.writeTo(msg, arrayWriter);
+    byte[] bytes = arrayWriter.toByteArray();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StreamWriter streamWriter = new StreamWriter(new GenericSchemaFactory(), out, 16);
+    schema.writeTo(msg, streamWriter);
+    streamWriter.flush();
+    assertArrayEquals(bytes, out.toByteArray());
+
+    ReverseWriter reverseWriter = new ReverseWriter(new GenericSchemaFactory(), 16);
+    schema.writeTo(msg, reverseWriter);
+    assertEquals(bytes.length, reverseWriter.getTotalBytesWritten());
+    TestMapMessage newMsg = new TestMapMessage();
+    schema.mergeFrom(
+        newMsg,
+        new StreamReader(
+            new GenericSchemaFactory(), new ByteArrayInputStream(reverseWriter.toByteArray()), 16));
+    assertEquals(msg, newMsg);
+  }
+
+  @Test
+  public void mergeFromShouldReplaceEntriesWithEqualKeys() {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    schema.writeTo(msg, writer);
+
+    TestMapMessage newMsg = new TestMapMessage();
+    newMsg.stringToStringField = new HashMap<String, String>();
+    newMsg.stringToStringField.put("key", "old");
+    newMsg.stringToStringField.put("other", "kept");
+    schema.mergeFrom(newMsg, new ArrayReader(new GenericSchemaFactory(), writer.toByteArray()));
+    assertEquals("value", newMsg.stringToStringField.get("key"));
+    assertEquals("kept", newMsg.stringToStringField.get("other"));
+    assertEquals(3, newMsg.stringToStringField.size());
+  }
+
+  @Test
+  public void mergeFromShouldDefaultMissingKeysAndValues() {
+    byte[] bytes = {
+      // stringToStringField: a value without a key, then a key without a value.
+      0x0A, 0x03, 0x12, 0x01, 'v',
+      0x0A, 0x03, 0x0A, 0x01, 'k',
+      // int64ToMessageField: a key without a value, and an unknown field.
+      0x12, 0x04, 0x08, 0x05, 0x18, 0x01,
+      // uint32ToStringField: an empty entry.
+      0x22, 0x00
+    };
+    TestMapMessage newMsg = new TestMapMessage();
+    schema.mergeFrom(newMsg, new ArrayReader(new GenericSchemaFactory(), bytes));
+
+    Map<String, String> expectedStrings = new HashMap<String, String>();
+    expectedStrings.put("", "v");
+    expectedStrings.put("k", "");
+    assertEquals(expectedStrings, newMsg.stringToStringField);
+    assertEquals(new TestArrayMessage(), newMsg.int64ToMessageField.get(5L));
+    assertEquals(1, newMsg.int64ToMessageField.size());
+    assertEquals("", newMsg.uint32ToStringField.get(0));
+  }
+}
@@ -0,0 +1,157 @@
+package com.google.apps.tiktok.protobuf.experimental.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayReader;
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayWriter;
+import com.google.apps.tiktok.protobuf.experimental.binary.SizeCache;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessage;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestOneofMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public abstract class AbstractOneofSchemaFactoryTest {
+  private TestOneofMessage msg;
+  private Schema<TestOneofMessage> schema;
+
+  @Mock private Writer writer;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    msg = TestOneofMessage.newTestOneofMessage();
+    schema = schema();
+  }
+
+  protected abstract Schema<TestOneofMessage> schema();
+
+  @Test
+  public void writeToShouldWriteOnlyTheSetMembers() {
+    schema.writeTo(msg, writer);
+    InOrder inorder = inOrder(writer);
+    inorder.verify(writer).writeInt32(1, 1);
+    inorder.verify(writer).writeSInt64(3, -5L);
+    inorder.verify(writer).writeString(4, "string");
+    inorder.verify(writer).writeFixed32(9, 7);
+    inorder.verifyNoMoreInteractions();
+  }
+
+  @Test
+  public void unsetOneofsShouldNotBeWritten() {
+    msg.setKind(0, null);
+    // A case that is not the number of a member is treated as unset.
+    msg.setNumber(4, "not a member");
+    schema.writeTo(msg, writer);
+    verify(writer).writeInt32(1, 1);
+    verify(writer).writeString(4, "string");
+    verifyNoMoreInteractions(writer);
+  }
+
+  @Test
+  public void setMemberWithDefaultValueShouldBeWritten() {
+    msg.setKind(2, "");
+    msg.setNumber(8, 0.0);
+    schema.writeTo(msg, writer);
+    verify(writer).writeString(2, "");
+    verify(writer).writeDouble(8, 0.0);
+  }
+
+  @Test
+  public void serializedSizeShouldMatchBytesWritten() {
+    Object[] kindValues = TestOneofMessage.kindValues();
+    for (int fieldNumber = 0; fieldNumber < kindValues.length; ++fieldNumber) {
+      msg.setKind(fieldNumber, kindValues[fieldNumber]);
+      ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+      schema.writeTo(msg, writer);
+      assertEquals(
+          writer.getTotalBytesWritten(),
+          schema.getSerializedSize(msg, new SizeCache(new GenericSchemaFactory())));
+    }
+  }
+
+  @Test
+  public void binaryRoundTripShouldPreserveTheSetMembers() {
+    Object[] kindValues = TestOneofMessage.kindValues();
+    for (int fieldNumber = 0; fieldNumber < kindValues.length; ++fieldNumber) {
+      if (kindValues[fieldNumber] == null) {
+        continue;
+      }
+      msg.setKind(fieldNumber, kindValues[fieldNumber]);
+      msg.setNumber(10, -1L);
+      assertEquals(msg, roundTrip(msg));
+    }
+
+    msg.setKind(0, null);
+    msg.setNumber(0, null);
+    assertEquals(msg, roundTrip(msg));
+  }
+
+  @Test
+  public void mergeFromShouldReplaceTheSetMember() {
+    TestOneofMessage first = new TestOneofMessage();
+    first.setKind(2, "first");
+    TestOneofMessage second = new TestOneofMessage();
+    second.setKind(5, true);
+
+    TestOneofMessage newMsg = new TestOneofMessage();
+    schema.mergeFrom(newMsg, new ArrayReader(new GenericSchemaFactory(), toByteArray(first)));
+    assertEquals(2, newMsg.kindCase);
+    schema.mergeFrom(newMsg, new ArrayReader(new GenericSchemaFactory(), toByteArray(second)));
+    assertEquals(5, newMsg.kindCase);
+    assertEquals(true, newMsg.kind);
+    assertEquals(0, newMsg.numberCase);
+    assertNull(newMsg.number);
+  }
+
+  @Test
+  public void mergeFromShouldMergeTheSetMessageMember() {
+    TestOneofMessage first = new TestOneofMessage();
+    first.setKind(11, new TestMessage.InnerMessage(true));
+    TestOneofMessage second = new TestOneofMessage();
+    second.setKind(11, new TestMessage.InnerMessage(false));
+
+    TestOneofMessage newMsg = new TestOneofMessage();
+    schema.mergeFrom(newMsg, new ArrayReader(new GenericSchemaFactory(), toByteArray(first)));
+    Object member = newMsg.kind;
+    assertEquals(new TestMessage.InnerMessage(true), member);
+    schema.mergeFrom(newMsg, new ArrayReader(new GenericSchemaFactory(), toByteArray(second)));
+    assertEquals(11, newMsg.kindCase);
+    assertSame(member, newMsg.kind);
+    assertEquals(new TestMessage.InnerMessage(true), newMsg.kind);
+  }
+
+  @Test
+  public void messageMemberShouldReplaceOtherMember() {
+    TestOneofMessage first = new TestOneofMessage();
+    first.setKind(2, "first");
+    TestOneofMessage second = new TestOneofMessage();
+    second.setKind(11, new TestMessage.InnerMessage(true));
+
+    TestOneofMessage newMsg = new TestOneofMessage();
+    schema.mergeFrom(newMsg, new ArrayReader(new GenericSchemaFactory(), toByteArray(first)));
+    schema.mergeFrom(newMsg, new ArrayReader(new GenericSchemaFactory(), toByteArray(second)));
+    assertEquals(11, newMsg.kindCase);
+    assertEquals(new TestMessage.InnerMessage(true), newMsg.kind);
+  }
+
+  private TestOneofMessage roundTrip(TestOneofMessage msg) {
+    TestOneofMessage newMsg = new TestOneofMessage();
+    schema.mergeFrom(newMsg, new ArrayReader(new GenericSchemaFactory(), toByteArray(msg)));
+    return newMsg;
+  }
+
+  private byte[] toByteArray(TestOneofMessage msg) {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    schema.writeTo(msg, writer);
+    return writer.toByteArray();
+  }
+}
@@ -1,11 +1,22 @@
 package com.google.apps.tiktok.protobuf.experimental.schema;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 
+import com.google.apps.tiktok.protobuf.experimental.BooleanArrayList;
+import com.google.apps.tiktok.protobuf.experimental.DoubleArrayList;
+import com.google.apps.tiktok.protobuf.experimental.FloatArrayList;
+import com.google.apps.tiktok.protobuf.experimental.IntArrayList;
+import com.google.apps.tiktok.protobuf.experimental.LongArrayList;
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayReader;
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayWriter;
+import com.google.apps.tiktok.protobuf.experimental.binary.SizeCache;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessage.InnerMessage;
 import com.google.apps.tiktok.protobuf.experimental.testing.TestMessage;
 import com.google.apps.tiktok.protobuf.experimental.testing.TestMessageFactory;
 import com.google.apps.tiktok.protobuf.experimental.testing.TestMessageReader;
@@ -13,6 +24,7 @@ import com.google.apps.tiktok.protobuf.experimental.testing.TestMessageReader;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InOrder;
+import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -37,8 +49,27 @@ public abstract class AbstractSchemaFactoryTest {
     verifyNoMoreInteractions(writer);
   }
 
+  @Test
+  public void defaultsShouldHaveZeroSize() {
+    assertEquals(
+        0, schema.getSerializedSize(new TestMessage(), new SizeCache(new GenericSchemaFactory())));
+  }
+
+  @Test
+  public void serializedSizeShouldMatchBytesWritten() {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    schema.writeTo(msg, writer);
+    assertEquals(
+        writer.getTotalBytesWritten(),
+        schema.getSerializedSize(msg, new SizeCache(new GenericSchemaFactory())));
+  }
+
   @Test
   public void writeToShouldWriteAllFieldsInOrder() {
+    SchemaFactory schemaFactory = new GenericSchemaFactory();
+    when(writer.getSchemaFactory()).thenReturn(schemaFactory);
+    when(writer.schemaFor(InnerMessage.class))
+        .thenReturn(schemaFactory.createSchema(InnerMessage.class));
     schema.writeTo(msg, writer);
     InOrder inorder = inOrder(writer);
     inorder.verify(writer).writeDouble(eq(1), eq(msg.doubleField));
@@ -50,7 +81,9 @@ public abstract class AbstractSchemaFactoryTest {
     inorder.verify(writer).writeFixed32(eq(7), eq(msg.fixed32Field));
     inorder.verify(writer).writeBool(eq(8), eq(msg.isBoolField()));
     inorder.verify(writer).writeString(eq(9), eq(msg.stringField));
-    inorder.verify(writer).writeMessage(eq(10), eq(msg.messageField));
+    inorder
+        .verify(writer)
+        .writeMessage(eq(10), eq(msg.messageField), Matchers.<Schema<InnerMessage>>any());
     inorder.verify(writer).writeBytes(eq(11), eq(msg.bytesField));
     inorder.verify(writer).writeUInt32(eq(12), eq(msg.uint32Field));
     inorder.verify(writer).writeEnum(eq(13), eq(msg.getEnumField()));
@@ -68,7 +101,10 @@ public abstract class AbstractSchemaFactoryTest {
     inorder.verify(writer).writeFixed32List(eq(24), same(msg.fixed32ListField), eq(false));
     inorder.verify(writer).writeBoolList(eq(25), same(msg.getBoolListField()), eq(false));
     inorder.verify(writer).writeStringList(eq(26), same(msg.stringListField));
-    inorder.verify(writer).writeMessageList(eq(27), same(msg.messageListField));
+    inorder
+        .verify(writer)
+        .writeMessageList(
+            eq(27), same(msg.messageListField), Matchers.<Schema<InnerMessage>>any());
     inorder.verify(writer).writeBytesList(eq(28), same(msg.bytesListField));
     inorder.verify(writer).writeUInt32List(eq(29), same(msg.uint32ListField), eq(false));
     inorder.verify(writer).writeEnumList(eq(30), same(msg.getEnumListField()), eq(false));
@@ -102,4 +138,37 @@ public abstract class AbstractSchemaFactoryTest {
     schema.mergeFrom(newMsg, reader);
     assertEquals(msg, newMsg);
   }
+
+  @Test
+  public void mergeFromShouldCreatePrimitiveLists() {
+    TestMessage newMsg = new TestMessage();
+    schema.mergeFrom(newMsg, new TestMessageReader(msg));
+    assertTrue(newMsg.doubleListField instanceof DoubleArrayList);
+    assertTrue(newMsg.floatListField instanceof FloatArrayList);
+    assertTrue(newMsg.int64ListField instanceof LongArrayList);
+    assertTrue(newMsg.int32ListField instanceof IntArrayList);
+    assertTrue(newMsg.getBoolListField() instanceof BooleanArrayList);
+    assertTrue(newMsg.getEnumListField() instanceof IntArrayList);
+    assertTrue(newMsg.sint64PackedListField instanceof LongArrayList);
+    assertTrue(newMsg.fixed32PackedListField instanceof IntArrayList);
+  }
+
+  @Test
+  public void binaryRoundTripShouldPreserveAllFields() {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    schema.writeTo(msg, writer);
+
+    TestMessage newMsg = new TestMessage();
+    schema.mergeFrom(newMsg, new ArrayReader(new GenericSchemaFactory(), writer.toByteArray()));
+    assertEquals(msg, newMsg);
+  }
+
+  @Test
+  public void binaryMergeShouldMergeRepeatedNestedMessage() {
+    // Field 10 occurs twice, first with boolField set and then empty.
+    byte[] bytes = new byte[] {82, 2, 8, 1, 82, 0};
+    TestMessage newMsg = new TestMessage();
+    schema.mergeFrom(newMsg, new ArrayReader(new GenericSchemaFactory(), bytes));
+    assertEquals(new InnerMessage(true), newMsg.messageField);
+  }
 }
@@ -0,0 +1,178 @@
+package com.google.apps.tiktok.protobuf.experimental.schema;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import com.google.apps.tiktok.protobuf.experimental.ByteString;
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayReader;
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayWriter;
+import com.google.apps.tiktok.protobuf.experimental.binary.SizeCache;
+import com.google.apps.tiktok.protobuf.experimental.binary.StreamReader;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestUnknownFieldsMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayInputStream;
+
+public abstract class AbstractUnknownFieldsSchemaFactoryTest {
+  private Schema<TestUnknownFieldsMessage> schema;
+
+  @Mock private Writer writer;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    schema = schema();
+  }
+
+  protected abstract Schema<TestUnknownFieldsMessage> schema();
+
+  @Test
+  public void mergeFromShouldPreserveUnknownFields() {
+    TestUnknownFieldsMessage msg = new TestUnknownFieldsMessage();
+    schema.mergeFrom(msg, aliasingReader(input()));
+    assertEquals(1, msg.int32Field);
+    assertEquals("string", msg.stringField);
+    assertEquals(unknownFields(), msg.unknownFields);
+  }
+
+  @Test
+  public void copyingReaderShouldPreserveUnknownFields() {
+    TestUnknownFieldsMessage msg = new TestUnknownFieldsMessage();
+    schema.mergeFrom(msg, new ArrayReader(new GenericSchemaFactory(), input()));
+    assertEquals(unknownFields(), msg.unknownFields);
+
+    msg = new TestUnknownFieldsMessage();
+    schema.mergeFrom(
+        msg,
+        new StreamReader(new GenericSchemaFactory(), new ByteArrayInputStream(input()), 16));
+    assertEquals(unknownFields(), msg.unknownFields);
+  }
+
+  @Test
+  public void contiguousUnknownFieldsShouldBeASliceOfTheInput() {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    writer.writeInt32(1, 1);
+    writeUnknownFields1(writer);
+    writeUnknownFields2(writer);
+    byte[] input = writer.toByteArray();
+    TestUnknownFieldsMessage msg = new TestUnknownFieldsMessage();
+    schema.mergeFrom(msg, aliasingReader(input));
+    assertEquals(unknownFields(), msg.unknownFields);
+
+    // Overwrite the value of the unknown uint64 field, which follows the int32 field.
+    input[3] = 0x05;
+    assertEquals(0x05, msg.unknownFields.byteAt(1));
+  }
+
+  @Test
+  public void writeToShouldWriteUnknownFieldsLast() {
+    TestUnknownFieldsMessage msg = new TestUnknownFieldsMessage();
+    schema.mergeFrom(msg, aliasingReader(input()));
+
+    schema.writeTo(msg, writer);
+    InOrder inorder = inOrder(writer);
+    inorder.verify(writer).writeInt32(1, 1);
+    inorder.verify(writer).writeString(4, "string");
+    inorder.verify(writer).writeUnknownFields(unknownFields());
+    inorder.verifyNoMoreInteractions();
+  }
+
+  @Test
+  public void missingUnknownFieldsShouldNotBeWritten() {
+    TestUnknownFieldsMessage msg = new TestUnknownFieldsMessage();
+    msg.int32Field = 1;
+    schema.writeTo(msg, writer);
+    verify(writer).writeInt32(1, 1);
+    verifyNoMoreInteractions(writer);
+  }
+
+  @Test
+  public void binaryRoundTripShouldPreserveUnknownFields() {
+    TestUnknownFieldsMessage msg = new TestUnknownFieldsMessage();
+    schema.mergeFrom(msg, aliasingReader(input()));
+
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    schema.writeTo(msg, writer);
+    byte[] bytes = writer.toByteArray();
+    assertArrayEquals(reorderedInput(), bytes);
+    assertEquals(
+        bytes.length, schema.getSerializedSize(msg, new SizeCache(new GenericSchemaFactory())));
+
+    TestUnknownFieldsMessage newMsg = new TestUnknownFieldsMessage();
+    schema.mergeFrom(newMsg, aliasingReader(bytes));
+    assertEquals(msg, newMsg);
+  }
+
+  @Test
+  public void mergeFromShouldAppendUnknownFields() {
+    TestUnknownFieldsMessage msg = new TestUnknownFieldsMessage();
+    schema.mergeFrom(msg, aliasingReader(input()));
+    schema.mergeFrom(msg, aliasingReader(input()));
+    assertEquals(unknownFields().concat(unknownFields()), msg.unknownFields);
+  }
+
+  @Test
+  public void knownFieldsOnlyShouldLeaveUnknownFieldsUnset() {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    writer.writeInt32(1, 1);
+    TestUnknownFieldsMessage msg = new TestUnknownFieldsMessage();
+    schema.mergeFrom(msg, aliasingReader(writer.toByteArray()));
+    assertEquals(1, msg.int32Field);
+    assertNull(msg.unknownFields);
+  }
+
+  private static ArrayReader aliasingReader(byte[] bytes) {
+    return new ArrayReader(new GenericSchemaFactory(), bytes, 0, bytes.length, true);
+  }
+
+  /**
+   * Returns input holding known fields interleaved with unknown fields of each wire type.
+   */
+  private static byte[] input() {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    writer.writeInt32(1, 1);
+    writeUnknownFields1(writer);
+    writer.writeString(4, "string");
+    writeUnknownFields2(writer);
+    return writer.toByteArray();
+  }
+
+  /**
+   * Returns the input with the known fields first, as they are written by the schema.
+   */
+  private static byte[] reorderedInput() {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    writer.writeInt32(1, 1);
+    writer.writeString(4, "string");
+    writeUnknownFields1(writer);
+    writeUnknownFields2(writer);
+    return writer.toByteArray();
+  }
+
+  private static ByteString unknownFields() {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    writeUnknownFields1(writer);
+    writeUnknownFields2(writer);
+    return ByteString.copyFrom(writer.toByteArray());
+  }
+
+  private static void writeUnknownFields1(ArrayWriter writer) {
+    writer.writeUInt64(2, 300L);
+    writer.writeBytes(3, ByteString.copyFromUtf8("bytes"));
+  }
+
+  private static void writeUnknownFields2(ArrayWriter writer) {
+    writer.writeFixed32(5, 7);
+    writer.writeFixed64(6, -7L);
+    writer.writeSInt32(1000, -1);
+  }
+}
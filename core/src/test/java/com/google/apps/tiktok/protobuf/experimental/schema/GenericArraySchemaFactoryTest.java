@@ -0,0 +1,17 @@
+package com.google.apps.tiktok.protobuf.experimental.schema;
+
+import com.google.apps.tiktok.protobuf.experimental.testing.TestArrayMessage;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GenericArraySchemaFactoryTest extends AbstractArraySchemaFactoryTest {
+  private static final Schema<TestArrayMessage> SCHEMA =
+      new GenericSchemaFactory().createSchema(TestArrayMessage.class);
+
+  @Override
+  protected Schema<TestArrayMessage> schema() {
+    return SCHEMA;
+  }
+}
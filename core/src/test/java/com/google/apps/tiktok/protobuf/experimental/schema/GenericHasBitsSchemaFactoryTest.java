@@ -0,0 +1,37 @@
+package com.google.apps.tiktok.protobuf.experimental.schema;
+
+import com.google.apps.tiktok.protobuf.experimental.FieldType;
+import com.google.apps.tiktok.protobuf.experimental.ProtoField;
+import com.google.apps.tiktok.protobuf.experimental.ProtoHasBits;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestHasBitsMessage;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GenericHasBitsSchemaFactoryTest extends AbstractHasBitsSchemaFactoryTest {
+  private static final Schema<TestHasBitsMessage> SCHEMA =
+      new GenericSchemaFactory().createSchema(TestHasBitsMessage.class);
+
+  @Override
+  protected Schema<TestHasBitsMessage> schema() {
+    return SCHEMA;
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void hasBitsOutOfFieldOrderShouldBeRejected() {
+    new GenericSchemaFactory().createSchema(OutOfOrderMessage.class);
+  }
+
+  private static final class OutOfOrderMessage {
+    @ProtoHasBits(fieldNumbers = {2, 1})
+    int hasBits;
+
+    @ProtoField(fieldNumber = 1, type = FieldType.INT32)
+    int field1;
+
+    @ProtoField(fieldNumber = 2, type = FieldType.INT32)
+    int field2;
+  }
+}
@@ -0,0 +1,17 @@
+package com.google.apps.tiktok.protobuf.experimental.schema;
+
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMapMessage;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GenericMapSchemaFactoryTest extends AbstractMapSchemaFactoryTest {
+  private static final Schema<TestMapMessage> SCHEMA =
+      new GenericSchemaFactory().createSchema(TestMapMessage.class);
+
+  @Override
+  protected Schema<TestMapMessage> schema() {
+    return SCHEMA;
+  }
+}
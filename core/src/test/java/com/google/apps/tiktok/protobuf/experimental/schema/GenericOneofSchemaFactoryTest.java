@@ -0,0 +1,17 @@
+package com.google.apps.tiktok.protobuf.experimental.schema;
+
+import com.google.apps.tiktok.protobuf.experimental.testing.TestOneofMessage;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GenericOneofSchemaFactoryTest extends AbstractOneofSchemaFactoryTest {
+  private static final Schema<TestOneofMessage> SCHEMA =
+      new GenericSchemaFactory().createSchema(TestOneofMessage.class);
+
+  @Override
+  protected Schema<TestOneofMessage> schema() {
+    return SCHEMA;
+  }
+}
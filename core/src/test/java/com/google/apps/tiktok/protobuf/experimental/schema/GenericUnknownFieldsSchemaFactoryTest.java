@@ -0,0 +1,17 @@
+package com.google.apps.tiktok.protobuf.experimental.schema;
+
+import com.google.apps.tiktok.protobuf.experimental.testing.TestUnknownFieldsMessage;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GenericUnknownFieldsSchemaFactoryTest extends AbstractUnknownFieldsSchemaFactoryTest {
+  private static final Schema<TestUnknownFieldsMessage> SCHEMA =
+      new GenericSchemaFactory().createSchema(TestUnknownFieldsMessage.class);
+
+  @Override
+  protected Schema<TestUnknownFieldsMessage> schema() {
+    return SCHEMA;
+  }
+}
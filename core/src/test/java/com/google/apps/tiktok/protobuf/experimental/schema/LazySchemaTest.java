@@ -0,0 +1,34 @@
+package com.google.apps.tiktok.protobuf.experimental.schema;
+
+import static org.junit.Assert.assertSame;
+
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayReader;
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayWriter;
+import com.google.apps.tiktok.protobuf.experimental.binary.SizeCache;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessage.InnerMessage;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class LazySchemaTest {
+  private final LazySchema<InnerMessage> lazySchema = LazySchema.of(InnerMessage.class);
+  private final SchemaRegistry first = new SchemaRegistry(new GenericSchemaFactory());
+  private final SchemaRegistry second = new SchemaRegistry(new GenericSchemaFactory());
+
+  @Test
+  public void schemaShouldBeCachedForFactory() {
+    Schema<InnerMessage> expected = first.schemaFor(InnerMessage.class);
+    assertSame(expected, lazySchema.get(new ArrayWriter(first)));
+    assertSame(expected, lazySchema.get(new SizeCache(first)));
+    assertSame(expected, lazySchema.get(new ArrayReader(first, new byte[0])));
+  }
+
+  @Test
+  public void schemaShouldBeLookedUpForEachFactory() {
+    assertSame(first.schemaFor(InnerMessage.class), lazySchema.get(new ArrayWriter(first)));
+    assertSame(second.schemaFor(InnerMessage.class), lazySchema.get(new ArrayWriter(second)));
+    assertSame(first.schemaFor(InnerMessage.class), lazySchema.get(new SizeCache(first)));
+  }
+}
@@ -0,0 +1,161 @@
+package com.google.apps.tiktok.protobuf.experimental.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessage;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestOneofMessage;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class SchemaRegistryTest {
+  @Test
+  public void schemaShouldBeCreatedOnce() {
+    CountingSchemaFactory factory = new CountingSchemaFactory();
+    SchemaRegistry registry = new SchemaRegistry(factory);
+    Schema<TestMessage> schema = registry.createSchema(TestMessage.class);
+    assertSame(schema, registry.createSchema(TestMessage.class));
+    assertSame(schema, registry.schemaFor(TestMessage.class));
+    assertEquals(1, factory.count.get());
+
+    registry.createSchema(TestOneofMessage.class);
+    assertEquals(2, factory.count.get());
+  }
+
+  @Test
+  public void concurrentFirstRequestsShouldShareOneCreation() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountingSchemaFactory factory =
+        new CountingSchemaFactory() {
+          @Override
+          public <T> Schema<T> createSchema(Class<T> messageType) {
+            started.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              throw new RuntimeException(e);
+            }
+            return super.createSchema(messageType);
+          }
+        };
+    final SchemaRegistry registry = new SchemaRegistry(factory);
+    final int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Schema<TestMessage>>> results = new ArrayList<Future<Schema<TestMessage>>>();
+      for (int i = 0; i < threads; ++i) {
+        results.add(
+            executor.submit(
+                new Callable<Schema<TestMessage>>() {
+                  @Override
+                  public Schema<TestMessage> call() {
+                    return registry.createSchema(TestMessage.class);
+                  }
+                }));
+      }
+      started.await();
+      release.countDown();
+      Schema<TestMessage> schema = results.get(0).get();
+      for (Future<Schema<TestMessage>> result : results) {
+        assertSame(schema, result.get());
+      }
+      assertEquals(1, factory.count.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void failedCreationShouldNotBeCached() {
+    CountingSchemaFactory factory =
+        new CountingSchemaFactory() {
+          @Override
+          public <T> Schema<T> createSchema(Class<T> messageType) {
+            if (count.getAndIncrement() == 0) {
+              throw new IllegalArgumentException("first");
+            }
+            return new GenericSchemaFactory().createSchema(messageType);
+          }
+        };
+    SchemaRegistry registry = new SchemaRegistry(factory);
+    try {
+      registry.createSchema(TestMessage.class);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    Schema<TestMessage> schema = registry.createSchema(TestMessage.class);
+    assertSame(schema, registry.createSchema(TestMessage.class));
+    assertEquals(2, factory.count.get());
+  }
+
+  @Test
+  public void manyTypesShouldEachBeCached() {
+    CountingSchemaFactory factory = new CountingSchemaFactory();
+    SchemaRegistry registry = new SchemaRegistry(factory);
+    // Array types stand in for distinct message types, since the factory never inspects them.
+    List<Class<?>> types = new ArrayList<Class<?>>();
+    Class<?> type = TestMessage.class;
+    for (int i = 0; i < 100; ++i) {
+      types.add(type);
+      type = Array.newInstance(type, 0).getClass();
+    }
+    List<Schema<?>> schemas = new ArrayList<Schema<?>>();
+    for (Class<?> t : types) {
+      schemas.add(registry.createSchema(t));
+    }
+    for (int i = 0; i < types.size(); ++i) {
+      assertSame(schemas.get(i), registry.createSchema(types.get(i)));
+    }
+    assertEquals(types.size(), factory.count.get());
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void nullSchemaShouldFail() {
+    new SchemaRegistry(
+            new SchemaFactory() {
+              @Override
+              public <T> Schema<T> createSchema(Class<T> messageType) {
+                return null;
+              }
+            })
+        .createSchema(TestMessage.class);
+  }
+
+  private static class CountingSchemaFactory implements SchemaFactory {
+    final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public <T> Schema<T> createSchema(Class<T> messageType) {
+      count.incrementAndGet();
+      return new EmptySchema<T>();
+    }
+  }
+
+  private static final class EmptySchema<T> implements Schema<T> {
+    @Override
+    public void mergeFrom(T message, Reader reader) {}
+
+    @Override
+    public void writeTo(T message, Writer writer) {}
+
+    @Override
+    public int getSerializedSize(T message, SizeCalculator sizeCalculator) {
+      return 0;
+    }
+  }
+}
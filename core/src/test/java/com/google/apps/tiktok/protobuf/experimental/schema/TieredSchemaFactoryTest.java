@@ -0,0 +1,187 @@
+package com.google.apps.tiktok.protobuf.experimental.schema;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.apps.tiktok.protobuf.experimental.binary.ArrayWriter;
+import com.google.apps.tiktok.protobuf.experimental.binary.SizeCache;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessage;
+import com.google.apps.tiktok.protobuf.experimental.testing.TestMessageFactory;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+@RunWith(JUnit4.class)
+public class TieredSchemaFactoryTest {
+  private final TestMessage msg = TestMessageFactory.newTestMessage();
+  private final CountingSchemaFactory initialFactory = new CountingSchemaFactory();
+  private final CountingSchemaFactory optimizedFactory = new CountingSchemaFactory();
+  private final QueueingExecutor executor = new QueueingExecutor();
+
+  @Test
+  public void schemaShouldBePromotedAfterThreshold() {
+    Schema<TestMessage> schema =
+        new TieredSchemaFactory(initialFactory, optimizedFactory, executor, 3)
+            .createSchema(TestMessage.class);
+    write(schema);
+    write(schema);
+    assertEquals(0, executor.tasks.size());
+    write(schema);
+    assertEquals(1, executor.tasks.size());
+    assertEquals(3, initialFactory.calls);
+
+    // Calls continue to use the initial schema until the optimized schema has been created.
+    write(schema);
+    assertEquals(1, executor.tasks.size());
+    assertEquals(4, initialFactory.calls);
+    executor.runAll();
+    assertEquals(1, optimizedFactory.created);
+
+    write(schema);
+    schema.getSerializedSize(msg, new SizeCache(new GenericSchemaFactory()));
+    assertEquals(4, initialFactory.calls);
+    assertEquals(2, optimizedFactory.calls);
+  }
+
+  @Test
+  public void failedPromotionShouldKeepInitialSchema() {
+    SchemaFactory failingFactory =
+        new SchemaFactory() {
+          @Override
+          public <T> Schema<T> createSchema(Class<T> messageType) {
+            throw new IllegalArgumentException("unsupported");
+          }
+        };
+    Schema<TestMessage> schema =
+        new TieredSchemaFactory(initialFactory, failingFactory, executor, 1)
+            .createSchema(TestMessage.class);
+    write(schema);
+    executor.runAll();
+    write(schema);
+    assertEquals(2, initialFactory.calls);
+    assertEquals(0, executor.tasks.size());
+  }
+
+  @Test
+  public void promotionFailingToLinkShouldKeepInitialSchema() {
+    SchemaFactory failingFactory =
+        new SchemaFactory() {
+          @Override
+          public <T> Schema<T> createSchema(Class<T> messageType) {
+            throw new LinkageError("duplicate class definition");
+          }
+        };
+    Schema<TestMessage> schema =
+        new TieredSchemaFactory(initialFactory, failingFactory, executor, 1)
+            .createSchema(TestMessage.class);
+    write(schema);
+    executor.runAll();
+    write(schema);
+    assertEquals(2, initialFactory.calls);
+  }
+
+  @Test
+  public void rejectedPromotionShouldBeRetried() {
+    RejectingExecutor rejectingExecutor = new RejectingExecutor();
+    Schema<TestMessage> schema =
+        new TieredSchemaFactory(initialFactory, optimizedFactory, rejectingExecutor, 2)
+            .createSchema(TestMessage.class);
+    for (int i = 0; i < 4; ++i) {
+      write(schema);
+    }
+    assertEquals(2, rejectingExecutor.rejected);
+    assertEquals(0, optimizedFactory.created);
+  }
+
+  @Test
+  public void promotedSchemaShouldProduceSameBytes() {
+    Schema<TestMessage> schema =
+        new TieredSchemaFactory(
+                new GenericSchemaFactory(),
+                new GenericSchemaFactory(),
+                new Executor() {
+                  @Override
+                  public void execute(Runnable command) {
+                    command.run();
+                  }
+                },
+                1)
+            .createSchema(TestMessage.class);
+    byte[] before = write(schema);
+    assertTrue(before.length > 0);
+    assertArrayEquals(before, write(schema));
+  }
+
+  private byte[] write(Schema<TestMessage> schema) {
+    ArrayWriter writer = new ArrayWriter(new GenericSchemaFactory());
+    schema.writeTo(msg, writer);
+    return writer.toByteArray();
+  }
+
+  /**
+   * A factory of generic schemas that counts the schemas it creates and the calls to them.
+   */
+  private static final class CountingSchemaFactory implements SchemaFactory {
+    final GenericSchemaFactory delegate = new GenericSchemaFactory();
+    int created;
+    int calls;
+
+    @Override
+    public <T> Schema<T> createSchema(Class<T> messageType) {
+      ++created;
+      final Schema<T> schema = delegate.createSchema(messageType);
+      return new Schema<T>() {
+        @Override
+        public void mergeFrom(T message, Reader reader) {
+          ++calls;
+          schema.mergeFrom(message, reader);
+        }
+
+        @Override
+        public void writeTo(T message, Writer writer) {
+          ++calls;
+          schema.writeTo(message, writer);
+        }
+
+        @Override
+        public int getSerializedSize(T message, SizeCalculator sizeCalculator) {
+          ++calls;
+          return schema.getSerializedSize(message, sizeCalculator);
+        }
+      };
+    }
+  }
+
+  private static final class QueueingExecutor implements Executor {
+    final List<Runnable> tasks = new ArrayList<Runnable>();
+
+    @Override
+    public void execute(Runnable command) {
+      tasks.add(command);
+    }
+
+    void runAll() {
+      for (Runnable task : tasks) {
+        task.run();
+      }
+      tasks.clear();
+    }
+  }
+
+  private static final class RejectingExecutor implements Executor {
+    int rejected;
+
+    @Override
+    public void execute(Runnable command) {
+      ++rejected;
+      throw new RejectedExecutionException();
+    }
+  }
+}